@@ -0,0 +1,130 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the batch size and the commit interval of a table to the measured
+ * timings, within configured bounds.
+ * <p>
+ * The batch size is found by hill climbing on the insert throughput: after
+ * a few batches of the current size it is doubled or halved, and the
+ * direction is reversed whenever the throughput dropped. Batches taking
+ * longer than the latency limit are halved at once, which keeps tables with
+ * wide rows or LOBs at small batches.
+ * <p>
+ * The commit interval is adjusted independently by the share of the time
+ * spent committing: it is doubled while commits are expensive compared to
+ * the batches executed since the last commit and halved while they are
+ * cheap, so that transactions stay small when committing costs nothing.
+ */
+class AdaptiveBatchController extends BatchController {
+
+	/** batches which are measured before the batch size is changed */
+	static final int BATCHES_PER_STEP = 3;
+	/** relative drop of the throughput which reverses the direction */
+	static final double THROUGHPUT_TOLERANCE = 0.05;
+	static final double MAX_COMMIT_SHARE = 0.1;
+	static final double MIN_COMMIT_SHARE = 0.01;
+
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private final int maxCommitInterval;
+	private final long maxBatchLatencyNanos;
+
+	private int direction = 1;
+	private double previousThroughput = 0;
+	private int measuredBatches = 0;
+	private long measuredRows = 0;
+	private long measuredNanos = 0;
+	private long batchNanosSinceCommit = 0;
+
+	AdaptiveBatchController(int initialBatchSize, int initialCommitInterval,
+			int minBatchSize, int maxBatchSize, int maxCommitInterval,
+			long maxBatchLatencyMillis) {
+		super(initialBatchSize, initialCommitInterval);
+		checkArgument(0 < minBatchSize && minBatchSize <= maxBatchSize,
+				"Invalid batch size bounds");
+		checkArgument(maxBatchSize <= maxCommitInterval,
+				"The commit interval must allow the largest batches");
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.maxCommitInterval = maxCommitInterval;
+		this.maxBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+				maxBatchLatencyMillis);
+		batchSize = clamp(batchSize, minBatchSize, maxBatchSize);
+		commitInterval = clamp(initialCommitInterval, batchSize, maxCommitInterval);
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	@Override
+	synchronized void batchExecuted(int rows, long nanos) {
+		batchNanosSinceCommit += nanos;
+		if (rows < batchSize)
+			return; // the last batch of a table says little about the size
+		if (nanos > maxBatchLatencyNanos && batchSize > minBatchSize) {
+			direction = -1;
+			resizeBatches(batchSize / 2);
+			return;
+		}
+		measuredBatches++;
+		measuredRows += rows;
+		measuredNanos += nanos;
+		if (measuredBatches < BATCHES_PER_STEP)
+			return;
+		double throughput = measuredRows / (double) Math.max(1, measuredNanos);
+		if (throughput < previousThroughput * (1 - THROUGHPUT_TOLERANCE))
+			direction = -direction;
+		previousThroughput = throughput;
+		int newBatchSize = direction > 0 ? batchSize * 2 : batchSize / 2;
+		if (newBatchSize > maxBatchSize || newBatchSize < minBatchSize) {
+			direction = -direction;
+			newBatchSize = clamp(newBatchSize, minBatchSize, maxBatchSize);
+		}
+		resizeBatches(newBatchSize);
+	}
+
+	private void resizeBatches(int newBatchSize) {
+		batchSize = clamp(newBatchSize, minBatchSize, maxBatchSize);
+		commitInterval = Math.max(commitInterval, batchSize);
+		measuredBatches = 0;
+		measuredRows = 0;
+		measuredNanos = 0;
+	}
+
+	@Override
+	synchronized void committed(long nanos) {
+		long batchNanos = batchNanosSinceCommit;
+		batchNanosSinceCommit = 0;
+		double commitShare = nanos / (double) Math.max(1, nanos + batchNanos);
+		if (commitShare > MAX_COMMIT_SHARE)
+			commitInterval = clamp(commitInterval * 2, batchSize, maxCommitInterval);
+		else if (commitShare < MIN_COMMIT_SHARE)
+			commitInterval = clamp(commitInterval / 2, batchSize, maxCommitInterval);
+	}
+}
@@ -23,33 +23,46 @@ package de.hpi.bp2013n1.anonymizer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.FileHandler;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -57,8 +70,6 @@ import com.google.common.collect.Multimap;
 import de.hpi.bp2013n1.anonymizer.TransformationStrategy.ColumnTypeNotSupportedException;
 import de.hpi.bp2013n1.anonymizer.TransformationStrategy.FetchPseudonymsFailedException;
 import de.hpi.bp2013n1.anonymizer.TransformationStrategy.PreparationFailedException;
-import de.hpi.bp2013n1.anonymizer.TransformationStrategy.TransformationFailedException;
-import de.hpi.bp2013n1.anonymizer.db.BatchOperation;
 import de.hpi.bp2013n1.anonymizer.db.TableField;
 import de.hpi.bp2013n1.anonymizer.shared.Config;
 import de.hpi.bp2013n1.anonymizer.shared.Config.DependantWithoutRuleException;
@@ -69,10 +80,8 @@ import de.hpi.bp2013n1.anonymizer.shared.Rule;
 import de.hpi.bp2013n1.anonymizer.shared.Scope;
 import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
 import de.hpi.bp2013n1.anonymizer.shared.TransformationKeyCreationException;
-import de.hpi.bp2013n1.anonymizer.shared.TransformationKeyNotFoundException;
 import de.hpi.bp2013n1.anonymizer.shared.TransformationTableCreationException;
 import de.hpi.bp2013n1.anonymizer.tools.ConstraintToggler;
-import de.hpi.bp2013n1.anonymizer.tools.TableTruncater;
 import de.hpi.bp2013n1.anonymizer.util.RuleConnector;
 import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
 
@@ -84,10 +93,11 @@ public class Anonymizer {
 	public Config config;
 	public Scope scope;
 	private Connection originalDatabase, anonymizedDatabase, transformationDB;
+	/** the governor the original database is subject to, null if none */
+	private SourceLoadGovernor originalDatabaseGovernor;
 	private ArrayList<TransformationStrategy> transformationStrategies = new ArrayList<>();
 	private TreeMap<String, TransformationStrategy> strategyByClassName = new TreeMap<>();
 	private Map<String, TransformationStrategy> strategyByName = new TreeMap<>();
-	private final int LOG_INTERVAL = 1000;
 	
 	public static final Logger anonymizerLogger = Logger.getLogger(Anonymizer.class.getName());
 	private static FileHandler logFileHandler;
@@ -95,8 +105,38 @@ public class Anonymizer {
 	ConstraintToggler toggler = new ConstraintToggler();
 	private RowRetainService retainService;
 	private ForeignKeyDeletionsHandler foreignKeyDeletions = new ForeignKeyDeletionsHandler();
-	private boolean skipRuleValidation;
+	private AnonymizerOptions options = new AnonymizerOptions();
+	/** copies the tables of the current run, null before the first copy */
+	private TableAnonymizer tableAnonymizer;
+	private ProgressJournal journal;
+	private Map<String, ProgressJournal.TableCheckpoint> checkpoints =
+			Collections.emptyMap();
+	/** tables which have been finished by a previous run and are skipped */
+	private Set<String> finishedTables = Collections.emptySet();
+	private WatermarkStore watermarks;
+	private BatchSettingsStore batchSettings;
+	/** receives rows which cannot be inserted into the destination */
+	private QuarantineStore quarantine;
+	/** counts rows the database cannot estimate, null if not copying */
+	private BackgroundRowCounter rowCounter;
+	/** prepares the next table while one is copied, null if disabled */
+	private TablePrefetcher prefetcher;
 	Multimap<TableField, Rule> comprehensiveRulesBySite;
+	/** table site --> rules of the table, grouped by collectRulesBySite */
+	private Map<TableField, TableRuleMap> tableRuleMaps = Collections.emptyMap();
+	/** tables whose rows might be deleted by their rules or their parents */
+	private Set<String> rowDeletingTables = Collections.emptySet();
+	private static final AtomicInteger workerCounter = new AtomicInteger();
+	/** identifies this worker in the work queue */
+	private String workerName = ManagementFactory.getRuntimeMXBean().getName()
+			+ "#" + workerCounter.incrementAndGet();
+	/** fingerprints of the tables copied by the last run, null if disabled */
+	private FingerprintStore fingerprints;
+	/** table --> fingerprint and rules hash of this run */
+	private Map<String, String[]> tableFingerprints = Collections.emptyMap();
+	/** tables which are skipped because nothing has changed for them */
+	private Set<String> unchangedTables = Collections.emptySet();
+	private ProgressEventDispatcher progressEvents = new ProgressEventDispatcher();
 	
 	public static class TableNotInScopeException extends Exception {
 		private static final long serialVersionUID = -4527921975005958468L;
@@ -113,7 +153,7 @@ public class Anonymizer {
 			super(cause);
 		}
 	}
-	
+
 	public static class TableNotFoundException extends Exception {
 		private static final long serialVersionUID = -852972263392782109L;
 
@@ -140,6 +180,73 @@ public class Anonymizer {
 		return retainService;
 	}
 
+	public AnonymizerOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Replaces the options which control how the tables are copied. The
+	 * options must not be changed during a run.
+	 */
+	public void setOptions(AnonymizerOptions options) {
+		this.options = checkNotNull(options);
+	}
+
+	/**
+	 * @return the row pipelines which are currently running, to observe the
+	 * 			depths of their queues
+	 */
+	public List<RowPipeline> getActivePipelines() {
+		return tableAnonymizer != null ? tableAnonymizer.getActivePipelines()
+				: ImmutableList.<RowPipeline>of();
+	}
+
+	void setWorkerName(String workerName) {
+		this.workerName = workerName;
+	}
+
+	/**
+	 * Registers a listener for the progress of the runs of this Anonymizer.
+	 * Without listeners, no progress is reported.
+	 */
+	public void addProgressListener(ProgressListener listener) {
+		progressEvents.addListener(listener);
+	}
+
+	public void removeProgressListener(ProgressListener listener) {
+		progressEvents.removeListener(listener);
+	}
+
+	private void reportError(String table, String message) {
+		progressEvents.publish(ProgressEvent.error(config.schemaName, table,
+				message));
+	}
+
+	private Connection governed(Connection source) {
+		SourceLoadGovernor loadGovernor = options.getLoadGovernor();
+		return loadGovernor != null ? loadGovernor.govern(source) : source;
+	}
+
+	private Connection connectToOriginalDatabase() throws SQLException {
+		return governed(DatabaseConnector.connect(config.originalDB));
+	}
+
+	/**
+	 * Applies the options which affect objects created before the run, as
+	 * they may have been changed after connecting.
+	 */
+	private void applyOptions() {
+		foreignKeyDeletions.setMemoryBudget(options.getMemoryBudget());
+		if (originalDatabase != null
+				&& options.getLoadGovernor() != originalDatabaseGovernor) {
+			originalDatabase = governed(SourceLoadGovernor.ungoverned(
+					originalDatabase));
+			originalDatabaseGovernor = options.getLoadGovernor();
+			retainService = new RowRetainService(originalDatabase,
+					transformationDB);
+		}
+	}
+
 	public void connectAndRun() throws FatalError {
 		if (!connectDatabases()) {
 			throw new FatalError();
@@ -153,38 +260,23 @@ public class Anonymizer {
 	 * and wraps them as FatalError.
 	 */
 	public void run() throws FatalError {
+		applyOptions();
+		loadStrategies();
+		// strategies shared with other Anonymizers use the connections of
+		// this one while it runs
+		StrategyConnections previous = new StrategyConnections(
+				originalDatabase, transformationDB).bind();
 		try {
-			loadAndInstantiateStrategies();
-		} catch (InvalidConfigurationException e) {
-			throw new FatalError(e);
-		} catch (ClassNotFoundException e) {
-			anonymizerLogger.severe("Could not load strategy: " + e.getMessage());
-			throw new FatalError(e);
-		}
-		// getConstructor
-		catch (NoSuchMethodException e) {
-			anonymizerLogger.severe("Strategy is missing the required constructor: "
-					+ e.getMessage());
-			throw new FatalError(e);
-		} catch (SecurityException e) {
-			anonymizerLogger.severe("Could not access strategy constructor: "
-					+ e.getMessage());
-			throw new FatalError(e);
-		}
-		// newInstance
-		catch (InstantiationException | IllegalAccessException
-				| IllegalArgumentException | InvocationTargetException e) {
-			anonymizerLogger.severe("Could not create strategy: " + e.getMessage());
-			throw new FatalError(e);
-		}
-		// not a TransformationStrategy
-		catch (ClassCastException e) {
-			// error message has already been emitted in loadAndInstanciateStrategy
-			throw new FatalError(e);
+			validateAndAnonymize();
+		} finally {
+			StrategyConnections.restore(previous);
+			progressEvents.close();
 		}
-	
+	}
+
+	private void validateAndAnonymize() throws FatalError {
 		try {
-			if (skipRuleValidation || validateRules() == 0)
+			if (options.isSkipRuleValidation() || validateRules() == 0)
 				try {
 					anonymize();
 				} catch (TransformationTableCreationException e) {
@@ -209,6 +301,11 @@ public class Anonymizer {
 					logSevereErrorAndCausesWithInnerStackTrace(e);
 					throw new FatalError(e);
 				}
+			else {
+				anonymizerLogger.severe("Some rules are invalid, nothing has "
+						+ "been anonymized.");
+				throw new FatalError();
+			}
 		} catch (SQLException e) {
 			anonymizerLogger.severe("SQL error while checking whether all "
 					+ "values will fit into their column: "
@@ -217,6 +314,158 @@ public class Anonymizer {
 		}
 	}
 
+	/**
+	 * Predicts the rows, memory and time which a run with the current
+	 * configuration will need, without copying or preparing anything. The
+	 * estimates are based on catalog statistics and samples of the tables.
+	 */
+	public RunCostEstimate explain() throws FatalError {
+		applyOptions();
+		loadStrategies();
+		determineForeignKeys();
+		collectRulesBySite();
+		rowDeletingTables = TableDependencyGraph.tablesWhichMightDeleteRows(
+				scope.tables, foreignKeyDeletions, tablesWithDeletingRules());
+		Map<String, TableRuleMap> ruleMaps = new HashMap<>();
+		for (String table : scope.tables)
+			ruleMaps.put(table, buildTableRuleMapFor(table));
+		CostPlanner planner = new CostPlanner(originalDatabase,
+				config.schemaName, foreignKeyDeletions, rowDeletingTables);
+		try {
+			return planner.plan(scope.tables, ruleMaps, options.getTableWorkers());
+		} catch (SQLException e) {
+			anonymizerLogger.severe("Could not estimate the costs of the run: "
+					+ e.getMessage());
+			throw new FatalError(e);
+		}
+	}
+
+	public RunCostEstimate connectAndExplain() throws FatalError {
+		if (!connectDatabases()) {
+			throw new FatalError();
+		}
+		return explain();
+	}
+
+	/**
+	 * Copies work units which a coordinator has put into the work queue
+	 * until all units have been finished, see
+	 * {@link AnonymizerOptions#setCoordinator(boolean)}. Waits until the coordinator has
+	 * filled the queue, so workers must be started after the coordinator,
+	 * otherwise they might find the finished queue of a previous run.
+	 * <p>
+	 * Workers do not set up the strategies, the coordinator has done so
+	 * before it filled the queue. They only load the transformation data of
+	 * each table they copy, see
+	 * {@link TransformationStrategy#prepareTableTransformation(TableRuleMap)}.
+	 */
+	public void work() throws FatalError {
+		applyOptions();
+		loadStrategies();
+		determineForeignKeys();
+		collectRulesBySite();
+		rowDeletingTables = TableDependencyGraph.tablesWhichMightDeleteRows(
+				scope.tables, foreignKeyDeletions, tablesWithDeletingRules());
+		quarantine = new QuarantineStore(transformationDB, config.schemaName);
+		tableAnonymizer = createTableAnonymizer();
+		WorkQueue queue = new WorkQueue(transformationDB, config.schemaName);
+		try {
+			awaitWorkUnits(queue);
+		} catch (SQLException e) {
+			anonymizerLogger.severe("Could not access the work queue: "
+					+ e.getMessage());
+			throw new FatalError(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FatalError(e);
+		}
+		try {
+			anonymizedDatabase.setAutoCommit(false);
+		} catch (SQLException | AbstractMethodError e) {
+			// no performance gain but not severe
+		}
+		anonymizerLogger.info("Started copying work units as " + workerName
+				+ ".");
+		processWorkUnits(queue, new WorkerConnections(originalDatabase,
+				anonymizedDatabase, transformationDB));
+		flushProgressEvents();
+		progressEvents.close();
+		anonymizerLogger.info("Finished: Copying work units.");
+	}
+
+	public void connectAndWork() throws FatalError {
+		if (!connectDatabases()) {
+			throw new FatalError();
+		}
+		work();
+	}
+
+	private void awaitWorkUnits(WorkQueue queue) throws SQLException,
+			InterruptedException {
+		boolean logged = false;
+		while (!queue.exists() || queue.countUnits() == 0) {
+			if (!logged)
+				anonymizerLogger.info("Waiting for the coordinator to fill "
+						+ "the work queue.");
+			logged = true;
+			Thread.sleep(options.getWorkPollMillis());
+		}
+	}
+
+	/**
+	 * Makes this Anonymizer use a copy of the options of another one and
+	 * report its progress to the same listeners. The configuration, scope
+	 * and connections are not copied.
+	 */
+	public void copyOptionsFrom(Anonymizer template) {
+		options = template.options.copy();
+		progressEvents = template.progressEvents;
+	}
+
+	/**
+	 * Makes this Anonymizer use the strategy instances and the retain
+	 * service of another one instead of creating its own, e.g. to anonymize
+	 * several schemas with the same pseudonym caches. Must be called after
+	 * the databases are set and before the run.
+	 */
+	void shareStrategiesOf(Anonymizer other) {
+		strategyByClassName.putAll(other.strategyByClassName);
+		transformationStrategies.addAll(other.transformationStrategies);
+		retainService = other.retainService;
+	}
+
+	void loadStrategies() throws FatalError {
+		try {
+			loadAndInstantiateStrategies();
+		} catch (InvalidConfigurationException e) {
+			throw new FatalError(e);
+		} catch (ClassNotFoundException e) {
+			anonymizerLogger.severe("Could not load strategy: " + e.getMessage());
+			throw new FatalError(e);
+		}
+		// getConstructor
+		catch (NoSuchMethodException e) {
+			anonymizerLogger.severe("Strategy is missing the required constructor: "
+					+ e.getMessage());
+			throw new FatalError(e);
+		} catch (SecurityException e) {
+			anonymizerLogger.severe("Could not access strategy constructor: "
+					+ e.getMessage());
+			throw new FatalError(e);
+		}
+		// newInstance
+		catch (InstantiationException | IllegalAccessException
+				| IllegalArgumentException | InvocationTargetException e) {
+			anonymizerLogger.severe("Could not create strategy: " + e.getMessage());
+			throw new FatalError(e);
+		}
+		// not a TransformationStrategy
+		catch (ClassCastException e) {
+			// error message has already been emitted in loadAndInstanciateStrategy
+			throw new FatalError(e);
+		}
+	}
+
 	private void logSevereErrorAndCausesWithInnerStackTrace(Throwable t) {
 		Throwable last = t;
 		anonymizerLogger.severe(t.getMessage());
@@ -288,7 +537,8 @@ public class Anonymizer {
 	private boolean connectDatabases() {
 
 		try {
-			originalDatabase = DatabaseConnector.connect(this.config.originalDB);
+			originalDatabase = connectToOriginalDatabase();
+			originalDatabaseGovernor = options.getLoadGovernor();
 			anonymizedDatabase = DatabaseConnector.connect(this.config.destinationDB);
 			transformationDB = DatabaseConnector.connect(this.config.transformationDB);
 
@@ -305,7 +555,8 @@ public class Anonymizer {
 			Connection originalDbConnection,
 			Connection destinationDbConnection,
 			Connection transformationDbConnection) {
-		originalDatabase = originalDbConnection;
+		originalDatabase = governed(originalDbConnection);
+		originalDatabaseGovernor = options.getLoadGovernor();
 		anonymizedDatabase = destinationDbConnection;
 		transformationDB = transformationDbConnection;
 		retainService = new RowRetainService(originalDatabase, transformationDB);
@@ -323,13 +574,112 @@ public class Anonymizer {
 			System.err.println("Expected 3 Arguments\n" +
 					"1. : path to intermediary config file, \n" +
 					"2. : path to scope file,\n" +
-					"3. : desired name of logfile");
+					"3. : desired name of logfile\n" +
+					"Options: --skip-rule-validation, --workers=<number of tables copied concurrently>,\n" +
+					"  --lanes=<number of key ranges of a large table copied concurrently>,\n" +
+					"  --pipeline=<rows buffered between fetch, transform and write stage>,\n" +
+					"  --resume (continue an interrupted run),\n" +
+					"  --incremental (copy only rows changed since the last run\n" +
+					"    of tables with a watermark column in the scope file),\n" +
+					"  --adaptive-batches (adapt batch size and commit interval per table),\n" +
+					"  --min-batch=<rows>, --max-batch=<rows>, --max-commit-interval=<rows>,\n" +
+					"  --max-batch-latency=<milliseconds>,\n" +
+					"  --max-fan-out=<rows> (limit rows per source row, 0 = no limit),\n" +
+					"  --prefetch (prepare the next table while copying the current one),\n" +
+					"  --exact-row-counts (count rows before copying instead of estimating),\n" +
+					"  --pushdown=<source schema>,<pseudonyms schema> (let the destination\n" +
+					"    database copy tables with only default and pseudonym rules),\n" +
+					"  --explain (only print the estimated rows, memory and time per table),\n" +
+					"  --schemas=<schema>[:<scope file>],... (anonymize several schemas\n" +
+					"    with the rules of the config file, by default with the given scope),\n" +
+					"  --schema-parallelism=<number of schemas anonymized concurrently>,\n" +
+					"  --coordinator (distribute the tables to workers through a queue\n" +
+					"    in the transformation database), --worker (copy tables\n" +
+					"    distributed by a coordinator), --lease=<seconds a worker may\n" +
+					"    hold a work unit without renewing its lease>,\n" +
+					"  --source-statements=<statements executed concurrently in the\n" +
+					"    original database>, --source-rows-per-second=<rows>,\n" +
+					"    --source-latency=<milliseconds above which the limits are\n" +
+					"    lowered> (adjustable during the run through JMX),\n" +
+					"  --skip-unchanged (skip tables whose rows and rules have not\n" +
+					"    changed since the last run),\n" +
+					"  --memory-budget=<percent of the maximum heap which caches may\n" +
+					"    use before they spill to temporary files>,\n" +
+					"  --off-heap-pseudonyms (cache the pseudonyms of integer columns\n" +
+					"    outside of the heap),\n" +
+					"  --pseudonym-dictionary=<directory into which the pseudonyms\n" +
+					"    tables are exported as memory-mapped files>,\n" +
+					"  --pseudonym-cache=<recently used pseudonyms kept per rule\n" +
+					"    instead of loading whole pseudonyms tables>,\n" +
+					"  --progress-file=<file to which progress events are appended\n" +
+					"    as JSON lines>, --no-console-progress,\n" +
+					"  --pseudonym-key-file=<file with a secret from which pseudonyms\n" +
+					"    are derived instead of storing them in pseudonyms tables>");
 			System.exit(64);
 			return;
 		}
 		
 		List<String> arguments = Lists.newArrayList(args);
 		boolean skipRuleValidation = arguments.remove("--skip-rule-validation");
+		boolean resume = arguments.remove("--resume");
+		boolean incremental = arguments.remove("--incremental");
+		boolean adaptiveBatching = arguments.remove("--adaptive-batches");
+		boolean prefetch = arguments.remove("--prefetch");
+		boolean exactRowCounts = arguments.remove("--exact-row-counts");
+		boolean explain = arguments.remove("--explain");
+		boolean coordinator = arguments.remove("--coordinator");
+		boolean worker = arguments.remove("--worker");
+		boolean skipUnchanged = arguments.remove("--skip-unchanged");
+		boolean consoleProgress = !arguments.remove("--no-console-progress");
+		boolean offHeapPseudonyms = arguments.remove("--off-heap-pseudonyms");
+		int tableWorkers, tableLanes, pipelineQueueCapacity;
+		int minBatchSize, maxBatchSize, maxCommitInterval, maxBatchLatency;
+		int maxFanOut, schemaParallelism, leaseSeconds;
+		int sourceStatements, sourceRowsPerSecond, sourceLatency;
+		int memoryBudgetPercent, pseudonymCacheSize;
+		String schemas = removeOption(arguments, "--schemas");
+		String pushdownSchemas = removeOption(arguments, "--pushdown");
+		String progressFile = removeOption(arguments, "--progress-file");
+		String pseudonymKeyFile = removeOption(arguments, "--pseudonym-key-file");
+		String pseudonymDictionary = removeOption(arguments,
+				"--pseudonym-dictionary");
+		if (pushdownSchemas != null && pushdownSchemas.split(",").length != 2) {
+			System.err.println("Option --pushdown requires two schemas separated "
+					+ "by a comma, got " + pushdownSchemas);
+			System.exit(64);
+			return;
+		}
+		try {
+			tableWorkers = removeIntOption(arguments, "--workers", 1);
+			tableLanes = removeIntOption(arguments, "--lanes", 1);
+			pipelineQueueCapacity = removeNonNegativeIntOption(arguments,
+					"--pipeline", 0);
+			minBatchSize = removeIntOption(arguments, "--min-batch", 10);
+			maxBatchSize = removeIntOption(arguments, "--max-batch", 50000);
+			maxCommitInterval = removeIntOption(arguments,
+					"--max-commit-interval", 500000);
+			maxBatchLatency = removeIntOption(arguments, "--max-batch-latency",
+					2000);
+			maxFanOut = removeNonNegativeIntOption(arguments, "--max-fan-out",
+					0);
+			schemaParallelism = removeIntOption(arguments,
+					"--schema-parallelism", 1);
+			leaseSeconds = removeIntOption(arguments, "--lease", 300);
+			sourceStatements = removeNonNegativeIntOption(arguments,
+					"--source-statements", 0);
+			sourceRowsPerSecond = removeNonNegativeIntOption(arguments,
+					"--source-rows-per-second", 0);
+			sourceLatency = removeNonNegativeIntOption(arguments,
+					"--source-latency", 0);
+			memoryBudgetPercent = removeNonNegativeIntOption(arguments,
+					"--memory-budget", 0);
+			pseudonymCacheSize = removeNonNegativeIntOption(arguments,
+					"--pseudonym-cache", 0);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(64);
+			return;
+		}
 			
 		try {
 			setUpLogging(arguments.get(2));
@@ -363,9 +713,123 @@ public class Anonymizer {
 			System.exit(74);
 			return;
 		}
+		Map<String, Scope> schemaScopes = null;
+		if (schemas != null) {
+			try {
+				schemaScopes = readSchemaScopes(schemas, scope);
+			} catch (IOException e) {
+				anonymizerLogger.severe("Reading scope file failed: "
+						+ e.getMessage());
+				System.exit(74);
+				return;
+			}
+		}
 		Anonymizer anon = new Anonymizer(config, scope);
-		if (skipRuleValidation)
-			anon.skipRuleValidation = true;
+		if (consoleProgress)
+			anon.addProgressListener(new ConsoleProgressListener());
+		if (progressFile != null) {
+			try {
+				anon.addProgressListener(new JsonLinesProgressListener(
+						new File(progressFile)));
+			} catch (IOException e) {
+				anonymizerLogger.severe("Could not open the progress file: "
+						+ e.getMessage());
+				System.exit(74);
+				return;
+			}
+		}
+		if (pseudonymKeyFile != null) {
+			try {
+				// surrounding whitespace such as a final newline is ignored
+				anon.getOptions().setPseudonymKey(new String(Files.readAllBytes(
+						Paths.get(pseudonymKeyFile)), StandardCharsets.UTF_8)
+						.trim().getBytes(StandardCharsets.UTF_8));
+			} catch (IOException | IllegalArgumentException e) {
+				anonymizerLogger.severe("Could not read the pseudonym key: "
+						+ e.getMessage());
+				System.exit(74);
+				return;
+			}
+		}
+		AnonymizerOptions options = anon.getOptions();
+		options.setSkipRuleValidation(skipRuleValidation);
+		options.setTableWorkers(tableWorkers);
+		options.setTableLanes(tableLanes);
+		options.setPipelineQueueCapacity(pipelineQueueCapacity);
+		options.setResume(resume);
+		options.setIncremental(incremental);
+		options.setAdaptiveBatching(adaptiveBatching);
+		options.setPrefetch(prefetch);
+		options.setExactRowCounts(exactRowCounts);
+		options.setCoordinator(coordinator);
+		options.setSkipUnchangedTables(skipUnchanged);
+		options.setOffHeapPseudonyms(offHeapPseudonyms);
+		options.setLeaseMillis(TimeUnit.SECONDS.toMillis(leaseSeconds));
+		if (sourceStatements > 0 || sourceRowsPerSecond > 0
+				|| sourceLatency > 0) {
+			SourceLoadGovernor loadGovernor = new SourceLoadGovernor(
+					sourceStatements, sourceRowsPerSecond, sourceLatency);
+			loadGovernor.registerMBean();
+			options.setLoadGovernor(loadGovernor);
+		}
+		if (pushdownSchemas != null)
+			options.setPushdownSchemas(pushdownSchemas.split(",")[0],
+					pushdownSchemas.split(",")[1]);
+		try {
+			options.setBatchBounds(minBatchSize, maxBatchSize, maxCommitInterval,
+					maxBatchLatency);
+			options.setMaxFanOut(maxFanOut);
+			options.setPseudonymCacheSize(pseudonymCacheSize);
+			if (pseudonymDictionary != null)
+				options.setPseudonymDictionaryDirectory(
+						new File(pseudonymDictionary));
+			if (memoryBudgetPercent > 0)
+				options.setMemoryBudget(MemoryBudget.ofMaxHeap(
+						memoryBudgetPercent, null));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(64);
+			return;
+		}
+		if (schemaScopes != null) {
+			MultiSchemaRun multiSchemaRun = new MultiSchemaRun(config, schemaScopes);
+			multiSchemaRun.setParallelism(schemaParallelism);
+			final Anonymizer template = anon;
+			multiSchemaRun.setSchemaSetup(new MultiSchemaRun.SchemaSetup() {
+				@Override
+				public void configure(Anonymizer anonymizer) {
+					anonymizer.copyOptionsFrom(template);
+				}
+			});
+			try {
+				for (MultiSchemaRun.SchemaResult result : multiSchemaRun.run().values()) {
+					if (!result.succeeded)
+						System.exit(1);
+				}
+			} catch (FatalError e) {
+				anonymizerLogger.severe("Cannot recover from previous errors, exiting.");
+				System.exit(1);
+			}
+			return;
+		}
+		if (explain) {
+			try {
+				System.out.println(anon.connectAndExplain());
+			} catch (FatalError e) {
+				anonymizerLogger.severe("Could not estimate the costs of the run.");
+				System.exit(1);
+			}
+			return;
+		}
+		if (worker) {
+			try {
+				anon.connectAndWork();
+			} catch (FatalError e) {
+				anonymizerLogger.severe("Cannot recover from previous errors, exiting.");
+				System.exit(1);
+			}
+			return;
+		}
 		try {
 			anon.connectAndRun();
 		} catch (FatalError e) {
@@ -374,6 +838,75 @@ public class Anonymizer {
 		}
 	}
 
+	/**
+	 * @param schemas comma-separated schemas, each optionally followed by a
+	 * 			colon and the path to its scope file
+	 * @param defaultScope scope of the schemas without scope file
+	 */
+	static Map<String, Scope> readSchemaScopes(String schemas,
+			Scope defaultScope) throws IOException {
+		Map<String, Scope> schemaScopes = new LinkedHashMap<>();
+		for (String schemaAndScope : schemas.split(",")) {
+			String[] parts = schemaAndScope.split(":", 2);
+			schemaScopes.put(parts[0], parts.length > 1
+					? Scope.fromFile(parts[1]) : defaultScope);
+		}
+		return schemaScopes;
+	}
+
+	/**
+	 * Removes an option of the form --name=value from the arguments.
+	 *
+	 * @return the value of the option or defaultValue if it is not present
+	 * @throws IllegalArgumentException the value is not a positive integer
+	 */
+	static int removeIntOption(List<String> arguments, String name,
+			int defaultValue) {
+		return removeIntOption(arguments, name, defaultValue, 1,
+				"a positive integer");
+	}
+
+	/**
+	 * Removes an option of the form --name=value from the arguments, for
+	 * options which are disabled by 0.
+	 *
+	 * @return the value of the option or defaultValue if it is not present
+	 * @throws IllegalArgumentException the value is not an integer >= 0
+	 */
+	static int removeNonNegativeIntOption(List<String> arguments, String name,
+			int defaultValue) {
+		return removeIntOption(arguments, name, defaultValue, 0,
+				"a non-negative integer");
+	}
+
+	private static int removeIntOption(List<String> arguments, String name,
+			int defaultValue, int minimum, String expected) {
+		String value = removeOption(arguments, name);
+		if (value == null)
+			return defaultValue;
+		try {
+			int intValue = Integer.parseInt(value);
+			if (intValue >= minimum)
+				return intValue;
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new IllegalArgumentException("Option " + name
+				+ " requires " + expected + ", got " + value);
+	}
+
+	static String removeOption(List<String> arguments, String name) {
+		Iterator<String> argumentsIterator = arguments.iterator();
+		while (argumentsIterator.hasNext()) {
+			String argument = argumentsIterator.next();
+			if (argument.startsWith(name + "=")) {
+				argumentsIterator.remove();
+				return argument.substring(name.length() + 1);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Overrides the logging format and also routes logging output to the
 	 * specified log file.
@@ -422,7 +955,51 @@ public class Anonymizer {
 			ColumnTypeNotSupportedException, PreparationFailedException,
 			TableNotFoundException {
 		anonymizerLogger.info("Started anonymizing.");
-		checkIfTablesExistInDestinationDatabase();
+		long started = System.nanoTime();
+		tableAnonymizer = null;
+		progressEvents.publish(ProgressEvent.runStarted(config.schemaName));
+		boolean succeeded = false;
+		try {
+			checkIfTablesExistInDestinationDatabase();
+			determineForeignKeys();
+			Collection<Constraint> constraints = disableAnonymizedDbConstraints();
+
+			prepareTransformations();
+			copyAndAnonymizeData();
+
+			ConstraintToggler.enableConstraints(constraints, anonymizedDatabase);
+			succeeded = true;
+		} finally {
+			progressEvents.publish(ProgressEvent.runFinished(config.schemaName,
+					tableAnonymizer != null ? tableAnonymizer.getProcessedRows() : 0,
+					TimeUnit.NANOSECONDS.toMillis(
+							System.nanoTime() - started), succeeded));
+			flushProgressEvents();
+		}
+		anonymizerLogger.info("Finished: Anonymizing");
+		for (TransformationStrategy strategy : transformationStrategies)
+			strategy.printSummary();
+	}
+
+	/**
+	 * Lets the listeners catch up, so that they have seen the whole run
+	 * when it returns.
+	 */
+	private void flushProgressEvents() {
+		try {
+			if (!progressEvents.flush(TimeUnit.SECONDS.toMillis(10)))
+				anonymizerLogger.warning("The progress listeners did not "
+						+ "receive all events within 10 seconds.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (progressEvents.getDroppedEvents() > 0)
+			anonymizerLogger.info(progressEvents.getDroppedEvents()
+					+ " progress events were dropped because the listeners "
+					+ "could not keep up.");
+	}
+
+	private void determineForeignKeys() {
 		try {
 			foreignKeyDeletions.determineForeignKeysAmongTables(originalDatabase,
 					config.schemaName, scope.tables);
@@ -431,15 +1008,6 @@ public class Anonymizer {
 					+ "source database: " + e.getMessage());
 		}
 		foreignKeyDeletions.addForeignKeysForRuleDependents(config.rules);
-		Collection<Constraint> constraints = disableAnonymizedDbConstraints();
-
-		prepareTransformations();
-		copyAndAnonymizeData();
-
-		ConstraintToggler.enableConstraints(constraints, anonymizedDatabase);
-		anonymizerLogger.info("Finished: Anonymizing");
-		for (TransformationStrategy strategy : transformationStrategies)
-			strategy.printSummary();
 	}
 
 	private void checkIfTablesExistInDestinationDatabase()
@@ -481,13 +1049,21 @@ public class Anonymizer {
 		}
 		
 		collectRulesBySite();
-		int currentTableNumber = 0;
-		for (String table : scope.tables) {
-			TableRuleMap ruleMap = buildTableRuleMapFor(table);
-			anonymizerLogger.info("Copying data from: " + table +
-					" (table " + (++currentTableNumber)
-					+ "/" + scope.tables.size() + ").");
-			copyAndAnonymizeTable(ruleMap);
+		rowDeletingTables = TableDependencyGraph.tablesWhichMightDeleteRows(
+				scope.tables, foreignKeyDeletions, tablesWithDeletingRules());
+		if (fingerprints != null)
+			determineUnchangedTables();
+		rowCounter = options.isExactRowCounts() ? null : openRowCounter();
+		tableAnonymizer = createTableAnonymizer();
+		try {
+			if (options.isCoordinator())
+				coordinateWorkers();
+			else
+				copyTables();
+		} finally {
+			if (rowCounter != null)
+				rowCounter.close();
+			rowCounter = null;
 		}
 		
 		try {
@@ -496,336 +1072,517 @@ public class Anonymizer {
 			// probably disabling it earlier failed as well
 		}
 		anonymizerLogger.info("Finished: Copying Data.");
+		MemoryBudget memoryBudget = options.getMemoryBudget();
+		if (memoryBudget != null && memoryBudget.getSpills() > 0)
+			anonymizerLogger.info("Spilled " + memoryBudget.getSpills()
+					+ " times to stay within the memory budget, "
+					+ memoryBudget.getSpilledBytes() / (1024 * 1024)
+					+ " MB in total.");
 	}
 
-	private TableRuleMap buildTableRuleMapFor(String table) {
-		TableField tableSite = new TableField(table, null, config.schemaName);
-		TableRuleMap ruleMap = new TableRuleMap(table);
-		for (Map.Entry<TableField, Rule> fieldAndRule : comprehensiveRulesBySite.entries()) {
-			TableField tableField = fieldAndRule.getKey();
-			if (tableField.asTableSite().equals(tableSite)) {
-				Rule rule = fieldAndRule.getValue();
-				ruleMap.put(tableField.getColumn(), rule);
+	private void copyTables() {
+		List<WorkerConnections> workerConnections = options.getTableWorkers() > 1
+				? openWorkerConnections() : null;
+		if (workerConnections != null) {
+			copyTablesConcurrently(workerConnections);
+		} else {
+			WorkerConnections mainConnections = new WorkerConnections(
+					originalDatabase, anonymizedDatabase, transformationDB);
+			prefetcher = options.isPrefetch() ? openPrefetcher() : null;
+			try {
+				int currentTableNumber = 0;
+				for (String table : scope.tables) {
+					if (prefetcher != null)
+						prefetchTableAfter(currentTableNumber);
+					copyAndAnonymizeTable(table, ++currentTableNumber,
+							mainConnections);
+				}
+			} finally {
+				if (prefetcher != null)
+					prefetcher.close();
+				prefetcher = null;
 			}
 		}
-		return ruleMap;
 	}
 
 	/**
-	 * Creates a multimap which maps applied strategies to a TableField
-	 * (table or attribtue) in the correct order of application.
+	 * Puts the tables which can be copied independently of the others into
+	 * the work queue and copies work units until all have been finished, by
+	 * this or other workers. Then copies the remaining tables in the order
+	 * of the scope. Tables which need not be copied completely, because they
+	 * have been finished by a previous run, have not changed or are copied
+	 * incrementally, are not distributed but copied or skipped as usual.
 	 */
-	void collectRulesBySite() {
-		RuleConnector ruleConnector = new RuleConnector();
-		ruleConnector.addRules(config.getRules());
-		Multimap<TableField, Rule> rulesBySite = ruleConnector.getRulesBySite();
-		comprehensiveRulesBySite = LinkedHashMultimap.create();
-		for (Map.Entry<TableField, Rule> siteAndRule : rulesBySite.entries()) {
-			TableField thisSite = siteAndRule.getKey();
-			ArrayList<Rule> rulesToApplyToThisSite = new ArrayList<>();
-			Rule rule = siteAndRule.getValue();
-			rulesToApplyToThisSite.addAll(rule.transitiveParents());
-			rulesToApplyToThisSite.add(rule);
-			comprehensiveRulesBySite.putAll(thisSite, rulesToApplyToThisSite);
+	private void coordinateWorkers() {
+		WorkQueue queue = new WorkQueue(transformationDB, config.schemaName);
+		Map<String, List<PrimaryKeyRange>> units = new LinkedHashMap<>();
+		List<String> localTables = new ArrayList<>();
+		for (String table : scope.tables) {
+			if (rowDeletingTables.contains(table)
+					|| finishedTables.contains(table)
+					|| unchangedTables.contains(table)
+					|| (watermarks != null
+							&& scope.getWatermarkColumn(table) != null)) {
+				localTables.add(table);
+				continue;
+			}
+			if (tableFingerprints.containsKey(table))
+				forgetFingerprint(table);
+			tableAnonymizer.truncateTable(config.schemaName + "." + table,
+					anonymizedDatabase);
+			TableAnonymizer.RowCountEstimate estimate =
+					tableAnonymizer.estimateAllRows(table, null, originalDatabase);
+			units.put(table, tableAnonymizer.partitionTable(buildTableRuleMapFor(table),
+					estimate.rowCount, originalDatabase));
 		}
-		
-		Iterator<Rule> rulesIterator = comprehensiveRulesBySite.values().iterator();
-		while (rulesIterator.hasNext()) {
-			Rule eachRule = rulesIterator.next();
-			if (eachRule.getTransformation() == null) {
-				eachRule.setTransformation(strategyByName.get(eachRule.getStrategy()));
+		try {
+			queue.createIfNotExists();
+			queue.fill(units);
+		} catch (SQLException e) {
+			anonymizerLogger.severe("Could not fill the work queue, copying "
+					+ "all tables without workers: " + e.getMessage());
+			copyTables();
+			return;
+		}
+		anonymizerLogger.info("Distributing " + units.size() + " tables to "
+				+ "workers, copying " + localTables.size() + " tables "
+				+ "afterwards: " + localTables);
+		WorkerConnections mainConnections = new WorkerConnections(
+				originalDatabase, anonymizedDatabase, transformationDB);
+		processWorkUnits(queue, mainConnections);
+		try {
+			int failedUnits = queue.count(WorkQueue.FAILED);
+			if (failedUnits > 0) {
+				anonymizerLogger.severe(failedUnits + " work units could not "
+						+ "be copied, see the log files of the workers.");
+			} else {
+				for (String table : units.keySet()) {
+					String[] fingerprint = tableFingerprints.get(table);
+					if (fingerprint != null)
+						storeFingerprint(table, fingerprint[0], fingerprint[1]);
+				}
 			}
-			if (eachRule.getTransformation() instanceof NoOperationStrategy) {
-				rulesIterator.remove();
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not count the failed work units: "
+					+ e.getMessage());
+		}
+		for (String table : localTables)
+			copyAndAnonymizeTable(table, scope.tables.indexOf(table) + 1,
+					mainConnections);
+	}
+
+	/**
+	 * Claims and copies work units until no unit is left unfinished. Waits
+	 * while the remaining units are claimed by other workers, because their
+	 * leases may expire.
+	 */
+	private void processWorkUnits(WorkQueue queue,
+			WorkerConnections connections) {
+		try {
+			while (true) {
+				WorkQueue.WorkUnit unit = queue.claim(workerName, options.getLeaseMillis());
+				if (unit != null)
+					processWorkUnit(queue, unit, connections);
+				else if (queue.countUnfinished() == 0)
+					return;
+				else
+					Thread.sleep(options.getWorkPollMillis());
 			}
+		} catch (SQLException e) {
+			anonymizerLogger.severe("Could not access the work queue: "
+					+ e.getMessage());
+		} catch (InterruptedException e) {
+			anonymizerLogger.severe("Interrupted while waiting for work units.");
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	private void copyAndAnonymizeTable(TableRuleMap tableRuleMap) {
-		// make sure target newDB is empty
-		String qualifiedTableName = config.schemaName + "." + tableRuleMap.tableName;
-		truncateTable(qualifiedTableName);
-		ResultSetMetaData rsMeta;
-		int rowCount = countRowsInTable(qualifiedTableName);
-		if (rowCount > 0)
-			anonymizerLogger.info("Found " + rowCount + " rows.");
-		try (PreparedStatement selectStarStatement = originalDatabase.prepareStatement(
-				"SELECT * FROM " + qualifiedTableName);
-				ResultSet rs = selectStarStatement.executeQuery()) {
-			try {
-				rsMeta = rs.getMetaData();
-				
-				for (TransformationStrategy strategy : transformationStrategies) {
-					TableRuleMap tableRuleMapForStrategy =
-							tableRuleMap.filteredByStrategy(strategy);
-					if (tableRuleMapForStrategy.isEmpty())
-						continue;
-					strategy.prepareTableTransformation(tableRuleMapForStrategy);
+	/**
+	 * Copies a claimed work unit while renewing its lease in the background.
+	 * The rows of a unit claimed again after a failed or abandoned attempt
+	 * are deleted first because that attempt may have committed some. If
+	 * the lease cannot be renewed, another worker may have claimed the unit
+	 * already, so copying it is stopped and the uncommitted rows are rolled
+	 * back.
+	 */
+	private void processWorkUnit(final WorkQueue queue,
+			final WorkQueue.WorkUnit unit, WorkerConnections connections)
+			throws SQLException {
+		TableRuleMap tableRuleMap = buildTableRuleMapFor(unit.table);
+		String qualifiedTableName = config.schemaName + "." + unit.table;
+		anonymizerLogger.info("Copying " + unit + ", attempt " + unit.attempts
+				+ ".");
+		if (unit.attempts > 1)
+			tableAnonymizer.deleteUncommittedRows(qualifiedTableName,
+					ImmutableList.of(unit.range()), connections.destination);
+		final AtomicBoolean leaseLost = new AtomicBoolean();
+		ScheduledExecutorService leaseRenewal =
+				Executors.newSingleThreadScheduledExecutor();
+		leaseRenewal.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (leaseLost.get())
+					return;
+				try {
+					if (!queue.renewLease(unit, workerName, options.getLeaseMillis())) {
+						anonymizerLogger.warning("The lease of " + unit
+								+ " has expired, stopping to copy it, another "
+								+ "worker copies it again.");
+						leaseLost.set(true);
+					}
+				} catch (SQLException e) {
+					anonymizerLogger.warning("Could not renew the lease of "
+							+ unit + ": " + e.getMessage());
 				}
-				
-			} catch (SQLException | FetchPseudonymsFailedException e) {
-				anonymizerLogger.warning("Fetching rows failed: " + e.getMessage());
-				e.printStackTrace();
-				return;
 			}
+		}, options.getLeaseMillis() / 3, options.getLeaseMillis() / 3, TimeUnit.MILLISECONDS);
+		boolean copied;
+		try {
+			copied = tableAnonymizer.copyWorkUnit(tableRuleMap, qualifiedTableName,
+					unit.range(), connections, leaseLost);
+		} finally {
+			leaseRenewal.shutdownNow();
+		}
+		if (leaseLost.get()) {
+			anonymizerLogger.warning("Gave up " + unit + " after its lease had "
+					+ "expired.");
+		} else if (!copied) {
+			anonymizerLogger.warning("Could not copy " + unit + ".");
+			reportError(unit.table, "Could not copy " + unit + ".");
+			queue.failed(unit, workerName);
+		} else if (!queue.finished(unit, workerName)) {
+			anonymizerLogger.warning("Finished " + unit + " after its lease "
+					+ "had expired, it may be copied twice.");
+		}
+	}
 
-			copyAndAnonymizeRows(tableRuleMap, qualifiedTableName, rsMeta,
-					rowCount, rs);
+	private BackgroundRowCounter openRowCounter() {
+		try {
+			return new BackgroundRowCounter(connectToOriginalDatabase());
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not open a connection to count "
+					+ "rows in the background, counting them before copying "
+					+ "each table instead: " + e.getMessage());
+			return null;
+		}
+	}
 
-			try {
-				anonymizedDatabase.commit();
-			} catch (SQLException e) {
-				anonymizerLogger.warning("Commit operation concluding table "
-						+ qualifiedTableName + " failed.");
-			}
+	private List<WorkerConnections> openWorkerConnections() {
+		int tableWorkers = options.getTableWorkers();
+		List<WorkerConnections> workerConnections = new ArrayList<>(tableWorkers);
+		try {
+			for (int i = 0; i < tableWorkers; i++)
+				workerConnections.add(WorkerConnections.open(config,
+						options.getLoadGovernor()));
+			return workerConnections;
 		} catch (SQLException e) {
-			anonymizerLogger.severe("Could not query table "
-					+ qualifiedTableName + ": " + e.getMessage());
-		}
-	}
-
-	private void copyAndAnonymizeRows(TableRuleMap tableRuleMap,
-			String qualifiedTableName, ResultSetMetaData rsMeta,
-			int rowCount, ResultSet rs) throws SQLException {
-		// prepared Statement for batch loading
-		int columnCount = rsMeta.getColumnCount();
-		List<String> columnNames = new ArrayList<>();
-		for (int column = 1; column <= columnCount; column++) {
-			columnNames.add(rsMeta.getColumnName(column));
-		}
-		StringBuilder insertQueryBuilder = new StringBuilder();
-		insertQueryBuilder.append("INSERT INTO ")
-		.append(qualifiedTableName)
-		.append(" (")
-		.append(Joiner.on(',').join(columnNames))
-		.append(") VALUES (");
-		for (int j = 0; j < columnCount - 1; j++)
-			insertQueryBuilder.append("?,");
-		insertQueryBuilder.append("?)");
-		
-		ResultSetRowReader rowReader = new ResultSetRowReader(rs);
-		rowReader.setCurrentTable(tableRuleMap.tableName);
-		rowReader.setCurrentSchema(config.schemaName);
-		try (PreparedStatement insertStatement = anonymizedDatabase.prepareStatement(
-				insertQueryBuilder.toString())) {
-			int processedRowsCount = 0;
-			while (!rs.isClosed() && rs.next()) { // for all rows
+			anonymizerLogger.warning("Could not open connections for "
+					+ tableWorkers + " workers, copying tables one after "
+					+ "another instead: " + e.getMessage());
+			for (WorkerConnections connections : workerConnections) {
 				try {
-					copyAndAnonymizeRow(tableRuleMap, qualifiedTableName, rsMeta,
-							columnCount, rowReader, insertStatement);
-				} catch (SQLException e) {
-					anonymizerLogger.severe("SQL error when transforming row #"
-							+ (processedRowsCount + 1) + ": " + e.getMessage());
+					connections.close();
+				} catch (SQLException e1) {
+					// ignore, we are falling back anyway
 				}
-				processedRowsCount++;
-				if ((processedRowsCount % config.batchSize) == 0) {
-					try {
-						BatchOperation.executeAndCommit(insertStatement);
-					} catch (SQLException e) {
-						logBatchInsertError(e);
-					}
+			}
+			return null;
+		}
+	}
+
+	private TablePrefetcher openPrefetcher() {
+		List<Connection> sources = new ArrayList<>(2);
+		Connection transformation = null;
+		try {
+			for (int i = 0; i < 2; i++)
+				sources.add(connectToOriginalDatabase());
+			transformation = DatabaseConnector.connect(config.transformationDB);
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not open connections to prepare "
+					+ "tables in advance, preparing each table when it is "
+					+ "copied instead: " + e.getMessage());
+			for (Connection source : sources) {
+				try {
+					source.close();
+				} catch (SQLException e1) {
+					// ignore, we are falling back anyway
 				}
-				
-				if ((processedRowsCount % LOG_INTERVAL) == 0)
-					System.out.format("Progress: %d/%d (%d %%)\r", processedRowsCount, rowCount, 100 * processedRowsCount / rowCount);
-				
 			}
-			if ((processedRowsCount % LOG_INTERVAL) != 0)
-				System.out.format("Progress: %d/%d (%d %%)\n", processedRowsCount, rowCount, 100 * processedRowsCount / rowCount);
-			else
-				System.out.format("\n");
-			
-			try {
-				BatchOperation.executeAndCommit(insertStatement);
-			} catch (SQLException e) {
-				logBatchInsertError(e);
+			return null;
+		}
+		return new TablePrefetcher(sources, transformation,
+				new TablePrefetcher.Preparer() {
+					@Override
+					public void prepare(TablePrefetcher.PreparedTable table,
+							Connection source) throws SQLException {
+						tableAnonymizer.prepareTableInAdvance(
+								buildTableRuleMapFor(table.table), table, source);
+					}
+				});
+	}
+
+	/**
+	 * Starts preparing the first table after the specified index in the
+	 * scope which has not been finished by a previous run and is not
+	 * skipped as unchanged.
+	 */
+	private void prefetchTableAfter(int tableIndex) {
+		for (int next = tableIndex + 1; next < scope.tables.size(); next++) {
+			String table = scope.tables.get(next);
+			if (!finishedTables.contains(table)
+					&& !unchangedTables.contains(table)) {
+				prefetcher.prefetch(table);
+				return;
 			}
-		} catch (SQLException e) {
-			anonymizerLogger.severe("SQL error while traversing table "
-					+ qualifiedTableName + ": " + e.getMessage());
 		}
 	}
 
-	private void logBatchInsertError(SQLException e) {
-		anonymizerLogger.severe("Error(s) during batch insert: " + e.getMessage());
-		for (Throwable chainedException : Iterables.skip(e, 1)) {
-			anonymizerLogger.severe("Insert error: "
-					+ chainedException.getMessage());
+	private void copyTablesConcurrently(List<WorkerConnections> workerConnections) {
+		TableDependencyGraph graph = TableDependencyGraph.build(scope.tables,
+				foreignKeyDeletions, tablesWithDeletingRules());
+		anonymizerLogger.info("Copying tables with " + workerConnections.size()
+				+ " workers.");
+		TableCopyScheduler scheduler = new TableCopyScheduler(graph,
+				new TableCopyScheduler.TableCopier() {
+					@Override
+					public void copyTable(String table, int tableNumber,
+							WorkerConnections connections) {
+						copyAndAnonymizeTable(table, tableNumber, connections);
+					}
+				});
+		try {
+			scheduler.run(workerConnections);
+		} catch (InterruptedException e) {
+			anonymizerLogger.severe("Interrupted while copying tables, the "
+					+ "following tables have not been copied: "
+					+ graph.getPendingTables());
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	private void copyAndAnonymizeRow(TableRuleMap tableRuleMap,
-			String qualifiedTableName, ResultSetMetaData rsMeta,
-			int columnCount, ResultSetRowReader rowReader,
-			PreparedStatement insertStatement) throws SQLException {
-		boolean retainRow = false;
-		if (foreignKeyDeletions.hasParentRowBeenDeleted(rowReader)) {
-			retainRow = retainService.currentRowShouldBeRetained(
-					config.schemaName, tableRuleMap.tableName, rowReader);
-			if (retainRow) {
-				anonymizerLogger.warning("Retaining a row in "
-						+ qualifiedTableName + " even though its parent row "
-								+ "in another table has been deleted!");
-			} else {
-				// the parent row has been deleted, so delete this row as well
-				// since the foreign key cannot be reestablished and should
-				// possible be kept secret
-				foreignKeyDeletions.rowHasBeenDeleted(rowReader);
-				return;
+	/**
+	 * Returns the tables with a rule whose strategy might drop rows. Rules
+	 * which only replace values, e.g. the ones which a pseudonymized column
+	 * passes on to its dependants, do not delete any rows.
+	 */
+	private Collection<String> tablesWithDeletingRules() {
+		List<String> tablesWithDeletingRules = new ArrayList<>();
+		for (Map.Entry<TableField, Rule> siteAndRule
+				: comprehensiveRulesBySite.entries()) {
+			TransformationStrategy strategy =
+					siteAndRule.getValue().getTransformation();
+			if (strategy == null || strategy.mightDeleteRows())
+				tablesWithDeletingRules.add(siteAndRule.getKey().table);
+		}
+		return tablesWithDeletingRules;
+	}
+
+	private void copyAndAnonymizeTable(String table, int tableNumber,
+			WorkerConnections connections) {
+		if (finishedTables.contains(table)) {
+			anonymizerLogger.info("Skipping " + table + " (table " + tableNumber
+					+ "/" + scope.tables.size() + "), it has been finished by "
+					+ "a previous run.");
+			return;
+		}
+		TableRuleMap ruleMap = buildTableRuleMapFor(table);
+		if (unchangedTables.contains(table)) {
+			anonymizerLogger.info("Skipping " + table + " (table "
+					+ tableNumber + "/" + scope.tables.size() + "), neither "
+					+ "its rows nor its rules have changed since the last run.");
+			return;
+		}
+		String[] fingerprint = tableFingerprints.get(table);
+		if (fingerprint != null)
+			forgetFingerprint(table);
+		anonymizerLogger.info("Copying data from: " + table +
+				" (table " + tableNumber
+				+ "/" + scope.tables.size() + ").");
+		boolean copied = copyAndAnonymizeTable(ruleMap, connections);
+		if (copied && fingerprint != null)
+			storeFingerprint(table, fingerprint[0], fingerprint[1]);
+	}
+
+	/**
+	 * Fingerprints the tables in scope and determines which of them can be
+	 * skipped. A table whose rows or rules have changed must be copied
+	 * together with the tables which depend on the rows deleted from it and
+	 * the tables whose deleted rows it depends on, transitively.
+	 */
+	private void determineUnchangedTables() {
+		tableFingerprints = new ConcurrentHashMap<>();
+		Set<String> changedTables = new HashSet<>();
+		for (String table : scope.tables) {
+			String rulesHash = TableFingerprinter.rulesHash(
+					buildTableRuleMapFor(table).getRules(),
+					config.strategyMapping);
+			String fingerprint = fingerprintTable(table);
+			if (fingerprint == null) {
+				changedTables.add(table);
+				continue;
+			}
+			tableFingerprints.put(table, new String[] { fingerprint, rulesHash });
+			try {
+				if (!fingerprints.matches(table, fingerprint, rulesHash))
+					changedTables.add(table);
+			} catch (SQLException e) {
+				anonymizerLogger.warning("Could not read the fingerprint of "
+						+ table + ", copying it: " + e.getMessage());
+				changedTables.add(table);
 			}
 		}
-		// apply rules which have no column name specified first
-		// because these are likely to be retain or delete instructions
-		for (Rule configRule : tableRuleMap.getRules(null)) {
-			if (Iterables.isEmpty(
-					anonymizeValue(null, configRule, rowReader, null, tableRuleMap))) {
-				if (retainRow
-						|| retainService.currentRowShouldBeRetained(
-								configRule.getTableField().schema,
-								configRule.getTableField().table,
-								rowReader)) {
-					// skip this transformation which deleted the tuple
-					anonymizerLogger.info(
-							"Not deleting a row in "
-									+ qualifiedTableName + " because it "
-									+ "was previously marked to be "
-									+ "retained.");
-					retainRow = true;
-					continue;
+		Multimap<String, String> deletingParents = HashMultimap.create();
+		Multimap<String, String> children = HashMultimap.create();
+		for (String table : scope.tables) {
+			for (String parent : foreignKeyDeletions.parentTablesOf(table)) {
+				if (scope.tables.contains(parent)
+						&& rowDeletingTables.contains(parent)) {
+					deletingParents.put(table, parent);
+					children.put(parent, table);
 				}
-				foreignKeyDeletions.rowHasBeenDeleted(rowReader);
-				return;
 			}
 		}
-		// apply rules to specific columns
-		List<Iterable<?>> columnValues = new ArrayList<>(columnCount);
-		for (int j = 1; j <= columnCount; j++) { // for all columns
-			String columnName = rsMeta.getColumnName(j);
-			ImmutableList<Rule> appliedRules = tableRuleMap.getRules(columnName); // check if column needs translation
-			if (!appliedRules.isEmpty()) {
-				// fetch translations
-				Iterable<?> currentValues = Lists.newArrayList(rowReader.getObject(j));
-				for (Rule configRule : appliedRules) {
-					Iterable<Object> newValues = Collections.emptyList();
-					for (Object intermediateValue : currentValues) {
-						Iterable<?> transformationResults = anonymizeValue(
-								intermediateValue, configRule, rowReader, columnName,
-								tableRuleMap);
-						newValues = Iterables.concat(newValues,
-								transformationResults);
-					}
-					if (!newValues.iterator().hasNext()) {
-						if (retainRow
-								|| retainService.currentRowShouldBeRetained(
-										configRule.getTableField().schema,
-										configRule.getTableField().table,
-										rowReader)) {
-							// skip this transformation which deleted the tuple
-							anonymizerLogger.info(
-									"Not deleting a row in "
-											+ qualifiedTableName + " because it "
-											+ "was previously marked to be "
-											+ "retained.");
-							retainRow = true;
-							continue;
-						}
-						// if a Strategy returned an empty transformation, the
-						// cross product of all column values will be empty,
-						// the original tuple is lost
-						foreignKeyDeletions.rowHasBeenDeleted(rowReader);
-						return;
-					}
-					currentValues = newValues;
-				}
-				columnValues.add(currentValues);
-			} else {
-				// if column doesn't have to be anonymized, take old value
-				columnValues.add(Lists.newArrayList(rowReader.getObject(j)));
+		Set<String> tablesToCopy = new HashSet<>(changedTables);
+		tablesToCopy.addAll(reachableTables(changedTables, deletingParents));
+		tablesToCopy.addAll(reachableTables(changedTables, children));
+		unchangedTables = new HashSet<>(scope.tables);
+		unchangedTables.removeAll(tablesToCopy);
+		anonymizerLogger.info(unchangedTables.size() + " tables have not "
+				+ "changed since the last run: " + unchangedTables);
+	}
+
+	private static Set<String> reachableTables(Collection<String> start,
+			Multimap<String, String> edges) {
+		Set<String> reached = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>(start);
+		while (!pending.isEmpty()) {
+			for (String next : edges.get(pending.pop())) {
+				if (reached.add(next))
+					pending.push(next);
 			}
 		}
+		return reached;
+	}
+
+	/**
+	 * @return the fingerprint or null if the table cannot be fingerprinted
+	 */
+	private String fingerprintTable(String table) {
 		try {
-			addBatchInserts(insertStatement, columnValues);
+			return new TableFingerprinter(originalDatabase, config.schemaName,
+					options.getMaxFingerprintedRows()).fingerprint(table,
+							foreignKeyDeletions.getPrimaryKey(table),
+							scope.getWatermarkColumn(table));
 		} catch (SQLException e) {
-			anonymizerLogger.severe("Adding insert statement failed: "
-					+ e.getMessage());
-			e.printStackTrace();
+			anonymizerLogger.warning("Could not compute the fingerprint of "
+					+ table + ", copying it: " + e.getMessage());
+			return null;
 		}
 	}
 
 	/**
-	 * Compute the cross product of columnValues and add them to
-	 * anonymizedDatabaseStatement with {@link PreparedStatement.addBatch}.
-	 * @param anonymizedDatabaseStatement
-	 * @param columnValues
-	 * @throws SQLException if calls to anonymizedDatabaseStatement fail
+	 * Removes the fingerprint of a table before it is copied, so that an
+	 * interrupted copy is not skipped by the next run.
 	 */
-	private void addBatchInserts(PreparedStatement anonymizedDatabaseStatement,
-			List<Iterable<?>> columnValues) throws SQLException {
-		addBatchInserts(anonymizedDatabaseStatement, columnValues, 1);
+	private void forgetFingerprint(String table) {
+		try {
+			fingerprints.remove(table);
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not remove the fingerprint of "
+					+ table + ", it is not stored again: " + e.getMessage());
+			tableFingerprints.remove(table);
+		}
 	}
 
-	private void addBatchInserts(PreparedStatement anonymizedDatabaseStatement,
-			List<Iterable<?>> columnValues, int columnIndex) throws SQLException {
-		if (columnIndex > columnValues.size()) {
-			anonymizedDatabaseStatement.addBatch();
-		} else {
-			for (Object columnValue : columnValues.get(columnIndex - 1)) {
-				anonymizedDatabaseStatement.setObject(columnIndex, columnValue);
-				addBatchInserts(anonymizedDatabaseStatement, columnValues,
-						columnIndex + 1);
-			}
-		}
-	}
-
-	private Iterable<?> anonymizeValue(Object currentValue,
-			Rule configRule, ResultSetRowReader rowReader, String columnName,
-			TableRuleMap tableRules) {
-		TransformationStrategy strategy;
-		strategy = configRule.getTransformation();
-		try {
-			return strategy.transform(currentValue, configRule, rowReader);
-		} catch (TransformationKeyNotFoundException e) {
-			anonymizerLogger.log(Level.SEVERE,
-					"Transformation value for \"" +
-							currentValue + "\" (from table " +
-					tableRules.tableName + "." + columnName +
-					") was not found in keys for " +
-					configRule.getTableField() +
-					". Used empty String instead.",
-					e);
-		} catch (SQLException e) {
-			anonymizerLogger.severe("SQL error while transforming value \""
-					+ currentValue + "\" (from table " +
-					tableRules.tableName + "." + columnName +
-					") : " + e.getMessage() + ". Using empty String instead.");
-		} catch (TransformationFailedException e) {
-			anonymizerLogger.severe(e.getMessage());
-			Throwable t = e;
-			while ((t = t.getCause()) != null) {
-				anonymizerLogger.severe("caused by: " + t.getMessage());
-			}
-		}
-		return Lists.newArrayList("");
-	}
-
-	private int countRowsInTable(String qualifiedTableName) {
-		int rowCount = -1;
-		try (Statement countStatement = originalDatabase.createStatement();
-				ResultSet countResult = countStatement.executeQuery(
-						"SELECT COUNT(*) FROM " + qualifiedTableName)) {
-			countResult.next();
-			rowCount = countResult.getInt(1);
+	private void storeFingerprint(String table, String fingerprint,
+			String rulesHash) {
+		try {
+			fingerprints.put(table, fingerprint, rulesHash);
 		} catch (SQLException e) {
-			anonymizerLogger.info("Could not retrieve row count for table "
-					+ qualifiedTableName + " (error message follows), "
-					+ "progress report will be awkward.");
-			anonymizerLogger.warning(e.getMessage());
+			anonymizerLogger.warning("Could not store the fingerprint of "
+					+ table + ", the next run will copy it: " + e.getMessage());
+		}
+	}
+
+	private TableRuleMap buildTableRuleMapFor(String table) {
+		TableField tableSite = new TableField(table, null, config.schemaName);
+		TableRuleMap ruleMap = tableRuleMaps.get(tableSite);
+		return ruleMap != null ? ruleMap : new TableRuleMap(table);
+	}
+
+	/**
+	 * Creates a multimap which maps applied strategies to a TableField
+	 * (table or attribtue) in the correct order of application.
+	 */
+	void collectRulesBySite() {
+		RuleConnector ruleConnector = new RuleConnector();
+		ruleConnector.addRules(config.getRules());
+		Multimap<TableField, Rule> rulesBySite = ruleConnector.getRulesBySite();
+		comprehensiveRulesBySite = LinkedHashMultimap.create();
+		for (Map.Entry<TableField, Rule> siteAndRule : rulesBySite.entries()) {
+			TableField thisSite = siteAndRule.getKey();
+			ArrayList<Rule> rulesToApplyToThisSite = new ArrayList<>();
+			Rule rule = siteAndRule.getValue();
+			rulesToApplyToThisSite.addAll(rule.transitiveParents());
+			rulesToApplyToThisSite.add(rule);
+			comprehensiveRulesBySite.putAll(thisSite, rulesToApplyToThisSite);
 		}
-		return rowCount;
+		
+		Iterator<Rule> rulesIterator = comprehensiveRulesBySite.values().iterator();
+		while (rulesIterator.hasNext()) {
+			Rule eachRule = rulesIterator.next();
+			if (eachRule.getTransformation() == null) {
+				eachRule.setTransformation(strategyByName.get(eachRule.getStrategy()));
+			}
+			if (eachRule.getTransformation() instanceof NoOperationStrategy) {
+				rulesIterator.remove();
+			}
+		}
+
+		// group the rules by table once instead of scanning them per table
+		Map<TableField, TableRuleMap> ruleMaps = new HashMap<>();
+		for (Map.Entry<TableField, Rule> fieldAndRule : comprehensiveRulesBySite.entries()) {
+			TableField tableField = fieldAndRule.getKey();
+			TableField tableSite = tableField.asTableSite();
+			TableRuleMap ruleMap = ruleMaps.get(tableSite);
+			if (ruleMap == null) {
+				ruleMap = new TableRuleMap(tableSite.table);
+				ruleMaps.put(tableSite, ruleMap);
+			}
+			ruleMap.put(tableField.getColumn(), fieldAndRule.getValue());
+		}
+		tableRuleMaps = ruleMaps;
 	}
 
-	private void truncateTable(String qualifiedTableName) {
-		TableTruncater.truncateTable(qualifiedTableName, anonymizedDatabase);
+	/**
+	 * Creates the table copy of this run with the stores which have been
+	 * opened for it.
+	 */
+	private TableAnonymizer createTableAnonymizer() {
+		TableAnonymizer tables = new TableAnonymizer(config, scope, options,
+				transformationStrategies, foreignKeyDeletions, retainService,
+				progressEvents);
+		tables.journal = journal;
+		tables.checkpoints = checkpoints;
+		tables.watermarks = watermarks;
+		tables.batchSettings = batchSettings;
+		tables.quarantine = quarantine;
+		tables.rowDeletingTables = rowDeletingTables;
+		tables.rowCounter = rowCounter;
+		return tables;
+	}
+
+	private boolean copyAndAnonymizeTable(TableRuleMap tableRuleMap,
+			WorkerConnections connections) {
+		TablePrefetcher.PreparedTable prefetched = prefetcher != null
+				? prefetcher.take(tableRuleMap.tableName) : null;
+		try {
+			return tableAnonymizer.copyAndAnonymizeTable(tableRuleMap,
+					connections, prefetched);
+		} finally {
+			if (prefetched != null)
+				prefetched.close();
+		}
 	}
 
 	private void prepareTransformations() throws FetchPseudonymsFailedException,
@@ -840,6 +1597,35 @@ public class Anonymizer {
 					+ "transformation database, this might cause the creation "
 					+ "of pseudonym tables or others to fail.");
 		}
+		openProgressJournal();
+		openWatermarkStore();
+		openBatchSettingsStore();
+		openFingerprintStore();
+		quarantine = new QuarantineStore(transformationDB, config.schemaName);
+		if (options.isCoordinator())
+			clearWorkQueue();
+		Set<Rule> rulesOfTablesToCopy = null;
+		if (!finishedTables.isEmpty()) {
+			collectRulesBySite();
+			rulesOfTablesToCopy = new HashSet<>();
+			for (Map.Entry<TableField, Rule> siteAndRule : comprehensiveRulesBySite.entries()) {
+				if (!finishedTables.contains(siteAndRule.getKey().table))
+					rulesOfTablesToCopy.add(siteAndRule.getValue());
+			}
+		}
+		setUpStrategies(rulesOfTablesToCopy);
+		anonymizerLogger.info("Finished: setting up transformations.");
+	}
+
+	/**
+	 * @param rulesOfTablesToCopy the rules to be set up or null for all
+	 * 			rules of tables in scope
+	 */
+	private void setUpStrategies(Set<Rule> rulesOfTablesToCopy)
+			throws FetchPseudonymsFailedException,
+			TransformationKeyCreationException,
+			TransformationTableCreationException,
+			ColumnTypeNotSupportedException, PreparationFailedException {
 		Multimap<TransformationStrategy, Rule> rulesByStrategy = ArrayListMultimap.create();
 		for (Rule rule : config.rules) {
 			if (!scope.tables.contains(rule.getTableField().table)) {
@@ -847,6 +1633,8 @@ public class Anonymizer {
 						+ " not in scope. Skipping dependants and continuing.");
 				continue;
 			}
+			if (rulesOfTablesToCopy != null && !rulesOfTablesToCopy.contains(rule))
+				continue; // only needed for tables finished by a previous run
 			rulesByStrategy.put(rule.getTransformation(), rule);
             for (TableField dependant : rule.getDependants()) {
 				if (!scope.tables.contains(dependant.table)){
@@ -858,9 +1646,138 @@ public class Anonymizer {
 		}
 		for (TransformationStrategy strategy : rulesByStrategy.keySet()) {
 			anonymizerLogger.info("Setting up transformations for " + strategy.getClass().getSimpleName());
+			long started = System.nanoTime();
 			strategy.setUpTransformation(rulesByStrategy.get(strategy));
+			progressEvents.publish(ProgressEvent.strategySetUp(
+					config.schemaName, strategy.getClass().getSimpleName(),
+					rulesByStrategy.get(strategy).size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
 		}
-		anonymizerLogger.info("Finished: setting up transformations.");
+	}
+
+	/**
+	 * Removes the work units of the previous run before the transformations
+	 * are set up, so that workers wait until the coordinator has set them up.
+	 */
+	private void clearWorkQueue() {
+		WorkQueue queue = new WorkQueue(transformationDB, config.schemaName);
+		try {
+			queue.createIfNotExists();
+			queue.clear();
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not clear the work queue, workers "
+					+ "might copy the tables of the previous run: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the progress journal in the transformation database. When
+	 * resuming, the progress of the previous run is loaded, otherwise it is
+	 * discarded. Runs continue without a journal if it cannot be set up.
+	 */
+	private void openProgressJournal() {
+		journal = new ProgressJournal(transformationDB, config.schemaName);
+		try {
+			journal.createIfNotExists();
+			if (options.isResume()) {
+				checkpoints = journal.load();
+				finishedTables = determineFinishedTables();
+				anonymizerLogger.info("Resuming a previous run, "
+						+ finishedTables.size() + " tables have been finished.");
+			} else {
+				journal.clear();
+			}
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not set up the progress journal, "
+					+ "this run cannot be resumed: " + e.getMessage());
+			journal = null;
+			checkpoints = Collections.emptyMap();
+			finishedTables = Collections.emptySet();
+		}
+	}
+
+	/**
+	 * Creates the store for the high-water marks of the watermark columns in
+	 * the transformation database if the scope declares watermark columns.
+	 */
+	private void openWatermarkStore() {
+		watermarks = null;
+		if (scope.watermarkColumns.isEmpty())
+			return;
+		WatermarkStore store = new WatermarkStore(transformationDB,
+				config.schemaName);
+		try {
+			store.createIfNotExists();
+			watermarks = store;
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not set up the store for the "
+					+ "high-water marks, all tables will be copied completely: "
+					+ e.getMessage());
+		}
+	}
+
+	private void openFingerprintStore() {
+		fingerprints = null;
+		if (!options.isSkipUnchangedTables())
+			return;
+		FingerprintStore store = new FingerprintStore(transformationDB,
+				config.schemaName);
+		try {
+			store.createIfNotExists();
+			fingerprints = store;
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not set up the store for the "
+					+ "fingerprints, all tables will be copied: "
+					+ e.getMessage());
+		}
+	}
+
+	private void openBatchSettingsStore() {
+		batchSettings = null;
+		if (!options.isAdaptiveBatching())
+			return;
+		BatchSettingsStore store = new BatchSettingsStore(transformationDB,
+				config.schemaName);
+		try {
+			store.createIfNotExists();
+			batchSettings = store;
+		} catch (SQLException e) {
+			anonymizerLogger.warning("Could not set up the store for the batch "
+					+ "settings, every table starts with the configured batch "
+					+ "size: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Determines the tables which have been finished by the previous run and
+	 * need not be copied again. A finished table must be copied again if a
+	 * table depending on it is not finished, because the rows deleted from
+	 * it are needed to copy the dependant.
+	 */
+	private Set<String> determineFinishedTables() {
+		Set<String> finished = new HashSet<>();
+		for (String table : scope.tables) {
+			ProgressJournal.TableCheckpoint checkpoint = checkpoints.get(table);
+			if (checkpoint != null && checkpoint.isFinished())
+				finished.add(table);
+		}
+		boolean changed;
+		do {
+			changed = false;
+			Iterator<String> finishedIterator = finished.iterator();
+			while (finishedIterator.hasNext()) {
+				String table = finishedIterator.next();
+				for (String child : foreignKeyDeletions.childTablesOf(table)) {
+					if (!finished.contains(child) && !child.equals(table)) {
+						finishedIterator.remove();
+						changed = true;
+						break;
+					}
+				}
+			}
+		} while (changed);
+		return finished;
 	}
 
 	private void createSchemaInTransformataionDatabase() throws SQLException {
@@ -0,0 +1,479 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The options which control how an {@link Anonymizer} copies the tables,
+ * apart from its configuration, scope and connections. Several Anonymizers,
+ * e.g. those of a {@link MultiSchemaRun}, can use copies of the same
+ * options. The load governor, the memory budget and the pseudonym key are
+ * shared by the copies.
+ */
+public class AnonymizerOptions implements Cloneable {
+
+	private boolean skipRuleValidation;
+	private int tableWorkers = 1;
+	private int tableLanes = 1;
+	private int minimumRowsPerLane = 100000;
+	private int pipelineQueueCapacity = 0;
+	private boolean resume;
+	private boolean incremental;
+	private boolean adaptiveBatching;
+	private int minBatchSize = 10;
+	private int maxBatchSize = 50000;
+	private int maxCommitInterval = 500000;
+	private long maxBatchLatencyMillis = 2000;
+	private int maxFanOut = 0;
+	private boolean prefetch;
+	private boolean exactRowCounts;
+	/** executes suitable tables in the destination database, null if disabled */
+	private PushdownPlanner pushdown;
+	/** distributes the tables among worker processes, see setCoordinator */
+	private boolean coordinator;
+	private long leaseMillis = TimeUnit.MINUTES.toMillis(5);
+	private long workPollMillis = 1000;
+	/** limits the load on the original database, null if unlimited */
+	private SourceLoadGovernor loadGovernor;
+	private boolean skipUnchangedTables;
+	private long maxFingerprintedRows = 100000;
+	/** limits the heap of caches, null if unlimited */
+	private MemoryBudget memoryBudget;
+	private boolean offHeapPseudonyms;
+	/** where pseudonyms tables are exported to, null to cache on the heap */
+	private File pseudonymDictionaryDirectory;
+	/** pseudonyms cached per rule, 0 to load whole pseudonyms tables */
+	private int pseudonymCacheSize;
+	/** derives pseudonyms from a key, null if they are stored in tables */
+	private KeyedPseudonymizer keyedPseudonymizer;
+
+	/**
+	 * @return options with the same values which can be changed
+	 * 			independently of these
+	 */
+	public AnonymizerOptions copy() {
+		try {
+			return (AnonymizerOptions) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	public boolean isSkipRuleValidation() {
+		return skipRuleValidation;
+	}
+
+	/**
+	 * Lets the run start without checking whether the rules fit the columns.
+	 */
+	public void setSkipRuleValidation(boolean skipRuleValidation) {
+		this.skipRuleValidation = skipRuleValidation;
+	}
+
+	public int getTableWorkers() {
+		return tableWorkers;
+	}
+
+	/**
+	 * Sets the number of tables which are copied concurrently. Each worker
+	 * opens its own connections to the original, destination and
+	 * transformation database, the strategies use those of the worker which
+	 * calls them.
+	 */
+	public void setTableWorkers(int tableWorkers) {
+		checkArgument(tableWorkers > 0, "At least one worker is required");
+		this.tableWorkers = tableWorkers;
+	}
+
+	public int getTableLanes() {
+		return tableLanes;
+	}
+
+	/**
+	 * Sets the number of lanes which copy disjoint primary key ranges of a
+	 * single large table concurrently. Each additional lane opens its own
+	 * connections to the original, destination and transformation database.
+	 */
+	public void setTableLanes(int tableLanes) {
+		checkArgument(tableLanes > 0, "At least one lane is required");
+		this.tableLanes = tableLanes;
+	}
+
+	public int getMinimumRowsPerLane() {
+		return minimumRowsPerLane;
+	}
+
+	/**
+	 * Tables are only split into lanes if every lane gets at least this many
+	 * rows, otherwise opening the extra connections does not pay off.
+	 */
+	public void setMinimumRowsPerLane(int minimumRowsPerLane) {
+		checkArgument(minimumRowsPerLane > 0,
+				"The minimum number of rows per lane must be positive");
+		this.minimumRowsPerLane = minimumRowsPerLane;
+	}
+
+	public int getPipelineQueueCapacity() {
+		return pipelineQueueCapacity;
+	}
+
+	/**
+	 * Enables copying the rows of a table in separate fetch, transform and
+	 * write stages which are connected by queues of the specified capacity.
+	 * A capacity of 0 disables the pipeline, then each row is read,
+	 * transformed and written one after another.
+	 */
+	public void setPipelineQueueCapacity(int pipelineQueueCapacity) {
+		checkArgument(pipelineQueueCapacity >= 0,
+				"The queue capacity must not be negative");
+		this.pipelineQueueCapacity = pipelineQueueCapacity;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	/**
+	 * Makes the run continue where a previous run has stopped according to
+	 * the progress journal in the transformation database. Finished tables
+	 * are skipped, other tables are continued after the last committed
+	 * primary key if possible or copied again.
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Makes the run copy only the rows of tables with a watermark column in
+	 * the scope whose watermark is at least the high-water mark stored by
+	 * the previous run. These rows replace the rows with the same primary key
+	 * in the destination table, which is not truncated. The rows at the mark
+	 * are copied again, because rows with the same watermark may have been
+	 * committed after the mark was taken.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isAdaptiveBatching() {
+		return adaptiveBatching;
+	}
+
+	/**
+	 * Makes each table adapt the batch size and the commit interval to the
+	 * measured insert throughput and commit overhead, starting from the values
+	 * chosen for the table in the previous run or the configured batch size.
+	 */
+	public void setAdaptiveBatching(boolean adaptiveBatching) {
+		this.adaptiveBatching = adaptiveBatching;
+	}
+
+	/**
+	 * Sets the bounds of adaptive batch sizes and commit intervals.
+	 *
+	 * @param maxBatchLatencyMillis batches taking longer are made smaller
+	 */
+	public void setBatchBounds(int minBatchSize, int maxBatchSize,
+			int maxCommitInterval, long maxBatchLatencyMillis) {
+		checkArgument(0 < minBatchSize && minBatchSize <= maxBatchSize,
+				"Invalid batch size bounds");
+		checkArgument(maxBatchSize <= maxCommitInterval,
+				"The commit interval must allow the largest batches");
+		checkArgument(maxBatchLatencyMillis > 0,
+				"The batch latency limit must be positive");
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.maxCommitInterval = maxCommitInterval;
+		this.maxBatchLatencyMillis = maxBatchLatencyMillis;
+	}
+
+	public int getMinBatchSize() {
+		return minBatchSize;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public int getMaxCommitInterval() {
+		return maxCommitInterval;
+	}
+
+	public long getMaxBatchLatencyMillis() {
+		return maxBatchLatencyMillis;
+	}
+
+	public int getMaxFanOut() {
+		return maxFanOut;
+	}
+
+	/**
+	 * Limits the number of destination rows per source row if strategies
+	 * return several values for its columns. The cross product of the values
+	 * is cut off at the limit. 0 means no limit.
+	 */
+	public void setMaxFanOut(int maxFanOut) {
+		checkArgument(maxFanOut >= 0, "The fan-out limit must not be negative");
+		this.maxFanOut = maxFanOut;
+	}
+
+	public boolean isPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Makes the run prepare the next table on background connections while
+	 * the current table is copied: its rows are counted, its strategies
+	 * prepared and its cursor opened. Only applies if the tables are copied
+	 * one after another, i.e. with a single table worker.
+	 */
+	public void setPrefetch(boolean prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	public boolean isExactRowCounts() {
+		return exactRowCounts;
+	}
+
+	/**
+	 * Makes the run count the rows of each table before copying it, as the
+	 * basis of the progress report. By default the number of rows is
+	 * estimated from the statistics of the database, or counted in the
+	 * background while the table is copied if there are no statistics.
+	 */
+	public void setExactRowCounts(boolean exactRowCounts) {
+		this.exactRowCounts = exactRowCounts;
+	}
+
+	PushdownPlanner getPushdown() {
+		return pushdown;
+	}
+
+	/**
+	 * Lets the destination database copy tables whose rules only set default
+	 * values or pseudonymize columns with a single INSERT ... SELECT
+	 * statement, instead of transferring their rows through the Anonymizer.
+	 * The destination database must be able to read the original tables and
+	 * the pseudonym tables under the given schemas, e.g. as linked tables.
+	 * Tables whose statement fails are copied row by row.
+	 *
+	 * @param sourceSchema schema under which the destination database sees
+	 * 			the original tables, null disables the pushdown
+	 * @param pseudonymsSchema schema under which the destination database
+	 * 			sees the pseudonym tables
+	 */
+	public void setPushdownSchemas(String sourceSchema, String pseudonymsSchema) {
+		if (sourceSchema == null) {
+			pushdown = null;
+			return;
+		}
+		checkNotNull(pseudonymsSchema, "The schema of the pseudonym tables is missing");
+		pushdown = new PushdownPlanner(sourceSchema, pseudonymsSchema);
+	}
+
+	public boolean isCoordinator() {
+		return coordinator;
+	}
+
+	/**
+	 * Makes the run distribute the tables among worker processes, possibly
+	 * on other hosts, through a work queue in the transformation database.
+	 * Large tables are split into as many primary key ranges as there are
+	 * lanes. The coordinator copies work units as well and waits until all
+	 * units have been finished. Tables whose rows might be deleted are
+	 * copied by the coordinator alone afterwards, because the deleted rows
+	 * must be known in memory to copy their dependants. Delta copies,
+	 * resuming and the pushdown do not apply to the distributed tables.
+	 *
+	 * @see Anonymizer#work()
+	 */
+	public void setCoordinator(boolean coordinator) {
+		this.coordinator = coordinator;
+	}
+
+	public long getLeaseMillis() {
+		return leaseMillis;
+	}
+
+	/**
+	 * Sets how long a worker may hold a work unit without renewing its lease
+	 * before other workers may claim the unit again. Workers renew their
+	 * leases three times per lease duration while they copy a unit.
+	 */
+	public void setLeaseMillis(long leaseMillis) {
+		checkArgument(leaseMillis >= 3, "The lease must be at least 3 ms");
+		this.leaseMillis = leaseMillis;
+	}
+
+	long getWorkPollMillis() {
+		return workPollMillis;
+	}
+
+	/**
+	 * Sets how long a worker waits before it looks for work units again if
+	 * all remaining units are claimed by other workers.
+	 */
+	void setWorkPollMillis(long workPollMillis) {
+		this.workPollMillis = workPollMillis;
+	}
+
+	public SourceLoadGovernor getLoadGovernor() {
+		return loadGovernor;
+	}
+
+	/**
+	 * Makes all connections to the original database, including those of
+	 * the strategies, workers and lanes, subject to the limits of the
+	 * governor. Several Anonymizers may share a governor. Must be set before
+	 * the Anonymizer is connected.
+	 *
+	 * @param loadGovernor the governor or null to remove the limits
+	 */
+	public void setLoadGovernor(SourceLoadGovernor loadGovernor) {
+		this.loadGovernor = loadGovernor;
+	}
+
+	public boolean isSkipUnchangedTables() {
+		return skipUnchangedTables;
+	}
+
+	/**
+	 * Makes the run skip the tables whose rows and rules have not changed
+	 * since the last run, instead of truncating and copying them again.
+	 * Whether the rows have changed is determined from a fingerprint of the
+	 * table, which is cheap for tables with a watermark column in the scope
+	 * file. Tables without one are only fingerprinted up to
+	 * {@link #setMaxFingerprintedRows(long)} rows. Changes to the destination
+	 * tables are not detected.
+	 */
+	public void setSkipUnchangedTables(boolean skipUnchangedTables) {
+		this.skipUnchangedTables = skipUnchangedTables;
+	}
+
+	public long getMaxFingerprintedRows() {
+		return maxFingerprintedRows;
+	}
+
+	/**
+	 * Sets the number of rows up to which tables without a watermark column
+	 * are read completely to compute their fingerprint.
+	 */
+	public void setMaxFingerprintedRows(long maxFingerprintedRows) {
+		checkArgument(maxFingerprintedRows >= 0,
+				"The number of rows must not be negative");
+		this.maxFingerprintedRows = maxFingerprintedRows;
+	}
+
+	public MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Limits the heap used by the pseudonym caches, character mappings,
+	 * value distributions and keys of deleted rows. Beyond the budget they
+	 * spill to temporary files. The budget may be shared by several
+	 * Anonymizers. Must be set before the transformations are prepared.
+	 * 
+	 * @param memoryBudget the budget or null to keep everything on the heap
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public boolean isOffHeapPseudonyms() {
+		return offHeapPseudonyms;
+	}
+
+	/**
+	 * Keeps the cached pseudonyms of integer columns in direct buffers
+	 * outside of the heap, so columns with hundreds of millions of distinct
+	 * values do not need a larger heap. Must be set before the
+	 * transformations are prepared.
+	 */
+	public void setOffHeapPseudonyms(boolean offHeapPseudonyms) {
+		this.offHeapPseudonyms = offHeapPseudonyms;
+	}
+
+	public File getPseudonymDictionaryDirectory() {
+		return pseudonymDictionaryDirectory;
+	}
+
+	/**
+	 * Exports each pseudonyms table once per run into a dictionary file in
+	 * the directory, which is memory-mapped for the lookups instead of
+	 * loading the pseudonyms onto the heap. Must be set before the
+	 * transformations are prepared.
+	 * 
+	 * @param directory an existing directory, or null to cache the
+	 * 			pseudonyms on the heap
+	 */
+	public void setPseudonymDictionaryDirectory(File directory) {
+		checkArgument(directory == null || directory.isDirectory(),
+				"%s is not a directory", directory);
+		this.pseudonymDictionaryDirectory = directory;
+	}
+
+	public int getPseudonymCacheSize() {
+		return pseudonymCacheSize;
+	}
+
+	/**
+	 * Keeps only the given number of recently used pseudonyms per rule on
+	 * the heap instead of loading whole pseudonyms tables. The pseudonyms of
+	 * the values of up to {@link RowPipeline#MAX_PREPARED_ROWS} rows are
+	 * looked up in one batch before the rows are transformed.
+	 * 
+	 * @param pseudonymCacheSize pseudonyms per rule, 0 to load whole tables
+	 */
+	public void setPseudonymCacheSize(int pseudonymCacheSize) {
+		checkArgument(pseudonymCacheSize >= 0,
+				"The pseudonym cache size must not be negative");
+		this.pseudonymCacheSize = pseudonymCacheSize;
+	}
+
+	KeyedPseudonymizer getKeyedPseudonymizer() {
+		return keyedPseudonymizer;
+	}
+
+	/**
+	 * Lets the {@link PseudonymizeStrategy} derive pseudonyms from the key
+	 * with format-preserving encryption, instead of generating random
+	 * pseudonyms and storing them in pseudonyms tables. The same key yields
+	 * the same pseudonyms in every run, so it must be kept secret.
+	 * 
+	 * @param secret the key material or null to use pseudonyms tables
+	 */
+	public void setPseudonymKey(byte[] secret) {
+		keyedPseudonymizer = secret == null ? null
+				: new KeyedPseudonymizer(secret);
+	}
+}
@@ -0,0 +1,90 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Counts the rows of tables whose size the database cannot estimate on a
+ * background thread with its own connection, so that the copy does not wait
+ * for a full scan. The progress of a table is refined when its count is
+ * known.
+ */
+class BackgroundRowCounter implements AutoCloseable {
+
+	static Logger logger = Logger.getLogger(BackgroundRowCounter.class.getName());
+
+	private final Connection source;
+	private final ExecutorService executor;
+
+	/**
+	 * @param source a connection to the original database which is owned
+	 * 			and closed by the counter
+	 */
+	BackgroundRowCounter(Connection source) {
+		this.source = source;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "row-counter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	void count(final String qualifiedTableName, final TableProgress progress) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try (PreparedStatement countStatement = source.prepareStatement(
+						"SELECT COUNT(*) FROM " + qualifiedTableName);
+						ResultSet countResult = countStatement.executeQuery()) {
+					countResult.next();
+					progress.rowCountDetermined(countResult.getInt(1));
+				} catch (SQLException e) {
+					logger.info("Could not count the rows of "
+							+ qualifiedTableName + " in the background: "
+							+ e.getMessage());
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		try {
+			source.close();
+		} catch (SQLException e) {
+			logger.warning("Could not close the row counting connection: "
+					+ e.getMessage());
+		}
+	}
+}
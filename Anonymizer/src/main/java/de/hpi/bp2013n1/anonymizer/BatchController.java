@@ -0,0 +1,73 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Decides how many rows an {@link InsertBatchWriter} collects per JDBC batch
+ * and after how many rows it commits. This implementation uses fixed values,
+ * subclasses may adapt them to the measured timings. Lanes copying the same
+ * table share one controller, so the methods are synchronized.
+ */
+class BatchController {
+
+	protected int batchSize;
+	protected int commitInterval;
+
+	/**
+	 * @param commitInterval number of rows after which the writer commits,
+	 * 			is raised to the batch size if it is smaller
+	 */
+	BatchController(int batchSize, int commitInterval) {
+		this.batchSize = Math.max(1, batchSize);
+		this.commitInterval = Math.max(this.batchSize, commitInterval);
+	}
+
+	synchronized int getBatchSize() {
+		return batchSize;
+	}
+
+	synchronized int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Called after a batch has been executed.
+	 *
+	 * @param rows number of rows in the batch
+	 * @param nanos time it took to execute the batch
+	 */
+	synchronized void batchExecuted(int rows, long nanos) {
+	}
+
+	/**
+	 * Called after the writer has committed.
+	 *
+	 * @param nanos time it took to commit
+	 */
+	synchronized void committed(long nanos) {
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "batch size " + batchSize + ", commit interval " + commitInterval;
+	}
+}
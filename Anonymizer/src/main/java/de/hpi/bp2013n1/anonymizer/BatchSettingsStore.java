@@ -0,0 +1,107 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Stores the batch size and commit interval chosen for each table in the
+ * transformation database, so that the next run starts from them.
+ */
+public class BatchSettingsStore {
+
+	static final String SETTINGS_TABLE = "ANONYMIZER_BATCH_SETTINGS";
+
+	/**
+	 * Batch size and commit interval of a table.
+	 */
+	static class BatchSettings {
+		final int batchSize;
+		final int commitInterval;
+
+		BatchSettings(int batchSize, int commitInterval) {
+			this.batchSize = batchSize;
+			this.commitInterval = commitInterval;
+		}
+	}
+
+	private final Connection database;
+	private final String qualifiedStoreName;
+	private final String schema;
+
+	public BatchSettingsStore(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedStoreName = schema + "." + SETTINGS_TABLE;
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		SQLHelper.createTableIfNotExists(database, schema, SETTINGS_TABLE,
+				"TABLE_NAME VARCHAR(128) NOT NULL, "
+					+ "BATCH_SIZE INT NOT NULL, COMMIT_INTERVAL INT NOT NULL, "
+					+ "PRIMARY KEY (TABLE_NAME)");
+	}
+
+	/**
+	 * @return the settings recorded for the table or null
+	 */
+	synchronized BatchSettings get(String table) throws SQLException {
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT BATCH_SIZE, COMMIT_INTERVAL FROM " + qualifiedStoreName
+				+ " WHERE TABLE_NAME = ?")) {
+			select.setString(1, table);
+			try (ResultSet settings = select.executeQuery()) {
+				if (!settings.next())
+					return null;
+				return new BatchSettings(settings.getInt(1), settings.getInt(2));
+			}
+		}
+	}
+
+	synchronized void put(String table, int batchSize, int commitInterval)
+			throws SQLException {
+		try (PreparedStatement delete = database.prepareStatement(
+				"DELETE FROM " + qualifiedStoreName + " WHERE TABLE_NAME = ?")) {
+			delete.setString(1, table);
+			delete.executeUpdate();
+		}
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT INTO " + qualifiedStoreName + " (TABLE_NAME, "
+						+ "BATCH_SIZE, COMMIT_INTERVAL) VALUES (?, ?, ?)")) {
+			insert.setString(1, table);
+			insert.setInt(2, batchSize);
+			insert.setInt(3, commitInterval);
+			insert.executeUpdate();
+		}
+		commit();
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
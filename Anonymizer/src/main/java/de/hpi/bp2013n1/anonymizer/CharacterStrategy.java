@@ -30,10 +30,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 import de.hpi.bp2013n1.anonymizer.PseudonymizeStrategy.PseudonymsTableProxy;
 import de.hpi.bp2013n1.anonymizer.db.ColumnDatatypeDescription;
@@ -46,8 +46,8 @@ import de.hpi.bp2013n1.anonymizer.shared.TransformationTableCreationException;
 
 public class CharacterStrategy extends TransformationStrategy {
 
-	private Map<Rule, Map<Character, Character>> characterMappings = Maps.newHashMap();
-	private Map<Rule, PseudonymsTableProxy> pseudonymTables = Maps.newHashMap();
+	private Map<Rule, Map<Character, Character>> characterMappings = new ConcurrentHashMap<>();
+	private Map<Rule, PseudonymsTableProxy> pseudonymTables = new ConcurrentHashMap<>();
 	private String ignoredCharacters = "";
 	
 	private Logger characterLogger = Logger.getLogger(CharacterStrategy.class.getName());
@@ -195,7 +195,8 @@ public class CharacterStrategy extends TransformationStrategy {
 		Map<String, String> mappingInDatabase =
 				getPseudonymsTableFor(rule).fetchStrings();
 		// there is no "single-character" SQL datatype, so we can only fetch strings
-		Map<Character, Character> characterMapping = Maps.newHashMap();
+		Map<Character, Character> characterMapping =
+				SpillableMap.create(memoryBudget());
 		for (Map.Entry<String, String> entry : mappingInDatabase.entrySet())
 			characterMapping.put(entry.getKey().charAt(0), entry.getValue().charAt(0));
 		characterMappings.put(rule, characterMapping);
@@ -316,4 +317,9 @@ public class CharacterStrategy extends TransformationStrategy {
 		return true;
 	}
 
+	@Override
+	public boolean mightDeleteRows() {
+		return false;
+	}
+
 }
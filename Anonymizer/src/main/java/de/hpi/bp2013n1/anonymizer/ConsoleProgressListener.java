@@ -0,0 +1,86 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.PrintStream;
+
+/**
+ * Prints the progress of the current table on a single line which is
+ * overwritten by each batch, as well as the finished tables and errors.
+ */
+public class ConsoleProgressListener implements ProgressListener {
+
+	private final PrintStream out;
+
+	public ConsoleProgressListener() {
+		this(System.out);
+	}
+
+	public ConsoleProgressListener(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void progressed(ProgressEvent event) {
+		switch (event.type) {
+		case BATCH:
+			out.print(format(event, true) + "\r");
+			break;
+		case TABLE_FINISHED:
+			out.println(format(event, false) + " " + event.table
+					+ (event.succeeded ? "" : " (failed)") + " in "
+					+ formatSeconds(event.elapsedMillis / 1000));
+			break;
+		case ERROR:
+			out.println("Error" + (event.table != null
+					? " in " + event.table : "") + ": " + event.message);
+			break;
+		case RUN_FINISHED:
+			out.println((event.succeeded ? "Finished " : "Failed ")
+					+ (event.schema != null ? event.schema + " " : "")
+					+ "after " + event.rows + " rows in "
+					+ formatSeconds(event.elapsedMillis / 1000));
+			break;
+		default:
+			break;
+		}
+		out.flush();
+	}
+
+	static String format(ProgressEvent event, boolean withRemainingTime) {
+		long total = event.totalRows;
+		if (total < 0)
+			return String.format("Progress: %d/?", event.rows);
+		// an estimate may be too low
+		total = Math.max(total, event.rows);
+		String progress = String.format("Progress: %d/%s%d (%d %%)",
+				event.rows, event.rowCountExact ? "" : "~", total,
+				total > 0 ? 100L * event.rows / total : 100);
+		if (withRemainingTime && event.remainingSeconds >= 0)
+			progress += " " + formatSeconds(event.remainingSeconds) + " left";
+		return progress;
+	}
+
+	private static String formatSeconds(long seconds) {
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60,
+				seconds % 60);
+	}
+}
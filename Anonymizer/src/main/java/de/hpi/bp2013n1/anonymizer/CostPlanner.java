@@ -0,0 +1,277 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Strings;
+
+import de.hpi.bp2013n1.anonymizer.RunCostEstimate.TableCostEstimate;
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Computes a {@link RunCostEstimate} for the tables of a scope. The numbers
+ * of rows and distinct values are taken from the statistics of the database
+ * if it has any, otherwise they are extrapolated from the first rows of the
+ * tables. No table is scanned completely.
+ */
+class CostPlanner {
+	/** number of rows read from each table or column */
+	static final int SAMPLE_SIZE = 10000;
+	/** heap of a hash map or hash set entry including its share of the table */
+	static final long MAP_ENTRY_BYTES = 48;
+	/** heap of a boxed number */
+	static final long BOXED_VALUE_BYTES = 24;
+	/** heap of an empty string */
+	static final long STRING_BYTES = 40;
+	/** two slots of a {@link LongLongHashMap} at its highest load */
+	static final long LONG_MAP_ENTRY_BYTES = 32;
+	/** reading a row is assumed to take as long as transforming and writing it */
+	static final int COPY_COST_FACTOR = 2;
+
+	/**
+	 * What the first rows of a column reveal about its values.
+	 */
+	static class ColumnSample {
+		long distinctValues;
+		/** average heap of the values */
+		long valueBytes;
+		/** whether all sampled values are integers */
+		boolean integral = true;
+	}
+
+	private final Connection source;
+	private final String schema;
+	private final ForeignKeyDeletionsHandler foreignKeys;
+	private final Set<String> rowDeletingTables;
+	private final Map<TableField, ColumnSample> columnSamples = new HashMap<>();
+	private final Map<String, Long> tableRows = new HashMap<>();
+
+	CostPlanner(Connection source, String schema,
+			ForeignKeyDeletionsHandler foreignKeys, Set<String> rowDeletingTables) {
+		this.source = source;
+		this.schema = schema;
+		this.foreignKeys = foreignKeys;
+		this.rowDeletingTables = rowDeletingTables;
+	}
+
+	/**
+	 * @param ruleMaps table name --> rules of the table, tables without
+	 * 			rules may be missing
+	 */
+	RunCostEstimate plan(List<String> tables, Map<String, TableRuleMap> ruleMaps,
+			int tableWorkers) throws SQLException {
+		RunCostEstimate estimate = new RunCostEstimate();
+		estimate.tableWorkers = tableWorkers;
+		for (String table : tables) {
+			TableRuleMap ruleMap = ruleMaps.get(table);
+			estimate.tables.add(planTable(table,
+					ruleMap != null ? ruleMap : new TableRuleMap(table)));
+		}
+		return estimate;
+	}
+
+	TableCostEstimate planTable(String table, TableRuleMap ruleMap)
+			throws SQLException {
+		TableCostEstimate estimate = new TableCostEstimate(table);
+		sampleRows(estimate);
+		Set<Rule> cachedRules = new HashSet<>();
+		for (String column : ruleMap.getColumnNames()) {
+			for (Rule rule : ruleMap.getRules(column)) {
+				estimate.rules.add(describe(column, rule));
+				if (rule.getTransformation() instanceof PseudonymizeStrategy
+						&& !((PseudonymizeStrategy) rule.getTransformation()).isKeyed()
+						&& cachedRules.add(rule)) {
+					// the cache holds the pseudonyms of all columns of the rule
+					addCachedPseudonyms(estimate, rule.getTableField());
+					for (TableField dependant : rule.getDependants())
+						addCachedPseudonyms(estimate, dependant);
+				} else if (rule.getTransformation() instanceof UniformDistributionStrategy
+						&& rule.getTableField().table.equals(table)) {
+					ColumnSample sample = sampleColumn(rule.getTableField());
+					estimate.distributionMapEntries += sample.distinctValues;
+					estimate.retainedHeapBytes += sample.distinctValues
+							* (MAP_ENTRY_BYTES + sample.valueBytes + BOXED_VALUE_BYTES);
+				}
+			}
+		}
+		if (rowDeletingTables.contains(table) && foreignKeys.hasDependants(table)
+				&& estimate.rows > 0) {
+			PrimaryKey primaryKey = foreignKeys.getPrimaryKey(table);
+			int keyColumns = primaryKey != null
+					? primaryKey.columnNames.size() : 1;
+			estimate.trackedDeletedRows = estimate.rows;
+			estimate.retainedHeapBytes += estimate.rows * (MAP_ENTRY_BYTES
+					+ keyColumns * (MAP_ENTRY_BYTES + BOXED_VALUE_BYTES));
+		}
+		return estimate;
+	}
+
+	private static String describe(String column, Rule rule) {
+		StringBuilder description = new StringBuilder(
+				column != null ? column : "row").append(": ").append(rule.getStrategy());
+		if (!Strings.isNullOrEmpty(rule.getAdditionalInfo()))
+			description.append(" ").append(rule.getAdditionalInfo());
+		TransformationStrategy strategy = rule.getTransformation();
+		if (strategy != null)
+			description.append(" (").append(strategy.getClass().getSimpleName())
+					.append(")");
+		return description.toString();
+	}
+
+	private void addCachedPseudonyms(TableCostEstimate estimate, TableField field)
+			throws SQLException {
+		ColumnSample sample = sampleColumn(field);
+		estimate.cachedPseudonyms += sample.distinctValues;
+		if (sample.integral)
+			estimate.transientHeapBytes += sample.distinctValues
+					* LONG_MAP_ENTRY_BYTES;
+		else
+			// old and new value are both cached as strings
+			estimate.transientHeapBytes += sample.distinctValues
+					* (MAP_ENTRY_BYTES + 2 * sample.valueBytes);
+	}
+
+	/**
+	 * Determines the number of rows of a table and the time to read one.
+	 */
+	private void sampleRows(TableCostEstimate estimate) throws SQLException {
+		estimate.rows = rowsOf(estimate.table);
+		long sampledRows = 0;
+		long start = System.nanoTime();
+		try (Statement statement = source.createStatement()) {
+			statement.setMaxRows(SAMPLE_SIZE);
+			try (ResultSet rows = statement.executeQuery("SELECT * FROM "
+					+ SQLHelper.qualifiedTableName(schema, estimate.table))) {
+				int columnCount = rows.getMetaData().getColumnCount();
+				while (rows.next()) {
+					for (int i = 1; i <= columnCount; i++)
+						rows.getObject(i);
+					sampledRows++;
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sampledRows > 0)
+			estimate.nanosPerRow = COPY_COST_FACTOR * elapsed / sampledRows;
+		if (estimate.rows < 0) {
+			estimate.rows = sampledRows;
+			estimate.rowsLowerBound = sampledRows == SAMPLE_SIZE;
+		}
+		tableRows.put(estimate.table, estimate.rows);
+	}
+
+	private long rowsOf(String table) throws SQLException {
+		Long rows = tableRows.get(table);
+		if (rows != null)
+			return rows;
+		return SQLHelper.estimateRowCount(schema, table, source);
+	}
+
+	ColumnSample sampleColumn(TableField field) throws SQLException {
+		ColumnSample sample = columnSamples.get(field);
+		if (sample != null)
+			return sample;
+		Map<Object, Integer> frequencies = new HashMap<>();
+		long sampledRows = 0;
+		long valueBytes = 0;
+		try (Statement statement = source.createStatement()) {
+			statement.setMaxRows(SAMPLE_SIZE);
+			try (ResultSet values = statement.executeQuery("SELECT "
+					+ field.column + " FROM "
+					+ SQLHelper.qualifiedTableName(schema, field.table))) {
+				while (values.next()) {
+					sampledRows++;
+					Object value = values.getObject(1);
+					if (value == null)
+						continue;
+					valueBytes += heapBytes(value);
+					Integer frequency = frequencies.get(value);
+					frequencies.put(value, frequency == null ? 1 : frequency + 1);
+				}
+			}
+		}
+		sample = new ColumnSample();
+		for (Object value : frequencies.keySet())
+			if (!(value instanceof Long || value instanceof Integer
+					|| value instanceof Short || value instanceof Byte))
+				sample.integral = false;
+		long nonNullValues = 0;
+		for (int frequency : frequencies.values())
+			nonNullValues += frequency;
+		sample.valueBytes = nonNullValues > 0 ? valueBytes / nonNullValues
+				: BOXED_VALUE_BYTES;
+		long catalogEstimate = SQLHelper.estimateDistinctValues(schema,
+				field.table, field.column, source);
+		if (catalogEstimate >= 0)
+			sample.distinctValues = catalogEstimate;
+		else if (sampledRows < SAMPLE_SIZE)
+			sample.distinctValues = frequencies.size();
+		else
+			sample.distinctValues = extrapolateDistinctValues(frequencies,
+					sampledRows, rowsOf(field.table));
+		columnSamples.put(field, sample);
+		return sample;
+	}
+
+	/**
+	 * Estimates the distinct values of a whole column from a sample with the
+	 * Guaranteed-Error Estimator: values seen several times in the sample
+	 * are counted once, values seen once are scaled with the square root of
+	 * the sampling ratio.
+	 *
+	 * @param frequencies sampled value --> occurrences in the sample
+	 * @param totalRows the number of rows of the table, -1 if unknown
+	 */
+	static long extrapolateDistinctValues(Map<Object, Integer> frequencies,
+			long sampledRows, long totalRows) {
+		if (sampledRows == 0 || totalRows <= sampledRows)
+			return frequencies.size();
+		long singletons = 0;
+		for (int frequency : frequencies.values()) {
+			if (frequency == 1)
+				singletons++;
+		}
+		double scale = Math.sqrt((double) totalRows / sampledRows);
+		long estimate = Math.round(scale * singletons)
+				+ frequencies.size() - singletons;
+		return Math.min(estimate, totalRows);
+	}
+
+	static long heapBytes(Object value) {
+		if (value instanceof String)
+			return STRING_BYTES + 2 * ((String) value).length();
+		if (value instanceof byte[])
+			return STRING_BYTES + ((byte[]) value).length;
+		return BOXED_VALUE_BYTES;
+	}
+}
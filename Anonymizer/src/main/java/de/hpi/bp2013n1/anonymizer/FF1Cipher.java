@@ -0,0 +1,195 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The FF1 format-preserving encryption of NIST SP 800-38G with AES. It
+ * encrypts a string of numerals of a radix to another string of the same
+ * length and radix, and is a permutation of all such strings for each tweak.
+ * <p>
+ * The minimum domain size which the standard requires for security is not
+ * enforced, the callers of this class only use it to derive pseudonyms.
+ */
+class FF1Cipher {
+
+	private static final int ROUNDS = 10;
+	private static final int BLOCK_SIZE = 16;
+
+	private final SecretKeySpec key;
+	/** AES instances are not thread-safe */
+	private final ThreadLocal<Cipher> aes = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			try {
+				Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+				cipher.init(Cipher.ENCRYPT_MODE, key);
+				return cipher;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException("AES is not available", e);
+			}
+		}
+	};
+
+	/**
+	 * @param key an AES key of 16, 24 or 32 bytes
+	 */
+	FF1Cipher(byte[] key) {
+		checkArgument(key.length == 16 || key.length == 24 || key.length == 32,
+				"AES keys have 16, 24 or 32 bytes");
+		this.key = new SecretKeySpec(key, "AES");
+		// fail early if the key is not accepted
+		aes.get();
+	}
+
+	/**
+	 * @param numerals at least two numerals, each in [0, radix)
+	 * @return the encrypted numerals
+	 */
+	int[] encrypt(int[] numerals, int radix, byte[] tweak) {
+		int n = numerals.length;
+		checkArgument(n >= 2, "FF1 needs at least two numerals");
+		checkArgument(radix >= 2 && radix <= 1 << 16,
+				"The radix must be between 2 and 65536");
+		int u = n / 2;
+		int v = n - u;
+		int[] a = Arrays.copyOfRange(numerals, 0, u);
+		int[] b = Arrays.copyOfRange(numerals, u, n);
+		BigInteger bigRadix = BigInteger.valueOf(radix);
+		int byteLength = (bigRadix.pow(v).subtract(BigInteger.ONE).bitLength()
+				+ 7) / 8;
+		int d = 4 * ((byteLength + 3) / 4) + 4;
+		byte[] p = new byte[] { 1, 2, 1,
+				(byte) (radix >> 16), (byte) (radix >> 8), (byte) radix,
+				10, (byte) u,
+				(byte) (n >> 24), (byte) (n >> 16), (byte) (n >> 8), (byte) n,
+				(byte) (tweak.length >> 24), (byte) (tweak.length >> 16),
+				(byte) (tweak.length >> 8), (byte) tweak.length };
+		int padding = mod(-tweak.length - byteLength - 1, BLOCK_SIZE);
+		byte[] q = new byte[tweak.length + padding + 1 + byteLength];
+		System.arraycopy(tweak, 0, q, 0, tweak.length);
+		BigInteger modulusU = bigRadix.pow(u);
+		BigInteger modulusV = bigRadix.pow(v);
+		for (int i = 0; i < ROUNDS; i++) {
+			q[tweak.length + padding] = (byte) i;
+			byte[] numB = toBytes(num(b, radix), byteLength);
+			System.arraycopy(numB, 0, q, q.length - byteLength, byteLength);
+			byte[] r = prf(p, q);
+			byte[] s = expand(r, d);
+			BigInteger y = new BigInteger(1, s);
+			int m = i % 2 == 0 ? u : v;
+			BigInteger c = num(a, radix).add(y).mod(
+					i % 2 == 0 ? modulusU : modulusV);
+			a = b;
+			b = str(c, radix, m);
+		}
+		int[] result = new int[n];
+		System.arraycopy(a, 0, result, 0, a.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	/**
+	 * CBC-MAC of P || Q with a zero IV.
+	 */
+	private byte[] prf(byte[] p, byte[] q) {
+		byte[] y = cipher(p);
+		for (int offset = 0; offset < q.length; offset += BLOCK_SIZE) {
+			byte[] block = new byte[BLOCK_SIZE];
+			for (int j = 0; j < BLOCK_SIZE; j++)
+				block[j] = (byte) (y[j] ^ q[offset + j]);
+			y = cipher(block);
+		}
+		return y;
+	}
+
+	/**
+	 * @return the first d bytes of R || CIPH(R xor [1]) || CIPH(R xor [2]) ...
+	 */
+	private byte[] expand(byte[] r, int d) {
+		byte[] s = new byte[d];
+		int blocks = (d + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		for (int j = 0; j < blocks; j++) {
+			byte[] block = r;
+			if (j > 0) {
+				byte[] counter = toBytes(BigInteger.valueOf(j), BLOCK_SIZE);
+				block = new byte[BLOCK_SIZE];
+				for (int k = 0; k < BLOCK_SIZE; k++)
+					block[k] = (byte) (r[k] ^ counter[k]);
+				block = cipher(block);
+			}
+			System.arraycopy(block, 0, s, j * BLOCK_SIZE,
+					Math.min(BLOCK_SIZE, d - j * BLOCK_SIZE));
+		}
+		return s;
+	}
+
+	private byte[] cipher(byte[] block) {
+		try {
+			return aes.get().doFinal(block);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("AES encryption failed", e);
+		}
+	}
+
+	private static BigInteger num(int[] numerals, int radix) {
+		BigInteger bigRadix = BigInteger.valueOf(radix);
+		BigInteger value = BigInteger.ZERO;
+		for (int numeral : numerals)
+			value = value.multiply(bigRadix).add(BigInteger.valueOf(numeral));
+		return value;
+	}
+
+	private static int[] str(BigInteger value, int radix, int length) {
+		BigInteger bigRadix = BigInteger.valueOf(radix);
+		int[] numerals = new int[length];
+		for (int i = length - 1; i >= 0; i--) {
+			BigInteger[] quotientAndRemainder = value.divideAndRemainder(bigRadix);
+			numerals[i] = quotientAndRemainder[1].intValue();
+			value = quotientAndRemainder[0];
+		}
+		return numerals;
+	}
+
+	/**
+	 * @return the unsigned big-endian representation in exactly length bytes
+	 */
+	private static byte[] toBytes(BigInteger value, int length) {
+		byte[] bytes = value.toByteArray();
+		byte[] result = new byte[length];
+		int copied = Math.min(bytes.length, length);
+		System.arraycopy(bytes, bytes.length - copied, result,
+				length - copied, copied);
+		return result;
+	}
+
+	private static int mod(int value, int modulus) {
+		return ((value % modulus) + modulus) % modulus;
+	}
+}
@@ -0,0 +1,114 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Stores the fingerprint of the contents of each table copied by the last
+ * run together with a hash of the rules applied to it, in the
+ * transformation database. A table whose fingerprint and rules have not
+ * changed since need not be copied again.
+ * <p>
+ * The entry of a table is removed before the table is copied again, so that
+ * an interrupted copy is never taken for an unchanged table.
+ */
+public class FingerprintStore {
+
+	static final String FINGERPRINT_TABLE = "ANONYMIZER_FINGERPRINTS";
+	/** length of the hexadecimal SHA-256 hashes which are stored */
+	private static final int HASH_LENGTH = 64;
+
+	private final Connection database;
+	private final String qualifiedStoreName;
+	private final String schema;
+
+	public FingerprintStore(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedStoreName = schema + "." + FINGERPRINT_TABLE;
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		SQLHelper.createTableIfNotExists(database, schema, FINGERPRINT_TABLE,
+				"TABLE_NAME VARCHAR(128) NOT NULL, "
+					+ "FINGERPRINT VARCHAR(" + HASH_LENGTH + ") NOT NULL, "
+					+ "RULES_HASH VARCHAR(" + HASH_LENGTH + ") NOT NULL, "
+					+ "PRIMARY KEY (TABLE_NAME)");
+	}
+
+	/**
+	 * @return true if the stored fingerprint and rules hash of the table are
+	 * 			the given ones
+	 */
+	public synchronized boolean matches(String table, String fingerprint,
+			String rulesHash) throws SQLException {
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT FINGERPRINT, RULES_HASH FROM " + qualifiedStoreName
+				+ " WHERE TABLE_NAME = ?")) {
+			select.setString(1, table);
+			try (ResultSet stored = select.executeQuery()) {
+				return stored.next() && stored.getString(1).equals(fingerprint)
+						&& stored.getString(2).equals(rulesHash);
+			}
+		}
+	}
+
+	public synchronized void remove(String table) throws SQLException {
+		try (PreparedStatement delete = database.prepareStatement(
+				"DELETE FROM " + qualifiedStoreName + " WHERE TABLE_NAME = ?")) {
+			delete.setString(1, table);
+			delete.executeUpdate();
+		}
+		commit();
+	}
+
+	/**
+	 * Replaces the fingerprint and rules hash of the table.
+	 */
+	public synchronized void put(String table, String fingerprint,
+			String rulesHash) throws SQLException {
+		try (PreparedStatement delete = database.prepareStatement(
+				"DELETE FROM " + qualifiedStoreName + " WHERE TABLE_NAME = ?")) {
+			delete.setString(1, table);
+			delete.executeUpdate();
+		}
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT INTO " + qualifiedStoreName + " (TABLE_NAME, "
+						+ "FINGERPRINT, RULES_HASH) VALUES (?, ?, ?)")) {
+			insert.setString(1, table);
+			insert.setString(2, fingerprint);
+			insert.setString(3, rulesHash);
+			insert.executeUpdate();
+		}
+		commit();
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
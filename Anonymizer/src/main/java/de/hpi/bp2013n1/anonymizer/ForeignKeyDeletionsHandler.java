@@ -26,13 +26,13 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
@@ -42,13 +42,24 @@ import de.hpi.bp2013n1.anonymizer.shared.Rule;
 public class ForeignKeyDeletionsHandler {
 	
 	/** table --> PK */
-	Map<String, PrimaryKey> primaryKeys  = new HashMap<>();
+	Map<String, PrimaryKey> primaryKeys  = new ConcurrentHashMap<>();
 	/** child table --> FKs */
 	Multimap<String, ForeignKey> dependencies = ArrayListMultimap.create();
-	Set<String> tablesWithDependants = new HashSet<>();
-	/** table --> deleted PK tuples */
-	Multimap<String, Map<String, Object>> deletedRows = HashMultimap.create();
+	Set<String> tablesWithDependants = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
+	/** table --> deleted PK tuples, tables may be copied concurrently */
+	Map<String, Set<Map<String, Object>>> deletedRows =
+			new ConcurrentHashMap<>();
 	private Connection database;
+	private MemoryBudget memoryBudget;
+
+	/**
+	 * Lets the deleted PK tuples spill to disk when the budget is exceeded.
+	 * Must be set before rows are deleted.
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
 	
 	public void determineForeignKeysAmongTables(Connection database,
 			String schema, Collection<String> tables) throws SQLException {
@@ -97,8 +108,7 @@ public class ForeignKeyDeletionsHandler {
 		if (!tablesWithDependants.contains(table))
 			return;
 		PrimaryKey pk = getPrimaryKey(database, deletedRow.getCurrentSchema(), table);
-		// if memory is still a problem, save rows in a local h2 database backed by a file with a large cache depending on the heap size
-		deletedRows.put(table, pk.keyValues(deletedRow));
+		deletedRowsOf(table).add(pk.keyValues(deletedRow));
 		// how to detect if the parent row is gone if not the full PK is referenced?
 		// if the delete strategy was used with a column to which a relation exists,
 		// deleting the dependent tuple would be desirable
@@ -108,12 +118,82 @@ public class ForeignKeyDeletionsHandler {
 		String table = row.getCurrentTable();
 		Collection<ForeignKey> rowDependencies = dependencies.get(table);
 		for (ForeignKey fk : rowDependencies) {
-			if (deletedRows.containsEntry(fk.parentTable, fk.referencedValues(row)))
+			Set<Map<String, Object>> deletedParents =
+					deletedRows.get(fk.parentTable);
+			if (deletedParents != null
+					&& deletedParents.contains(fk.referencedValues(row)))
+				return true;
+		}
+		return false;
+	}
+
+	private synchronized Set<Map<String, Object>> deletedRowsOf(String table) {
+		Set<Map<String, Object>> rows = deletedRows.get(table);
+		if (rows == null) {
+			rows = Collections.newSetFromMap(memoryBudget == null
+					? new ConcurrentHashMap<Map<String, Object>, Boolean>()
+					: new SpillableMap<Map<String, Object>, Boolean>(
+							memoryBudget));
+			deletedRows.put(table, rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the tables which are referenced by the specified table, i.e.
+	 * whose row deletions must be known before the rows of the specified
+	 * table can be copied. The table itself is never included.
+	 */
+	public Set<String> parentTablesOf(String table) {
+		Set<String> parentTables = new TreeSet<>();
+		for (ForeignKey fk : dependencies.get(table)) {
+			if (!fk.parentTable.equals(table))
+				parentTables.add(fk.parentTable);
+		}
+		return parentTables;
+	}
+
+	/**
+	 * Returns the tables which reference the specified table, i.e. which
+	 * must be copied after it.
+	 */
+	public Set<String> childTablesOf(String table) {
+		Set<String> childTables = new TreeSet<>();
+		for (Map.Entry<String, ForeignKey> childAndFK : dependencies.entries()) {
+			if (childAndFK.getValue().parentTable.equals(table))
+				childTables.add(childAndFK.getKey());
+		}
+		return childTables;
+	}
+
+	/**
+	 * Returns true if rows deleted from the table must be remembered because
+	 * other tables or the table itself reference it.
+	 */
+	public boolean hasDependants(String table) {
+		return tablesWithDependants.contains(table);
+	}
+
+	/**
+	 * Returns true if the table has a foreign key referencing itself, i.e.
+	 * whether its rows must be copied in a single pass to detect deletions.
+	 */
+	public boolean isSelfReferencing(String table) {
+		for (ForeignKey fk : dependencies.get(table)) {
+			if (fk.parentTable.equals(table))
 				return true;
 		}
 		return false;
 	}
 
+	/**
+	 * @return the primary key of the table or null if the table was not
+	 * 			among the tables whose foreign keys were determined
+	 */
+	PrimaryKey getPrimaryKey(String table) {
+		return primaryKeys.get(table);
+	}
+
 	public void addForeignKeysForRuleDependents(Collection<Rule> rules) {
 		for (Rule rule : rules) {
 			addForeignKeyForRuleDependents(rule);
@@ -0,0 +1,94 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+/**
+ * A pseudorandom permutation of the indexes [0, size) which is computed per
+ * index in constant time and memory. It is a balanced Feistel network over
+ * the smallest even number of bits which covers the indexes. Results
+ * outside of the indexes are encrypted again (cycle-walking), which takes
+ * less than four rounds on average.
+ */
+class IndexPermutation {
+
+	private static final int ROUNDS = 4;
+
+	private final long size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] roundKeys = new long[ROUNDS];
+
+	IndexPermutation(long size, Random random) {
+		checkArgument(size > 0, "The permutation needs at least one index");
+		this.size = size;
+		int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+		halfBits = (bits + 1) / 2;
+		halfMask = halfBits == 32 ? 0xFFFFFFFFL : (1L << halfBits) - 1;
+		for (int i = 0; i < ROUNDS; i++)
+			roundKeys[i] = random.nextLong();
+	}
+
+	long size() {
+		return size;
+	}
+
+	/**
+	 * @return the index at the given position of the permutation
+	 */
+	long apply(long index) {
+		checkArgument(index >= 0 && index < size, "Index %s is out of range",
+				index);
+		long value = index;
+		do {
+			value = encrypt(value);
+			// with 64 bits, the result may be negative
+		} while (value < 0 || value >= size);
+		return value;
+	}
+
+	private long encrypt(long value) {
+		long left = value >>> halfBits & halfMask;
+		long right = value & halfMask;
+		for (long roundKey : roundKeys) {
+			long mixed = mix(right ^ roundKey) & halfMask;
+			long previousRight = right;
+			right = left ^ mixed;
+			left = previousRight;
+		}
+		return left << halfBits | right;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3.
+	 */
+	static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
@@ -0,0 +1,352 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+
+/**
+ * Inserts rows into a destination table in batches and commits after the
+ * commit interval. Batch size and commit interval are taken from a
+ * {@link BatchController} before each row, so they may change while the
+ * table is written. In upsert mode, rows with the same key are deleted from the
+ * destination table in the same transaction before the batch is inserted.
+ * <p>
+ * If a batch fails, e.g. because a row violates a constraint, it is rolled
+ * back to a savepoint and bisected until the failing rows are isolated. The
+ * other rows are inserted, the failing rows are handed to the
+ * {@link QuarantineStore} together with their error.
+ */
+class InsertBatchWriter implements RowSink, AutoCloseable {
+
+	static Logger logger = Logger.getLogger(InsertBatchWriter.class.getName());
+
+	/**
+	 * Is notified after each successful commit.
+	 */
+	interface CommitListener {
+		/**
+		 * @param lastSourceKey primary key of the last source row whose
+		 * 			results have been committed
+		 */
+		void batchCommitted(Object lastSourceKey) throws SQLException;
+	}
+
+	private final PreparedStatement insertStatement;
+	private final String qualifiedTableName;
+	private final List<String> columnNames;
+	private PreparedStatement deleteStatement;
+	private int[] keyColumnIndexes;
+	private final BatchController batchController;
+	private int rowsInBatch = 0;
+	private int rowsSinceCommit = 0;
+	private Object lastSourceKey;
+	private CommitListener commitListener;
+	/** copies of the rows of the pending batch to retry them on failure */
+	private final List<Object[]> pendingRows = new ArrayList<>();
+	private QuarantineStore quarantine;
+	private int quarantinedRows = 0;
+
+	/**
+	 * Creates a writer which commits after each batch.
+	 */
+	InsertBatchWriter(Connection destination, String qualifiedTableName,
+			List<String> columnNames, int batchSize) throws SQLException {
+		this(destination, qualifiedTableName, columnNames,
+				new BatchController(batchSize, batchSize));
+	}
+
+	InsertBatchWriter(Connection destination, String qualifiedTableName,
+			List<String> columnNames, BatchController batchController)
+					throws SQLException {
+		this.batchController = batchController;
+		this.qualifiedTableName = qualifiedTableName;
+		this.columnNames = columnNames;
+		insertStatement = destination.prepareStatement(
+				insertStatementFor(qualifiedTableName, columnNames));
+	}
+
+	static String insertStatementFor(String qualifiedTableName,
+			List<String> columnNames) {
+		return "INSERT INTO " + qualifiedTableName
+				+ " (" + Joiner.on(',').join(columnNames) + ") VALUES ("
+				+ Strings.repeat("?,", columnNames.size() - 1) + "?)";
+	}
+
+	/**
+	 * Makes the writer replace existing rows with the same values in the
+	 * specified key columns instead of only inserting rows.
+	 */
+	void enableUpsert(List<String> keyColumns) throws SQLException {
+		keyColumnIndexes = new int[keyColumns.size()];
+		List<String> keyComparisons = new ArrayList<>(keyColumns.size());
+		for (int i = 0; i < keyColumnIndexes.length; i++) {
+			keyColumnIndexes[i] = indexOfColumn(keyColumns.get(i));
+			keyComparisons.add(keyColumns.get(i) + " = ?");
+		}
+		deleteStatement = insertStatement.getConnection().prepareStatement(
+				"DELETE FROM " + qualifiedTableName + " WHERE "
+						+ Joiner.on(" AND ").join(keyComparisons));
+	}
+
+	private int indexOfColumn(String column) throws SQLException {
+		for (int i = 0; i < columnNames.size(); i++) {
+			if (columnNames.get(i).equalsIgnoreCase(column))
+				return i;
+		}
+		throw new SQLException("Key column " + column + " is not copied to "
+				+ qualifiedTableName);
+	}
+
+	void setCommitListener(CommitListener commitListener) {
+		this.commitListener = commitListener;
+	}
+
+	/**
+	 * Sets where rows are stored which cannot be inserted. Without a store
+	 * they are only logged.
+	 */
+	void setQuarantine(QuarantineStore quarantine) {
+		this.quarantine = quarantine;
+	}
+
+	/**
+	 * @return the number of rows which could not be inserted
+	 */
+	int getQuarantinedRows() {
+		return quarantinedRows;
+	}
+
+	@Override
+	public void addRow(Object[] row) throws SQLException {
+		addToBatch(row);
+		pendingRows.add(row.clone());
+		if (++rowsInBatch >= batchController.getBatchSize())
+			executeBatch();
+	}
+
+	private void addToBatch(Object[] row) throws SQLException {
+		if (deleteStatement != null) {
+			for (int i = 0; i < keyColumnIndexes.length; i++)
+				deleteStatement.setObject(i + 1, row[keyColumnIndexes[i]]);
+			deleteStatement.addBatch();
+		}
+		for (int i = 0; i < row.length; i++)
+			insertStatement.setObject(i + 1, row[i]);
+		insertStatement.addBatch();
+	}
+
+	private void executeStatements() throws SQLException {
+		if (deleteStatement != null)
+			deleteStatement.executeBatch();
+		insertStatement.executeBatch();
+	}
+
+	@Override
+	public void sourceRowCompleted(Object sourceKey) {
+		lastSourceKey = sourceKey;
+	}
+
+	/**
+	 * Executes the pending batch and commits if the commit interval has been
+	 * reached. The failing rows of a failed batch are quarantined.
+	 */
+	private void executeBatch() {
+		int rows = rowsInBatch;
+		rowsInBatch = 0;
+		long start = System.nanoTime();
+		Savepoint savepoint = null;
+		try {
+			Connection connection = insertStatement.getConnection();
+			if (!connection.getAutoCommit())
+				savepoint = connection.setSavepoint();
+		} catch (SQLException e) {
+			logger.fine("Savepoints are not supported, failed batches cannot "
+					+ "be retried: " + e.getMessage());
+		}
+		try {
+			executeStatements();
+			if (savepoint != null)
+				releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			if (savepoint == null) {
+				// rows before the failing one may have been inserted
+				logBatchInsertError(e);
+				for (Object[] row : pendingRows)
+					quarantine(row, e);
+			} else {
+				logger.warning("Batch insert into " + qualifiedTableName
+						+ " failed, isolating the failing rows: "
+						+ e.getMessage());
+				recoverFailedBatch(savepoint, e);
+			}
+		}
+		pendingRows.clear();
+		batchController.batchExecuted(rows, System.nanoTime() - start);
+		rowsSinceCommit += rows;
+		if (rowsSinceCommit >= batchController.getCommitInterval())
+			commit();
+	}
+
+	/**
+	 * Executes and commits the pending rows. Errors are logged, the rows of
+	 * a failed batch are lost.
+	 */
+	void flush() {
+		if (rowsInBatch > 0)
+			executeBatch();
+		if (rowsSinceCommit > 0)
+			commit();
+	}
+
+	private void commit() {
+		rowsSinceCommit = 0;
+		long start = System.nanoTime();
+		try {
+			insertStatement.getConnection().commit();
+		} catch (SQLException e) {
+			logger.severe("Commit after batch insert failed: " + e.getMessage());
+			return;
+		}
+		batchController.committed(System.nanoTime() - start);
+		if (commitListener != null && lastSourceKey != null) {
+			try {
+				commitListener.batchCommitted(lastSourceKey);
+			} catch (SQLException e) {
+				logger.warning("Could not record the progress after a batch: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	private void recoverFailedBatch(Savepoint savepoint, SQLException error) {
+		List<Object[]> rows = new ArrayList<>(pendingRows);
+		try {
+			rollback(savepoint);
+			bisect(rows, error);
+		} catch (SQLException e) {
+			logger.severe("Could not isolate the failing rows of a batch for "
+					+ qualifiedTableName + ", the batch is lost: "
+					+ e.getMessage());
+			logBatchInsertError(error);
+		}
+	}
+
+	/**
+	 * Inserts both halves of rows which failed together, the failing ones
+	 * are split further until single rows are quarantined.
+	 */
+	private void bisect(List<Object[]> rows, SQLException error)
+			throws SQLException {
+		if (rows.size() == 1) {
+			quarantine(rows.get(0), error);
+			return;
+		}
+		int middle = rows.size() / 2;
+		insertOrBisect(rows.subList(0, middle));
+		insertOrBisect(rows.subList(middle, rows.size()));
+	}
+
+	private void insertOrBisect(List<Object[]> rows) throws SQLException {
+		Connection connection = insertStatement.getConnection();
+		Savepoint savepoint = connection.setSavepoint();
+		try {
+			for (Object[] row : rows)
+				addToBatch(row);
+			executeStatements();
+		} catch (SQLException e) {
+			rollback(savepoint);
+			bisect(rows, e);
+			return;
+		}
+		releaseSavepoint(savepoint);
+	}
+
+	private void rollback(Savepoint savepoint) throws SQLException {
+		insertStatement.clearBatch();
+		if (deleteStatement != null)
+			deleteStatement.clearBatch();
+		insertStatement.getConnection().rollback(savepoint);
+	}
+
+	private void releaseSavepoint(Savepoint savepoint) {
+		try {
+			insertStatement.getConnection().releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			// released with the transaction anyway
+		}
+	}
+
+	private void quarantine(Object[] row, SQLException error) {
+		quarantinedRows++;
+		String errorText = errorText(error);
+		if (quarantine != null) {
+			try {
+				quarantine.quarantine(qualifiedTableName, columnNames, row,
+						errorText);
+				return;
+			} catch (SQLException e) {
+				logger.severe("Could not quarantine a row of "
+						+ qualifiedTableName + ": " + e.getMessage());
+			}
+		}
+		logger.severe("Row of " + qualifiedTableName + " could not be "
+				+ "inserted (" + QuarantineStore.format(columnNames, row)
+				+ "): " + errorText);
+	}
+
+	static String errorText(SQLException e) {
+		List<String> messages = new ArrayList<>();
+		for (Throwable chainedException : e)
+			messages.add(chainedException.getMessage());
+		return Joiner.on("; ").skipNulls().join(messages);
+	}
+
+	static void logBatchInsertError(SQLException e) {
+		logger.severe("Error(s) during batch insert: " + e.getMessage());
+		for (Throwable chainedException : Iterables.skip(e, 1)) {
+			logger.severe("Insert error: " + chainedException.getMessage());
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (quarantinedRows > 0)
+			logger.warning(quarantinedRows + " rows could not be inserted into "
+					+ qualifiedTableName + (quarantine != null
+							? " and have been quarantined in "
+									+ QuarantineStore.QUARANTINE_TABLE : ""));
+		if (deleteStatement != null)
+			deleteStatement.close();
+		insertStatement.close();
+	}
+}
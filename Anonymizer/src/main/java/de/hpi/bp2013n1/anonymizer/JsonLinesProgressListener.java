@@ -0,0 +1,127 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Writes each event as a JSON object on its own line, for schedulers and
+ * monitoring tools. Fields which do not apply to the event are omitted.
+ */
+public class JsonLinesProgressListener implements ProgressListener, Closeable {
+
+	private static final Logger logger = Logger.getLogger(
+			JsonLinesProgressListener.class.getName());
+	private final Writer writer;
+
+	public JsonLinesProgressListener(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Appends the events to the file.
+	 */
+	public JsonLinesProgressListener(File file) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file, true),
+				StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void progressed(ProgressEvent event) {
+		try {
+			writer.write(toJson(event));
+			writer.write('\n');
+			writer.flush();
+		} catch (IOException e) {
+			logger.warning("Could not write progress event: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	static String toJson(ProgressEvent event) {
+		StringBuilder json = new StringBuilder("{");
+		appendString(json, "type", event.type.name());
+		appendNumber(json, "timestamp", event.timestampMillis);
+		appendString(json, "schema", event.schema);
+		appendString(json, "table", event.table);
+		appendString(json, "strategy", event.strategy);
+		appendNumber(json, "rows", event.rows);
+		appendNumber(json, "totalRows", event.totalRows);
+		if (event.totalRows >= 0)
+			json.append(",\"rowCountExact\":").append(event.rowCountExact);
+		appendNumber(json, "elapsedMillis", event.elapsedMillis);
+		appendNumber(json, "remainingSeconds", event.remainingSeconds);
+		json.append(",\"succeeded\":").append(event.succeeded);
+		appendString(json, "message", event.message);
+		return json.append('}').toString();
+	}
+
+	private static void appendNumber(StringBuilder json, String name,
+			long value) {
+		if (value >= 0)
+			json.append(",\"").append(name).append("\":").append(value);
+	}
+
+	private static void appendString(StringBuilder json, String name,
+			String value) {
+		if (value == null)
+			return;
+		if (json.length() > 1)
+			json.append(',');
+		json.append('"').append(name).append("\":\"");
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
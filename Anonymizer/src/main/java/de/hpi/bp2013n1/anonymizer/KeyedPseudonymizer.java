@@ -0,0 +1,169 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Derives pseudonyms from a secret key with the {@link FF1Cipher} instead of
+ * looking them up in a pseudonyms table. The same key, tweak and value always
+ * yield the same pseudonym, so no preparation is necessary and pseudonyms are
+ * consistent across dependants, workers and runs. Distinct values of the
+ * same format always yield distinct pseudonyms.
+ * <p>
+ * Strings keep their length and all characters which are not ASCII letters
+ * or digits. Letters and digits are encrypted over the alphabet of 62
+ * characters, but strings consisting only of digits are encrypted over the
+ * digits, so that numbers stored as strings stay numbers. Integers keep their
+ * sign and stay within the range of the column type.
+ */
+class KeyedPseudonymizer {
+
+	static final String ALPHABET =
+			"0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+	private static final int DIGITS = 10;
+
+	private final FF1Cipher cipher;
+	private final String keyFingerprint;
+
+	/**
+	 * @param secret arbitrary key material, the AES key is derived from it
+	 */
+	KeyedPseudonymizer(byte[] secret) {
+		checkArgument(secret.length > 0, "The pseudonym key must not be empty");
+		byte[] key = Hashing.sha256().hashBytes(secret).asBytes();
+		cipher = new FF1Cipher(key);
+		keyFingerprint = Hashing.sha256().hashBytes(key).toString();
+	}
+
+	/**
+	 * @return a hash of the key which identifies it without revealing it
+	 */
+	String getKeyFingerprint() {
+		return keyFingerprint;
+	}
+
+	static byte[] tweak(String context) {
+		return context.getBytes(StandardCharsets.UTF_8);
+	}
+
+	String pseudonymize(String value, byte[] tweak) {
+		char[] chars = value.toCharArray();
+		int[] positions = new int[chars.length];
+		int count = 0;
+		boolean onlyDigits = true;
+		for (int i = 0; i < chars.length; i++) {
+			int numeral = ALPHABET.indexOf(chars[i]);
+			if (numeral < 0)
+				continue;
+			positions[count++] = i;
+			onlyDigits &= numeral < DIGITS;
+		}
+		if (count == 0)
+			return value;
+		int[] numerals = new int[count];
+		for (int i = 0; i < count; i++)
+			numerals[i] = ALPHABET.indexOf(chars[positions[i]]);
+		int[] pseudonym = onlyDigits
+				? permute(numerals, DIGITS, tweak, false)
+				: permute(numerals, ALPHABET.length(), tweak, true);
+		for (int i = 0; i < count; i++)
+			chars[positions[i]] = ALPHABET.charAt(pseudonym[i]);
+		return String.valueOf(chars);
+	}
+
+	/**
+	 * Zero is kept, the magnitudes of all other values are permuted within
+	 * [1, maxValue], so that a value and its negation do not collide.
+	 *
+	 * @param maxValue the largest value of the column type
+	 * @return a pseudonym with the same sign whose absolute value is at most
+	 * 			maxValue
+	 */
+	long pseudonymize(long value, long maxValue, byte[] tweak) {
+		checkArgument(maxValue > 0, "The maximum value must be positive");
+		if (value == 0 || value == Long.MIN_VALUE || Math.abs(value) > maxValue)
+			return value; // cannot be negated or outside of the type
+		long maxIndex = maxValue - 1;
+		int width = Math.max(Long.toString(maxIndex).length(), 2);
+		int[] numerals = toNumerals(Math.abs(value) - 1, width);
+		long index;
+		do {
+			numerals = cipher.encrypt(numerals, DIGITS, tweak);
+			index = toLong(numerals);
+			// cycle-walking keeps the permutation within [0, maxValue - 1]
+		} while (index < 0 || index > maxIndex);
+		return value < 0 ? -(index + 1) : index + 1;
+	}
+
+	/**
+	 * Encrypts the numerals, walking the cycle of the permutation until the
+	 * result has the same format as the input. Single numerals are encrypted
+	 * as two numerals with a leading zero.
+	 * 
+	 * @param notOnlyDigits whether the result must contain a character which
+	 * 			is not a digit, like the input
+	 */
+	private int[] permute(int[] numerals, int radix, byte[] tweak,
+			boolean notOnlyDigits) {
+		boolean single = numerals.length == 1;
+		int[] current = single ? new int[] { 0, numerals[0] } : numerals;
+		do {
+			current = cipher.encrypt(current, radix, tweak);
+		} while (single && current[0] != 0
+				|| notOnlyDigits && onlyDigits(current, single));
+		return single ? new int[] { current[1] } : current;
+	}
+
+	private static boolean onlyDigits(int[] numerals, boolean single) {
+		for (int i = single ? 1 : 0; i < numerals.length; i++) {
+			if (numerals[i] >= DIGITS)
+				return false;
+		}
+		return true;
+	}
+
+	private static int[] toNumerals(long value, int length) {
+		int[] numerals = new int[length];
+		for (int i = length - 1; i >= 0; i--) {
+			numerals[i] = (int) (value % DIGITS);
+			value /= DIGITS;
+		}
+		return numerals;
+	}
+
+	/**
+	 * @return the value or -1 if it exceeds the range of long
+	 */
+	private static long toLong(int[] numerals) {
+		long value = 0;
+		for (int numeral : numerals) {
+			if (value > (Long.MAX_VALUE - numeral) / DIGITS)
+				return -1;
+			value = value * DIGITS + numeral;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,256 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An open-addressing hash map from long to long with linear probing. Keys
+ * and values are kept in primitive slots, either in arrays on the heap or
+ * in direct buffers outside of it. At most half of the slots are used, so
+ * a map of n entries takes 32 n to 64 n bytes instead of the more than
+ * 150 n bytes of a {@code HashMap} of string keys and values.
+ * <p>
+ * The map is not synchronized. Entries cannot be removed.
+ */
+final class LongLongHashMap {
+
+	private static final double MAX_LOAD = 0.5;
+	/** slots are arrays, so there can be at most 2^30 of them on the heap */
+	private static final long MAX_HEAP_CAPACITY = 1L << 30;
+	/** the key which marks free slots, its entry is kept aside */
+	private static final long FREE_KEY = 0;
+
+	/**
+	 * Keys and values of a power of two number of slots.
+	 */
+	private interface Slots {
+		long capacity();
+		long key(long slot);
+		long value(long slot);
+		void set(long slot, long key, long value);
+		long bytes();
+	}
+
+	private static final class HeapSlots implements Slots {
+		private final long[] keys;
+		private final long[] values;
+
+		HeapSlots(long capacity) {
+			checkArgument(capacity <= MAX_HEAP_CAPACITY,
+					"Too many entries for a map on the heap, "
+					+ "use a map outside of the heap");
+			keys = new long[(int) capacity];
+			values = new long[(int) capacity];
+		}
+
+		@Override
+		public long capacity() {
+			return keys.length;
+		}
+
+		@Override
+		public long key(long slot) {
+			return keys[(int) slot];
+		}
+
+		@Override
+		public long value(long slot) {
+			return values[(int) slot];
+		}
+
+		@Override
+		public void set(long slot, long key, long value) {
+			keys[(int) slot] = key;
+			values[(int) slot] = value;
+		}
+
+		@Override
+		public long bytes() {
+			return 16L * keys.length;
+		}
+	}
+
+	/**
+	 * Slots in direct buffers of at most 2^26 slots (1 GB) each, because
+	 * a buffer cannot be larger than 2 GB.
+	 */
+	private static final class DirectSlots implements Slots {
+		private static final int SLOT_BYTES = 16;
+		private static final int SLOTS_PER_BUFFER_BITS = 26;
+		private final ByteBuffer[] buffers;
+		private final long capacity;
+
+		DirectSlots(long capacity) {
+			this.capacity = capacity;
+			long slotsPerBuffer = Math.min(capacity,
+					1L << SLOTS_PER_BUFFER_BITS);
+			buffers = new ByteBuffer[(int) (capacity / slotsPerBuffer)];
+			for (int i = 0; i < buffers.length; i++)
+				buffers[i] = ByteBuffer.allocateDirect(
+						(int) slotsPerBuffer * SLOT_BYTES)
+						.order(ByteOrder.nativeOrder());
+		}
+
+		private ByteBuffer buffer(long slot) {
+			return buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)];
+		}
+
+		private static int offset(long slot) {
+			return (int) (slot & ((1L << SLOTS_PER_BUFFER_BITS) - 1))
+					* SLOT_BYTES;
+		}
+
+		@Override
+		public long capacity() {
+			return capacity;
+		}
+
+		@Override
+		public long key(long slot) {
+			return buffer(slot).getLong(offset(slot));
+		}
+
+		@Override
+		public long value(long slot) {
+			return buffer(slot).getLong(offset(slot) + 8);
+		}
+
+		@Override
+		public void set(long slot, long key, long value) {
+			ByteBuffer buffer = buffer(slot);
+			buffer.putLong(offset(slot), key);
+			buffer.putLong(offset(slot) + 8, value);
+		}
+
+		@Override
+		public long bytes() {
+			return SLOT_BYTES * capacity;
+		}
+	}
+
+	private final boolean offHeap;
+	private Slots slots;
+	private long size;
+	private boolean hasFreeKey;
+	private long freeKeyValue;
+
+	/**
+	 * @param expectedSize number of entries which fit without resizing
+	 * @param offHeap whether the entries are kept in direct buffers
+	 */
+	LongLongHashMap(long expectedSize, boolean offHeap) {
+		checkArgument(expectedSize >= 0, "The expected size must not be negative");
+		this.offHeap = offHeap;
+		slots = allocate(capacityFor(expectedSize));
+	}
+
+	private static long capacityFor(long expectedSize) {
+		long capacity = 16;
+		while (capacity * MAX_LOAD < expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private Slots allocate(long capacity) {
+		return offHeap ? new DirectSlots(capacity) : new HeapSlots(capacity);
+	}
+
+	/**
+	 * @return the slot of the key, or the free slot where it belongs
+	 */
+	private long slotOf(long key) {
+		long mask = slots.capacity() - 1;
+		long slot = IndexPermutation.mix(key) & mask;
+		while (true) {
+			long slotKey = slots.key(slot);
+			if (slotKey == key || slotKey == FREE_KEY)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Associates the value with the key, replacing its previous value.
+	 */
+	void put(long key, long value) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return;
+		}
+		long slot = slotOf(key);
+		if (slots.key(slot) == FREE_KEY) {
+			if (size + 1 > slots.capacity() * MAX_LOAD) {
+				resize(slots.capacity() << 1);
+				slot = slotOf(key);
+			}
+			size++;
+		}
+		slots.set(slot, key, value);
+	}
+
+	private void resize(long capacity) {
+		Slots previous = slots;
+		slots = allocate(capacity);
+		for (long slot = 0; slot < previous.capacity(); slot++) {
+			long key = previous.key(slot);
+			if (key != FREE_KEY)
+				slots.set(slotOf(key), key, previous.value(slot));
+		}
+	}
+
+	/**
+	 * @return the value of the key or missingValue if the key has none
+	 */
+	long get(long key, long missingValue) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeKeyValue : missingValue;
+		long slot = slotOf(key);
+		return slots.key(slot) == FREE_KEY ? missingValue : slots.value(slot);
+	}
+
+	boolean containsKey(long key) {
+		if (key == FREE_KEY)
+			return hasFreeKey;
+		return slots.key(slotOf(key)) != FREE_KEY;
+	}
+
+	long size() {
+		return size;
+	}
+
+	boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * @return the bytes allocated for the slots, on or outside of the heap
+	 */
+	long allocatedBytes() {
+		return slots.bytes();
+	}
+}
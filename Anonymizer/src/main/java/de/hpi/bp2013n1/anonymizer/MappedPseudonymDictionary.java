@@ -0,0 +1,311 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.primitives.Longs;
+
+/**
+ * Pseudonyms exported from a pseudonyms table into a local file which is
+ * accessed through memory-mapped buffers. Lookups read the file directly,
+ * so no objects are kept per entry and the operating system's page cache
+ * decides which parts stay in memory.
+ * <p>
+ * The file starts with a header, followed by a hash table of slots and the
+ * entries. Each slot holds the position of an entry relative to the start
+ * of the entries plus one, or zero if it is free. Collisions are resolved
+ * by linear probing. An entry consists of the lengths of the key and the
+ * value followed by their bytes. Keys and values of integer columns are
+ * stored as eight byte numbers, those of character columns in UTF-8.
+ * <p>
+ * A dictionary can be read by several threads concurrently.
+ */
+class MappedPseudonymDictionary {
+
+	private static final int MAGIC = 0x50534431;
+	private static final int HEADER_BYTES = 24;
+	private static final int SLOT_BYTES = 8;
+	/** the file is mapped in buffers of 1 GB, a multiple of the slot size */
+	private static final int BUFFER_BITS = 30;
+	private static final double MAX_LOAD = 0.5;
+
+	private final File file;
+	private final boolean integerKeys;
+	private final long size;
+	private final long capacity;
+	private final long entriesStart;
+	private final MappedByteBuffer[] buffers;
+
+	/**
+	 * Writes a dictionary file. The number of entries must be known in
+	 * advance to size the hash table.
+	 */
+	static class Writer implements Closeable {
+		private final File file;
+		private final boolean integerKeys;
+		private final long capacity;
+		private final RandomAccessFile randomAccessFile;
+		private final MappedByteBuffer[] slotBuffers;
+		private final DataOutputStream entries;
+		private long entriesLength;
+		private long size;
+		private boolean finished;
+
+		Writer(File file, long expectedSize, boolean integerKeys)
+				throws IOException {
+			this.file = file;
+			this.integerKeys = integerKeys;
+			long capacity = 16;
+			while (capacity * MAX_LOAD < expectedSize)
+				capacity <<= 1;
+			this.capacity = capacity;
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				randomAccessFile.setLength(0);
+				long entriesStart = HEADER_BYTES + capacity * SLOT_BYTES;
+				randomAccessFile.setLength(entriesStart);
+				FileChannel channel = randomAccessFile.getChannel();
+				slotBuffers = map(channel, MapMode.READ_WRITE, HEADER_BYTES,
+						capacity * SLOT_BYTES);
+				channel.position(entriesStart);
+				entries = new DataOutputStream(new BufferedOutputStream(
+						Channels.newOutputStream(channel), 1 << 16));
+			} catch (IOException e) {
+				randomAccessFile.close();
+				file.delete();
+				throw e;
+			}
+		}
+
+		void put(String key, String value) throws IOException {
+			checkState(!integerKeys, "The dictionary has integer keys");
+			put(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void put(long key, long value) throws IOException {
+			checkState(integerKeys, "The dictionary has character keys");
+			put(Longs.toByteArray(key), Longs.toByteArray(value));
+		}
+
+		private void put(byte[] key, byte[] value) throws IOException {
+			checkState(size + 1 <= capacity * MAX_LOAD,
+					"More entries than expected have been added to %s", file);
+			long mask = capacity - 1;
+			long slot = hash(key) & mask;
+			while (slotBuffers[bufferIndex(slot * SLOT_BYTES)]
+					.getLong(bufferOffset(slot * SLOT_BYTES)) != 0)
+				slot = (slot + 1) & mask;
+			slotBuffers[bufferIndex(slot * SLOT_BYTES)].putLong(
+					bufferOffset(slot * SLOT_BYTES), entriesLength + 1);
+			entries.writeInt(key.length);
+			entries.writeInt(value.length);
+			entries.write(key);
+			entries.write(value);
+			entriesLength += 8 + key.length + value.length;
+			size++;
+		}
+
+		/**
+		 * Completes the file and opens it for lookups.
+		 */
+		MappedPseudonymDictionary finish() throws IOException {
+			entries.flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(integerKeys ? 1 : 0)
+					.putLong(size).putLong(capacity);
+			// through Buffer, ByteBuffer.flip() does not exist before Java 9
+			((Buffer) header).flip();
+			randomAccessFile.getChannel().write(header, 0);
+			for (MappedByteBuffer slotBuffer : slotBuffers)
+				slotBuffer.force();
+			finished = true;
+			randomAccessFile.close();
+			return open(file);
+		}
+
+		/**
+		 * Deletes the file unless it has been finished.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (finished)
+				return;
+			randomAccessFile.close();
+			file.delete();
+		}
+	}
+
+	private MappedPseudonymDictionary(File file, boolean integerKeys,
+			long size, long capacity, MappedByteBuffer[] buffers) {
+		this.file = file;
+		this.integerKeys = integerKeys;
+		this.size = size;
+		this.capacity = capacity;
+		this.entriesStart = HEADER_BYTES + capacity * SLOT_BYTES;
+		this.buffers = buffers;
+	}
+
+	static MappedPseudonymDictionary open(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			// the mappings stay valid after the file has been closed
+			MappedByteBuffer[] buffers = map(channel, MapMode.READ_ONLY, 0,
+					channel.size());
+			ByteBuffer header = buffers[0];
+			if (channel.size() < HEADER_BYTES || header.getInt(0) != MAGIC)
+				throw new IOException(file + " is no pseudonym dictionary");
+			return new MappedPseudonymDictionary(file, header.getInt(4) == 1,
+					header.getLong(8), header.getLong(16), buffers);
+		}
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, MapMode mode,
+			long start, long length) throws IOException {
+		MappedByteBuffer[] buffers = new MappedByteBuffer[Math.max(1,
+				(int) ((length + (1L << BUFFER_BITS) - 1) >>> BUFFER_BITS))];
+		for (int i = 0; i < buffers.length; i++) {
+			long offset = (long) i << BUFFER_BITS;
+			buffers[i] = channel.map(mode, start + offset,
+					Math.min(1L << BUFFER_BITS, length - offset));
+		}
+		return buffers;
+	}
+
+	private static int bufferIndex(long position) {
+		return (int) (position >>> BUFFER_BITS);
+	}
+
+	private static int bufferOffset(long position) {
+		return (int) (position & ((1L << BUFFER_BITS) - 1));
+	}
+
+	private static long hash(byte[] key) {
+		// FNV-1a, mixed because the slot is taken from the low bits
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return IndexPermutation.mix(hash);
+	}
+
+	private byte byteAt(long position) {
+		return buffers[bufferIndex(position)].get(bufferOffset(position));
+	}
+
+	private int intAt(long position) {
+		if (bufferIndex(position) == bufferIndex(position + 3))
+			return buffers[bufferIndex(position)].getInt(bufferOffset(position));
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+			value = value << 8 | byteAt(position + i) & 0xff;
+		return value;
+	}
+
+	private long longAt(long position) {
+		if (bufferIndex(position) == bufferIndex(position + 7))
+			return buffers[bufferIndex(position)].getLong(bufferOffset(position));
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = value << 8 | byteAt(position + i) & 0xff;
+		return value;
+	}
+
+	/**
+	 * @return the position of the entry's value or -1 if the key has none
+	 */
+	private long find(byte[] key) {
+		long mask = capacity - 1;
+		long slot = hash(key) & mask;
+		while (true) {
+			long entry = longAt(HEADER_BYTES + slot * SLOT_BYTES);
+			if (entry == 0)
+				return -1;
+			long position = entriesStart + entry - 1;
+			if (intAt(position) == key.length && keyEquals(position + 8, key))
+				return position + 8 + key.length;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean keyEquals(long position, byte[] key) {
+		for (int i = 0; i < key.length; i++)
+			if (byteAt(position + i) != key[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the pseudonym of the value or null if it has none
+	 */
+	String get(String key) {
+		checkState(!integerKeys, "The dictionary has integer keys");
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		long position = find(keyBytes);
+		if (position < 0)
+			return null;
+		byte[] value = new byte[intAt(position - keyBytes.length - 4)];
+		for (int i = 0; i < value.length; i++)
+			value[i] = byteAt(position + i);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the pseudonym of the value or missingValue if it has none
+	 */
+	long get(long key, long missingValue) {
+		checkState(integerKeys, "The dictionary has character keys");
+		long position = find(Longs.toByteArray(key));
+		return position < 0 ? missingValue : longAt(position);
+	}
+
+	boolean containsKey(long key) {
+		checkState(integerKeys, "The dictionary has character keys");
+		return find(Longs.toByteArray(key)) >= 0;
+	}
+
+	boolean hasIntegerKeys() {
+		return integerKeys;
+	}
+
+	long size() {
+		return size;
+	}
+
+	File getFile() {
+		return file;
+	}
+}
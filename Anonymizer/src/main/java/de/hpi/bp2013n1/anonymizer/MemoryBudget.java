@@ -0,0 +1,192 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.google.common.primitives.Longs;
+
+/**
+ * Limits the heap used by the caches and bookkeeping structures of a run,
+ * such as the cached pseudonyms, the character mappings, the value
+ * distributions and the keys of deleted rows. The structures register as
+ * consumers and report their growth. When their estimated footprint
+ * exceeds the budget, the largest consumers are told to spill their
+ * contents to temporary files until the footprint is well below the budget
+ * again.
+ * <p>
+ * Footprints are estimated like in the {@link CostPlanner}, so the budget
+ * should leave room for everything else on the heap.
+ */
+public class MemoryBudget {
+
+	/** spilling continues until the footprint is below this share */
+	static final double SPILL_TARGET = 0.8;
+	private static final Logger logger = Logger.getLogger(
+			MemoryBudget.class.getName());
+
+	/**
+	 * A structure whose contents can be moved to disk.
+	 */
+	public interface Consumer {
+		/** @return the estimated bytes on the heap, must not block */
+		long estimatedBytes();
+
+		/**
+		 * Moves the contents to disk as far as possible.
+		 *
+		 * @return the estimated bytes freed on the heap
+		 */
+		long spill() throws IOException;
+	}
+
+	private final long budgetBytes;
+	private final File spillDirectory;
+	private final Set<Consumer> consumers = Collections.newSetFromMap(
+			new ConcurrentHashMap<Consumer, Boolean>());
+	/** growth reported since the footprint has last been checked */
+	private final AtomicLong growthSinceCheck = new AtomicLong();
+	private long checkIntervalBytes;
+	private long spilledBytes;
+	private int spills;
+
+	/**
+	 * @param spillDirectory directory of the temporary files, null for the
+	 * 			default temporary directory
+	 */
+	public MemoryBudget(long budgetBytes, File spillDirectory) {
+		checkArgument(budgetBytes > 0, "The memory budget must be positive");
+		this.budgetBytes = budgetBytes;
+		this.spillDirectory = spillDirectory;
+		checkIntervalBytes = Math.max(budgetBytes / 100, 64 * 1024);
+	}
+
+	/**
+	 * @param percent share of the maximum heap size
+	 */
+	public static MemoryBudget ofMaxHeap(int percent, File spillDirectory) {
+		checkArgument(percent > 0 && percent <= 100,
+				"The share of the heap must be between 1 and 100 percent");
+		return new MemoryBudget(Runtime.getRuntime().maxMemory() / 100
+				* percent, spillDirectory);
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * Sets how much the consumers must grow before the footprint is checked.
+	 */
+	void setCheckIntervalBytes(long checkIntervalBytes) {
+		this.checkIntervalBytes = checkIntervalBytes;
+	}
+
+	public void register(Consumer consumer) {
+		consumers.add(consumer);
+	}
+
+	public void unregister(Consumer consumer) {
+		consumers.remove(consumer);
+	}
+
+	/**
+	 * Reports that a consumer has grown. Must not be called while holding
+	 * a lock which the consumer's {@link Consumer#spill()} needs.
+	 */
+	public void grown(long bytes) {
+		if (growthSinceCheck.addAndGet(bytes) >= checkIntervalBytes) {
+			growthSinceCheck.set(0);
+			enforce();
+		}
+	}
+
+	/**
+	 * @return the estimated footprint of all consumers
+	 */
+	public long estimatedBytes() {
+		long total = 0;
+		for (Consumer consumer : consumers)
+			total += consumer.estimatedBytes();
+		return total;
+	}
+
+	/**
+	 * Spills the largest consumers while the footprint exceeds the budget.
+	 */
+	public synchronized void enforce() {
+		long total = estimatedBytes();
+		if (total <= budgetBytes)
+			return;
+		List<Consumer> bySize = new ArrayList<>(consumers);
+		final Map<Consumer, Long> sizes = new HashMap<>();
+		for (Consumer consumer : bySize)
+			sizes.put(consumer, consumer.estimatedBytes());
+		Collections.sort(bySize, new Comparator<Consumer>() {
+			@Override
+			public int compare(Consumer first, Consumer second) {
+				return Longs.compare(sizes.get(second), sizes.get(first));
+			}
+		});
+		long target = (long) (budgetBytes * SPILL_TARGET);
+		for (Consumer consumer : bySize) {
+			if (total <= target)
+				break;
+			try {
+				long freed = consumer.spill();
+				total -= freed;
+				spilledBytes += freed;
+				spills++;
+			} catch (IOException e) {
+				logger.warning("Could not spill " + consumer + " to disk: "
+						+ e.getMessage());
+			}
+		}
+		logger.info("The memory budget of " + budgetBytes / (1024 * 1024)
+				+ " MB has been exceeded, spilled to disk until "
+				+ total / (1024 * 1024) + " MB remained on the heap.");
+	}
+
+	public synchronized long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	public synchronized int getSpills() {
+		return spills;
+	}
+}
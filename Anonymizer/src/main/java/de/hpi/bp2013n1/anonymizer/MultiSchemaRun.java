@@ -0,0 +1,261 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import de.hpi.bp2013n1.anonymizer.Anonymizer.FatalError;
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+import de.hpi.bp2013n1.anonymizer.shared.Scope;
+
+/**
+ * Anonymizes several schemas with the same rules in one run, e.g. the
+ * schemas of several tenants. Each schema has its own scope and its own
+ * Anonymizer with its own connections to the original, the destination and
+ * the transformation database, so that their transactions do not interfere.
+ * All schemas share the strategy instances, which are created only once and
+ * use the connections of the schema they are called for.
+ * <p>
+ * The schemas are anonymized concurrently up to the configured
+ * parallelism. A schema which fails does not stop the others, its error is
+ * reported in its {@link SchemaResult}.
+ */
+public class MultiSchemaRun {
+	static Logger logger = Logger.getLogger(MultiSchemaRun.class.getName());
+
+	/**
+	 * Applies the options of the run to the Anonymizer of each schema.
+	 */
+	public interface SchemaSetup {
+		void configure(Anonymizer anonymizer);
+	}
+
+	/**
+	 * The outcome of anonymizing one schema.
+	 */
+	public static class SchemaResult {
+		public final String schema;
+		public boolean succeeded;
+		/** null if the schema succeeded */
+		public Throwable error;
+		public long elapsedMillis;
+
+		SchemaResult(String schema) {
+			this.schema = schema;
+		}
+
+		@Override
+		public String toString() {
+			return schema + ": " + (succeeded ? "finished" : "failed"
+					+ (error != null && error.getMessage() != null
+					? " (" + error.getMessage() + ")" : ""))
+					+ " after " + TimeUnit.MILLISECONDS.toSeconds(elapsedMillis)
+					+ " s";
+		}
+	}
+
+	private final Config config;
+	private final Map<String, Scope> scopes;
+	private int parallelism = 1;
+	private SchemaSetup setup;
+
+	/**
+	 * @param config configuration whose rules are applied to every schema,
+	 * 			its schema name is ignored
+	 * @param scopes schema --> tables to anonymize in the schema, in the
+	 * 			order in which the schemas should be started
+	 */
+	public MultiSchemaRun(Config config, Map<String, Scope> scopes) {
+		checkArgument(!scopes.isEmpty(), "At least one schema is required");
+		this.config = config;
+		this.scopes = new LinkedHashMap<>(scopes);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of schemas which are anonymized concurrently.
+	 */
+	public void setParallelism(int parallelism) {
+		checkArgument(parallelism > 0, "At least one schema must be anonymized at a time");
+		this.parallelism = parallelism;
+	}
+
+	public void setSchemaSetup(SchemaSetup setup) {
+		this.setup = setup;
+	}
+
+	/**
+	 * Anonymizes all schemas.
+	 *
+	 * @return schema --> result, in the order of the schemas
+	 * @throws FatalError if the databases or the strategies cannot be set up
+	 */
+	public Map<String, SchemaResult> run() throws FatalError {
+		Iterator<String> schemas = scopes.keySet().iterator();
+		String firstSchema = schemas.next();
+		// creates the strategies which all schemas use
+		Anonymizer strategyOwner = createAnonymizer(firstSchema);
+		try (WorkerConnections connections = openConnections()) {
+			strategyOwner.useDatabases(connections.source,
+					connections.destination, connections.transformation);
+			strategyOwner.loadStrategies();
+			ExecutorService executor = Executors.newFixedThreadPool(
+					Math.min(parallelism, scopes.size()));
+			Map<String, Future<SchemaResult>> futures = new LinkedHashMap<>();
+			try {
+				futures.put(firstSchema, executor.submit(new SchemaTask(
+						firstSchema, strategyOwner, null)));
+				while (schemas.hasNext()) {
+					String schema = schemas.next();
+					futures.put(schema, executor.submit(new SchemaTask(schema,
+							createAnonymizer(schema), strategyOwner)));
+				}
+				return collectResults(futures);
+			} finally {
+				executor.shutdown();
+			}
+		} catch (SQLException e) {
+			logger.severe("Could not connect to the databases: " + e.getMessage());
+			throw new FatalError(e);
+		}
+	}
+
+	private Anonymizer createAnonymizer(String schema) {
+		Anonymizer anonymizer = new Anonymizer(config.forSchema(schema),
+				scopes.get(schema));
+		if (setup != null)
+			setup.configure(anonymizer);
+		return anonymizer;
+	}
+
+	private WorkerConnections openConnections() throws SQLException {
+		WorkerConnections connections = WorkerConnections.open(config);
+		// the Anonymizer manages the transactions of its main connection
+		try {
+			connections.destination.setAutoCommit(true);
+		} catch (SQLException | AbstractMethodError e) {
+			// not severe
+		}
+		return connections;
+	}
+
+	private static void closeQuietly(WorkerConnections connections) {
+		if (connections == null)
+			return;
+		try {
+			connections.close();
+		} catch (SQLException e) {
+			logger.warning("Could not close connections: " + e.getMessage());
+		}
+	}
+
+	private Map<String, SchemaResult> collectResults(
+			Map<String, Future<SchemaResult>> futures) {
+		Map<String, SchemaResult> results = new LinkedHashMap<>();
+		List<String> failedSchemas = new ArrayList<>();
+		for (Map.Entry<String, Future<SchemaResult>> schemaAndFuture : futures.entrySet()) {
+			String schema = schemaAndFuture.getKey();
+			SchemaResult result;
+			try {
+				result = schemaAndFuture.getValue().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result = new SchemaResult(schema);
+				result.error = e;
+			} catch (ExecutionException e) {
+				result = new SchemaResult(schema);
+				result.error = e.getCause();
+			}
+			if (!result.succeeded)
+				failedSchemas.add(schema);
+			results.put(schema, result);
+		}
+		logger.info("Anonymized " + (results.size() - failedSchemas.size())
+				+ " of " + results.size() + " schemas"
+				+ (failedSchemas.isEmpty() ? "." : ", failed: " + failedSchemas));
+		return results;
+	}
+
+	/**
+	 * Anonymizes one schema.
+	 */
+	private class SchemaTask implements Callable<SchemaResult> {
+		private final String schema;
+		private final Anonymizer anonymizer;
+		private final Anonymizer strategyOwner;
+
+		/**
+		 * @param strategyOwner the Anonymizer whose strategies are used,
+		 * 			or null if the anonymizer is connected and owns them
+		 */
+		SchemaTask(String schema, Anonymizer anonymizer,
+				Anonymizer strategyOwner) {
+			this.schema = schema;
+			this.anonymizer = anonymizer;
+			this.strategyOwner = strategyOwner;
+		}
+
+		@Override
+		public SchemaResult call() {
+			SchemaResult result = new SchemaResult(schema);
+			long start = System.currentTimeMillis();
+			logger.info("Started anonymizing schema " + schema + ".");
+			WorkerConnections connections = null;
+			try {
+				if (strategyOwner != null) {
+					connections = openConnections();
+					anonymizer.useDatabases(connections.source,
+							connections.destination, connections.transformation);
+					anonymizer.shareStrategiesOf(strategyOwner);
+				}
+				anonymizer.run();
+				result.succeeded = true;
+			} catch (FatalError | SQLException | RuntimeException e) {
+				result.error = e;
+			} finally {
+				closeQuietly(connections);
+			}
+			result.elapsedMillis = System.currentTimeMillis() - start;
+			if (result.succeeded)
+				logger.info("Finished anonymizing schema " + result);
+			else
+				logger.severe("Anonymizing schema " + result);
+			return result;
+		}
+	}
+}
@@ -46,4 +46,9 @@ public class NoOperationStrategy extends TransformationStrategy {
 		return true;
 	}
 
+	@Override
+	public boolean mightDeleteRows() {
+		return false;
+	}
+
 }
@@ -0,0 +1,90 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A half-open range [lowerBound, upperBound) of the values of a single
+ * primary key column. A null bound means that the range is unbounded on that
+ * side, so the ranges of a partitioning together cover all rows. The lower
+ * bound may be exclusive to continue after the last copied key.
+ */
+class PrimaryKeyRange {
+	/** Range covering all rows of a table, selects without a WHERE clause. */
+	static final PrimaryKeyRange ALL = new PrimaryKeyRange(null, null, null);
+
+	final String column;
+	final Object lowerBound;
+	final Object upperBound;
+	final boolean lowerBoundInclusive;
+
+	PrimaryKeyRange(String column, Object lowerBound, Object upperBound) {
+		this(column, lowerBound, true, upperBound);
+	}
+
+	PrimaryKeyRange(String column, Object lowerBound,
+			boolean lowerBoundInclusive, Object upperBound) {
+		this.column = column;
+		this.lowerBound = lowerBound;
+		this.lowerBoundInclusive = lowerBoundInclusive;
+		this.upperBound = upperBound;
+	}
+
+	/**
+	 * @return an empty string or a WHERE clause with parameter markers for
+	 * 			the bounds, to be appended to a SELECT statement
+	 */
+	String whereClause() {
+		if (lowerBound == null && upperBound == null)
+			return "";
+		StringBuilder where = new StringBuilder(" WHERE ");
+		if (lowerBound != null)
+			where.append(column).append(lowerBoundInclusive ? " >= ?" : " > ?");
+		if (lowerBound != null && upperBound != null)
+			where.append(" AND ");
+		if (upperBound != null)
+			where.append(column).append(" < ?");
+		return where.toString();
+	}
+
+	/**
+	 * Sets the parameters introduced by {@link #whereClause()}.
+	 *
+	 * @return the index of the next parameter
+	 */
+	int setParameters(PreparedStatement statement, int parameterIndex)
+			throws SQLException {
+		if (lowerBound != null)
+			statement.setObject(parameterIndex++, lowerBound);
+		if (upperBound != null)
+			statement.setObject(parameterIndex++, upperBound);
+		return parameterIndex;
+	}
+
+	@Override
+	public String toString() {
+		return (lowerBoundInclusive ? "[" : "(")
+				+ (lowerBound != null ? lowerBound : "") + ", " + (upperBound != null ? upperBound : "") + ")";
+	}
+}
@@ -0,0 +1,168 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Splits a table into disjoint ranges of its primary key so that the ranges
+ * can be copied concurrently. Only tables with a single column primary key
+ * can be partitioned. Integer keys are split into ranges of equal width
+ * between MIN and MAX, other keys are split at quantiles which are sampled
+ * by scanning the ordered key column.
+ */
+class PrimaryKeyRangePartitioner {
+
+	static Logger logger = Logger.getLogger(PrimaryKeyRangePartitioner.class.getName());
+
+	private final Connection database;
+
+	PrimaryKeyRangePartitioner(Connection database) {
+		this.database = database;
+	}
+
+	/**
+	 * @param qualifiedTableName schema and name of the table
+	 * @param primaryKey primary key of the table, may be null
+	 * @param partitions desired number of ranges
+	 * @param rowCount number of rows in the table, used for quantiles
+	 * @return at most partitions ranges which cover the whole table, or a list
+	 * 			containing only {@link PrimaryKeyRange#ALL} if the table
+	 * 			cannot be partitioned
+	 */
+	List<PrimaryKeyRange> partition(String qualifiedTableName,
+			PrimaryKey primaryKey, int partitions, int rowCount)
+					throws SQLException {
+		checkArgument(partitions > 0, "At least one partition is required");
+		if (partitions == 1 || primaryKey == null || primaryKey.keyName == null
+				|| primaryKey.columnNames.size() != 1)
+			return ImmutableList.of(PrimaryKeyRange.ALL);
+		String column = primaryKey.columnNames.get(0);
+		Object min, max;
+		try (Statement statement = database.createStatement();
+				ResultSet minMax = statement.executeQuery(
+						"SELECT MIN(" + column + "), MAX(" + column + ") FROM "
+								+ qualifiedTableName)) {
+			if (!minMax.next())
+				return ImmutableList.of(PrimaryKeyRange.ALL);
+			min = minMax.getObject(1);
+			max = minMax.getObject(2);
+		}
+		if (min == null || Objects.equals(min, max))
+			return ImmutableList.of(PrimaryKeyRange.ALL);
+		List<Object> boundaries;
+		if (isIntegral(min) && isIntegral(max)) {
+			boundaries = equalWidthBoundaries(
+					new BigInteger(min.toString()), new BigInteger(max.toString()),
+					partitions, min);
+		} else {
+			boundaries = sampleQuantiles(qualifiedTableName, column,
+					partitions, rowCount);
+		}
+		return rangesBetween(column, boundaries);
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Integer || value instanceof Long
+				|| value instanceof Short || value instanceof Byte
+				|| value instanceof BigInteger;
+	}
+
+	private static List<Object> equalWidthBoundaries(BigInteger min,
+			BigInteger max, int partitions, Object typeSample) {
+		BigInteger width = max.subtract(min)
+				.divide(BigInteger.valueOf(partitions)).add(BigInteger.ONE);
+		List<Object> boundaries = new ArrayList<>(partitions - 1);
+		BigInteger boundary = min.add(width);
+		while (boundaries.size() < partitions - 1 && boundary.compareTo(max) <= 0) {
+			boundaries.add(sameTypeAs(typeSample, boundary));
+			boundary = boundary.add(width);
+		}
+		return boundaries;
+	}
+
+	private static Object sameTypeAs(Object typeSample, BigInteger value) {
+		if (typeSample instanceof Integer)
+			return value.intValue();
+		if (typeSample instanceof Short)
+			return value.shortValue();
+		if (typeSample instanceof Byte)
+			return value.byteValue();
+		if (typeSample instanceof Long)
+			return value.longValue();
+		return value;
+	}
+
+	private List<Object> sampleQuantiles(String qualifiedTableName,
+			String column, int partitions, int rowCount) throws SQLException {
+		List<Object> boundaries = new ArrayList<>(partitions - 1);
+		if (rowCount < partitions)
+			return boundaries;
+		logger.info("Sampling key quantiles of " + qualifiedTableName);
+		int step = rowCount / partitions;
+		try (Statement statement = database.createStatement()) {
+			statement.setFetchSize(Math.min(step, 10000));
+			try (ResultSet keys = statement.executeQuery("SELECT " + column
+					+ " FROM " + qualifiedTableName + " ORDER BY " + column)) {
+				int row = 0;
+				Object lastBoundary = null;
+				while (boundaries.size() < partitions - 1 && keys.next()) {
+					row++;
+					if (row % step != 0)
+						continue;
+					Object key = keys.getObject(1);
+					if (!Objects.equals(key, lastBoundary)) {
+						boundaries.add(key);
+						lastBoundary = key;
+					}
+				}
+			}
+		}
+		return boundaries;
+	}
+
+	private static List<PrimaryKeyRange> rangesBetween(String column,
+			List<Object> boundaries) {
+		if (boundaries.isEmpty())
+			return ImmutableList.of(PrimaryKeyRange.ALL);
+		List<PrimaryKeyRange> ranges = new ArrayList<>(boundaries.size() + 1);
+		Object lowerBound = null;
+		for (Object boundary : boundaries) {
+			ranges.add(new PrimaryKeyRange(column, lowerBound, boundary));
+			lowerBound = boundary;
+		}
+		ranges.add(new PrimaryKeyRange(column, lowerBound, null));
+		return ranges;
+	}
+}
@@ -0,0 +1,137 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Something that happened during a run, delivered to the
+ * {@link ProgressListener}s of the {@link Anonymizer}. Fields which do not
+ * apply to the type of event are null or -1.
+ */
+public class ProgressEvent {
+
+	public enum Type {
+		RUN_STARTED,
+		RUN_FINISHED,
+		TABLE_STARTED,
+		/** another batch of rows of a table has been processed */
+		BATCH,
+		TABLE_FINISHED,
+		STRATEGY_SET_UP,
+		ERROR
+	}
+
+	public final Type type;
+	public final long timestampMillis = System.currentTimeMillis();
+	public final String schema;
+	public final String table;
+	/** simple class name of the transformation strategy */
+	public final String strategy;
+	/** processed rows of the table or run */
+	public final long rows;
+	/** number of rows of the table or -1 if it is unknown */
+	public final long totalRows;
+	/** false if totalRows is an estimate */
+	public final boolean rowCountExact;
+	public final long elapsedMillis;
+	/** estimated time until the table is finished or -1 if it is unknown */
+	public final long remainingSeconds;
+	public final boolean succeeded;
+	public final String message;
+
+	private ProgressEvent(Type type, String schema, String table,
+			String strategy, long rows, long totalRows, boolean rowCountExact,
+			long elapsedMillis, long remainingSeconds, boolean succeeded,
+			String message) {
+		this.type = type;
+		this.schema = schema;
+		this.table = table;
+		this.strategy = strategy;
+		this.rows = rows;
+		this.totalRows = totalRows;
+		this.rowCountExact = rowCountExact;
+		this.elapsedMillis = elapsedMillis;
+		this.remainingSeconds = remainingSeconds;
+		this.succeeded = succeeded;
+		this.message = message;
+	}
+
+	static ProgressEvent runStarted(String schema) {
+		return new ProgressEvent(Type.RUN_STARTED, schema, null, null, -1, -1,
+				false, 0, -1, true, null);
+	}
+
+	static ProgressEvent runFinished(String schema, long rows,
+			long elapsedMillis, boolean succeeded) {
+		return new ProgressEvent(Type.RUN_FINISHED, schema, null, null, rows,
+				-1, false, elapsedMillis, -1, succeeded, null);
+	}
+
+	static ProgressEvent tableStarted(String schema, String table,
+			long totalRows, boolean rowCountExact) {
+		return new ProgressEvent(Type.TABLE_STARTED, schema, table, null, 0,
+				totalRows, rowCountExact, 0, -1, true, null);
+	}
+
+	static ProgressEvent batch(String schema, String table, long rows,
+			long totalRows, boolean rowCountExact, long elapsedMillis,
+			long remainingSeconds) {
+		return new ProgressEvent(Type.BATCH, schema, table, null, rows,
+				totalRows, rowCountExact, elapsedMillis, remainingSeconds, true,
+				null);
+	}
+
+	static ProgressEvent tableFinished(String schema, String table, long rows,
+			long totalRows, boolean rowCountExact, long elapsedMillis,
+			boolean succeeded) {
+		return new ProgressEvent(Type.TABLE_FINISHED, schema, table, null,
+				rows, totalRows, rowCountExact, elapsedMillis, -1, succeeded,
+				null);
+	}
+
+	static ProgressEvent strategySetUp(String schema, String strategy,
+			int rules, long elapsedMillis) {
+		return new ProgressEvent(Type.STRATEGY_SET_UP, schema, null, strategy,
+				-1, -1, false, elapsedMillis, -1, true, rules + " rules");
+	}
+
+	static ProgressEvent error(String schema, String table, String message) {
+		return new ProgressEvent(Type.ERROR, schema, table, null, -1, -1,
+				false, 0, -1, false, message);
+	}
+
+	/**
+	 * @return whether the event may be dropped if the listeners cannot keep
+	 * 			up, because many more of its kind follow. Errors are always
+	 * 			delivered.
+	 */
+	boolean isFrequent() {
+		return type == Type.BATCH;
+	}
+
+	@Override
+	public String toString() {
+		return type + (schema != null ? " " + schema : "")
+				+ (table != null ? "." + table : "")
+				+ (strategy != null ? " " + strategy : "")
+				+ (rows >= 0 ? " rows=" + rows : "")
+				+ (message != null ? ": " + message : "");
+	}
+}
@@ -0,0 +1,173 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers {@link ProgressEvent}s to the listeners on a daemon thread. Events
+ * are only queued while there are listeners. Frequent events are dropped
+ * when too many of them are waiting, so that publishing never blocks.
+ * <p>
+ * The thread is started by the first event and stopped by {@link #close()}.
+ * Events published after closing start a new one, so Anonymizers which run
+ * one after another or concurrently can share a dispatcher.
+ */
+class ProgressEventDispatcher {
+
+	static final int MAX_PENDING_FREQUENT_EVENTS = 1000;
+	private static final Logger logger = Logger.getLogger(
+			ProgressEventDispatcher.class.getName());
+	private static final ProgressEvent STOP = ProgressEvent.error(null, null,
+			"stop delivery");
+
+	private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+	private final BlockingQueue<ProgressEvent> queue = new LinkedBlockingQueue<>();
+	private final AtomicInteger pendingFrequentEvents = new AtomicInteger();
+	/** published but not yet delivered events */
+	private final AtomicInteger undelivered = new AtomicInteger();
+	private final AtomicLong droppedEvents = new AtomicLong();
+	private Thread thread;
+	/** closed thread which may still be delivering events */
+	private Thread stoppingThread;
+
+	void addListener(ProgressListener listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(ProgressListener listener) {
+		listeners.remove(listener);
+	}
+
+	boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	void publish(ProgressEvent event) {
+		if (listeners.isEmpty())
+			return;
+		if (event.isFrequent() && pendingFrequentEvents.incrementAndGet()
+				> MAX_PENDING_FREQUENT_EVENTS) {
+			pendingFrequentEvents.decrementAndGet();
+			droppedEvents.incrementAndGet();
+			return;
+		}
+		startIfNecessary();
+		undelivered.incrementAndGet();
+		queue.add(event);
+	}
+
+	/**
+	 * @return the number of frequent events which were dropped
+	 */
+	long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * Waits until the events published so far have been delivered.
+	 * 
+	 * @return false if the timeout has elapsed before
+	 */
+	synchronized boolean flush(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (undelivered.get() > 0) {
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(
+					deadline - System.nanoTime());
+			if (remainingMillis <= 0)
+				return false;
+			wait(remainingMillis);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the delivery thread after it has delivered the events published
+	 * so far. Does not wait for it, call {@link #flush(long)} before.
+	 */
+	synchronized void close() {
+		if (thread == null)
+			return;
+		queue.add(STOP);
+		stoppingThread = thread;
+		thread = null;
+	}
+
+	private synchronized void startIfNecessary() {
+		if (thread != null)
+			return;
+		final Thread previous = stoppingThread;
+		stoppingThread = null;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// keeps the order of the events and lets the previous
+				// thread take its stop marker
+				if (previous != null) {
+					try {
+						previous.join();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				dispatch();
+			}
+		}, "anonymizer-progress-events");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void dispatch() {
+		while (true) {
+			ProgressEvent event;
+			try {
+				event = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (event == STOP)
+				return;
+			for (ProgressListener listener : listeners) {
+				try {
+					listener.progressed(event);
+				} catch (RuntimeException e) {
+					logger.log(Level.WARNING, "Progress listener " + listener
+							+ " failed on " + event, e);
+				}
+			}
+			if (event.isFrequent())
+				pendingFrequentEvents.decrementAndGet();
+			undelivered.decrementAndGet();
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+}
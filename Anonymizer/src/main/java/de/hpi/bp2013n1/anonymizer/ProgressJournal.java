@@ -0,0 +1,222 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Records the progress of a run in the transformation database so that an
+ * interrupted run can be resumed. For every table the journal holds one entry
+ * per lane (primary key range) with the bounds of the range, the last primary
+ * key whose row has been committed to the destination database and whether
+ * the lane has been finished.
+ * <p>
+ * Keys are stored as strings and compared by the database after an implicit
+ * conversion to the type of the key column.
+ */
+public class ProgressJournal {
+
+	static final String JOURNAL_TABLE = "ANONYMIZER_PROGRESS";
+	static final int MAX_KEY_LENGTH = 254;
+
+	/**
+	 * The recorded progress of one lane of a table.
+	 */
+	static class LaneCheckpoint {
+		final int lane;
+		final String rangeStart;
+		final String rangeEnd;
+		final String lastKey;
+		final boolean finished;
+
+		LaneCheckpoint(int lane, String rangeStart, String rangeEnd,
+				String lastKey, boolean finished) {
+			this.lane = lane;
+			this.rangeStart = rangeStart;
+			this.rangeEnd = rangeEnd;
+			this.lastKey = lastKey;
+			this.finished = finished;
+		}
+
+		/**
+		 * @return the part of the lane's range which has not been committed
+		 */
+		PrimaryKeyRange remainingRange(String keyColumn) {
+			if (lastKey != null)
+				return new PrimaryKeyRange(keyColumn, lastKey, false, rangeEnd);
+			return new PrimaryKeyRange(keyColumn, rangeStart, rangeEnd);
+		}
+	}
+
+	/**
+	 * The recorded progress of a table.
+	 */
+	static class TableCheckpoint {
+		final String table;
+		final SortedMap<Integer, LaneCheckpoint> lanes = new TreeMap<>();
+
+		TableCheckpoint(String table) {
+			this.table = table;
+		}
+
+		boolean isFinished() {
+			for (LaneCheckpoint lane : lanes.values()) {
+				if (!lane.finished)
+					return false;
+			}
+			return !lanes.isEmpty();
+		}
+	}
+
+	private final Connection database;
+	private final String qualifiedJournalName;
+	private final String schema;
+
+	public ProgressJournal(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedJournalName = schema + "." + JOURNAL_TABLE;
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		SQLHelper.createTableIfNotExists(database, schema, JOURNAL_TABLE,
+				"TABLE_NAME VARCHAR(128) NOT NULL, LANE INT NOT NULL, "
+					+ "RANGE_START VARCHAR(" + MAX_KEY_LENGTH + "), "
+					+ "RANGE_END VARCHAR(" + MAX_KEY_LENGTH + "), "
+					+ "LAST_KEY VARCHAR(" + MAX_KEY_LENGTH + "), "
+					+ "FINISHED SMALLINT NOT NULL, "
+					+ "PRIMARY KEY (TABLE_NAME, LANE)");
+	}
+
+	/**
+	 * Forgets the progress of previous runs.
+	 */
+	public synchronized void clear() throws SQLException {
+		try (Statement delete = database.createStatement()) {
+			delete.executeUpdate("DELETE FROM " + qualifiedJournalName);
+		}
+		commit();
+	}
+
+	synchronized Map<String, TableCheckpoint> load() throws SQLException {
+		Map<String, TableCheckpoint> checkpoints = new HashMap<>();
+		try (Statement select = database.createStatement();
+				ResultSet entries = select.executeQuery("SELECT TABLE_NAME, "
+						+ "LANE, RANGE_START, RANGE_END, LAST_KEY, FINISHED "
+						+ "FROM " + qualifiedJournalName)) {
+			while (entries.next()) {
+				String table = entries.getString(1);
+				TableCheckpoint checkpoint = checkpoints.get(table);
+				if (checkpoint == null) {
+					checkpoint = new TableCheckpoint(table);
+					checkpoints.put(table, checkpoint);
+				}
+				int lane = entries.getInt(2);
+				checkpoint.lanes.put(lane, new LaneCheckpoint(lane,
+						entries.getString(3), entries.getString(4),
+						entries.getString(5), entries.getInt(6) != 0));
+			}
+		}
+		return Collections.unmodifiableMap(checkpoints);
+	}
+
+	/**
+	 * Records that the table is copied from scratch in the specified ranges,
+	 * replacing earlier entries of the table.
+	 */
+	synchronized void tableStarted(String table, List<PrimaryKeyRange> ranges)
+			throws SQLException {
+		try (PreparedStatement delete = database.prepareStatement(
+				"DELETE FROM " + qualifiedJournalName + " WHERE TABLE_NAME = ?")) {
+			delete.setString(1, table);
+			delete.executeUpdate();
+		}
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT INTO " + qualifiedJournalName + " (TABLE_NAME, LANE, "
+						+ "RANGE_START, RANGE_END, LAST_KEY, FINISHED) "
+						+ "VALUES (?, ?, ?, ?, NULL, 0)")) {
+			for (int lane = 0; lane < ranges.size(); lane++) {
+				PrimaryKeyRange range = ranges.get(lane);
+				insert.setString(1, table);
+				insert.setInt(2, lane);
+				insert.setString(3, keyToString(range.lowerBound));
+				insert.setString(4, keyToString(range.upperBound));
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		commit();
+	}
+
+	/**
+	 * Records that all rows of the lane up to and including lastKey have been
+	 * committed to the destination database.
+	 */
+	synchronized void rangeCommitted(String table, int lane, Object lastKey)
+			throws SQLException {
+		String key = keyToString(lastKey);
+		if (key != null && key.length() > MAX_KEY_LENGTH)
+			return; // cannot be recorded, resuming restarts earlier
+		try (PreparedStatement update = database.prepareStatement(
+				"UPDATE " + qualifiedJournalName + " SET LAST_KEY = ? "
+						+ "WHERE TABLE_NAME = ? AND LANE = ?")) {
+			update.setString(1, key);
+			update.setString(2, table);
+			update.setInt(3, lane);
+			update.executeUpdate();
+		}
+		commit();
+	}
+
+	synchronized void rangeFinished(String table, int lane) throws SQLException {
+		try (PreparedStatement update = database.prepareStatement(
+				"UPDATE " + qualifiedJournalName + " SET FINISHED = 1 "
+						+ "WHERE TABLE_NAME = ? AND LANE = ?")) {
+			update.setString(1, table);
+			update.setInt(2, lane);
+			update.executeUpdate();
+		}
+		commit();
+	}
+
+	private static String keyToString(Object key) {
+		return key != null ? key.toString() : null;
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
@@ -0,0 +1,32 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives the {@link ProgressEvent}s of a run. Events are delivered one at a
+ * time on a separate thread, so a slow listener does not delay copying, but
+ * batch and error events are dropped while it lags behind.
+ * 
+ * @see Anonymizer#addProgressListener(ProgressListener)
+ */
+public interface ProgressListener {
+	void progressed(ProgressEvent event);
+}
@@ -23,6 +23,11 @@ package de.hpi.bp2013n1.anonymizer;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.security.SecureRandom;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -31,17 +36,33 @@ import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.math.IntMath;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import de.hpi.bp2013n1.anonymizer.db.ColumnDatatypeDescription;
 import de.hpi.bp2013n1.anonymizer.db.TableField;
@@ -55,10 +76,30 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 
 	static Logger logger = Logger.getLogger(PseudonymizeStrategy.class.getName());
 	static final int NUMBER_OF_AVAILABLE_CHARS = 2 * 26 + 10;
+	/** new pseudonyms inserted at once during the set up */
+	static final int PSEUDONYMS_CHUNK_SIZE = 10000;
+	/** values looked up with one query */
+	static final int LOOKUP_BATCH_SIZE = 500;
+	/** looked up pseudonyms kept per rule unless configured otherwise */
+	static final int DEFAULT_LOOKUP_CACHE_SIZE = 10000;
 	char[] shuffledCharPool = shuffledChars();
 	char[] shuffledNumbersPool = shuffledNumberArray();
-	Map<Rule, Map<String, String>> cachedTransformations = Maps.newHashMap();
-	private Map<Rule, PseudonymsTableProxy> pseudonymTables = Maps.newHashMap();
+	Map<Rule, Map<String, String>> cachedTransformations = new ConcurrentHashMap<>();
+	/** cached pseudonyms of rules on integer columns */
+	Map<Rule, LongLongHashMap> cachedIntegerTransformations = new ConcurrentHashMap<>();
+	/** pseudonyms exported to dictionary files, kept for the whole run */
+	Map<Rule, MappedPseudonymDictionary> mappedTransformations = new ConcurrentHashMap<>();
+	/** recently looked up pseudonyms, absent if a value has none */
+	private Map<Rule, LoadingCache<String, Optional<String>>> lookupCaches =
+			new ConcurrentHashMap<>();
+	private final AtomicLong batchedLookups = new AtomicLong();
+	private final AtomicLong singleLookups = new AtomicLong();
+	/** number of prepared tables which currently use the cached pseudonyms of a rule */
+	private Map<Rule, Integer> cachedTransformationUsers = Maps.newHashMap();
+	private Map<Rule, PseudonymsTableProxy> pseudonymTables = new ConcurrentHashMap<>();
+	/** rule --> largest value of its integer column in keyed mode */
+	private Map<Rule, Long> keyedMaxValues = new ConcurrentHashMap<>();
+	private Map<Rule, byte[]> keyedTweaks = new ConcurrentHashMap<>();
 	PreparedStatement newDBStmt;
 	
 	public static class PseudonymsTableProxy {
@@ -83,16 +124,24 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		public TableField getTableSite() {
 			return tableSpec;
 		}
+
+		/**
+		 * @return the connection to the transformation database which the
+		 * 			current thread uses, see {@link StrategyConnections}
+		 */
+		private Connection database() {
+			return StrategyConnections.transformationDatabase(database);
+		}
 		
 		public boolean exists() throws SQLException {
-			try (ResultSet tableResult = database.getMetaData().getTables(
+			try (ResultSet tableResult = database().getMetaData().getTables(
 					null, tableSpec.schema, tableSpec.table, new String[] { "TABLE" })) {
 				return tableResult.next();
 			}
 		}
 
 		public void create() throws TransformationTableCreationException {
-			try (Statement createTableStatement = database.createStatement()) {
+			try (Statement createTableStatement = database().createStatement()) {
 				createTableStatement.executeUpdate("CREATE TABLE "
 						+ tableSpec.schemaTable() + " "
 						+ "( " + OLDVALUE + " " + columnType.toSQLString() + " NOT NULL, "
@@ -114,7 +163,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		public <T> Map<T, T> fetch() throws SQLException {
 			HashMap<T, T> existingPseudonyms = new HashMap<>();
 			try (PreparedStatement selectExistingPseudonymsStatement =
-					database.prepareStatement(
+					database().prepareStatement(
 							"SELECT " + OLDVALUE + ", " + NEWVALUE + " FROM "
 									+ tableSpec.schemaTable())) {
 				try (ResultSet existingPseudonymsResultSet =
@@ -130,9 +179,16 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		}
 		
 		public Map<String, String> fetchStrings() throws SQLException {
-			HashMap<String, String> existingPseudonyms = new HashMap<>();
+			return fetchStrings(new HashMap<String, String>());
+		}
+
+		/**
+		 * Puts all pseudonyms of strings into the given map.
+		 */
+		public Map<String, String> fetchStrings(
+				Map<String, String> existingPseudonyms) throws SQLException {
 			try (PreparedStatement selectExistingPseudonymsStatement =
-					database.prepareStatement(
+					database().prepareStatement(
 							"SELECT TRIM(TRAILING ' ' FROM " + OLDVALUE + "), "
 									+ "TRIM(TRAILING ' ' FROM " + NEWVALUE + ") "
 									+ "FROM "
@@ -149,9 +205,62 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 			return existingPseudonyms;
 		}
 		
+		/**
+		 * Puts all pseudonyms of integers into the given map.
+		 */
+		void fetchLongs(LongLongHashMap existingPseudonyms)
+				throws SQLException {
+			try (PreparedStatement selectExistingPseudonymsStatement =
+					database().prepareStatement(
+							"SELECT " + OLDVALUE + ", " + NEWVALUE + " FROM "
+									+ tableSpec.schemaTable())) {
+				try (ResultSet existingPseudonymsResultSet =
+						selectExistingPseudonymsStatement.executeQuery()) {
+					while (existingPseudonymsResultSet.next()) {
+						existingPseudonyms.put(
+								existingPseudonymsResultSet.getLong(1),
+								existingPseudonymsResultSet.getLong(2));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Writes all pseudonyms into a dictionary file, as numbers if the
+		 * dictionary has integer keys and as strings otherwise.
+		 */
+		void exportTo(MappedPseudonymDictionary.Writer dictionary,
+				boolean integerKeys) throws SQLException, IOException {
+			String selectQuery = integerKeys
+					? "SELECT " + OLDVALUE + ", " + NEWVALUE
+					: "SELECT TRIM(TRAILING ' ' FROM " + OLDVALUE + "), "
+							+ "TRIM(TRAILING ' ' FROM " + NEWVALUE + ")";
+			try (PreparedStatement selectStatement = database().prepareStatement(
+					selectQuery + " FROM " + tableSpec.schemaTable());
+					ResultSet resultSet = selectStatement.executeQuery()) {
+				while (resultSet.next()) {
+					if (resultSet.getObject(1) == null)
+						continue;
+					if (integerKeys)
+						dictionary.put(resultSet.getLong(1), resultSet.getLong(2));
+					else
+						dictionary.put(resultSet.getString(1), resultSet.getString(2));
+				}
+			}
+		}
+
+		public long count() throws SQLException {
+			try (PreparedStatement countStatement = database().prepareStatement(
+					"SELECT COUNT(*) FROM " + tableSpec.schemaTable());
+					ResultSet resultSet = countStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+
 		@SuppressWarnings("unchecked")
 		public <T> T fetchOne(T originalValue) throws SQLException, TransformationKeyNotFoundException {
-			try (PreparedStatement selectStatement = database.prepareStatement(
+			try (PreparedStatement selectStatement = database().prepareStatement(
 					"SELECT " + NEWVALUE + " FROM " + tableSpec.schemaTable()
 					+ " WHERE " + OLDVALUE + " = ?")) {
 				if (originalValue instanceof String || originalValue instanceof Character)
@@ -168,8 +277,36 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 			}
 		}
 
+		/**
+		 * Looks up the pseudonyms of several strings with as few queries as
+		 * possible. Values without pseudonym are missing in the result.
+		 */
+		public Map<String, String> fetchStrings(Collection<String> originalValues)
+				throws SQLException {
+			Map<String, String> pseudonyms = new HashMap<>();
+			for (List<String> batch : Iterables.partition(originalValues,
+					LOOKUP_BATCH_SIZE)) {
+				try (PreparedStatement selectStatement = database().prepareStatement(
+						"SELECT TRIM(TRAILING ' ' FROM " + OLDVALUE + "), "
+								+ "TRIM(TRAILING ' ' FROM " + NEWVALUE + ") "
+								+ "FROM " + tableSpec.schemaTable()
+								+ " WHERE " + OLDVALUE + " IN ("
+								+ Joiner.on(',').join(Collections.nCopies(
+										batch.size(), "?")) + ")")) {
+					for (int i = 0; i < batch.size(); i++)
+						selectStatement.setString(i + 1, batch.get(i));
+					try (ResultSet resultSet = selectStatement.executeQuery()) {
+						while (resultSet.next())
+							pseudonyms.put(resultSet.getString(1),
+									resultSet.getString(2));
+					}
+				}
+			}
+			return pseudonyms;
+		}
+
 		public String fetchOneString(String originalValue) throws SQLException, TransformationKeyNotFoundException {
-			try (PreparedStatement selectStatement = database.prepareStatement(
+			try (PreparedStatement selectStatement = database().prepareStatement(
 					"SELECT TRIM(TRAILING ' ' FROM " + NEWVALUE + ") "
 							+ "FROM " + tableSpec.schemaTable()
 							+ " WHERE " + OLDVALUE + " = ?")) {
@@ -189,7 +326,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 			int maximalLength = columnType.length;
 			String insertQuery = "INSERT INTO " + tableSpec.schemaTable()
 					+ " VALUES (?,?)";
-			try (PreparedStatement newDBStmt = database.prepareStatement(insertQuery)) {
+			try (PreparedStatement newDBStmt = database().prepareStatement(insertQuery)) {
 				for (T1 newValue : newMapping.keySet()) {
 					if (newValue == null) {
 						continue;
@@ -206,7 +343,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 				}
 				newDBStmt.executeBatch();
 			}
-			database.commit();
+			database().commit();
 		}
 
 		public ColumnDatatypeDescription getColumnType() {
@@ -214,7 +351,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		}
 
 		public void drop() throws SQLException {
-			try (PreparedStatement dropStatement = database.prepareStatement(
+			try (PreparedStatement dropStatement = database().prepareStatement(
 					"DROP TABLE " + tableSpec.schemaTable())) {
 				dropStatement.executeUpdate();
 			}
@@ -226,11 +363,92 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		super(anonymizer, origDB, translateDB);
 	}
 
+	/**
+	 * @return the pseudonymizer of the keyed mode, or null if the pseudonyms
+	 * 			are stored in pseudonyms tables
+	 */
+	KeyedPseudonymizer keyedPseudonymizer() {
+		return options().getKeyedPseudonymizer();
+	}
+
+	/**
+	 * In keyed mode, the pseudonyms are derived from a secret key with
+	 * format-preserving encryption, see {@link KeyedPseudonymizer}. No
+	 * pseudonyms tables are created or read then.
+	 * 
+	 * @see AnonymizerOptions#setPseudonymKey(byte[])
+	 */
+	public boolean isKeyed() {
+		return keyedPseudonymizer() != null;
+	}
+
 	@Override
 	public void setUpTransformation(Collection<Rule> rules)
 			throws TransformationKeyCreationException, TransformationTableCreationException, ColumnTypeNotSupportedException {
-		for (Rule configRule : rules)
-			setUpTransformation(configRule);
+		for (Rule configRule : rules) {
+			if (isKeyed())
+				setUpKeyedTransformation(configRule);
+			else
+				setUpTransformation(configRule);
+		}
+	}
+
+	/**
+	 * Only determines the range of integer columns, there is nothing else to
+	 * prepare in keyed mode.
+	 */
+	private void setUpKeyedTransformation(Rule rule)
+			throws TransformationKeyCreationException,
+			ColumnTypeNotSupportedException {
+		ColumnDatatypeDescription datatype;
+		try {
+			datatype = ColumnDatatypeDescription.fromMetaData(
+					rule.getTableField(), originalDatabase());
+		} catch (SQLException e) {
+			throw new TransformationKeyCreationException(
+					"Could not determine the type of " + rule.getTableField(), e);
+		}
+		if (SQLTypes.isIntegerType(datatype.type))
+			keyedMaxValues.put(rule, maxValue(datatype.type));
+		else if (!SQLTypes.isCharacterType(datatype.type))
+			throw new ColumnTypeNotSupportedException(
+					"Column type is not supported for pseudonymization: "
+							+ datatype);
+	}
+
+	private static long maxValue(int integerType) {
+		switch (integerType) {
+		case Types.TINYINT:
+			return Byte.MAX_VALUE;
+		case Types.SMALLINT:
+			return Short.MAX_VALUE;
+		case Types.INTEGER:
+			return Integer.MAX_VALUE;
+		default:
+			return Long.MAX_VALUE;
+		}
+	}
+
+	private static long maxValue(Number value) {
+		if (value instanceof Byte)
+			return Byte.MAX_VALUE;
+		if (value instanceof Short)
+			return Short.MAX_VALUE;
+		if (value instanceof Integer)
+			return Integer.MAX_VALUE;
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Dependants share the tweak of their rule, so their pseudonyms match.
+	 */
+	private byte[] keyedTweak(Rule rule) {
+		byte[] tweak = keyedTweaks.get(rule);
+		if (tweak == null) {
+			tweak = KeyedPseudonymizer.tweak(rule.getTableField().toString());
+			keyedTweaks.put(rule, tweak);
+		}
+		return tweak;
 	}
 	
 	public void setUpTransformation(Rule rule)
@@ -244,7 +462,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 			originTableFieldDatatype =
 				ColumnDatatypeDescription.fromMetaData(
 						originTableField,
-						originalDatabase);
+						originalDatabase());
 			pseudonymsTable = getPseudonymsTableFor(originTableField, originTableFieldDatatype);
 			pseudonymsTable.createIfNotExists();
 		} catch (SQLException e1) {
@@ -252,17 +470,18 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 					+ "the creation of a pseudonyms table due to SQL errors", e1);
 		}
 		pseudonymTables.put(rule, pseudonymsTable);
+		lookupCaches.remove(rule);
 		try {
 			boolean isStringAttribute = SQLTypes.isCharacterType(originTableFieldDatatype.type);
 			String distinctValuesQuery = distinctValuesQuery(rule, isStringAttribute);
 			String countDistinctValuesQuery = countDistinctValuesQuery(distinctValuesQuery);
 
-			int numberOfDistinctValues;
-			try (Statement statement = originalDatabase.createStatement();
+			long numberOfDistinctValues;
+			try (Statement statement = originalDatabase().createStatement();
 					ResultSet countDistinctValuesResultSet =
 							statement.executeQuery(countDistinctValuesQuery)) {
 				countDistinctValuesResultSet.next();
-				numberOfDistinctValues = countDistinctValuesResultSet.getInt(1);
+				numberOfDistinctValues = countDistinctValuesResultSet.getLong(1);
 			}
 			
 			@SuppressWarnings("rawtypes")
@@ -271,14 +490,15 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 				existingPseudonyms = pseudonymsTable.fetchStrings();
 			else
 				existingPseudonyms = pseudonymsTable.fetch();
-			Set<Object> newValues = determinateNewValuesInDatabase(existingPseudonyms, distinctValuesQuery);
-			List<String> randomValues = new PseudonymGenerator().
-					createNewPseudonyms(rule, originTableFieldDatatype, numberOfDistinctValues);
-			randomValues.removeAll(existingPseudonyms.values());
-
-			Map<Object, String> newMapping =
-					PseudonymGenerator.createNewRandomMap(newValues, randomValues);
-			pseudonymsTable.insertNewPseudonyms(newMapping);
+			Set<String> usedPseudonyms = new HashSet<>();
+			for (Object pseudonym : existingPseudonyms.values())
+				usedPseudonyms.add(isStringAttribute ? (String) pseudonym
+						: PseudonymGenerator.canonicalInteger(pseudonym.toString()));
+			Iterator<String> pseudonyms = new PseudonymGenerator()
+					.createPseudonymSequence(rule, originTableFieldDatatype,
+							numberOfDistinctValues, usedPseudonyms);
+			insertPseudonymsForNewValues(pseudonymsTable, existingPseudonyms,
+					distinctValuesQuery, pseudonyms);
 		} catch (SQLException e) {
 			throw new TransformationKeyCreationException(
 					"An SQL error occurred when creating pseudonyms.", e);
@@ -302,29 +522,47 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		originTableFieldDatatype =
 				ColumnDatatypeDescription.fromMetaData(
 						originTableField,
-						originalDatabase);
+						originalDatabase());
 		PseudonymsTableProxy pseudonymsTableForRule =
 				getPseudonymsTableFor(originTableField, originTableFieldDatatype);
 		pseudonymTables.put(rule, pseudonymsTableForRule);
 		return pseudonymsTableForRule;
 	}
 	
-	private Set<Object> determinateNewValuesInDatabase(
+	/**
+	 * Assigns the next pseudonyms to the values which do not have one yet
+	 * while streaming them from the original database. The new pseudonyms
+	 * are inserted in chunks, so only one chunk is kept in memory.
+	 */
+	private void insertPseudonymsForNewValues(
+			PseudonymsTableProxy pseudonymsTable,
 			@SuppressWarnings("rawtypes") Map existingPseudonyms,
-			String distinctValuesQuery) throws SQLException {
-		HashSet<Object> newValues = new HashSet<Object>();
-		
-		try (Statement statement = originalDatabase.createStatement();
+			String distinctValuesQuery, Iterator<String> pseudonyms)
+					throws SQLException, TransformationKeyCreationException {
+		Map<Object, String> newMapping = Maps.newHashMap();
+		try (Statement statement = originalDatabase().createStatement();
 				ResultSet distinctValuesResultSet =
 						statement.executeQuery(distinctValuesQuery)) {
 			while (distinctValuesResultSet.next()) {
 				Object originalValue = distinctValuesResultSet.getObject(1);
-				if (!existingPseudonyms.containsKey(originalValue)) {
-					newValues.add(originalValue);
+				if (originalValue == null
+						|| existingPseudonyms.containsKey(originalValue))
+					continue;
+				if (!pseudonyms.hasNext())
+					throw new TransformationKeyCreationException(
+							"Ran out of pseudonyms for "
+									+ pseudonymsTable.getTableSite()
+									+ ", all pseudonyms of the required "
+									+ "length are in use.");
+				newMapping.put(originalValue, pseudonyms.next());
+				if (newMapping.size() >= PSEUDONYMS_CHUNK_SIZE) {
+					pseudonymsTable.insertNewPseudonyms(newMapping);
+					newMapping.clear();
 				}
 			}
 		}
-		return newValues;
+		if (!newMapping.isEmpty())
+			pseudonymsTable.insertNewPseudonyms(newMapping);
 	}
 	
 	private static final String DISTINCT_VALUES_ALIAS = "distinctValues";
@@ -378,34 +616,77 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		private char[] shuffledCharPool = shuffledChars();
 		private char[] shuffledNumbersPool = shuffledNumberArray();
 
-		public List<String> createNewPseudonyms(Rule rule,
+		/**
+		 * Returns pseudonyms for up to numberOfDistinctValues values in a
+		 * random order, without those which are already in use. The
+		 * pseudonyms are drawn from a random permutation of all pseudonyms
+		 * of the required length, so each one takes constant time and
+		 * memory.
+		 * 
+		 * @param usedPseudonyms pseudonyms to skip, integers in their
+		 * 			{@link #canonicalInteger(String) canonical} form
+		 */
+		public Iterator<String> createPseudonymSequence(Rule rule,
 				ColumnDatatypeDescription originTableFieldDatatype,
-				int numberOfDistinctValues) throws ColumnTypeNotSupportedException {
-			ArrayList<String> randomValues = null;
-			int requiredLength = (int) Math.ceil((Math.log(numberOfDistinctValues)
-					/ Math.log(NUMBER_OF_AVAILABLE_CHARS)));
-			switch (originTableFieldDatatype.type) {
-			case Types.CHAR:
-			case Types.VARCHAR:
-			case Types.NCHAR:
-			case Types.NVARCHAR:
-			case Types.LONGVARCHAR:
-			case Types.LONGNVARCHAR:
-				randomValues = createRandomPseudonyms(numberOfDistinctValues,
-						requiredLength, rule.getAdditionalInfo());
-				break;
-			case Types.TINYINT:
-			case Types.SMALLINT:
-			case Types.INTEGER:
-			case Types.BIGINT:
-				randomValues = createIntegers(numberOfDistinctValues, requiredLength);
-				break;
-			default:
+				long numberOfDistinctValues, final Set<String> usedPseudonyms)
+						throws ColumnTypeNotSupportedException {
+			final boolean integers;
+			if (SQLTypes.isCharacterType(originTableFieldDatatype.type))
+				integers = false;
+			else if (SQLTypes.isIntegerType(originTableFieldDatatype.type))
+				integers = true;
+			else
 				throw new ColumnTypeNotSupportedException(
 						"Column type is not supported for pseudonymization: "
 								+ originTableFieldDatatype);
+			int radix = integers ? 10 : NUMBER_OF_AVAILABLE_CHARS;
+			// integers need at least one digit, strings may consist of the prefix
+			final int length = Math.max(integers ? 1 : 0,
+					requiredLength(numberOfDistinctValues, radix));
+			final String prefix = integers ? "" : rule.getAdditionalInfo();
+			long domainSize = 1;
+			for (int i = 0; i < length; i++)
+				domainSize = LongMath.checkedMultiply(domainSize, radix);
+			final IndexPermutation permutation = new IndexPermutation(
+					domainSize, new SecureRandom());
+			return new AbstractIterator<String>() {
+				private long position = 0;
+
+				@Override
+				protected String computeNext() {
+					while (position < permutation.size()) {
+						long index = permutation.apply(position++);
+						String pseudonym = integers
+								? canonicalInteger(createInteger(index, length))
+								: createPseudonym(index, length, prefix);
+						if (!usedPseudonyms.contains(pseudonym))
+							return pseudonym;
+					}
+					return endOfData();
+				}
+			};
+		}
+
+		/**
+		 * @return the smallest length of pseudonyms over the radix of which
+		 * 			there are at least count, but at most the length whose
+		 * 			number of pseudonyms still fits into a long
+		 */
+		static int requiredLength(long count, int radix) {
+			int length = 0;
+			long pseudonyms = 1;
+			while (pseudonyms < count && pseudonyms <= Long.MAX_VALUE / radix) {
+				pseudonyms *= radix;
+				length++;
 			}
-			return randomValues;
+			return length;
+		}
+
+		/**
+		 * @return the integer without leading zeros, as the database stores it
+		 */
+		static String canonicalInteger(String integer) {
+			return Long.toString(Long.parseLong(integer.trim()));
 		}
 
 		public ArrayList<String> createRandomPseudonyms(int cnt, int length, String prefix) {
@@ -427,54 +708,131 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		}
 
 		public String createPseudonym(int seed, int length, String prefix) {
+			return createPseudonym((long) seed, length, prefix);
+		}
+
+		public String createPseudonym(long seed, int length, String prefix) {
 			// The following does not look really random and if you put the
 			// generated values with increasing offset into a List, you will see
 			// a pattern. The actual randomness comes from the shuffledCharPool.
 			// This algorithm makes sure that for NUMBER_OF_AVAILABLE_CHARS^length
 			// invocations with incremented offsets each time a unique pseudonym
 			// is returned.
-			int offset = seed;
+			long offset = seed;
 			char[] value = new char[length];
 			for (int i = length - 1; i >= 0; i--) {
-				value[i] = shuffledCharPool[(offset % NUMBER_OF_AVAILABLE_CHARS)];
+				value[i] = shuffledCharPool[(int) (offset % NUMBER_OF_AVAILABLE_CHARS)];
 				offset = offset / NUMBER_OF_AVAILABLE_CHARS;
 			}
 			return prefix + String.copyValueOf(value);
 		}
 
 		public String createInteger(int seed, int requiredLength) {
-			int offset = seed;
+			return createInteger((long) seed, requiredLength);
+		}
+
+		public String createInteger(long seed, int requiredLength) {
+			long offset = seed;
 			char[] value = new char[requiredLength];
 			for (int i = 0; i < requiredLength; i++) {
-				value[i] = shuffledNumbersPool[(offset % 10)];
+				value[i] = shuffledNumbersPool[(int) (offset % 10)];
 				offset = offset / 10;
 			}
 			return String.copyValueOf(value);
 		}
-		
-		public static <T1, T2> Map<T1, T2> createNewRandomMap(Set<T1> newValues,
-				List<T2> randomValues) {
-			Map<T1, T2> newMapping = Maps.newHashMap();
-			Random random = new Random();
-			for (T1 newValue : newValues) {
-				if (newValue == null)
-					continue;
-				T2 pseudonym = randomValues.remove(random.nextInt(
-						randomValues.size()));
-				newMapping.put(newValue, pseudonym);
-			}
-			return newMapping;
-		}
 	}
 
 	@Override
-	public List<String> transform(Object oldValue, Rule rule, ResultSetRowReader row)
+	public boolean mightDeleteRows() {
+		return false;
+	}
+
+	/**
+	 * Integers are replaced by pseudonyms of the same type, whether they are
+	 * cached, looked up or computed from the key, so the writer always gets
+	 * the type of the column. All other values are pseudonymized as strings.
+	 */
+	@Override
+	public List<?> transform(Object oldValue, Rule rule, ResultSetRowReader row)
 			throws SQLException, TransformationKeyNotFoundException {
+		if (isIntegral(oldValue))
+			return Lists.newArrayList(transform((Number) oldValue, rule, row));
+		KeyedPseudonymizer keyed = keyedPseudonymizer();
+		if (keyed != null && oldValue instanceof Number)
+			return Lists.newArrayList(typed(keyedPseudonym(keyed,
+					(Number) oldValue, rule), (Number) oldValue));
 		return Lists.newArrayList(transform(
 				oldValue == null ? null : oldValue.toString(),
 				rule, row));
 	}
-	
+
+	private Number transform(Number oldValue, Rule rule, ResultSetRowReader row)
+			throws SQLException, TransformationKeyNotFoundException {
+		long value = oldValue.longValue();
+		Long pseudonym = null;
+		LongLongHashMap integerPseudonyms = cachedIntegerTransformations.get(rule);
+		MappedPseudonymDictionary dictionary = mappedTransformations.get(rule);
+		if (integerPseudonyms != null)
+			pseudonym = cachedPseudonym(value, integerPseudonyms);
+		else if (dictionary != null && dictionary.hasIntegerKeys())
+			pseudonym = cachedPseudonym(value, dictionary);
+		if (pseudonym == null) {
+			KeyedPseudonymizer keyed = keyedPseudonymizer();
+			pseudonym = keyed != null ? keyedPseudonym(keyed, oldValue, rule)
+					: Long.parseLong(transform(oldValue.toString(), rule, row));
+		}
+		return typed(pseudonym, oldValue);
+	}
+
+	private long keyedPseudonym(KeyedPseudonymizer keyed, Number oldValue,
+			Rule rule) {
+		Long maxValue = keyedMaxValues.get(rule);
+		return keyed.pseudonymize(oldValue.longValue(),
+				maxValue != null ? maxValue : maxValue(oldValue),
+				keyedTweak(rule));
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte;
+	}
+
+	/**
+	 * Looks up the pseudonym of an integer without converting the integer to
+	 * a string.
+	 *
+	 * @return the pseudonym or null if it is not cached
+	 */
+	private static Long cachedPseudonym(long value,
+			LongLongHashMap cachedPseudonyms) {
+		long pseudonym = cachedPseudonyms.get(value, Long.MIN_VALUE);
+		if (pseudonym == Long.MIN_VALUE && !cachedPseudonyms.containsKey(value))
+			return null;
+		return pseudonym;
+	}
+
+	private static Long cachedPseudonym(long value,
+			MappedPseudonymDictionary dictionary) {
+		long pseudonym = dictionary.get(value, Long.MIN_VALUE);
+		if (pseudonym == Long.MIN_VALUE && !dictionary.containsKey(value))
+			return null;
+		return pseudonym;
+	}
+
+	/**
+	 * @return the pseudonym as the same type as the original value
+	 */
+	private static Number typed(long pseudonym, Number oldValue) {
+		if (oldValue instanceof Integer)
+			return (int) pseudonym;
+		if (oldValue instanceof Short)
+			return (short) pseudonym;
+		if (oldValue instanceof Byte)
+			return (byte) pseudonym;
+		if (oldValue instanceof BigDecimal)
+			return BigDecimal.valueOf(pseudonym);
+		return pseudonym;
+	}
 
 	public String transform(String oldValue, Rule rule, ResultSetRowReader row)
 			throws SQLException, TransformationKeyNotFoundException {
@@ -482,33 +840,265 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 			return null;
 		if ((oldValue.replaceAll(" +$", "").length() == 0))
 			return "";
+		KeyedPseudonymizer keyed = keyedPseudonymizer();
+		if (keyed != null)
+			return keyed.pseudonymize(oldValue.replaceAll(" +$", ""),
+					keyedTweak(rule));
 		
+		String key = oldValue.replaceAll(" +$", "");
+		String result = null;
+		MappedPseudonymDictionary dictionary = mappedTransformations.get(rule);
 		Map<String, String> cachedPseudonyms = cachedTransformations.get(rule);
-		if (cachedPseudonyms == null) {
-			return getPseudonymsTableFor(rule).fetchOneString(oldValue);
-		} else {
-			String result = cachedPseudonyms.get(
-					oldValue.replaceAll(" +$", ""));
-			if (result == null)
-				return getPseudonymsTableFor(rule).fetchOne(oldValue);
-			return result;
+		if (dictionary != null && !dictionary.hasIntegerKeys())
+			result = dictionary.get(key);
+		else if (cachedPseudonyms != null)
+			result = cachedPseudonyms.get(key);
+		if (result == null)
+			return lookUp(rule, key);
+		return result;
+	}
+
+	/**
+	 * Looks up a pseudonym in the cache in front of the pseudonyms table.
+	 */
+	private String lookUp(Rule rule, String key)
+			throws SQLException, TransformationKeyNotFoundException {
+		Optional<String> pseudonym;
+		try {
+			pseudonym = lookupCache(rule).get(key);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), SQLException.class);
+			throw Throwables.propagate(e.getCause());
 		}
+		if (!pseudonym.isPresent())
+			throw new TransformationKeyNotFoundException(
+					"Could not find pseudonym for " + key + " in pseudonyms table "
+							+ getPseudonymsTableFor(rule).getTableSite().schemaTable());
+		return pseudonym.get();
 	}
 
-	public void fetchTranslations(Collection<Rule> pseudonymizationRules)
+	private LoadingCache<String, Optional<String>> lookupCache(final Rule rule) {
+		LoadingCache<String, Optional<String>> cache = lookupCaches.get(rule);
+		if (cache != null)
+			return cache;
+		synchronized (lookupCaches) {
+			cache = lookupCaches.get(rule);
+			if (cache == null) {
+				cache = CacheBuilder.newBuilder()
+						.maximumSize(lookupCacheSize())
+						.recordStats()
+						.build(new CacheLoader<String, Optional<String>>() {
+							@Override
+							public Optional<String> load(String key)
+									throws SQLException {
+								singleLookups.incrementAndGet();
+								try {
+									return Optional.fromNullable(
+											getPseudonymsTableFor(rule)
+											.fetchOneString(key));
+								} catch (TransformationKeyNotFoundException e) {
+									return Optional.absent();
+								}
+							}
+
+							@Override
+							public Map<String, Optional<String>> loadAll(
+									Iterable<? extends String> keys)
+											throws SQLException {
+								List<String> missingKeys = Lists.newArrayList(keys);
+								batchedLookups.addAndGet(IntMath.divide(
+										missingKeys.size(), LOOKUP_BATCH_SIZE,
+										RoundingMode.CEILING));
+								Map<String, String> pseudonyms =
+										getPseudonymsTableFor(rule)
+										.fetchStrings(missingKeys);
+								Map<String, Optional<String>> result =
+										new HashMap<>();
+								for (String key : missingKeys)
+									result.put(key, Optional.fromNullable(
+											pseudonyms.get(key)));
+								return result;
+							}
+						});
+				lookupCaches.put(rule, cache);
+			}
+		}
+		return cache;
+	}
+
+	private int lookupCacheSize() {
+		return options().getPseudonymCacheSize() > 0
+				? options().getPseudonymCacheSize()
+				: DEFAULT_LOOKUP_CACHE_SIZE;
+	}
+
+	/**
+	 * Looks up the pseudonyms of the values with one query per
+	 * {@value #LOOKUP_BATCH_SIZE} values, unless the whole pseudonyms table
+	 * of the rule is cached or in a dictionary.
+	 */
+	@Override
+	public void prefetch(Rule rule, Collection<?> values) throws SQLException {
+		if (isKeyed() || mappedTransformations.containsKey(rule)
+				|| cachedIntegerTransformations.containsKey(rule)
+				|| cachedTransformations.containsKey(rule))
+			return;
+		Set<String> keys = new HashSet<>();
+		for (Object value : values) {
+			if (value == null)
+				continue;
+			String key = value.toString().replaceAll(" +$", "");
+			if (!key.isEmpty())
+				keys.add(key);
+		}
+		if (keys.isEmpty())
+			return;
+		try {
+			lookupCache(rule).getAll(keys);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), SQLException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the statistics of the caches of looked up pseudonyms
+	 */
+	public CacheStats getLookupCacheStats() {
+		CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+		for (LoadingCache<String, Optional<String>> cache : lookupCaches.values())
+			stats = stats.plus(cache.stats());
+		return stats;
+	}
+
+	/**
+	 * @return number of queries which looked up several pseudonyms at once
+	 */
+	public long getBatchedLookups() {
+		return batchedLookups.get();
+	}
+
+	/**
+	 * @return number of queries which looked up a single pseudonym
+	 */
+	public long getSingleLookups() {
+		return singleLookups.get();
+	}
+
+	@Override
+	public void printSummary() {
+		CacheStats stats = getLookupCacheStats();
+		if (stats.requestCount() == 0)
+			return;
+		logger.info(String.format("Looked up %d pseudonyms in the pseudonyms "
+				+ "tables, cache hit rate %.1f%%, %d batched and %d single "
+				+ "queries, %d evictions", stats.requestCount(),
+				100 * stats.hitRate(), batchedLookups.get(),
+				singleLookups.get(), stats.evictionCount()));
+	}
+
+	public synchronized void fetchTranslations(Collection<Rule> pseudonymizationRules)
 			throws SQLException {
-		cachedTransformations.keySet().retainAll(pseudonymizationRules);
+		File dictionaryDirectory = pseudonymDictionaryDirectory();
+		if (dictionaryDirectory != null) {
+			for (Rule rule : pseudonymizationRules)
+				if (!mappedTransformations.containsKey(rule))
+					mappedTransformations.put(rule,
+							exportDictionary(rule, dictionaryDirectory));
+			return;
+		}
+		if (options().getPseudonymCacheSize() > 0)
+			// the pseudonyms are looked up when they are needed
+			return;
+		// only evict pseudonyms which no other table that is currently
+		// being copied still needs
+		for (Rule cachedRule : cachedRules()) {
+			Integer users = cachedTransformationUsers.get(cachedRule);
+			if ((users == null || users == 0)
+					&& !pseudonymizationRules.contains(cachedRule)) {
+				SpillableMap.closeIfSpillable(
+						cachedTransformations.remove(cachedRule));
+				cachedIntegerTransformations.remove(cachedRule);
+			}
+		}
+		cachedTransformationUsers.keySet().retainAll(cachedRules());
 		pseudonymizationRules = new ArrayList<>(pseudonymizationRules);
-		pseudonymizationRules.removeAll(cachedTransformations.keySet());
+		pseudonymizationRules.removeAll(cachedRules());
 		for (Rule rule : pseudonymizationRules) {
-			cachedTransformations.put(rule,
-					getPseudonymsTableFor(rule).fetchStrings());
+			PseudonymsTableProxy pseudonymsTable = getPseudonymsTableFor(rule);
+			if (SQLTypes.isIntegerType(pseudonymsTable.getColumnType().type)) {
+				LongLongHashMap pseudonyms = new LongLongHashMap(
+						pseudonymsTable.count(), offHeapPseudonyms());
+				pseudonymsTable.fetchLongs(pseudonyms);
+				cachedIntegerTransformations.put(rule, pseudonyms);
+			} else {
+				cachedTransformations.put(rule,
+						pseudonymsTable.fetchStrings(
+								SpillableMap.<String, String>create(
+										memoryBudget())));
+			}
 		}
 	}
 
+	private Set<Rule> cachedRules() {
+		Set<Rule> cachedRules = new HashSet<>(cachedTransformations.keySet());
+		cachedRules.addAll(cachedIntegerTransformations.keySet());
+		return cachedRules;
+	}
+
+	/**
+	 * Exports the pseudonyms of the rule into a dictionary file in the
+	 * directory, replacing the file of a previous run.
+	 */
+	private MappedPseudonymDictionary exportDictionary(Rule rule,
+			File directory) throws SQLException {
+		PseudonymsTableProxy pseudonymsTable = getPseudonymsTableFor(rule);
+		boolean integerKeys = SQLTypes.isIntegerType(
+				pseudonymsTable.getColumnType().type);
+		File file = new File(directory, pseudonymsTable.getTableSite()
+				.schemaTable().replaceAll("[^\\w.-]", "_") + ".pseudonyms");
+		try (MappedPseudonymDictionary.Writer writer =
+				new MappedPseudonymDictionary.Writer(file,
+						pseudonymsTable.count(), integerKeys)) {
+			pseudonymsTable.exportTo(writer, integerKeys);
+			MappedPseudonymDictionary dictionary = writer.finish();
+			logger.info("Exported " + dictionary.size() + " pseudonyms of "
+					+ pseudonymsTable.getTableSite().schemaTable() + " to "
+					+ file);
+			return dictionary;
+		} catch (IOException e) {
+			throw new SQLException("Could not export the pseudonyms of "
+					+ pseudonymsTable.getTableSite().schemaTable() + " to "
+					+ file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private File pseudonymDictionaryDirectory() {
+		return options().getPseudonymDictionaryDirectory();
+	}
+
+	private boolean offHeapPseudonyms() {
+		return options().isOffHeapPseudonyms();
+	}
+
 	@Override
-	public void prepareTableTransformation(TableRuleMap affectedColumnEntries) throws SQLException {
+	public synchronized void prepareTableTransformation(TableRuleMap affectedColumnEntries) throws SQLException {
+		if (isKeyed())
+			return;
 		fetchTranslations(affectedColumnEntries.getRules());
+		for (Rule rule : affectedColumnEntries.getRules()) {
+			Integer users = cachedTransformationUsers.get(rule);
+			cachedTransformationUsers.put(rule, users == null ? 1 : users + 1);
+		}
+	}
+
+	@Override
+	public synchronized void finishTableTransformation(TableRuleMap affectedColumnEntries) {
+		for (Rule rule : affectedColumnEntries.getRules()) {
+			Integer users = cachedTransformationUsers.get(rule);
+			if (users != null && users > 0)
+				cachedTransformationUsers.put(rule, users - 1);
+		}
 	}
 
 	private boolean isSupportedType(int type) {
@@ -525,6 +1115,11 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 		}
 
 		// check for prefix is valid
+		if (rule.getAdditionalInfo().length() != 0 && isKeyed()) {
+			logger.severe("Prefixes are not supported with a pseudonym key, "
+					+ "the pseudonyms keep the length of the values. Skipping");
+			return false;
+		}
 		if (rule.getAdditionalInfo().length() != 0) {
 			if (!SQLTypes.isCharacterType(type)) {
 				logger.severe("Prefix only supported for CHARACTER and VARCHAR fields. Skipping");
@@ -535,7 +1130,7 @@ public class PseudonymizeStrategy extends TransformationStrategy {
 				return false;
 			}
 
-			try (Statement stmt = originalDatabase.createStatement();
+			try (Statement stmt = originalDatabase().createStatement();
 					ResultSet rs = stmt.executeQuery(
 							countDistinctValuesQuery(rule, true))) {
 				rs.next();
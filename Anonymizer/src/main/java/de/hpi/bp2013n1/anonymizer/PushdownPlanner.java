@@ -0,0 +1,138 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+import de.hpi.bp2013n1.anonymizer.PseudonymizeStrategy.PseudonymsTableProxy;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+
+/**
+ * Translates the rules of a table into a single INSERT ... SELECT statement
+ * which the destination database executes, so that the rows of the table
+ * need not be transferred through the Anonymizer. Only default values and
+ * pseudonyms can be expressed in SQL: the pseudonyms are looked up with a
+ * join of the pseudonyms table of each pseudonymized column.
+ * <p>
+ * The destination database must be able to read the source tables and the
+ * pseudonym tables, e.g. because all three databases are the same or the
+ * tables are linked or federated into it. The schemas under which it sees
+ * them are given to the constructor.
+ */
+class PushdownPlanner {
+	private final String sourceSchema;
+	private final String pseudonymsSchema;
+
+	/**
+	 * @param sourceSchema schema under which the destination database sees
+	 * 			the tables of the original database
+	 * @param pseudonymsSchema schema under which the destination database
+	 * 			sees the pseudonym tables of the transformation database
+	 */
+	PushdownPlanner(String sourceSchema, String pseudonymsSchema) {
+		this.sourceSchema = sourceSchema;
+		this.pseudonymsSchema = pseudonymsSchema;
+	}
+
+	/**
+	 * @return true if the rule can be executed by the destination database
+	 */
+	static boolean canPushDown(Rule rule) {
+		return rule.getTableField().getColumn() != null
+				&& (rule.getTransformation() instanceof SetDefaultStrategy
+				|| rule.getTransformation() instanceof PseudonymizeStrategy
+				&& !((PseudonymizeStrategy) rule.getTransformation()).isKeyed());
+	}
+
+	/**
+	 * Builds the statement which copies and transforms all rows of a table.
+	 *
+	 * @param tableRuleMap the rules of the table
+	 * @param destinationTable qualified name of the table to insert into
+	 * @param columnNames the columns of the table
+	 * @param columnTypes the SQL types of the columns, in the same order
+	 * @return the statement or null if a rule cannot be expressed in SQL, a
+	 * 			whole row is transformed or a column has several rules
+	 */
+	String insertSelectStatement(TableRuleMap tableRuleMap,
+			String destinationTable, List<String> columnNames,
+			List<Integer> columnTypes) {
+		if (!tableRuleMap.getRules(null).isEmpty())
+			return null;
+		if (!columnNames.containsAll(tableRuleMap.getColumnNames()))
+			return null;
+		StringBuilder insertColumns = new StringBuilder();
+		StringBuilder selectList = new StringBuilder();
+		StringBuilder joins = new StringBuilder();
+		for (int i = 0; i < columnNames.size(); i++) {
+			String column = columnNames.get(i);
+			String sourceValue = "s." + column;
+			boolean isString = SQLTypes.isCharacterType(columnTypes.get(i));
+			List<Rule> rules = tableRuleMap.getRules(column);
+			if (rules.size() > 1)
+				return null;
+			String value;
+			if (rules.isEmpty()) {
+				value = sourceValue;
+			} else if (!canPushDown(rules.get(0))) {
+				return null;
+			} else if (rules.get(0).getTransformation() instanceof SetDefaultStrategy) {
+				value = defaultValue(rules.get(0));
+			} else {
+				String alias = "p" + i;
+				String oldValue = isString ? trimmed(sourceValue) : sourceValue;
+				joins.append(" LEFT JOIN ").append(pseudonymsTable(rules.get(0)))
+						.append(' ').append(alias).append(" ON ").append(alias)
+						.append('.').append(PseudonymsTableProxy.OLDVALUE)
+						.append(" = ").append(oldValue);
+				String newValue = alias + "." + PseudonymsTableProxy.NEWVALUE;
+				// blank values are not pseudonymized but copied as ''
+				value = isString ? "CASE WHEN " + oldValue + " = '' THEN '' ELSE "
+						+ trimmed(newValue) + " END" : newValue;
+			}
+			if (i > 0) {
+				insertColumns.append(", ");
+				selectList.append(", ");
+			}
+			insertColumns.append(column);
+			selectList.append(value);
+		}
+		return "INSERT INTO " + destinationTable + " (" + insertColumns
+				+ ") SELECT " + selectList + " FROM " + sourceSchema + "."
+				+ tableRuleMap.tableName + " s" + joins;
+	}
+
+	private String pseudonymsTable(Rule rule) {
+		return pseudonymsSchema + "."
+				+ PseudonymizeStrategy.pseudonymsTableName(rule.getTableField());
+	}
+
+	private static String defaultValue(Rule rule) {
+		if (rule.getAdditionalInfo().equals("<NULL>"))
+			return "NULL";
+		return "'" + rule.getAdditionalInfo().replace("'", "''") + "'";
+	}
+
+	private static String trimmed(String value) {
+		return "TRIM(TRAILING ' ' FROM " + value + ")";
+	}
+}
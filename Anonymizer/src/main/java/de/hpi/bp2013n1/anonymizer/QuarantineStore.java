@@ -0,0 +1,118 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Stores destination rows which could not be inserted in the transformation
+ * database, together with the error of the failed insert, so that they can
+ * be inspected and repaired instead of being lost. The table is created when
+ * the first row is quarantined.
+ * <p>
+ * The values are stored as text in the form COLUMN=value, separated by
+ * commas.
+ */
+public class QuarantineStore {
+
+	static final String QUARANTINE_TABLE = "ANONYMIZER_QUARANTINE";
+	static final int MAX_ERROR_LENGTH = 2000;
+
+	private final Connection database;
+	private final String qualifiedStoreName;
+	private final String schema;
+	private boolean created;
+
+	public QuarantineStore(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedStoreName = schema + "." + QUARANTINE_TABLE;
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		if (created)
+			return;
+		SQLHelper.createTableIfNotExists(database, schema, QUARANTINE_TABLE,
+				"TABLE_NAME VARCHAR(128) NOT NULL, "
+					+ "ROW_VALUES CLOB, "
+					+ "ERROR_MESSAGE VARCHAR(" + MAX_ERROR_LENGTH + "), "
+					+ "QUARANTINED_AT TIMESTAMP NOT NULL");
+		created = true;
+	}
+
+	/**
+	 * Stores a row of the specified table which could not be inserted.
+	 */
+	public synchronized void quarantine(String table, List<String> columnNames,
+			Object[] row, String error) throws SQLException {
+		createIfNotExists();
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT INTO " + qualifiedStoreName + " (TABLE_NAME, "
+						+ "ROW_VALUES, ERROR_MESSAGE, QUARANTINED_AT) "
+						+ "VALUES (?, ?, ?, CURRENT_TIMESTAMP)")) {
+			insert.setString(1, table);
+			insert.setString(2, format(columnNames, row));
+			insert.setString(3, error.length() > MAX_ERROR_LENGTH
+					? error.substring(0, MAX_ERROR_LENGTH) : error);
+			insert.executeUpdate();
+		}
+		commit();
+	}
+
+	/**
+	 * @return the number of quarantined rows of the table
+	 */
+	public synchronized int count(String table) throws SQLException {
+		if (!SQLHelper.tableExists(database, schema, QUARANTINE_TABLE))
+			return 0;
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT COUNT(*) FROM " + qualifiedStoreName
+				+ " WHERE TABLE_NAME = ?")) {
+			select.setString(1, table);
+			try (ResultSet count = select.executeQuery()) {
+				count.next();
+				return count.getInt(1);
+			}
+		}
+	}
+
+	static String format(List<String> columnNames, Object[] row) {
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < row.length; i++) {
+			if (i > 0)
+				values.append(", ");
+			values.append(columnNames.get(i)).append('=').append(row[i]);
+		}
+		return values.toString();
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
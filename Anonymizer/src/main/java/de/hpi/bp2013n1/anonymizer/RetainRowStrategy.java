@@ -75,7 +75,7 @@ public class RetainRowStrategy extends TransformationStrategy {
 	@Override
 	public boolean isRuleValid(Rule rule, int type, int length,
 			boolean nullAllowed) throws RuleValidationException {
-		boolean valid = new SQLWhereClauseValidator(originalDatabase).
+		boolean valid = new SQLWhereClauseValidator(originalDatabase()).
 				additionalInfoIsValidWhereClause(rule);
 		if (rule.getTableField().getColumn() != null) {
 			Logger.getLogger(getClass().getName()).severe("Rule " + rule
@@ -0,0 +1,224 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits the destination rows of one source row to a {@link RowSink}. Each
+ * column either has a single value or, if a strategy returned several
+ * values, a list of values; the destination rows are the cross product of
+ * the column values.
+ * <p>
+ * If all columns have a single value, the row buffer is handed to the sink
+ * as is. Otherwise the cross product is streamed by advancing one position
+ * per expanded column in the same buffer, without materializing the
+ * combinations. The number of rows emitted per source row can be limited.
+ * <p>
+ * An instance is used by one thread, it belongs to the transformation of one
+ * lane of a table.
+ */
+class RowFanOut {
+
+	/**
+	 * Counts how often source rows have been expanded to several destination
+	 * rows. Shared by the lanes of a table.
+	 */
+	static class Statistics {
+		private final AtomicLong sourceRows = new AtomicLong();
+		private final AtomicLong expandedSourceRows = new AtomicLong();
+		private final AtomicLong truncatedSourceRows = new AtomicLong();
+		private final AtomicLong emittedRows = new AtomicLong();
+		private final AtomicLong largestExpansion = new AtomicLong();
+
+		void rowEmitted(long rows, boolean expanded, boolean truncated) {
+			sourceRows.incrementAndGet();
+			emittedRows.addAndGet(rows);
+			if (expanded) {
+				expandedSourceRows.incrementAndGet();
+				updateLargestExpansion(rows);
+			}
+			if (truncated)
+				truncatedSourceRows.incrementAndGet();
+		}
+
+		private void updateLargestExpansion(long rows) {
+			long largest;
+			do {
+				largest = largestExpansion.get();
+			} while (rows > largest
+					&& !largestExpansion.compareAndSet(largest, rows));
+		}
+
+		/**
+		 * Adds the counts of other, e.g. to sum up the tables of a run.
+		 */
+		void add(Statistics other) {
+			sourceRows.addAndGet(other.getSourceRows());
+			expandedSourceRows.addAndGet(other.getExpandedSourceRows());
+			truncatedSourceRows.addAndGet(other.getTruncatedSourceRows());
+			emittedRows.addAndGet(other.getEmittedRows());
+			updateLargestExpansion(other.getLargestExpansion());
+		}
+
+		long getSourceRows() {
+			return sourceRows.get();
+		}
+
+		/**
+		 * @return the number of source rows with several destination rows
+		 */
+		long getExpandedSourceRows() {
+			return expandedSourceRows.get();
+		}
+
+		/**
+		 * @return the number of source rows whose cross product has been cut
+		 * 			off at the limit
+		 */
+		long getTruncatedSourceRows() {
+			return truncatedSourceRows.get();
+		}
+
+		long getEmittedRows() {
+			return emittedRows.get();
+		}
+
+		/**
+		 * @return the largest number of rows emitted for one source row
+		 */
+		long getLargestExpansion() {
+			return largestExpansion.get();
+		}
+
+		@Override
+		public String toString() {
+			return getExpandedSourceRows() + " of " + getSourceRows()
+					+ " source rows expanded, " + getEmittedRows()
+					+ " rows emitted (largest expansion "
+					+ getLargestExpansion() + ", truncated "
+					+ getTruncatedSourceRows() + ")";
+		}
+	}
+
+	private final Object[] row;
+	/** column index --> values if the column has several, otherwise null */
+	private final List<?>[] multipleValues;
+	private final int[] positions;
+	private final int maxRowsPerSourceRow;
+	private final Statistics statistics;
+	private boolean expanding;
+
+	/**
+	 * @param maxRowsPerSourceRow the number of rows after which the cross
+	 * 			product of a source row is cut off, or 0 for no limit
+	 */
+	RowFanOut(int columnCount, int maxRowsPerSourceRow, Statistics statistics) {
+		checkArgument(maxRowsPerSourceRow >= 0,
+				"The fan-out limit must not be negative");
+		row = new Object[columnCount];
+		multipleValues = new List<?>[columnCount];
+		positions = new int[columnCount];
+		this.maxRowsPerSourceRow = maxRowsPerSourceRow;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Starts a new source row. The values of all columns must be set before
+	 * the row is emitted.
+	 */
+	void beginRow() {
+		expanding = false;
+	}
+
+	void set(int column, Object value) {
+		row[column] = value;
+		multipleValues[column] = null;
+	}
+
+	/**
+	 * @param values the non-empty values of the column
+	 */
+	void setAll(int column, List<?> values) {
+		checkArgument(!values.isEmpty(), "A column needs at least one value");
+		if (values.size() == 1) {
+			set(column, values.get(0));
+			return;
+		}
+		row[column] = values.get(0);
+		multipleValues[column] = values;
+		positions[column] = 0;
+		expanding = true;
+	}
+
+	/**
+	 * Adds the cross product of the column values to the sink.
+	 *
+	 * @return the number of rows added
+	 * @throws SQLException if calls to the sink fail
+	 */
+	int emit(RowSink sink) throws SQLException {
+		if (!expanding) {
+			sink.addRow(row);
+			statistics.rowEmitted(1, false, false);
+			return 1;
+		}
+		int emitted = 0;
+		boolean truncated = false;
+		while (true) {
+			if (emitted == maxRowsPerSourceRow && maxRowsPerSourceRow > 0) {
+				truncated = true;
+				break;
+			}
+			sink.addRow(row);
+			emitted++;
+			if (!advance())
+				break;
+		}
+		statistics.rowEmitted(emitted, true, truncated);
+		return emitted;
+	}
+
+	/**
+	 * Moves to the next combination, the last column changes fastest.
+	 *
+	 * @return false if all combinations have been emitted
+	 */
+	private boolean advance() {
+		for (int column = row.length - 1; column >= 0; column--) {
+			List<?> values = multipleValues[column];
+			if (values == null)
+				continue;
+			if (++positions[column] < values.size()) {
+				row[column] = values.get(positions[column]);
+				return true;
+			}
+			positions[column] = 0;
+			row[column] = values.get(0);
+		}
+		return false;
+	}
+}
@@ -38,10 +38,18 @@ public class RowMatcher {
 		this.matchingDatabase = matchingDatabase;
 	}
 
+	/**
+	 * @return the connection to the original database which the current
+	 * 			thread uses, see {@link StrategyConnections}
+	 */
+	private Connection matchingDatabase() {
+		return StrategyConnections.originalDatabase(matchingDatabase);
+	}
+
 	boolean rowMatches(Rule rule, ResultSetRowReader row)
 			throws SQLException {
 		PrimaryKey pk = new PrimaryKey(row.getCurrentSchema(),
-				row.getCurrentTable(), matchingDatabase);
+				row.getCurrentTable(), matchingDatabase());
 		return rowMatches(rule.getAdditionalInfo(), row, pk);
 	}
 
@@ -49,7 +57,7 @@ public class RowMatcher {
 			throws SQLException {
 		Map<String, Object> comparisons = pk.whereComparisons(row);
 		String wherePKMatches = PrimaryKey.whereComparisonClause(comparisons);
-		try (PreparedStatement select = matchingDatabase.prepareStatement(
+		try (PreparedStatement select = matchingDatabase().prepareStatement(
 				rowTestSelectQuery(row.getCurrentSchema(), row.getCurrentTable(),
 						whereCriterion, wherePKMatches))) {
 			PrimaryKey.setParametersForPKQuery(comparisons, select);
@@ -0,0 +1,340 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Copies the rows of a ResultSet in three stages which run on their own
+ * threads: the fetch stage reads and copies the rows from the source cursor,
+ * the transform stage applies the rules and the write stage inserts the
+ * results in batches. The stages are connected by bounded queues, so a slow
+ * stage blocks its predecessors instead of buffering the whole table.
+ * <p>
+ * The current and the peak depth of both queues can be queried while the
+ * pipeline runs, a queue which is always full points to a slow successor
+ * stage.
+ */
+public class RowPipeline {
+
+	static Logger logger = Logger.getLogger(RowPipeline.class.getName());
+
+	/**
+	 * Transforms a single row and passes the results to the sink.
+	 */
+	interface RowTransformer {
+		void transformRow(ResultSetRowReader row, RowSink sink)
+				throws SQLException;
+	}
+
+	/**
+	 * Prepares the transformation of several rows at once, before each of
+	 * them is transformed.
+	 */
+	interface RowPreparer {
+		void prepareRows(List<ResultSetRowReader> rows) throws SQLException;
+	}
+
+	/** rows prepared at once at most */
+	static final int MAX_PREPARED_ROWS = 500;
+	private static final ResultSetRowReader END_OF_ROWS =
+			new ResultSetRowReader(null);
+	private static final Object[] END_OF_RESULTS = new Object[0];
+	private static final long POLL_INTERVAL_MILLIS = 100;
+
+	private final String name;
+	private final int queueCapacity;
+	private final BlockingQueue<ResultSetRowReader> fetchedRows;
+	/** transformed rows and markers for completed source rows */
+	private final BlockingQueue<Object> transformedRows;
+	private final AtomicInteger peakFetchedRows = new AtomicInteger();
+	private final AtomicInteger peakTransformedRows = new AtomicInteger();
+	private final List<Thread> stages = new ArrayList<>(3);
+	private volatile Throwable failure;
+	private volatile boolean aborted = false;
+	private RowPreparer preparer;
+	private AtomicBoolean cancelled = new AtomicBoolean();
+
+	/**
+	 * @param name name of the copied table or range, used for thread names
+	 * @param queueCapacity number of rows each queue can hold
+	 */
+	public RowPipeline(String name, int queueCapacity) {
+		checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+		this.name = name;
+		this.queueCapacity = queueCapacity;
+		fetchedRows = new ArrayBlockingQueue<>(queueCapacity);
+		transformedRows = new ArrayBlockingQueue<>(queueCapacity);
+	}
+
+	/**
+	 * Lets the transform stage hand the fetched rows which are waiting to
+	 * the preparer before transforming them.
+	 */
+	void setRowPreparer(RowPreparer preparer) {
+		this.preparer = preparer;
+	}
+
+	/**
+	 * Makes the stages stop without flushing the writer once the flag has
+	 * been set. The fetch stage checks the flag before each row.
+	 */
+	void cancelWhen(AtomicBoolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/** @return number of fetched rows waiting to be transformed */
+	public int getFetchQueueDepth() {
+		return fetchedRows.size();
+	}
+
+	/** @return number of transformed rows waiting to be written */
+	public int getWriteQueueDepth() {
+		return transformedRows.size();
+	}
+
+	public int getPeakFetchQueueDepth() {
+		return peakFetchedRows.get();
+	}
+
+	public int getPeakWriteQueueDepth() {
+		return peakTransformedRows.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RowPipeline " + name + ": fetch queue "
+				+ getFetchQueueDepth() + "/" + queueCapacity + " (peak "
+				+ getPeakFetchQueueDepth() + "), write queue "
+				+ getWriteQueueDepth() + "/" + queueCapacity + " (peak "
+				+ getPeakWriteQueueDepth() + ")";
+	}
+
+	/**
+	 * Runs all stages until the ResultSet is exhausted and all results have
+	 * been handed to the writer. The writer is flushed at the end unless the
+	 * pipeline has been cancelled, see {@link #cancelWhen(AtomicBoolean)}. A
+	 * pipeline can only be run once.
+	 *
+	 * @throws SQLException reading from the ResultSet failed
+	 */
+	void run(final ResultSet resultSet, final String schema, final String table,
+			final RowTransformer transformer, final InsertBatchWriter writer)
+					throws SQLException {
+		final RowSnapshot.ColumnIndex columns =
+				new RowSnapshot.ColumnIndex(resultSet.getMetaData());
+		// the transform stage acts on behalf of the calling worker
+		final StrategyConnections connections = StrategyConnections.current();
+		addStage("fetch", new Stage() {
+			@Override
+			public void run() throws Exception {
+				while (!resultSet.isClosed() && resultSet.next()) {
+					if (cancelled.get()) {
+						interruptStages();
+						return;
+					}
+					enqueue(fetchedRows, RowSnapshot.capture(resultSet,
+							columns, schema, table), peakFetchedRows);
+				}
+				enqueue(fetchedRows, END_OF_ROWS, peakFetchedRows);
+			}
+		});
+		addStage("transform", new Stage() {
+			@Override
+			public void run() throws Exception {
+				if (connections != null)
+					connections.bind();
+				RowSink queueSink = new RowSink() {
+					@Override
+					public void addRow(Object[] row) {
+						enqueueResult(row.clone());
+					}
+
+					@Override
+					public void sourceRowCompleted(Object sourceKey) {
+						enqueueResult(new CompletedSourceRow(sourceKey));
+					}
+
+					private void enqueueResult(Object result) {
+						try {
+							enqueue(transformedRows, result, peakTransformedRows);
+						} catch (InterruptedException e) {
+							throw new PipelineInterruptedException();
+						}
+					}
+				};
+				List<ResultSetRowReader> rows = new ArrayList<>();
+				boolean endOfRows = false;
+				while (!endOfRows) {
+					rows.clear();
+					rows.add(dequeue(fetchedRows));
+					if (preparer != null)
+						fetchedRows.drainTo(rows, MAX_PREPARED_ROWS - 1);
+					if (rows.get(rows.size() - 1) == END_OF_ROWS) {
+						rows.remove(rows.size() - 1);
+						endOfRows = true;
+					}
+					if (preparer != null && !rows.isEmpty())
+						preparer.prepareRows(rows);
+					for (ResultSetRowReader row : rows)
+						transformer.transformRow(row, queueSink);
+				}
+				enqueue(transformedRows, END_OF_RESULTS, peakTransformedRows);
+			}
+		});
+		addStage("write", new Stage() {
+			@Override
+			public void run() throws Exception {
+				Object result;
+				while ((result = dequeue(transformedRows)) != END_OF_RESULTS) {
+					if (result instanceof CompletedSourceRow)
+						writer.sourceRowCompleted(((CompletedSourceRow) result).key);
+					else
+						writer.addRow((Object[]) result);
+				}
+				if (!cancelled.get())
+					writer.flush();
+			}
+		});
+		for (Thread stage : stages)
+			stage.start();
+		awaitStages();
+	}
+
+	/*
+	 * Waiting on the queues is limited so that a stage notices the failure of
+	 * another stage even if a JDBC driver swallowed the interrupt.
+	 */
+
+	private <T> void enqueue(BlockingQueue<T> queue, T element,
+			AtomicInteger peakDepth) throws InterruptedException {
+		while (!queue.offer(element, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (aborted)
+				throw new InterruptedException();
+		}
+		int depth = queue.size();
+		int peak;
+		while (depth > (peak = peakDepth.get())
+				&& !peakDepth.compareAndSet(peak, depth)) {
+			// retry
+		}
+	}
+
+	private <T> T dequeue(BlockingQueue<T> queue) throws InterruptedException {
+		T element;
+		while ((element = queue.poll(POLL_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS)) == null) {
+			if (aborted)
+				throw new InterruptedException();
+		}
+		return element;
+	}
+
+	private static class CompletedSourceRow {
+		final Object key;
+
+		CompletedSourceRow(Object key) {
+			this.key = key;
+		}
+	}
+
+	private interface Stage {
+		void run() throws Exception;
+	}
+
+	private static class PipelineInterruptedException extends RuntimeException {
+		private static final long serialVersionUID = 2460617735282364557L;
+	}
+
+	private void addStage(final String stageName, final Stage stage) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stage.run();
+				} catch (InterruptedException | PipelineInterruptedException e) {
+					// another stage failed or the pipeline has been aborted,
+					// all stages stop without passing on an end marker
+				} catch (Throwable t) {
+					stageFailed(t);
+				}
+			}
+		}, "pipeline-" + name + "-" + stageName);
+		stages.add(thread);
+	}
+
+	private synchronized void stageFailed(Throwable t) {
+		if (failure != null)
+			return;
+		failure = t;
+		logger.severe("The " + Thread.currentThread().getName()
+				+ " stage failed: " + t.getMessage());
+		interruptStages();
+	}
+
+	private void interruptStages() {
+		aborted = true;
+		for (Thread stage : stages)
+			stage.interrupt();
+	}
+
+	private void awaitStages() throws SQLException {
+		try {
+			for (Thread stage : stages)
+				stage.join();
+		} catch (InterruptedException e) {
+			interruptStages();
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while copying rows of " + name, e);
+		}
+		Throwable t = failure;
+		if (t == null)
+			return;
+		if (t instanceof SQLException)
+			throw (SQLException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		throw new SQLException("Copying rows of " + name + " failed", t);
+	}
+}
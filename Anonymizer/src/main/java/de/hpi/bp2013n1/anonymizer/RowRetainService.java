@@ -27,11 +27,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,8 +74,9 @@ public class RowRetainService {
 	private Connection originalDatabase;
 	private Connection transformationDatabase;
 	
-	Map<String, PrimaryKey> cachedPrimaryKeys = new HashMap<>();
-	Set<String> tablesWithRetainedRows = new HashSet<>();
+	Map<String, PrimaryKey> cachedPrimaryKeys = new ConcurrentHashMap<>();
+	Set<String> tablesWithRetainedRows = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
 
 	public RowRetainService(Connection originalDatabase,
 			Connection transformationDatabase) {
@@ -85,6 +86,23 @@ public class RowRetainService {
 		lookForRetainTables();
 	}
 
+	/**
+	 * @return the connection to the original database which the current
+	 * 			thread uses, see {@link StrategyConnections}
+	 */
+	private Connection originalDatabase() {
+		return StrategyConnections.originalDatabase(originalDatabase);
+	}
+
+	/**
+	 * @return the connection to the transformation database which the
+	 * 			current thread uses, see {@link StrategyConnections}
+	 */
+	private Connection transformationDatabase() {
+		return StrategyConnections.transformationDatabase(
+				transformationDatabase);
+	}
+
 	private void lookForRetainTables() {
 		if (transformationDatabase == null)
 			return; // for testing purposes
@@ -128,9 +146,9 @@ public class RowRetainService {
 
 	private void createRetainTableFor(String schema, String table, PrimaryKey pk)
 			throws SQLException {
-		if (!schemaExists(schema, transformationDatabase))
-			SQLHelper.createSchema(schema, transformationDatabase);
-		try (Statement createTable = transformationDatabase.createStatement()) {
+		if (!schemaExists(schema, transformationDatabase()))
+			SQLHelper.createSchema(schema, transformationDatabase());
+		try (Statement createTable = transformationDatabase().createStatement()) {
 			createTable.executeUpdate("CREATE TABLE "
 					+ retainTableName(schema, table)
 					+ " (" + Joiner.on(',').join(pk.columnDefinitions()) + ", "
@@ -147,7 +165,7 @@ public class RowRetainService {
 
 	private boolean retainTableExistsFor(String schema, String table)
 			throws SQLException {
-		try (ResultSet tables = transformationDatabase.getMetaData()
+		try (ResultSet tables = transformationDatabase().getMetaData()
 				.getTables(null, schema, table, new String[] { "TABLE" })) {
 			return tables.next();
 		}
@@ -155,7 +173,7 @@ public class RowRetainService {
 
 	private PreparedStatement prepareRetainInsert(String schema, String table,
 			PrimaryKey pk) throws SQLException {
-		return transformationDatabase.prepareStatement(retainInsertQuery(schema, table, pk));
+		return transformationDatabase().prepareStatement(retainInsertQuery(schema, table, pk));
 	}
 
 	String retainInsertQuery(String schema, String table, PrimaryKey pk) {
@@ -177,7 +195,7 @@ public class RowRetainService {
 		PrimaryKey pk = cachedPrimaryKeys.get(SQLHelper.qualifiedTableName(schema, table));
 		if (pk != null)
 			return pk;
-		return new PrimaryKey(schema, table, originalDatabase);
+		return new PrimaryKey(schema, table, originalDatabase());
 	}
 
 	public boolean currentRowShouldBeRetained(String schema, String table,
@@ -186,7 +204,7 @@ public class RowRetainService {
 			return false;
 		PrimaryKey primaryKey = getPrimaryKey(schema, table);
 		Map<String, Object> comparisons = primaryKey.whereComparisons(row);
-		try (PreparedStatement select = transformationDatabase.prepareStatement(
+		try (PreparedStatement select = transformationDatabase().prepareStatement(
 				selectRetainedPrimaryKeyQuery(schema, table, comparisons))) {
 			PrimaryKey.setParametersForPKQuery(comparisons, select);
 			try (ResultSet result = select.executeQuery()) {
@@ -0,0 +1,40 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import java.sql.SQLException;
+
+/**
+ * Receives the transformed rows of a table, one array of column values per
+ * destination row. The array may be reused by the caller after addRow
+ * returns.
+ */
+interface RowSink {
+	void addRow(Object[] row) throws SQLException;
+
+	/**
+	 * Signals that all rows resulting from the source row with the specified
+	 * primary key have been added, so that the key can be checkpointed.
+	 */
+	void sourceRowCompleted(Object sourceKey) throws SQLException;
+}
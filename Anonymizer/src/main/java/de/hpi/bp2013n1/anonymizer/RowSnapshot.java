@@ -0,0 +1,162 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy of the current row of a ResultSet which can still be read after the
+ * cursor has moved on, e.g. by the transform stage of a {@link RowPipeline}.
+ * The copy is exposed as a read-only ResultSet so that it can be wrapped in a
+ * {@link ResultSetRowReader} like a live row. Typed getters convert the
+ * values which have been captured with getObject.
+ */
+class RowSnapshot implements InvocationHandler {
+
+	/**
+	 * Maps column labels of a ResultSet to their indexes. Lookups are case
+	 * insensitive, like those of ResultSet.
+	 */
+	static class ColumnIndex {
+		final int columnCount;
+		private final Map<String, Integer> indexes = new HashMap<>();
+
+		ColumnIndex(ResultSetMetaData metaData) throws SQLException {
+			columnCount = metaData.getColumnCount();
+			for (int i = columnCount; i >= 1; i--) // first one wins
+				indexes.put(metaData.getColumnLabel(i).toUpperCase(), i);
+		}
+
+		int indexOf(String column) throws SQLException {
+			Integer index = indexes.get(column.toUpperCase());
+			if (index == null)
+				throw new SQLException("Column " + column + " not found");
+			return index;
+		}
+	}
+
+	private final ColumnIndex columns;
+	private final Object[] values;
+
+	private RowSnapshot(ColumnIndex columns, Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * Copies the values of the current row of resultSet.
+	 */
+	static ResultSetRowReader capture(ResultSet resultSet, ColumnIndex columns,
+			String schema, String table) throws SQLException {
+		Object[] values = new Object[columns.columnCount];
+		for (int i = 0; i < values.length; i++)
+			values[i] = resultSet.getObject(i + 1);
+		ResultSet snapshot = (ResultSet) Proxy.newProxyInstance(
+				RowSnapshot.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class },
+				new RowSnapshot(columns, values));
+		ResultSetRowReader rowReader = new ResultSetRowReader(snapshot);
+		rowReader.setCurrentSchema(schema);
+		rowReader.setCurrentTable(table);
+		return rowReader;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+		String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			switch (name) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "RowSnapshot" + Arrays.toString(values);
+			}
+		}
+		if (name.equals("isClosed"))
+			return false;
+		if (name.equals("findColumn"))
+			return columns.indexOf((String) args[0]);
+		if (name.startsWith("get") && args != null && args.length == 1) {
+			Object value = valueAt(args[0]);
+			return convert(value, method.getReturnType());
+		}
+		throw new SQLFeatureNotSupportedException(name
+				+ " is not supported on a copied row");
+	}
+
+	private Object valueAt(Object column) throws SQLException {
+		int index = column instanceof Integer ? (Integer) column
+				: columns.indexOf((String) column);
+		if (index < 1 || index > values.length)
+			throw new SQLException("Column index " + index + " out of range");
+		return values[index - 1];
+	}
+
+	static Object convert(Object value, Class<?> type) throws SQLException {
+		if (value == null) {
+			if (!type.isPrimitive())
+				return null;
+			if (type == boolean.class)
+				return false;
+			value = 0;
+		}
+		if (type.isInstance(value))
+			return value;
+		if (type == String.class)
+			return value.toString();
+		if (type == boolean.class)
+			return value instanceof Boolean ? value
+					: value instanceof Number && ((Number) value).intValue() != 0;
+		if (value instanceof Number) {
+			Number number = (Number) value;
+			if (type == int.class)
+				return number.intValue();
+			if (type == long.class)
+				return number.longValue();
+			if (type == short.class)
+				return number.shortValue();
+			if (type == byte.class)
+				return number.byteValue();
+			if (type == double.class)
+				return number.doubleValue();
+			if (type == float.class)
+				return number.floatValue();
+			if (type == BigDecimal.class)
+				return new BigDecimal(number.toString());
+		}
+		throw new SQLException("Cannot convert " + value.getClass().getName()
+				+ " to " + type.getName() + " on a copied row");
+	}
+}
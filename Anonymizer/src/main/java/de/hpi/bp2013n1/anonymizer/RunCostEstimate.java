@@ -0,0 +1,159 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prediction of the rows, memory and time a run will need, computed by
+ * {@link Anonymizer#explain()} from catalog statistics and samples of the
+ * tables without copying anything. All figures are rough estimates meant to
+ * reveal tables which will exhaust the heap or take far too long before a
+ * run is started.
+ */
+public class RunCostEstimate {
+
+	/**
+	 * The estimates for a single table of the scope.
+	 */
+	public static class TableCostEstimate {
+		public final String table;
+		/** -1 if unknown */
+		public long rows = -1;
+		/** true if rows is a lower bound because it could not be estimated */
+		public boolean rowsLowerBound;
+		/** descriptions of the rules applied to the table */
+		public final List<String> rules = new ArrayList<>();
+		/** pseudonyms cached while the table is copied */
+		public long cachedPseudonyms;
+		/** entries of the value distribution maps of the table's columns */
+		public long distributionMapEntries;
+		/** keys of deleted rows remembered for the deletion of dependent rows */
+		public long trackedDeletedRows;
+		/** heap occupied only while the table is copied */
+		public long transientHeapBytes;
+		/** heap occupied from the preparation until the end of the run */
+		public long retainedHeapBytes;
+		public long nanosPerRow;
+
+		TableCostEstimate(String table) {
+			this.table = table;
+		}
+
+		public long getProjectedNanos() {
+			return rows > 0 ? rows * nanosPerRow : 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder(table).append(": ");
+			text.append(rows < 0 ? "unknown number of" : (rowsLowerBound ? ">= " : "~")
+					+ rows).append(" rows, ");
+			text.append(rules.isEmpty() ? "no rules" : rules.size() + " rules "
+					+ rules).append('\n');
+			if (cachedPseudonyms > 0)
+				text.append("  pseudonyms cached: ~").append(cachedPseudonyms).append('\n');
+			if (distributionMapEntries > 0)
+				text.append("  uniform distribution map entries: ~")
+						.append(distributionMapEntries).append('\n');
+			if (trackedDeletedRows > 0)
+				text.append("  deleted rows tracked for dependent tables: up to ")
+						.append(trackedDeletedRows).append('\n');
+			text.append("  heap: ").append(megabytes(transientHeapBytes))
+					.append(" while copying, ").append(megabytes(retainedHeapBytes))
+					.append(" until the end of the run; time: ")
+					.append(duration(getProjectedNanos()));
+			return text.toString();
+		}
+	}
+
+	final List<TableCostEstimate> tables = new ArrayList<>();
+	/** number of tables copied concurrently */
+	int tableWorkers = 1;
+	long maxHeapBytes = Runtime.getRuntime().maxMemory();
+
+	public List<TableCostEstimate> getTables() {
+		return Collections.unmodifiableList(tables);
+	}
+
+	/**
+	 * @return the heap which the retained data of all tables and the
+	 * 			transient data of the largest tables copied concurrently need
+	 * 			at the same time
+	 */
+	public long getProjectedPeakHeapBytes() {
+		long retained = 0;
+		List<Long> transientBytes = new ArrayList<>();
+		for (TableCostEstimate table : tables) {
+			retained += table.retainedHeapBytes;
+			transientBytes.add(table.transientHeapBytes);
+		}
+		Collections.sort(transientBytes, Collections.reverseOrder());
+		long peak = retained;
+		for (int i = 0; i < Math.min(tableWorkers, transientBytes.size()); i++)
+			peak += transientBytes.get(i);
+		return peak;
+	}
+
+	public long getProjectedNanos() {
+		long nanos = 0;
+		for (TableCostEstimate table : tables)
+			nanos += table.getProjectedNanos();
+		return nanos / Math.max(1, Math.min(tableWorkers, tables.size()));
+	}
+
+	/**
+	 * @return true if the projected peak heap exceeds the maximum heap of
+	 * 			this JVM
+	 */
+	public boolean exceedsHeap() {
+		return getProjectedPeakHeapBytes() > maxHeapBytes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (TableCostEstimate table : tables)
+			text.append(table).append('\n');
+		text.append("Projected peak heap: ")
+				.append(megabytes(getProjectedPeakHeapBytes())).append(" of ")
+				.append(megabytes(maxHeapBytes)).append(" available\n");
+		text.append("Projected run time: ").append(duration(getProjectedNanos()));
+		if (exceedsHeap())
+			text.append("\nWARNING: the run will probably fail with an "
+					+ "OutOfMemoryError, increase the heap (-Xmx) or reduce "
+					+ "the number of concurrent tables.");
+		return text.toString();
+	}
+
+	static String megabytes(long bytes) {
+		return (bytes + (1 << 19)) / (1 << 20) + " MB";
+	}
+
+	static String duration(long nanos) {
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60,
+				seconds % 60);
+	}
+}
@@ -88,4 +88,9 @@ public class SetDefaultStrategy extends TransformationStrategy {
 		}
 		return true;
 	}
+
+	@Override
+	public boolean mightDeleteRows() {
+		return false;
+	}
 }
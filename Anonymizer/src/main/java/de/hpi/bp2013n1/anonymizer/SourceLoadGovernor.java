@@ -0,0 +1,479 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Limits the load which a run puts on the original database, so that it can
+ * read from a live database without hurting its other users. Connections
+ * wrapped by {@link #govern(Connection)} wait before executing a statement
+ * while too many statements are executing, and before fetching a row while
+ * the rows per second are exhausted.
+ * <p>
+ * If a target latency is set, the governor halves its limits whenever the
+ * average execution time of the statements exceeds the target, and raises
+ * them step by step to the configured limits again when it does not.
+ * Without a configured limit the backoff starts from the current number of
+ * executing statements and the current rows per second. Only the execution
+ * of statements is timed, because fetching the rows of an open cursor mostly
+ * measures the Anonymizer.
+ * <p>
+ * All limits can be changed while a run is in progress, also through JMX
+ * after {@link #registerMBean()}.
+ */
+public class SourceLoadGovernor implements SourceLoadGovernorMXBean {
+
+	static final String MBEAN_NAME =
+			"de.hpi.bp2013n1.anonymizer:type=SourceLoadGovernor";
+	/** weight of the latest statement in the average latency */
+	private static final double LATENCY_SMOOTHING = 0.2;
+	private static final double RATE_INCREASE = 1.25;
+	private static final Logger logger = Logger.getLogger(
+			SourceLoadGovernor.class.getName());
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition statementFinished = lock.newCondition();
+	/** configured limits, 0 if unlimited */
+	private int maxConcurrentStatements;
+	private double maxRowsPerSecond;
+	private long targetLatencyNanos;
+	/** limits after the backoff, 0 if unlimited */
+	private int statementLimit;
+	private double rowsPerSecondLimit;
+	private final RateLimiter rateLimiter = RateLimiter.create(1);
+	private int executingStatements;
+	private double averageLatencyNanos;
+	private long adjustmentIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+	private long lastAdjustmentNanos = System.nanoTime();
+	/** rows fetched since the last adjustment */
+	private long fetchedRows;
+	private long observedRowsPerSecond;
+	private long throttledNanos;
+
+	/**
+	 * @param maxConcurrentStatements 0 for no limit
+	 * @param maxRowsPerSecond 0 for no limit
+	 * @param targetLatencyMillis 0 to never back off
+	 */
+	public SourceLoadGovernor(int maxConcurrentStatements,
+			double maxRowsPerSecond, long targetLatencyMillis) {
+		setMaxConcurrentStatements(maxConcurrentStatements);
+		setMaxRowsPerSecond(maxRowsPerSecond);
+		setTargetLatencyMillis(targetLatencyMillis);
+	}
+
+	/**
+	 * Makes the governor adjustable through JMX, e.g. with jconsole.
+	 */
+	public void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(MBEAN_NAME));
+		} catch (JMException e) {
+			logger.warning("Could not register the load governor for JMX, "
+					+ "its limits cannot be changed during the run: "
+					+ e.getMessage());
+		}
+	}
+
+	@Override
+	public int getMaxConcurrentStatements() {
+		lock.lock();
+		try {
+			return maxConcurrentStatements;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void setMaxConcurrentStatements(int maxConcurrentStatements) {
+		checkArgument(maxConcurrentStatements >= 0,
+				"The number of statements must not be negative");
+		lock.lock();
+		try {
+			this.maxConcurrentStatements = maxConcurrentStatements;
+			statementLimit = maxConcurrentStatements;
+			statementFinished.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public double getMaxRowsPerSecond() {
+		lock.lock();
+		try {
+			return maxRowsPerSecond;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void setMaxRowsPerSecond(double maxRowsPerSecond) {
+		checkArgument(maxRowsPerSecond >= 0,
+				"The rows per second must not be negative");
+		lock.lock();
+		try {
+			this.maxRowsPerSecond = maxRowsPerSecond;
+			setRowsPerSecondLimit(maxRowsPerSecond);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getTargetLatencyMillis() {
+		lock.lock();
+		try {
+			return TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void setTargetLatencyMillis(long targetLatencyMillis) {
+		checkArgument(targetLatencyMillis >= 0,
+				"The target latency must not be negative");
+		lock.lock();
+		try {
+			targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+					targetLatencyMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getStatementLimit() {
+		lock.lock();
+		try {
+			return statementLimit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public double getRowsPerSecondLimit() {
+		lock.lock();
+		try {
+			return rowsPerSecondLimit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public double getAverageLatencyMillis() {
+		lock.lock();
+		try {
+			return averageLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getThrottledMillis() {
+		lock.lock();
+		try {
+			return TimeUnit.NANOSECONDS.toMillis(throttledNanos);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the minimum time between two adjustments of the limits.
+	 */
+	void setAdjustmentIntervalMillis(long adjustmentIntervalMillis) {
+		lock.lock();
+		try {
+			adjustmentIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+					adjustmentIntervalMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void setRowsPerSecondLimit(double rowsPerSecond) {
+		rowsPerSecondLimit = rowsPerSecond;
+		if (rowsPerSecond > 0)
+			rateLimiter.setRate(rowsPerSecond);
+	}
+
+	/**
+	 * Waits until another statement may be executed.
+	 */
+	void statementStarting() throws SQLException {
+		lock.lock();
+		try {
+			long start = System.nanoTime();
+			while (statementLimit > 0 && executingStatements >= statementLimit)
+				statementFinished.await();
+			throttledNanos += System.nanoTime() - start;
+			executingStatements++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting to execute a "
+					+ "statement in the original database", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void statementFinished(long latencyNanos) {
+		lock.lock();
+		try {
+			executingStatements--;
+			averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+					: LATENCY_SMOOTHING * latencyNanos
+							+ (1 - LATENCY_SMOOTHING) * averageLatencyNanos;
+			adjustLimits();
+			statementFinished.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until another row may be fetched.
+	 */
+	void rowFetching() {
+		double rateLimit;
+		lock.lock();
+		try {
+			fetchedRows++;
+			rateLimit = rowsPerSecondLimit;
+		} finally {
+			lock.unlock();
+		}
+		if (rateLimit <= 0)
+			return;
+		double waitedSeconds = rateLimiter.acquire();
+		if (waitedSeconds > 0) {
+			lock.lock();
+			try {
+				throttledNanos += (long) (waitedSeconds
+						* TimeUnit.SECONDS.toNanos(1));
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Halves the limits if the statements are slower than the target and
+	 * raises them towards the configured limits otherwise, at most once per
+	 * adjustment interval. Must be called with the lock held.
+	 */
+	private void adjustLimits() {
+		long now = System.nanoTime();
+		long elapsed = now - lastAdjustmentNanos;
+		if (targetLatencyNanos == 0 || elapsed < adjustmentIntervalNanos)
+			return;
+		observedRowsPerSecond = fetchedRows * TimeUnit.SECONDS.toNanos(1)
+				/ Math.max(elapsed, 1);
+		fetchedRows = 0;
+		lastAdjustmentNanos = now;
+		if (averageLatencyNanos > targetLatencyNanos) {
+			int statements = statementLimit > 0 ? statementLimit
+					: executingStatements + 1;
+			statementLimit = Math.max(1, statements / 2);
+			double rowsPerSecond = rowsPerSecondLimit > 0 ? rowsPerSecondLimit
+					: observedRowsPerSecond;
+			if (rowsPerSecond > 0)
+				setRowsPerSecondLimit(Math.max(1, rowsPerSecond / 2));
+			logger.info("The original database is slow (average latency "
+					+ Math.round(getAverageLatencyMillis()) + " ms), backing "
+					+ "off to " + statementLimit + " statements and "
+					+ Math.round(rowsPerSecondLimit) + " rows per second.");
+		} else {
+			if (statementLimit > 0 && (maxConcurrentStatements == 0
+					|| statementLimit < maxConcurrentStatements)) {
+				statementLimit++;
+				// unlimited again once the limit exceeds the demand
+				if (maxConcurrentStatements == 0
+						&& statementLimit > executingStatements + 1)
+					statementLimit = 0;
+				statementFinished.signalAll();
+			}
+			if (rowsPerSecondLimit > 0 && (maxRowsPerSecond == 0
+					|| rowsPerSecondLimit < maxRowsPerSecond)) {
+				double raised = rowsPerSecondLimit * RATE_INCREASE;
+				if (maxRowsPerSecond > 0)
+					setRowsPerSecondLimit(Math.min(raised, maxRowsPerSecond));
+				else if (observedRowsPerSecond < rowsPerSecondLimit / 2)
+					setRowsPerSecondLimit(0); // the limit is not reached anymore
+				else
+					setRowsPerSecondLimit(raised);
+			}
+		}
+	}
+
+	/**
+	 * Wraps a connection to the original database so that its statements
+	 * and result sets are governed. A connection governed before is
+	 * unwrapped first, so that its statements are only governed once.
+	 */
+	public Connection govern(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(
+				SourceLoadGovernor.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new GovernedConnection(ungoverned(connection)));
+	}
+
+	/**
+	 * @return the connection wrapped by a governor or the connection itself
+	 */
+	public static Connection ungoverned(Connection connection) {
+		if (connection != null && Proxy.isProxyClass(connection.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(connection);
+			if (handler instanceof GovernedConnection)
+				return ((GovernedConnection) handler).connection;
+		}
+		return connection;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args)
+			throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private class GovernedConnection implements InvocationHandler {
+		final Connection connection;
+
+		GovernedConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			Object result = SourceLoadGovernor.invoke(connection, method, args);
+			Class<?> statementType;
+			switch (method.getName()) {
+			case "createStatement":
+				statementType = Statement.class;
+				break;
+			case "prepareStatement":
+				statementType = PreparedStatement.class;
+				break;
+			case "prepareCall":
+				statementType = CallableStatement.class;
+				break;
+			default:
+				return result;
+			}
+			return Proxy.newProxyInstance(SourceLoadGovernor.class.getClassLoader(),
+					new Class<?>[] { statementType },
+					new GovernedStatement((Statement) result, (Connection) proxy));
+		}
+	}
+
+	private class GovernedStatement implements InvocationHandler {
+		final Statement statement;
+		final Connection connection;
+
+		GovernedStatement(Statement statement, Connection connection) {
+			this.statement = statement;
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			if (name.equals("getConnection"))
+				return connection;
+			Object result;
+			if (name.startsWith("execute")) {
+				statementStarting();
+				long start = System.nanoTime();
+				try {
+					result = SourceLoadGovernor.invoke(statement, method, args);
+				} finally {
+					statementFinished(System.nanoTime() - start);
+				}
+			} else {
+				result = SourceLoadGovernor.invoke(statement, method, args);
+			}
+			if (result instanceof ResultSet)
+				return Proxy.newProxyInstance(
+						SourceLoadGovernor.class.getClassLoader(),
+						new Class<?>[] { ResultSet.class },
+						new GovernedResultSet((ResultSet) result, proxy));
+			return result;
+		}
+	}
+
+	private class GovernedResultSet implements InvocationHandler {
+		final ResultSet resultSet;
+		final Object statement;
+
+		GovernedResultSet(ResultSet resultSet, Object statement) {
+			this.resultSet = resultSet;
+			this.statement = statement;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			switch (method.getName()) {
+			case "next":
+				rowFetching();
+				break;
+			case "getStatement":
+				return statement;
+			}
+			return SourceLoadGovernor.invoke(resultSet, method, args);
+		}
+	}
+}
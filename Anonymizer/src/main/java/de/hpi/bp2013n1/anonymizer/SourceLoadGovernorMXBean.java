@@ -0,0 +1,54 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The limits of a {@link SourceLoadGovernor} which can be read and changed
+ * through JMX while a run is in progress.
+ */
+public interface SourceLoadGovernorMXBean {
+
+	/** @return the configured number of concurrent statements, 0 if unlimited */
+	int getMaxConcurrentStatements();
+
+	void setMaxConcurrentStatements(int maxConcurrentStatements);
+
+	/** @return the configured rows per second, 0 if unlimited */
+	double getMaxRowsPerSecond();
+
+	void setMaxRowsPerSecond(double maxRowsPerSecond);
+
+	/** @return the latency above which the governor backs off, 0 if never */
+	long getTargetLatencyMillis();
+
+	void setTargetLatencyMillis(long targetLatencyMillis);
+
+	/** @return the current number of concurrent statements after backing off */
+	int getStatementLimit();
+
+	/** @return the current rows per second after backing off */
+	double getRowsPerSecondLimit();
+
+	double getAverageLatencyMillis();
+
+	/** @return the total time statements and rows have waited */
+	long getThrottledMillis();
+}
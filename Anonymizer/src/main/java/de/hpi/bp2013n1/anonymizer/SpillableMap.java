@@ -0,0 +1,289 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+/**
+ * A map which keeps its entries on the heap until the {@link MemoryBudget}
+ * asks it to spill. Spilled entries are moved to an MVStore in a temporary
+ * file, where they can still be looked up, and are moved back to the heap
+ * when they are replaced. Keys and values are stored serialized, so they
+ * must be {@link java.io.Serializable} and equal keys must serialize
+ * equally.
+ * <p>
+ * All operations are synchronized. The iterators of the views do not
+ * support removal and reflect the map as it was when they were created.
+ */
+@SuppressWarnings("unchecked")
+class SpillableMap<K, V> extends AbstractMap<K, V>
+		implements MemoryBudget.Consumer {
+
+	private final MemoryBudget budget;
+	private final Map<K, V> memory = new HashMap<>();
+	private final AtomicLong estimatedBytes = new AtomicLong();
+	private File file;
+	private MVStore store;
+	private MVMap<byte[], byte[]> disk;
+
+	SpillableMap(MemoryBudget budget) {
+		this.budget = budget;
+		budget.register(this);
+	}
+
+	/**
+	 * @return a map governed by the budget, or a plain map if there is no
+	 * 			budget
+	 */
+	static <K, V> Map<K, V> create(MemoryBudget budget) {
+		if (budget == null)
+			return new HashMap<>();
+		return new SpillableMap<>(budget);
+	}
+
+	/**
+	 * Deletes the spilled entries of maps created with
+	 * {@link #create(MemoryBudget)}.
+	 */
+	static void closeIfSpillable(Map<?, ?> map) {
+		if (map instanceof SpillableMap)
+			((SpillableMap<?, ?>) map).close();
+	}
+
+	@Override
+	public long estimatedBytes() {
+		return estimatedBytes.get();
+	}
+
+	@Override
+	public V get(Object key) {
+		synchronized (this) {
+			V value = memory.get(key);
+			if (value != null || disk == null)
+				return value;
+			return (V) deserialize(disk.get(serialize(key)));
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		synchronized (this) {
+			return memory.containsKey(key)
+					|| disk != null && disk.containsKey(serialize(key));
+		}
+	}
+
+	@Override
+	public V put(K key, V value) {
+		V previous;
+		long grown;
+		synchronized (this) {
+			grown = entryBytes(key, value);
+			previous = memory.put(key, value);
+			if (previous != null)
+				grown -= entryBytes(key, previous);
+			else if (disk != null)
+				previous = (V) deserialize(disk.remove(serialize(key)));
+			estimatedBytes.addAndGet(grown);
+		}
+		// outside of the lock, the budget may ask this map to spill
+		if (grown > 0)
+			budget.grown(grown);
+		return previous;
+	}
+
+	@Override
+	public V remove(Object key) {
+		synchronized (this) {
+			V previous = memory.remove(key);
+			if (previous != null) {
+				estimatedBytes.addAndGet(-entryBytes(key, previous));
+				return previous;
+			}
+			if (disk == null)
+				return null;
+			return (V) deserialize(disk.remove(serialize(key)));
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (this) {
+			return memory.size() + (disk == null ? 0 : disk.size());
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			memory.clear();
+			estimatedBytes.set(0);
+			if (disk != null)
+				disk.clear();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				synchronized (SpillableMap.this) {
+					Iterator<Map.Entry<K, V>> inMemory = new ArrayList<>(
+							memory.entrySet()).iterator();
+					if (disk == null)
+						return inMemory;
+					return Iterators.concat(inMemory, Iterators.transform(
+							new ArrayList<>(disk.keySet()).iterator(),
+							new Function<byte[], Map.Entry<K, V>>() {
+								@Override
+								public Map.Entry<K, V> apply(byte[] key) {
+									synchronized (SpillableMap.this) {
+										return Maps.immutableEntry(
+												(K) deserialize(key),
+												(V) deserialize(disk.get(key)));
+									}
+								}
+							}));
+				}
+			}
+
+			@Override
+			public int size() {
+				return SpillableMap.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Moves all entries on the heap to the file.
+	 */
+	@Override
+	public synchronized long spill() throws IOException {
+		if (memory.isEmpty())
+			return 0;
+		if (disk == null)
+			openDisk();
+		for (Map.Entry<K, V> entry : memory.entrySet())
+			disk.put(serialize(entry.getKey()), serialize(entry.getValue()));
+		store.commit();
+		memory.clear();
+		return estimatedBytes.getAndSet(0);
+	}
+
+	/**
+	 * @return whether some entries are on disk
+	 */
+	synchronized boolean hasSpilled() {
+		return disk != null && disk.size() > 0;
+	}
+
+	/**
+	 * Leaves the budget and deletes the file.
+	 */
+	synchronized void close() {
+		budget.unregister(this);
+		memory.clear();
+		estimatedBytes.set(0);
+		if (store != null) {
+			store.closeImmediately();
+			file.delete();
+			store = null;
+			disk = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SpillableMap(" + size() + " entries, "
+				+ estimatedBytes() + " bytes on the heap)";
+	}
+
+	private void openDisk() throws IOException {
+		file = File.createTempFile("anonymizer-spill-", ".mv",
+				budget.getSpillDirectory());
+		file.deleteOnExit();
+		store = new MVStore.Builder().fileName(file.getPath())
+				.cacheSize(1).open();
+		disk = store.openMap("entries");
+	}
+
+	/**
+	 * @return the estimated heap of an entry, see {@link CostPlanner}
+	 */
+	static long entryBytes(Object key, Object value) {
+		return CostPlanner.MAP_ENTRY_BYTES + objectBytes(key)
+				+ objectBytes(value);
+	}
+
+	private static long objectBytes(Object object) {
+		if (object instanceof Map) {
+			long bytes = 0;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet())
+				bytes += entryBytes(entry.getKey(), entry.getValue());
+			return bytes;
+		}
+		return CostPlanner.heapBytes(object);
+	}
+
+	private static byte[] serialize(Object object) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(
+					"Could not serialize " + object + " for spilling", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) {
+		if (bytes == null)
+			return null;
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException(
+					"Could not read a spilled entry", e);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Connection;
+
+/**
+ * The connections to the original and the transformation database which the
+ * strategies and the {@link RowRetainService} use on the current thread.
+ * <p>
+ * The strategies of a run are shared by all its table workers, lanes and
+ * pipeline stages. Each thread which transforms or prepares rows binds the
+ * connections of its worker, so that no two threads issue statements on the
+ * same connection. Threads without bound connections, e.g. the thread which
+ * sets up the strategies, use the connections the strategies have been
+ * created with.
+ */
+class StrategyConnections {
+	private static final ThreadLocal<StrategyConnections> bound =
+			new ThreadLocal<>();
+
+	final Connection originalDatabase;
+	final Connection transformationDatabase;
+
+	StrategyConnections(Connection originalDatabase,
+			Connection transformationDatabase) {
+		this.originalDatabase = originalDatabase;
+		this.transformationDatabase = transformationDatabase;
+	}
+
+	/**
+	 * Binds these connections to the current thread.
+	 *
+	 * @return the connections which were bound before, to be passed to
+	 * 			{@link #restore(StrategyConnections)}
+	 */
+	StrategyConnections bind() {
+		StrategyConnections previous = bound.get();
+		bound.set(this);
+		return previous;
+	}
+
+	/**
+	 * Binds the connections which were bound before {@link #bind()}.
+	 *
+	 * @param previous the result of bind, may be null
+	 */
+	static void restore(StrategyConnections previous) {
+		if (previous == null)
+			bound.remove();
+		else
+			bound.set(previous);
+	}
+
+	/**
+	 * @return the connections bound to the current thread, or null
+	 */
+	static StrategyConnections current() {
+		return bound.get();
+	}
+
+	/**
+	 * @param unbound the connection to use if none is bound
+	 * @return the connection to the original database bound to the current
+	 * 			thread, or unbound
+	 */
+	static Connection originalDatabase(Connection unbound) {
+		StrategyConnections connections = bound.get();
+		return connections != null ? connections.originalDatabase : unbound;
+	}
+
+	/**
+	 * @param unbound the connection to use if none is bound
+	 * @return the connection to the transformation database bound to the
+	 * 			current thread, or unbound
+	 */
+	static Connection transformationDatabase(Connection unbound) {
+		StrategyConnections connections = bound.get();
+		return connections != null ? connections.transformationDatabase
+				: unbound;
+	}
+}
@@ -0,0 +1,1251 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+
+import de.hpi.bp2013n1.anonymizer.TransformationStrategy.FetchPseudonymsFailedException;
+import de.hpi.bp2013n1.anonymizer.TransformationStrategy.TransformationFailedException;
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.Scope;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+import de.hpi.bp2013n1.anonymizer.shared.TransformationKeyNotFoundException;
+import de.hpi.bp2013n1.anonymizer.tools.TableTruncater;
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Copies single tables or primary key ranges of them from the original to
+ * the destination database for an {@link Anonymizer} run, and applies the
+ * rules to each row on the way. The Anonymizer decides which tables are
+ * copied in which order and by which worker, and sets up the stores of the
+ * run before the first table is copied.
+ */
+class TableAnonymizer {
+
+	static Logger logger = Logger.getLogger(TableAnonymizer.class.getName());
+
+	private static final int LOG_INTERVAL = 1000;
+
+	private final Config config;
+	private final Scope scope;
+	private final AnonymizerOptions options;
+	private final List<TransformationStrategy> strategies;
+	private final ForeignKeyDeletionsHandler foreignKeyDeletions;
+	private final RowRetainService retainService;
+	private final ProgressEventDispatcher progressEvents;
+	/** null if the run cannot be resumed */
+	ProgressJournal journal;
+	Map<String, ProgressJournal.TableCheckpoint> checkpoints =
+			Collections.emptyMap();
+	/** null if no table has a watermark column */
+	WatermarkStore watermarks;
+	/** null if the batches are not adapted or the settings are not stored */
+	BatchSettingsStore batchSettings;
+	/** receives rows which cannot be inserted into the destination */
+	QuarantineStore quarantine;
+	/** tables whose rows might be deleted by their rules or their parents */
+	Set<String> rowDeletingTables = Collections.emptySet();
+	/** counts rows the database cannot estimate, null if not available */
+	BackgroundRowCounter rowCounter;
+	private final Set<RowPipeline> activePipelines = Collections.newSetFromMap(
+			new ConcurrentHashMap<RowPipeline, Boolean>());
+	private final RowFanOut.Statistics fanOutStatistics =
+			new RowFanOut.Statistics();
+	/** rows read from the original database */
+	private final AtomicLong processedRows = new AtomicLong();
+
+	/**
+	 * Settings shared by the lanes copying one table.
+	 */
+	private static class TableCopy {
+		final TableRuleMap tableRuleMap;
+		final String qualifiedTableName;
+		/** column of the progress checkpoints or null */
+		String keyColumn;
+		/** key columns of rows to be replaced or null to only insert */
+		List<String> upsertKeyColumns;
+		TableProgress progress;
+		BatchController batchController;
+		/** the rows are copied unchanged, without the transformation */
+		boolean bulkCopy;
+		/** results of preparing the table in advance, may be null */
+		TablePrefetcher.PreparedTable prefetched;
+		final RowFanOut.Statistics fanOutStatistics = new RowFanOut.Statistics();
+		/** set by another thread when the copy must be given up */
+		AtomicBoolean abandoned = new AtomicBoolean();
+		private TableTransformationPlan plan;
+
+		TableCopy(TableRuleMap tableRuleMap, String qualifiedTableName) {
+			this.tableRuleMap = tableRuleMap;
+			this.qualifiedTableName = qualifiedTableName;
+		}
+
+		/**
+		 * Compiles the plan for the columns of the first result set, the
+		 * result sets of all lanes have the same columns.
+		 */
+		synchronized TableTransformationPlan planFor(ResultSetMetaData rsMeta)
+				throws SQLException {
+			if (plan == null) {
+				List<String> columnNames = new ArrayList<>();
+				for (int column = 1; column <= rsMeta.getColumnCount(); column++)
+					columnNames.add(rsMeta.getColumnName(column));
+				plan = TableTransformationPlan.compile(tableRuleMap, columnNames);
+			}
+			return plan;
+		}
+	}
+
+	TableAnonymizer(Config config, Scope scope, AnonymizerOptions options,
+			List<TransformationStrategy> strategies,
+			ForeignKeyDeletionsHandler foreignKeyDeletions,
+			RowRetainService retainService,
+			ProgressEventDispatcher progressEvents) {
+		this.config = config;
+		this.scope = scope;
+		this.options = options;
+		this.strategies = strategies;
+		this.foreignKeyDeletions = foreignKeyDeletions;
+		this.retainService = retainService;
+		this.progressEvents = progressEvents;
+	}
+
+	/**
+	 * @return the row pipelines which are currently running
+	 */
+	List<RowPipeline> getActivePipelines() {
+		return ImmutableList.copyOf(activePipelines);
+	}
+
+	/**
+	 * @return how often source rows have been expanded to several destination
+	 * 			rows in all tables copied so far
+	 */
+	RowFanOut.Statistics getFanOutStatistics() {
+		return fanOutStatistics;
+	}
+
+	/**
+	 * @return the number of rows read from the original database so far
+	 */
+	long getProcessedRows() {
+		return processedRows.get();
+	}
+
+	private void reportError(String table, String message) {
+		progressEvents.publish(ProgressEvent.error(config.schemaName, table,
+				message));
+	}
+
+	/**
+	 * Copies a range of a table which has been distributed as a work unit.
+	 *
+	 * @param abandoned may be set while the unit is copied to stop copying
+	 * 			it, the rows which have not been committed yet are rolled
+	 * 			back then
+	 * @return true if all rows of the range have been traversed
+	 */
+	boolean copyWorkUnit(TableRuleMap tableRuleMap,
+			String qualifiedTableName, PrimaryKeyRange range,
+			WorkerConnections connections, AtomicBoolean abandoned) {
+		try {
+			prepareTableTransformations(tableRuleMap);
+		} catch (SQLException | FetchPseudonymsFailedException e) {
+			logger.warning("Fetching rows failed: " + e.getMessage());
+			reportError(tableRuleMap.tableName, "Fetching rows failed: "
+					+ e.getMessage());
+			return false;
+		}
+		TableCopy tableCopy = new TableCopy(tableRuleMap, qualifiedTableName);
+		tableCopy.abandoned = abandoned;
+		tableCopy.bulkCopy = canCopyUnchanged(tableRuleMap);
+		tableCopy.progress = new TableProgress(-1, false, LOG_INTERVAL);
+		tableCopy.progress.reportTo(progressEvents, config.schemaName,
+				tableRuleMap.tableName);
+		tableCopy.batchController = createBatchController(
+				tableRuleMap.tableName);
+		boolean copied = false;
+		try {
+			copied = copyAndAnonymizeRange(tableCopy, 0, range, connections);
+			return copied;
+		} finally {
+			finishTableTransformations(tableRuleMap);
+			tableFinished(tableCopy, copied);
+		}
+	}
+
+	private void tableFinished(TableCopy tableCopy, boolean copied) {
+		tableCopy.progress.finished(copied);
+		processedRows.addAndGet(tableCopy.progress.getProcessedRows());
+	}
+
+	/**
+	 * Counts the rows of a table, prepares its strategies and opens the
+	 * cursor over all its rows, as far as this does not depend on the state
+	 * of the destination database. Runs on the prefetch thread.
+	 */
+	void prepareTableInAdvance(TableRuleMap tableRuleMap,
+			TablePrefetcher.PreparedTable prepared, Connection source)
+					throws SQLException {
+		String qualifiedTableName = config.schemaName + "." + prepared.table;
+		long estimate = options.isExactRowCounts() ? -1
+				: estimateRowCount(prepared.table, source);
+		if (estimate >= 0) {
+			prepared.rowCount = (int) Math.min(estimate, Integer.MAX_VALUE);
+		} else {
+			// counting is in the background already
+			prepared.rowCount = countRowsInTable(qualifiedTableName,
+					PrimaryKeyRange.ALL, source);
+			prepared.rowCountExact = true;
+		}
+		try {
+			prepareTableTransformations(tableRuleMap);
+			prepared.strategiesPrepared = true;
+		} catch (FetchPseudonymsFailedException | SQLException e) {
+			logger.info("Could not prepare the transformations of "
+					+ qualifiedTableName + " in advance: " + e.getMessage());
+		}
+		// resumed tables and deltas are not read completely, and a table
+		// split into lanes is read in ranges
+		boolean readsAllRows = options.getTableLanes() == 1
+				&& !checkpoints.containsKey(prepared.table)
+				&& !(options.isIncremental() && scope.getWatermarkColumn(prepared.table) != null);
+		if (readsAllRows) {
+			String keyColumn = resumableKeyColumn(tableRuleMap);
+			PreparedStatement statement = source.prepareStatement(
+					selectRangeQuery(qualifiedTableName, PrimaryKeyRange.ALL,
+							keyColumn));
+			try {
+				prepared.setCursor(statement, statement.executeQuery(),
+						keyColumn);
+			} catch (SQLException e) {
+				statement.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Copies all rows of a table, or those which have not been copied by the
+	 * previous run if the run is resumed or incremental.
+	 *
+	 * @param prefetched the results of preparing the table in advance, or
+	 * 			null
+	 * @return true if all rows of the table have been traversed
+	 */
+	boolean copyAndAnonymizeTable(TableRuleMap tableRuleMap,
+			WorkerConnections connections,
+			TablePrefetcher.PreparedTable prefetched) {
+		String qualifiedTableName = config.schemaName + "." + tableRuleMap.tableName;
+		TableCopy tableCopy = new TableCopy(tableRuleMap, qualifiedTableName);
+		String keyColumn = resumableKeyColumn(tableRuleMap);
+		ProgressJournal.TableCheckpoint checkpoint =
+				checkpoints.get(tableRuleMap.tableName);
+		String watermarkColumn = watermarks != null
+				? scope.getWatermarkColumn(tableRuleMap.tableName) : null;
+		Object highWaterMark = null;
+		String previousHighWaterMark = null;
+		if (watermarkColumn != null) {
+			highWaterMark = queryHighWaterMark(qualifiedTableName,
+					watermarkColumn, connections.source);
+			if (options.isIncremental())
+				previousHighWaterMark = previousHighWaterMark(tableRuleMap,
+						watermarkColumn);
+		}
+		if (previousHighWaterMark == null && (keyColumn == null || checkpoint == null)
+				&& copyWithPushdown(tableRuleMap, qualifiedTableName, connections)) {
+			if (highWaterMark != null)
+				storeHighWaterMark(tableRuleMap.tableName, qualifiedTableName,
+						watermarkColumn, highWaterMark);
+			return true;
+		}
+		List<String> upsertKeyColumns = null;
+		SortedMap<Integer, PrimaryKeyRange> lanes;
+		int rowCount;
+		boolean rowCountExact = true;
+		if (previousHighWaterMark != null) {
+			keyColumn = null; // the delta is simply copied again on resume
+			upsertKeyColumns = foreignKeyDeletions.getPrimaryKey(
+					tableRuleMap.tableName).columnNames;
+			// inclusive, the upsert replaces the rows which were copied already
+			PrimaryKeyRange changedRows = new PrimaryKeyRange(watermarkColumn,
+					previousHighWaterMark, true, null);
+			lanes = new TreeMap<>();
+			lanes.put(0, changedRows);
+			rowCount = countRowsInTable(qualifiedTableName, changedRows,
+					connections.source);
+			logger.info("Found " + rowCount + " rows changed since "
+					+ watermarkColumn + " = " + previousHighWaterMark + ".");
+			recordTableStarted(qualifiedTableName, tableRuleMap.tableName,
+					ImmutableList.of(PrimaryKeyRange.ALL));
+		} else if (keyColumn != null && checkpoint != null) {
+			lanes = new TreeMap<>();
+			for (ProgressJournal.LaneCheckpoint lane : checkpoint.lanes.values()) {
+				if (!lane.finished)
+					lanes.put(lane.lane, lane.remainingRange(keyColumn));
+			}
+			logger.info("Resuming " + tableRuleMap.tableName
+					+ " in the uncommitted primary key ranges " + lanes.values());
+			deleteUncommittedRows(qualifiedTableName, lanes.values(),
+					connections.destination);
+			RowCountEstimate estimate = estimateAllRows(tableRuleMap.tableName,
+					prefetched, connections.source);
+			rowCount = estimate.rowCount;
+			rowCountExact = estimate.exact;
+			// rows copied before the interruption may have changed since
+			highWaterMark = null;
+		} else {
+			// make sure target newDB is empty
+			truncateTable(qualifiedTableName, connections.destination);
+			RowCountEstimate estimate = estimateAllRows(tableRuleMap.tableName,
+					prefetched, connections.source);
+			rowCount = estimate.rowCount;
+			rowCountExact = estimate.exact;
+			if (rowCount > 0)
+				logger.info("Found " + (rowCountExact ? "" : "about ")
+						+ rowCount + " rows.");
+			List<PrimaryKeyRange> ranges = partitionTable(tableRuleMap,
+					rowCount, connections.source);
+			lanes = new TreeMap<>();
+			for (int lane = 0; lane < ranges.size(); lane++)
+				lanes.put(lane, ranges.get(lane));
+			recordTableStarted(qualifiedTableName, tableRuleMap.tableName, ranges);
+		}
+		try {
+			if (prefetched == null || !prefetched.strategiesPrepared)
+				prepareTableTransformations(tableRuleMap);
+		} catch (SQLException | FetchPseudonymsFailedException e) {
+			logger.warning("Fetching rows failed: " + e.getMessage());
+			reportError(tableRuleMap.tableName, "Fetching rows failed: "
+					+ e.getMessage());
+			e.printStackTrace();
+			return false;
+		}
+
+		tableCopy.keyColumn = keyColumn;
+		tableCopy.upsertKeyColumns = upsertKeyColumns;
+		tableCopy.prefetched = prefetched;
+		tableCopy.bulkCopy = canCopyUnchanged(tableRuleMap);
+		if (tableCopy.bulkCopy)
+			logger.info("Copying " + qualifiedTableName
+					+ " unchanged, it has no rules and no rows of its parent "
+					+ "tables can be deleted.");
+		tableCopy.progress = new TableProgress(rowCount, rowCountExact,
+				LOG_INTERVAL);
+		tableCopy.progress.reportTo(progressEvents, config.schemaName,
+				tableRuleMap.tableName);
+		if (rowCount < 0 && !rowCountExact)
+			rowCounter.count(qualifiedTableName, tableCopy.progress);
+		tableCopy.batchController = createBatchController(tableRuleMap.tableName);
+		boolean copied = true;
+		try {
+			if (lanes.size() > 1)
+				copied = copyRangesConcurrently(tableCopy, lanes, connections);
+			else if (lanes.size() == 1)
+				copied = copyAndAnonymizeRange(tableCopy, lanes.firstKey(),
+						lanes.get(lanes.firstKey()), connections);
+		} finally {
+			finishTableTransformations(tableRuleMap);
+		}
+		tableFinished(tableCopy, copied);
+		if (tableCopy.fanOutStatistics.getExpandedSourceRows() > 0)
+			logger.info("Fan-out of " + qualifiedTableName + ": "
+					+ tableCopy.fanOutStatistics);
+		if (tableCopy.fanOutStatistics.getTruncatedSourceRows() > 0)
+			logger.warning(tableCopy.fanOutStatistics
+					.getTruncatedSourceRows() + " source rows of "
+					+ qualifiedTableName + " had more than " + options.getMaxFanOut()
+					+ " destination rows, the remaining rows were dropped.");
+		fanOutStatistics.add(tableCopy.fanOutStatistics);
+		recordBatchSettings(tableRuleMap.tableName, tableCopy.batchController);
+		if (copied && highWaterMark != null)
+			storeHighWaterMark(tableRuleMap.tableName, qualifiedTableName,
+					watermarkColumn, highWaterMark);
+		return copied;
+	}
+
+	private void storeHighWaterMark(String table, String qualifiedTableName,
+			String watermarkColumn, Object highWaterMark) {
+		try {
+			watermarks.put(table, watermarkColumn, highWaterMark);
+		} catch (SQLException e) {
+			logger.warning("Could not store the high-water mark "
+					+ "of " + qualifiedTableName + ", the next incremental "
+					+ "run will copy more rows than necessary: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Copies a table with a single INSERT ... SELECT statement executed by
+	 * the destination database, if pushdown is enabled and all rules of the
+	 * table can be expressed in SQL. Rows of parent tables must not be
+	 * deleted, because the statement cannot delete the dependent rows.
+	 *
+	 * @return true if the table has been copied, otherwise it must be copied
+	 * 			row by row
+	 */
+	private boolean copyWithPushdown(TableRuleMap tableRuleMap,
+			String qualifiedTableName, WorkerConnections connections) {
+		PushdownPlanner pushdown = options.getPushdown();
+		if (pushdown == null || tableRuleMap.isEmpty())
+			return false;
+		for (String parentTable : foreignKeyDeletions.parentTablesOf(
+				tableRuleMap.tableName)) {
+			if (rowDeletingTables.contains(parentTable))
+				return false;
+		}
+		String insertSelect;
+		try (Statement statement = connections.source.createStatement();
+				ResultSet emptyResult = statement.executeQuery(
+						"SELECT * FROM " + qualifiedTableName + " WHERE 1 = 0")) {
+			ResultSetMetaData rsMeta = emptyResult.getMetaData();
+			List<String> columnNames = new ArrayList<>();
+			List<Integer> columnTypes = new ArrayList<>();
+			for (int i = 1; i <= rsMeta.getColumnCount(); i++) {
+				columnNames.add(rsMeta.getColumnName(i));
+				columnTypes.add(rsMeta.getColumnType(i));
+			}
+			insertSelect = pushdown.insertSelectStatement(tableRuleMap,
+					qualifiedTableName, columnNames, columnTypes);
+		} catch (SQLException e) {
+			logger.warning("Could not determine the columns of "
+					+ qualifiedTableName + ": " + e.getMessage());
+			return false;
+		}
+		if (insertSelect == null)
+			return false;
+		truncateTable(qualifiedTableName, connections.destination);
+		recordTableStarted(qualifiedTableName, tableRuleMap.tableName,
+				ImmutableList.of(PrimaryKeyRange.ALL));
+		int rowCount;
+		try (Statement statement = connections.destination.createStatement()) {
+			rowCount = statement.executeUpdate(insertSelect);
+			if (!connections.destination.getAutoCommit())
+				connections.destination.commit();
+		} catch (SQLException e) {
+			logger.warning("Copying " + qualifiedTableName
+					+ " in the destination database failed, copying it row by "
+					+ "row instead: " + e.getMessage());
+			try {
+				if (!connections.destination.getAutoCommit())
+					connections.destination.rollback();
+			} catch (SQLException e1) {
+				logger.warning("Rollback failed: " + e1.getMessage());
+			}
+			return false;
+		}
+		logger.info("Copied " + rowCount + " rows of "
+				+ qualifiedTableName + " with a single statement in the "
+				+ "destination database.");
+		if (journal != null) {
+			try {
+				journal.rangeFinished(tableRuleMap.tableName, 0);
+			} catch (SQLException e) {
+				logger.warning("Could not record the completion of "
+						+ qualifiedTableName + " in the progress journal: "
+						+ e.getMessage());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the rows of a table can be copied as they are: the
+	 * table has no rules, and no rows of its parent tables can be deleted,
+	 * so none of its rows must be deleted or retained either.
+	 */
+	private boolean canCopyUnchanged(TableRuleMap tableRuleMap) {
+		return tableRuleMap.isEmpty()
+				&& !rowDeletingTables.contains(tableRuleMap.tableName);
+	}
+
+	/**
+	 * The number of rows of a table, which may be an estimate or unknown.
+	 */
+	static class RowCountEstimate {
+		/** -1 if unknown */
+		final int rowCount;
+		final boolean exact;
+
+		RowCountEstimate(int rowCount, boolean exact) {
+			this.rowCount = rowCount;
+			this.exact = exact;
+		}
+	}
+
+	/**
+	 * Determines the number of rows of a table from the preparation in
+	 * advance or the statistics of the database. If the database has no
+	 * statistics, the rows are counted later in the background, unless the
+	 * count is needed to split the table into lanes. Exact row counts can be
+	 * enforced with
+	 * {@link AnonymizerOptions#setExactRowCounts(boolean)}.
+	 */
+	RowCountEstimate estimateAllRows(String table,
+			TablePrefetcher.PreparedTable prefetched, Connection source) {
+		if (prefetched != null && prefetched.rowCount >= 0)
+			return new RowCountEstimate(prefetched.rowCount,
+					prefetched.rowCountExact);
+		if (!options.isExactRowCounts()) {
+			long estimate = estimateRowCount(table, source);
+			if (estimate >= 0)
+				return new RowCountEstimate(
+						(int) Math.min(estimate, Integer.MAX_VALUE), false);
+			if (rowCounter != null && options.getTableLanes() <= 1)
+				return new RowCountEstimate(-1, false);
+		}
+		return new RowCountEstimate(countRowsInTable(config.schemaName + "."
+				+ table, PrimaryKeyRange.ALL, source), true);
+	}
+
+	/**
+	 * @return the number of rows according to the statistics of the
+	 * 			database or -1 if there are none
+	 */
+	private long estimateRowCount(String table, Connection source) {
+		try {
+			return SQLHelper.estimateRowCount(config.schemaName, table, source);
+		} catch (SQLException e) {
+			logger.info("Could not estimate the number of rows of "
+					+ config.schemaName + "." + table + ": " + e.getMessage());
+			return -1;
+		}
+	}
+
+	private void prepareTableTransformations(TableRuleMap tableRuleMap)
+			throws SQLException, FetchPseudonymsFailedException {
+		for (TransformationStrategy strategy : strategies) {
+			TableRuleMap tableRuleMapForStrategy =
+					tableRuleMap.filteredByStrategy(strategy);
+			if (tableRuleMapForStrategy.isEmpty())
+				continue;
+			strategy.prepareTableTransformation(tableRuleMapForStrategy);
+		}
+	}
+
+	private void recordTableStarted(String qualifiedTableName, String table,
+			List<PrimaryKeyRange> ranges) {
+		if (journal == null)
+			return;
+		try {
+			journal.tableStarted(table, ranges);
+		} catch (SQLException e) {
+			logger.warning("Could not record the start of "
+					+ qualifiedTableName + " in the progress journal: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the greatest value of the watermark column or null if the
+	 * 			table is empty or the value cannot be determined
+	 */
+	private Object queryHighWaterMark(String qualifiedTableName,
+			String watermarkColumn, Connection source) {
+		try (Statement maxStatement = source.createStatement();
+				ResultSet maxResult = maxStatement.executeQuery(
+						"SELECT MAX(" + watermarkColumn + ") FROM "
+								+ qualifiedTableName)) {
+			maxResult.next();
+			return maxResult.getObject(1);
+		} catch (SQLException e) {
+			logger.warning("Could not determine the high-water mark "
+					+ "of " + qualifiedTableName + "." + watermarkColumn
+					+ ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the high-water mark stored by the previous run if only the rows
+	 * changed since then need to be copied, or null if the table must be
+	 * copied completely. The changed rows replace the destination rows with
+	 * the same primary key, so a primary key is required. Tables on which
+	 * other tables depend are always copied completely because the rows
+	 * deleted from them must be known, and so are tables with rules whose
+	 * results depend on all rows.
+	 */
+	private String previousHighWaterMark(TableRuleMap tableRuleMap,
+			String watermarkColumn) {
+		String table = tableRuleMap.tableName;
+		PrimaryKey primaryKey = foreignKeyDeletions.getPrimaryKey(table);
+		String reason = null;
+		if (primaryKey == null || primaryKey.keyName == null)
+			reason = "it has no primary key";
+		else if (foreignKeyDeletions.hasDependants(table))
+			reason = "other tables depend on it";
+		for (Rule rule : tableRuleMap.getRules()) {
+			if (!rule.getTransformation().isRowOrderIndependent())
+				reason = "its rules need all rows";
+		}
+		if (reason != null) {
+			logger.info("Copying " + table + " completely although "
+					+ "it has a watermark column because " + reason + ".");
+			return null;
+		}
+		try {
+			return watermarks.get(table, watermarkColumn);
+		} catch (SQLException e) {
+			logger.warning("Could not read the high-water mark of "
+					+ table + ", copying it completely: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Splits large tables into primary key ranges which are copied by
+	 * separate lanes. Tables referencing themselves are never split because
+	 * deleted parent rows must have been seen before their children, neither
+	 * are tables with rules whose results depend on the order of the rows.
+	 */
+	List<PrimaryKeyRange> partitionTable(TableRuleMap tableRuleMap,
+			int rowCount, Connection source) {
+		String table = tableRuleMap.tableName;
+		if (options.getTableLanes() <= 1 || rowCount < options.getTableLanes() * options.getMinimumRowsPerLane()
+				|| foreignKeyDeletions.isSelfReferencing(table))
+			return ImmutableList.of(PrimaryKeyRange.ALL);
+		for (Rule rule : tableRuleMap.getRules()) {
+			if (!rule.getTransformation().isRowOrderIndependent())
+				return ImmutableList.of(PrimaryKeyRange.ALL);
+		}
+		PrimaryKey primaryKey = foreignKeyDeletions.getPrimaryKey(table);
+		try {
+			List<PrimaryKeyRange> ranges = new PrimaryKeyRangePartitioner(source)
+					.partition(config.schemaName + "." + table, primaryKey,
+							options.getTableLanes(), rowCount);
+			if (ranges.size() > 1)
+				logger.info("Copying " + table + " in "
+						+ ranges.size() + " primary key ranges: " + ranges);
+			return ranges;
+		} catch (SQLException e) {
+			logger.warning("Could not split " + table + " into "
+					+ "primary key ranges, copying it as a whole: "
+					+ e.getMessage());
+			return ImmutableList.of(PrimaryKeyRange.ALL);
+		}
+	}
+
+	/**
+	 * Copies the ranges of a table concurrently.
+	 *
+	 * @param ranges lane number --> range to be copied by that lane
+	 */
+	private boolean copyRangesConcurrently(final TableCopy tableCopy,
+			SortedMap<Integer, PrimaryKeyRange> ranges,
+			WorkerConnections connections) {
+		List<WorkerConnections> laneConnections = new ArrayList<>(ranges.size());
+		laneConnections.add(connections);
+		try {
+			for (int lane = 1; lane < ranges.size(); lane++)
+				laneConnections.add(WorkerConnections.open(config, options.getLoadGovernor()));
+		} catch (SQLException e) {
+			logger.warning("Could not open connections for all lanes "
+					+ "of " + tableCopy.qualifiedTableName + ", copying the ranges one "
+					+ "after another: " + e.getMessage());
+			closeLaneConnections(laneConnections);
+			boolean copied = true;
+			for (Map.Entry<Integer, PrimaryKeyRange> laneAndRange : ranges.entrySet())
+				copied &= copyAndAnonymizeRange(tableCopy, laneAndRange.getKey(),
+						laneAndRange.getValue(), connections);
+			return copied;
+		}
+		ExecutorService lanes = Executors.newFixedThreadPool(ranges.size());
+		try {
+			List<Future<Boolean>> laneResults = new ArrayList<>(ranges.size());
+			Iterator<WorkerConnections> laneConnectionsIterator =
+					laneConnections.iterator();
+			for (Map.Entry<Integer, PrimaryKeyRange> laneAndRange : ranges.entrySet()) {
+				final int lane = laneAndRange.getKey();
+				final PrimaryKeyRange range = laneAndRange.getValue();
+				final WorkerConnections rangeConnections = laneConnectionsIterator.next();
+				laneResults.add(lanes.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						StrategyConnections previous =
+								rangeConnections.bindForStrategies();
+						try {
+							return copyAndAnonymizeRange(tableCopy, lane, range,
+									rangeConnections);
+						} finally {
+							StrategyConnections.restore(previous);
+						}
+					}
+				}));
+			}
+			boolean copied = true;
+			for (Future<Boolean> laneResult : laneResults)
+				copied &= Futures.getUnchecked(laneResult);
+			return copied;
+		} finally {
+			lanes.shutdownNow();
+			closeLaneConnections(laneConnections);
+		}
+	}
+
+	private static void closeLaneConnections(
+			List<WorkerConnections> laneConnections) {
+		// the first lane uses the connections of the table worker
+		for (WorkerConnections connections : Iterables.skip(laneConnections, 1)) {
+			try {
+				connections.close();
+			} catch (SQLException e) {
+				logger.warning("Could not close lane connections: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Copies the rows of a table in the specified range. If the key column of
+	 * the table copy is set, the rows are read in the order of that column
+	 * and the last committed key is recorded in the progress journal so that
+	 * the range can be continued after an interruption. If upsert key columns
+	 * are set, existing rows with the same key are replaced.
+	 *
+	 * @return true if all rows of the range have been traversed
+	 */
+	private boolean copyAndAnonymizeRange(TableCopy tableCopy, int lane,
+			PrimaryKeyRange range, WorkerConnections connections) {
+		String qualifiedTableName = tableCopy.qualifiedTableName;
+		String keyColumn = tableCopy.keyColumn;
+		ResultSet prefetchedCursor = null;
+		if (range == PrimaryKeyRange.ALL && tableCopy.prefetched != null)
+			prefetchedCursor = tableCopy.prefetched.takeCursor(keyColumn);
+		boolean copied;
+		try (PreparedStatement selectStarStatement = prefetchedCursor == null
+				? connections.source.prepareStatement(selectRangeQuery(
+						qualifiedTableName, range, keyColumn))
+				: null) {
+			if (selectStarStatement != null)
+				range.setParameters(selectStarStatement, 1);
+			try (ResultSet rs = prefetchedCursor != null ? prefetchedCursor
+					: selectStarStatement.executeQuery()) {
+				copied = copyAndAnonymizeRows(tableCopy, lane, rs.getMetaData(),
+						rs, connections.destination);
+			}
+
+			try {
+				connections.destination.commit();
+			} catch (SQLException e) {
+				logger.warning("Commit operation concluding table "
+						+ qualifiedTableName + " failed.");
+				copied = false;
+			}
+		} catch (SQLException e) {
+			logger.severe("Could not query table "
+					+ qualifiedTableName + ": " + e.getMessage());
+			reportError(tableCopy.tableRuleMap.tableName,
+					"Could not query table: " + e.getMessage());
+			return false;
+		}
+		if (copied && journal != null) {
+			try {
+				journal.rangeFinished(tableCopy.tableRuleMap.tableName, lane);
+			} catch (SQLException e) {
+				logger.warning("Could not record the completion of "
+						+ qualifiedTableName + " in the progress journal: "
+						+ e.getMessage());
+			}
+		}
+		return copied;
+	}
+
+	/**
+	 * @param keyColumn the column to order the rows by, may be null
+	 */
+	private static String selectRangeQuery(String qualifiedTableName,
+			PrimaryKeyRange range, String keyColumn) {
+		String orderBy = keyColumn != null ? " ORDER BY " + keyColumn : "";
+		return "SELECT * FROM " + qualifiedTableName + range.whereClause()
+				+ orderBy;
+	}
+
+	/**
+	 * Returns the column by which a table can be continued after the last
+	 * committed row when a run is resumed, or null if the table must be
+	 * copied again from the start. This requires a single column primary key
+	 * whose values are not transformed, rules whose results do not depend on
+	 * the order of the rows, and that no other table depends on the rows
+	 * deleted from this table, because those are only known after a full
+	 * pass.
+	 */
+	private String resumableKeyColumn(TableRuleMap tableRuleMap) {
+		if (journal == null)
+			return null;
+		String table = tableRuleMap.tableName;
+		PrimaryKey primaryKey = foreignKeyDeletions.getPrimaryKey(table);
+		if (primaryKey == null || primaryKey.keyName == null
+				|| primaryKey.columnNames.size() != 1
+				|| foreignKeyDeletions.hasDependants(table))
+			return null;
+		String keyColumn = primaryKey.columnNames.get(0);
+		if (!tableRuleMap.getRules(keyColumn).isEmpty())
+			return null;
+		for (Rule rule : tableRuleMap.getRules()) {
+			if (!rule.getTransformation().isRowOrderIndependent())
+				return null;
+		}
+		return keyColumn;
+	}
+
+	/**
+	 * Deletes the rows of the ranges from the destination table which may
+	 * have been committed by the interrupted run after its last checkpoint.
+	 */
+	void deleteUncommittedRows(String qualifiedTableName,
+			Collection<PrimaryKeyRange> ranges, Connection destination) {
+		try {
+			for (PrimaryKeyRange range : ranges) {
+				try (PreparedStatement delete = destination.prepareStatement(
+						"DELETE FROM " + qualifiedTableName + range.whereClause())) {
+					range.setParameters(delete, 1);
+					delete.executeUpdate();
+				}
+			}
+			destination.commit();
+		} catch (SQLException e) {
+			logger.warning("Could not delete the rows of "
+					+ qualifiedTableName + " which have been copied after the "
+					+ "last checkpoint, this may cause duplicate key errors: "
+					+ e.getMessage());
+		}
+	}
+
+	private void finishTableTransformations(TableRuleMap tableRuleMap) {
+		for (TransformationStrategy strategy : strategies) {
+			TableRuleMap tableRuleMapForStrategy =
+					tableRuleMap.filteredByStrategy(strategy);
+			if (tableRuleMapForStrategy.isEmpty())
+				continue;
+			strategy.finishTableTransformation(tableRuleMapForStrategy);
+		}
+	}
+
+	/**
+	 * @return true if all rows have been traversed
+	 */
+	private boolean copyAndAnonymizeRows(TableCopy tableCopy, final int lane,
+			ResultSetMetaData rsMeta, ResultSet rs, Connection destination)
+					throws SQLException {
+		final TableRuleMap tableRuleMap = tableCopy.tableRuleMap;
+		final String qualifiedTableName = tableCopy.qualifiedTableName;
+		final String keyColumn = tableCopy.keyColumn;
+		final TableProgress progress = tableCopy.progress;
+		final AtomicBoolean abandoned = tableCopy.abandoned;
+		final TableTransformationPlan plan = tableCopy.planFor(rsMeta);
+		final RowFanOut fanOut = new RowFanOut(plan.columnCount, options.getMaxFanOut(),
+				tableCopy.fanOutStatistics);
+		RowPipeline.RowTransformer rowTransformer = new RowPipeline.RowTransformer() {
+			private int processedRowsCount = 0;
+
+			@Override
+			public void transformRow(ResultSetRowReader rowReader, RowSink sink) {
+				processedRowsCount++;
+				try {
+					copyAndAnonymizeRow(plan, qualifiedTableName, rowReader,
+							fanOut, sink);
+					if (keyColumn != null)
+						sink.sourceRowCompleted(rowReader.getObject(keyColumn));
+				} catch (SQLException e) {
+					logger.severe("SQL error when transforming row #"
+							+ processedRowsCount + ": " + e.getMessage());
+					reportError(tableRuleMap.tableName,
+							"SQL error when transforming row #"
+									+ processedRowsCount + ": "
+									+ e.getMessage());
+				}
+				progress.rowProcessed();
+			}
+		};
+		
+		// batch loading into the destination table
+		try (InsertBatchWriter writer = new InsertBatchWriter(destination,
+				qualifiedTableName, Arrays.asList(plan.columnNames),
+				tableCopy.batchController)) {
+			writer.setQuarantine(quarantine);
+			if (tableCopy.upsertKeyColumns != null)
+				writer.enableUpsert(tableCopy.upsertKeyColumns);
+			if (keyColumn != null) {
+				writer.setCommitListener(new InsertBatchWriter.CommitListener() {
+					@Override
+					public void batchCommitted(Object lastSourceKey)
+							throws SQLException {
+						journal.rangeCommitted(tableRuleMap.tableName, lane,
+								lastSourceKey);
+					}
+				});
+			}
+			if (tableCopy.bulkCopy) {
+				copyRowsUnchanged(tableCopy, plan.columnCount, rs, writer);
+			} else if (options.getPipelineQueueCapacity() > 0) {
+				RowPipeline pipeline = new RowPipeline(qualifiedTableName,
+						options.getPipelineQueueCapacity());
+				pipeline.cancelWhen(abandoned);
+				pipeline.setRowPreparer(new RowPipeline.RowPreparer() {
+					@Override
+					public void prepareRows(List<ResultSetRowReader> rows) {
+						prefetchColumnValues(plan, rows);
+					}
+				});
+				activePipelines.add(pipeline);
+				try {
+					pipeline.run(rs, config.schemaName, tableRuleMap.tableName,
+							rowTransformer, writer);
+				} finally {
+					activePipelines.remove(pipeline);
+					logger.info(pipeline.toString());
+				}
+			} else if (options.getPseudonymCacheSize() > 0
+					&& plan.looksUpPseudonyms()) {
+				// copies of the rows are buffered so that the pseudonyms
+				// which are not cached can be looked up in batches
+				RowSnapshot.ColumnIndex columns = new RowSnapshot.ColumnIndex(rsMeta);
+				List<ResultSetRowReader> rows =
+						new ArrayList<>(RowPipeline.MAX_PREPARED_ROWS);
+				boolean moreRows = true;
+				while (moreRows && !abandoned.get()) {
+					rows.clear();
+					while (rows.size() < RowPipeline.MAX_PREPARED_ROWS
+							&& (moreRows = !rs.isClosed() && rs.next()))
+						rows.add(RowSnapshot.capture(rs, columns,
+								config.schemaName, tableRuleMap.tableName));
+					if (!rows.isEmpty())
+						prefetchColumnValues(plan, rows);
+					for (ResultSetRowReader row : rows) {
+						if (abandoned.get())
+							break;
+						rowTransformer.transformRow(row, writer);
+					}
+				}
+			} else {
+				ResultSetRowReader rowReader = new ResultSetRowReader(rs);
+				rowReader.setCurrentTable(tableRuleMap.tableName);
+				rowReader.setCurrentSchema(config.schemaName);
+				while (!abandoned.get() && !rs.isClosed() && rs.next()) { // for all rows
+					rowTransformer.transformRow(rowReader, writer);
+				}
+			}
+			if (abandoned.get()) {
+				// whoever took over copies these rows again
+				destination.rollback();
+				return false;
+			}
+			writer.flush(); // a no-op after the pipeline, it flushes itself
+			return true;
+		} catch (SQLException e) {
+			logger.severe("SQL error while traversing table "
+					+ qualifiedTableName + ": " + e.getMessage());
+			reportError(tableRuleMap.tableName,
+					"SQL error while traversing table: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Lets the first strategy of each column prepare the values of the rows.
+	 * Failures are only logged, the values are then transformed one by one.
+	 */
+	private void prefetchColumnValues(TableTransformationPlan plan,
+			List<ResultSetRowReader> rows) {
+		for (int column = 0; column < plan.columnCount; column++) {
+			if (plan.passThrough[column])
+				continue;
+			TableTransformationPlan.Step step = plan.columnSteps[column][0];
+			try {
+				List<Object> values = new ArrayList<>(rows.size());
+				for (ResultSetRowReader row : rows)
+					values.add(row.getObject(plan.columnNames[column]));
+				step.strategy.prefetch(step.rule, values);
+			} catch (SQLException e) {
+				logger.warning("Could not prefetch the values of "
+						+ plan.tableRuleMap.tableName + "."
+						+ plan.columnNames[column] + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Copies the rows by column index into the writer, bypassing the row
+	 * reader, the transformations and the fan-out.
+	 */
+	private void copyRowsUnchanged(TableCopy tableCopy, int columnCount,
+			ResultSet rs, InsertBatchWriter writer) throws SQLException {
+		int keyIndex = tableCopy.keyColumn != null
+				? rs.findColumn(tableCopy.keyColumn) : 0;
+		Object[] row = new Object[columnCount];
+		while (!tableCopy.abandoned.get() && rs.next()) {
+			for (int column = 0; column < columnCount; column++)
+				row[column] = rs.getObject(column + 1);
+			writer.addRow(row);
+			if (keyIndex > 0)
+				writer.sourceRowCompleted(row[keyIndex - 1]);
+			tableCopy.progress.rowProcessed();
+		}
+	}
+
+	private void copyAndAnonymizeRow(TableTransformationPlan plan,
+			String qualifiedTableName, ResultSetRowReader rowReader,
+			RowFanOut fanOut, RowSink sink) throws SQLException {
+		TableRuleMap tableRuleMap = plan.tableRuleMap;
+		boolean retainRow = false;
+		if (foreignKeyDeletions.hasParentRowBeenDeleted(rowReader)) {
+			retainRow = retainService.currentRowShouldBeRetained(
+					config.schemaName, tableRuleMap.tableName, rowReader);
+			if (retainRow) {
+				logger.warning("Retaining a row in "
+						+ qualifiedTableName + " even though its parent row "
+								+ "in another table has been deleted!");
+			} else {
+				// the parent row has been deleted, so delete this row as well
+				// since the foreign key cannot be reestablished and should
+				// possible be kept secret
+				foreignKeyDeletions.rowHasBeenDeleted(rowReader);
+				return;
+			}
+		}
+		// apply rules which have no column name specified first
+		// because these are likely to be retain or delete instructions
+		for (TableTransformationPlan.Step step : plan.rowSteps) {
+			Rule configRule = step.rule;
+			if (Iterables.isEmpty(
+					anonymizeValue(null, step, rowReader, null, tableRuleMap))) {
+				if (retainRow
+						|| retainService.currentRowShouldBeRetained(
+								configRule.getTableField().schema,
+								configRule.getTableField().table,
+								rowReader)) {
+					// skip this transformation which deleted the tuple
+					logger.info(
+							"Not deleting a row in "
+									+ qualifiedTableName + " because it "
+									+ "was previously marked to be "
+									+ "retained.");
+					retainRow = true;
+					continue;
+				}
+				foreignKeyDeletions.rowHasBeenDeleted(rowReader);
+				return;
+			}
+		}
+		// apply rules to specific columns
+		fanOut.beginRow();
+		for (int j = 1; j <= plan.columnCount; j++) { // for all columns
+			Object value = rowReader.getObject(j);
+			if (plan.passThrough[j - 1]) {
+				// if column doesn't have to be anonymized, take old value
+				fanOut.set(j - 1, value);
+				continue;
+			}
+			String columnName = plan.columnNames[j - 1];
+			// values of the column, null as long as there is only one value
+			List<Object> currentValues = null;
+			for (TableTransformationPlan.Step step : plan.columnSteps[j - 1]) {
+				Rule configRule = step.rule;
+				Iterable<?> newValues;
+				if (currentValues == null) {
+					newValues = anonymizeValue(value, step, rowReader,
+							columnName, tableRuleMap);
+				} else {
+					List<Object> allNewValues = new ArrayList<>();
+					for (Object intermediateValue : currentValues) {
+						Iterables.addAll(allNewValues, anonymizeValue(
+								intermediateValue, step, rowReader, columnName,
+								tableRuleMap));
+					}
+					newValues = allNewValues;
+				}
+				Iterator<?> newValuesIterator = newValues.iterator();
+				if (!newValuesIterator.hasNext()) {
+					if (retainRow
+							|| retainService.currentRowShouldBeRetained(
+									configRule.getTableField().schema,
+									configRule.getTableField().table,
+									rowReader)) {
+						// skip this transformation which deleted the tuple
+						logger.info(
+								"Not deleting a row in "
+										+ qualifiedTableName + " because it "
+										+ "was previously marked to be "
+										+ "retained.");
+						retainRow = true;
+						continue;
+					}
+					// if a Strategy returned an empty transformation, the
+					// cross product of all column values will be empty,
+					// the original tuple is lost
+					foreignKeyDeletions.rowHasBeenDeleted(rowReader);
+					return;
+				}
+				Object firstValue = newValuesIterator.next();
+				if (newValuesIterator.hasNext()) {
+					currentValues = Lists.newArrayList(firstValue);
+					Iterators.addAll(currentValues, newValuesIterator);
+				} else {
+					value = firstValue;
+					currentValues = null;
+				}
+			}
+			if (currentValues == null)
+				fanOut.set(j - 1, value);
+			else
+				fanOut.setAll(j - 1, currentValues);
+		}
+		try {
+			fanOut.emit(sink);
+		} catch (SQLException e) {
+			logger.severe("Adding insert statement failed: "
+					+ e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	private Iterable<?> anonymizeValue(Object currentValue,
+			TableTransformationPlan.Step step, ResultSetRowReader rowReader,
+			String columnName, TableRuleMap tableRules) {
+		Rule configRule = step.rule;
+		try {
+			return step.strategy.transform(currentValue, configRule, rowReader);
+		} catch (TransformationKeyNotFoundException e) {
+			logger.log(Level.SEVERE,
+					"Transformation value for \"" +
+							currentValue + "\" (from table " +
+					tableRules.tableName + "." + columnName +
+					") was not found in keys for " +
+					configRule.getTableField() +
+					". Used empty String instead.",
+					e);
+		} catch (SQLException e) {
+			logger.severe("SQL error while transforming value \""
+					+ currentValue + "\" (from table " +
+					tableRules.tableName + "." + columnName +
+					") : " + e.getMessage() + ". Using empty String instead.");
+			reportError(tableRules.tableName, "SQL error while transforming "
+					+ columnName + ": " + e.getMessage());
+		} catch (TransformationFailedException e) {
+			logger.severe(e.getMessage());
+			reportError(tableRules.tableName, e.getMessage());
+			Throwable t = e;
+			while ((t = t.getCause()) != null) {
+				logger.severe("caused by: " + t.getMessage());
+			}
+		}
+		return Lists.newArrayList("");
+	}
+
+	private int countRowsInTable(String qualifiedTableName,
+			PrimaryKeyRange range, Connection source) {
+		int rowCount = -1;
+		try (PreparedStatement countStatement = source.prepareStatement(
+				"SELECT COUNT(*) FROM " + qualifiedTableName + range.whereClause())) {
+			range.setParameters(countStatement, 1);
+			try (ResultSet countResult = countStatement.executeQuery()) {
+				countResult.next();
+				rowCount = countResult.getInt(1);
+			}
+		} catch (SQLException e) {
+			logger.info("Could not retrieve row count for table "
+					+ qualifiedTableName + " (error message follows), "
+					+ "progress report will be awkward.");
+			logger.warning(e.getMessage());
+		}
+		return rowCount;
+	}
+
+	void truncateTable(String qualifiedTableName, Connection destination) {
+		TableTruncater.truncateTable(qualifiedTableName, destination);
+	}
+
+	/**
+	 * Creates the controller for the batches of a table. Adaptive controllers
+	 * start from the settings recorded by the previous run.
+	 */
+	private BatchController createBatchController(String table) {
+		if (!options.isAdaptiveBatching())
+			return new BatchController(config.batchSize, config.batchSize);
+		int batchSize = config.batchSize;
+		int commitInterval = config.batchSize;
+		if (batchSettings != null) {
+			try {
+				BatchSettingsStore.BatchSettings settings = batchSettings.get(table);
+				if (settings != null) {
+					batchSize = settings.batchSize;
+					commitInterval = settings.commitInterval;
+				}
+			} catch (SQLException e) {
+				logger.warning("Could not read the batch settings of "
+						+ table + ": " + e.getMessage());
+			}
+		}
+		return new AdaptiveBatchController(batchSize, commitInterval,
+				options.getMinBatchSize(), options.getMaxBatchSize(), options.getMaxCommitInterval(),
+				options.getMaxBatchLatencyMillis());
+	}
+
+	private void recordBatchSettings(String table,
+			BatchController batchController) {
+		if (!options.isAdaptiveBatching())
+			return;
+		logger.info("Finished " + table + " with "
+				+ batchController + ".");
+		if (batchSettings == null)
+			return;
+		try {
+			batchSettings.put(table, batchController.getBatchSize(),
+					batchController.getCommitInterval());
+		} catch (SQLException e) {
+			logger.warning("Could not record the batch settings of "
+					+ table + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copies the tables of a {@link TableDependencyGraph} on several worker
+ * threads. Each worker uses its own pair of connections and takes the next
+ * table whose parent tables have been finished.
+ */
+public class TableCopyScheduler {
+
+	static Logger logger = Logger.getLogger(TableCopyScheduler.class.getName());
+
+	/**
+	 * Copies a single table with the supplied connections.
+	 */
+	public interface TableCopier {
+		void copyTable(String table, int tableNumber,
+				WorkerConnections connections);
+	}
+
+	private final TableDependencyGraph graph;
+	private final TableCopier copier;
+	private final AtomicInteger startedTables = new AtomicInteger();
+	private volatile RuntimeException workerFailure;
+	private volatile Error workerError;
+
+	public TableCopyScheduler(TableDependencyGraph graph, TableCopier copier) {
+		this.graph = graph;
+		this.copier = copier;
+	}
+
+	/**
+	 * Copies all tables of the graph and returns when all workers are done.
+	 * If a worker fails with an unchecked exception no further tables are
+	 * handed out and the exception is rethrown once all workers stopped.
+	 *
+	 * @param workerConnections the connections of each worker thread, which
+	 * 			the strategies use on that thread
+	 * @throws InterruptedException the waiting thread was interrupted
+	 */
+	public void run(List<WorkerConnections> workerConnections)
+			throws InterruptedException {
+		List<Thread> workers = new ArrayList<>(workerConnections.size());
+		int workerNumber = 0;
+		for (final WorkerConnections connections : workerConnections) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					copyTables(connections);
+				}
+			}, "table-copy-worker-" + (++workerNumber));
+			workers.add(worker);
+			worker.start();
+		}
+		try {
+			for (Thread worker : workers)
+				worker.join();
+		} catch (InterruptedException e) {
+			graph.abort();
+			throw e;
+		}
+		if (workerError != null)
+			throw workerError;
+		if (workerFailure != null)
+			throw workerFailure;
+	}
+
+	private void copyTables(WorkerConnections connections) {
+		StrategyConnections previous = connections.bindForStrategies();
+		try {
+			String table;
+			while ((table = graph.takeNextTable()) != null) {
+				try {
+					copier.copyTable(table, startedTables.incrementAndGet(),
+							connections);
+				} finally {
+					graph.tableFinished(table);
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.warning(Thread.currentThread().getName()
+					+ " was interrupted, stopping.");
+			graph.abort();
+		} catch (RuntimeException e) {
+			logger.log(Level.SEVERE, Thread.currentThread().getName()
+					+ " failed, no further tables will be copied.", e);
+			workerFailure = e;
+			graph.abort();
+		} catch (Error e) {
+			workerError = e;
+			graph.abort();
+		} finally {
+			StrategyConnections.restore(previous);
+			try {
+				connections.close();
+			} catch (SQLException e) {
+				logger.warning("Could not close worker connections: "
+						+ e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+
+/**
+ * Hands out the tables of a scope in an order in which a table is only
+ * handed out after all tables on whose row deletions it depends have been
+ * finished. Tables which do not depend on each other can be processed
+ * concurrently.
+ */
+public class TableDependencyGraph {
+
+	static Logger logger = Logger.getLogger(TableDependencyGraph.class.getName());
+
+	/** child table --> parent tables which must be finished first */
+	private Multimap<String, String> parentTables = HashMultimap.create();
+	private LinkedHashSet<String> pendingTables = new LinkedHashSet<>();
+	private Set<String> runningTables = new HashSet<>();
+	private Set<String> finishedTables = new HashSet<>();
+	private boolean aborted = false;
+
+	public TableDependencyGraph(Collection<String> tables) {
+		pendingTables.addAll(tables);
+	}
+
+	/**
+	 * Builds the graph from the foreign keys which the ForeignKeyDeletionsHandler
+	 * discovered. A foreign key only imposes an order if rows of its parent
+	 * table might be deleted, i.e. if rules which might drop rows are applied
+	 * to the parent table or if rows of the parent table might be deleted due to deletions in its own
+	 * parent tables.
+	 *
+	 * @param tables tables in the order of the scope
+	 * @param foreignKeys handler which knows the relationships among the tables
+	 * @param tablesWithDeletingRules tables to which at least one rule applies
+	 * 			whose strategy might drop rows
+	 */
+	public static TableDependencyGraph build(Collection<String> tables,
+			ForeignKeyDeletionsHandler foreignKeys,
+			Collection<String> tablesWithDeletingRules) {
+		TableDependencyGraph graph = new TableDependencyGraph(tables);
+		Set<String> deletingTables = tablesWhichMightDeleteRows(tables,
+				foreignKeys, tablesWithDeletingRules);
+		for (String table : tables) {
+			for (String parentTable : foreignKeys.parentTablesOf(table)) {
+				if (tables.contains(parentTable)
+						&& deletingTables.contains(parentTable))
+					graph.addDependency(table, parentTable);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Returns the tables whose rows might be deleted, either by their own
+	 * rules or because rows of a parent table might be deleted.
+	 */
+	static Set<String> tablesWhichMightDeleteRows(
+			Collection<String> tables, ForeignKeyDeletionsHandler foreignKeys,
+			Collection<String> tablesWithDeletingRules) {
+		Set<String> deletingTables = new HashSet<>(tablesWithDeletingRules);
+		boolean changed = true;
+		while (changed) { // propagate until fixpoint, terminates on cycles
+			changed = false;
+			for (String table : tables) {
+				if (deletingTables.contains(table))
+					continue;
+				for (String parentTable : foreignKeys.parentTablesOf(table)) {
+					if (deletingTables.contains(parentTable)) {
+						deletingTables.add(table);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return deletingTables;
+	}
+
+	public synchronized void addDependency(String childTable, String parentTable) {
+		if (!childTable.equals(parentTable))
+			parentTables.put(childTable, parentTable);
+	}
+
+	public synchronized ImmutableSet<String> getParentTables(String table) {
+		return ImmutableSet.copyOf(parentTables.get(table));
+	}
+
+	/**
+	 * Returns the next table whose parent tables have all been finished. Blocks
+	 * until such a table becomes available. If the remaining tables only
+	 * depend on each other in a cycle, the first of them in scope order is
+	 * returned regardless of its dependencies.
+	 *
+	 * @return the name of the next table or null if all tables have been
+	 * 			handed out or the graph has been aborted
+	 * @throws InterruptedException
+	 */
+	public synchronized String takeNextTable() throws InterruptedException {
+		while (!aborted && !pendingTables.isEmpty()) {
+			String readyTable = firstReadyTable();
+			if (readyTable == null && runningTables.isEmpty()) {
+				readyTable = pendingTables.iterator().next();
+				logger.warning("Tables " + pendingTables + " depend on each "
+						+ "other in a cycle. Continuing with " + readyTable
+						+ " although its parent tables are not finished.");
+			}
+			if (readyTable != null) {
+				pendingTables.remove(readyTable);
+				runningTables.add(readyTable);
+				return readyTable;
+			}
+			wait();
+		}
+		return null;
+	}
+
+	private String firstReadyTable() {
+		Iterator<String> candidates = pendingTables.iterator();
+		while (candidates.hasNext()) {
+			String candidate = candidates.next();
+			if (finishedTables.containsAll(parentTables.get(candidate)))
+				return candidate;
+		}
+		return null;
+	}
+
+	public synchronized void tableFinished(String table) {
+		runningTables.remove(table);
+		finishedTables.add(table);
+		notifyAll();
+	}
+
+	/**
+	 * Stops handing out tables, e.g. after a worker failed.
+	 */
+	public synchronized void abort() {
+		aborted = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isAborted() {
+		return aborted;
+	}
+
+	public synchronized List<String> getPendingTables() {
+		return new ArrayList<>(pendingTables);
+	}
+}
@@ -0,0 +1,195 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Computes cheap fingerprints of the contents of tables, which change
+ * whenever a row is inserted, updated or deleted.
+ * <p>
+ * If the table has a version column whose value increases with every
+ * insert and update, like the watermark column of an incremental run, the
+ * fingerprint is aggregated by the database from the row count, the range
+ * of the primary key and the greatest version. Otherwise the rows of small
+ * tables are hashed while they are read, the sum of the row hashes does not
+ * depend on the order of the rows. Larger tables without a version column
+ * get no fingerprint because reading them would cost about as much as
+ * copying them.
+ */
+class TableFingerprinter {
+
+	private static final HashFunction ROW_HASH = Hashing.murmur3_128();
+
+	private final Connection source;
+	private final String schema;
+	private final long maxHashedRows;
+
+	/**
+	 * @param maxHashedRows the number of rows up to which tables without a
+	 * 			version column are hashed
+	 */
+	TableFingerprinter(Connection source, String schema, long maxHashedRows) {
+		this.source = source;
+		this.schema = schema;
+		this.maxHashedRows = maxHashedRows;
+	}
+
+	/**
+	 * @param primaryKey the primary key of the table or null
+	 * @param versionColumn the version column of the table or null
+	 * @return the hexadecimal fingerprint or null if the table cannot be
+	 * 			fingerprinted cheaply
+	 */
+	String fingerprint(String table, PrimaryKey primaryKey,
+			String versionColumn) throws SQLException {
+		String qualifiedTableName = SQLHelper.qualifiedTableName(schema, table);
+		String aggregates;
+		if (versionColumn != null) {
+			aggregates = aggregateFingerprint(qualifiedTableName, primaryKey,
+					versionColumn);
+		} else {
+			long rows = SQLHelper.estimateRowCount(schema, table, source);
+			if (rows < 0 || rows > maxHashedRows)
+				rows = countRows(qualifiedTableName);
+			if (rows > maxHashedRows)
+				return null;
+			aggregates = hashRows(qualifiedTableName);
+		}
+		return Hashing.sha256().hashString(aggregates, StandardCharsets.UTF_8)
+				.toString();
+	}
+
+	private String aggregateFingerprint(String qualifiedTableName,
+			PrimaryKey primaryKey, String versionColumn) throws SQLException {
+		List<String> aggregates = new ArrayList<>();
+		aggregates.add("COUNT(*)");
+		aggregates.add("MAX(" + versionColumn + ")");
+		if (primaryKey != null) {
+			for (String keyColumn : primaryKey.columnNames) {
+				aggregates.add("MIN(" + keyColumn + ")");
+				aggregates.add("MAX(" + keyColumn + ")");
+			}
+		}
+		try (Statement select = source.createStatement();
+				ResultSet result = select.executeQuery("SELECT "
+						+ Joiner.on(", ").join(aggregates) + " FROM "
+						+ qualifiedTableName)) {
+			result.next();
+			StringBuilder values = new StringBuilder();
+			for (int column = 1; column <= aggregates.size(); column++)
+				values.append(aggregates.get(column - 1)).append('=')
+						.append(result.getString(column)).append(';');
+			return values.toString();
+		}
+	}
+
+	private long countRows(String qualifiedTableName) throws SQLException {
+		try (Statement select = source.createStatement();
+				ResultSet count = select.executeQuery("SELECT COUNT(*) FROM "
+						+ qualifiedTableName)) {
+			count.next();
+			return count.getLong(1);
+		}
+	}
+
+	private String hashRows(String qualifiedTableName) throws SQLException {
+		long rows = 0;
+		long hashSum = 0;
+		try (Statement select = source.createStatement();
+				ResultSet result = select.executeQuery("SELECT * FROM "
+						+ qualifiedTableName)) {
+			int columnCount = result.getMetaData().getColumnCount();
+			while (result.next()) {
+				Hasher row = ROW_HASH.newHasher();
+				for (int column = 1; column <= columnCount; column++)
+					putValue(row, result.getObject(column));
+				hashSum += row.hash().asLong();
+				rows++;
+			}
+		}
+		return "rows=" + rows + ";hash=" + hashSum;
+	}
+
+	private static void putValue(Hasher row, Object value) throws SQLException {
+		if (value == null) {
+			row.putByte((byte) 0);
+			return;
+		}
+		row.putByte((byte) 1);
+		byte[] bytes;
+		if (value instanceof byte[])
+			bytes = (byte[]) value;
+		else if (value instanceof Blob)
+			bytes = ((Blob) value).getBytes(1, (int) ((Blob) value).length());
+		else if (value instanceof Clob)
+			bytes = ((Clob) value).getSubString(1, (int) ((Clob) value).length())
+					.getBytes(StandardCharsets.UTF_8);
+		else
+			bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+		// the length separates the values of adjacent columns
+		row.putInt(bytes.length).putBytes(bytes);
+	}
+
+	/**
+	 * Hashes the rules applied to a table, including the classes of their
+	 * strategies, independent of their order.
+	 *
+	 * @param strategyMapping strategy name --> class name
+	 */
+	static String rulesHash(Collection<Rule> rules,
+			Map<String, String> strategyMapping) {
+		List<String> descriptions = new ArrayList<>();
+		for (Rule rule : rules) {
+			String description = rule + " "
+					+ strategyMapping.get(rule.getStrategy());
+			// another key yields other pseudonyms
+			if (rule.getTransformation() instanceof PseudonymizeStrategy
+					&& ((PseudonymizeStrategy) rule.getTransformation()).isKeyed())
+				description += " " + ((PseudonymizeStrategy) rule
+						.getTransformation()).keyedPseudonymizer()
+						.getKeyFingerprint();
+			descriptions.add(description);
+		}
+		Collections.sort(descriptions);
+		return Hashing.sha256().hashString(Joiner.on('\n').join(descriptions),
+				StandardCharsets.UTF_8).toString();
+	}
+}
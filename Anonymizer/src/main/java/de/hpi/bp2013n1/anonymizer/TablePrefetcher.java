@@ -0,0 +1,229 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Prepares the next table on a background thread while the current table
+ * is copied, so that its row count, the caches of its strategies and its
+ * cursor are ready when the copy switches to it.
+ * <p>
+ * The preparations alternate between two source connections. A prepared
+ * cursor stays open on its connection while the table is copied, in the
+ * meantime the following table is prepared on the other connection. The
+ * strategies use these and a separate connection to the transformation
+ * database on the prefetch thread.
+ */
+class TablePrefetcher implements AutoCloseable {
+
+	static Logger logger = Logger.getLogger(TablePrefetcher.class.getName());
+
+	/**
+	 * Does the actual preparation of a table.
+	 */
+	interface Preparer {
+		void prepare(PreparedTable table, Connection source)
+				throws SQLException;
+	}
+
+	/**
+	 * The results of preparing a table. All fields are optional, a table
+	 * whose preparation failed partially is prepared on the copying thread.
+	 */
+	static class PreparedTable implements AutoCloseable {
+		final String table;
+		/** -1 if the rows have not been counted */
+		int rowCount = -1;
+		/** false if rowCount is an estimate */
+		boolean rowCountExact;
+		boolean strategiesPrepared;
+		/** the key column the cursor is ordered by */
+		private String cursorKeyColumn;
+		private PreparedStatement statement;
+		private ResultSet cursor;
+
+		PreparedTable(String table) {
+			this.table = table;
+		}
+
+		void setCursor(PreparedStatement statement, ResultSet cursor,
+				String keyColumn) {
+			this.statement = statement;
+			this.cursor = cursor;
+			this.cursorKeyColumn = keyColumn;
+		}
+
+		/**
+		 * Hands the cursor over to the caller, it can only be taken once.
+		 *
+		 * @return the cursor over all rows, ordered by the specified key
+		 * 			column, or null if there is none
+		 */
+		synchronized ResultSet takeCursor(String keyColumn) {
+			if (cursor == null || !(keyColumn == null
+					? cursorKeyColumn == null : keyColumn.equals(cursorKeyColumn)))
+				return null;
+			ResultSet taken = cursor;
+			cursor = null;
+			return taken;
+		}
+
+		@Override
+		public synchronized void close() {
+			try {
+				if (cursor != null)
+					cursor.close();
+				if (statement != null)
+					statement.close();
+			} catch (SQLException e) {
+				logger.warning("Could not close the prefetched cursor of "
+						+ table + ": " + e.getMessage());
+			}
+			cursor = null;
+			statement = null;
+		}
+	}
+
+	private final List<Connection> sources;
+	private final Connection transformation;
+	private final Preparer preparer;
+	private final ExecutorService executor;
+	private final Map<String, Future<PreparedTable>> preparations =
+			new HashMap<>();
+	private int preparedTables;
+
+	/**
+	 * @param sources two connections to the original database which are
+	 * 			owned and closed by the prefetcher
+	 * @param transformation connection to the transformation database which
+	 * 			is owned and closed by the prefetcher
+	 */
+	TablePrefetcher(List<Connection> sources, Connection transformation,
+			Preparer preparer) {
+		this.sources = sources;
+		this.transformation = transformation;
+		this.preparer = preparer;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "table-prefetcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts preparing the table in the background. The cursor of the table
+	 * prepared before the previous one must have been closed.
+	 */
+	synchronized void prefetch(final String table) {
+		if (preparations.containsKey(table))
+			return;
+		final Connection source = sources.get(preparedTables++ % sources.size());
+		preparations.put(table, executor.submit(new Callable<PreparedTable>() {
+			@Override
+			public PreparedTable call() throws SQLException {
+				PreparedTable prepared = new PreparedTable(table);
+				StrategyConnections previous = new StrategyConnections(
+						source, transformation).bind();
+				try {
+					preparer.prepare(prepared, source);
+				} catch (SQLException | RuntimeException e) {
+					prepared.close();
+					throw e;
+				} finally {
+					StrategyConnections.restore(previous);
+				}
+				return prepared;
+			}
+		}));
+	}
+
+	/**
+	 * Waits until the table has been prepared.
+	 *
+	 * @return the prepared table, or null if the table has not been
+	 * 			prefetched or its preparation failed
+	 */
+	PreparedTable take(String table) {
+		Future<PreparedTable> preparation;
+		synchronized (this) {
+			preparation = preparations.remove(table);
+		}
+		if (preparation == null)
+			return null;
+		try {
+			return preparation.get();
+		} catch (ExecutionException e) {
+			logger.warning("Preparing " + table + " in advance failed, it "
+					+ "will be prepared again: " + e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		synchronized (this) {
+			// cursors of running preparations are closed with the connections
+			for (Future<PreparedTable> preparation : preparations.values()) {
+				if (!preparation.isDone() || preparation.isCancelled())
+					continue;
+				try {
+					preparation.get().close();
+				} catch (ExecutionException | InterruptedException e) {
+					// nothing to close
+				}
+			}
+			preparations.clear();
+		}
+		for (Connection connection : Iterables.concat(sources,
+				Collections.singleton(transformation))) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.warning("Could not close a prefetch connection: "
+						+ e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the processed rows of a table and publishes the progress as
+ * {@link ProgressEvent}s every logInterval rows. Several lanes copying ranges of the same table share one instance
+ * so that a single merged progress is reported.
+ * <p>
+ * The total number of rows may be an estimate or unknown at first, it is
+ * refined by {@link #rowCountDetermined(int)} once it has been counted.
+ */
+class TableProgress {
+	private volatile int rowCount;
+	private volatile boolean rowCountExact;
+	private final int logInterval;
+	private final AtomicInteger processedRows = new AtomicInteger();
+	private final long startNanos = System.nanoTime();
+	private ProgressEventDispatcher events;
+	private String schema, table;
+
+	TableProgress(int rowCount, int logInterval) {
+		this(rowCount, true, logInterval);
+	}
+
+	/**
+	 * @param rowCount the number of rows or -1 if it is unknown
+	 * @param rowCountExact false if rowCount is an estimate
+	 */
+	TableProgress(int rowCount, boolean rowCountExact, int logInterval) {
+		this.rowCount = rowCount;
+		this.rowCountExact = rowCountExact && rowCount >= 0;
+		this.logInterval = logInterval;
+	}
+
+	/**
+	 * Publishes the progress of the table from now on, starting with a
+	 * {@link ProgressEvent.Type#TABLE_STARTED} event.
+	 */
+	void reportTo(ProgressEventDispatcher events, String schema, String table) {
+		this.events = events;
+		this.schema = schema;
+		this.table = table;
+		events.publish(ProgressEvent.tableStarted(schema, table, rowCount,
+				rowCountExact));
+	}
+
+	/**
+	 * Replaces the estimated number of rows by the counted one.
+	 */
+	void rowCountDetermined(int rowCount) {
+		this.rowCount = rowCount;
+		rowCountExact = true;
+	}
+
+	boolean isRowCountExact() {
+		return rowCountExact;
+	}
+
+	/**
+	 * @return the number of rows or -1 if it is unknown
+	 */
+	int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of rows processed so far including this one
+	 */
+	int rowProcessed() {
+		int processed = processedRows.incrementAndGet();
+		if ((processed % logInterval) == 0 && events != null)
+			events.publish(ProgressEvent.batch(schema, table, processed,
+					rowCount, rowCountExact, elapsedMillis(),
+					getRemainingSeconds()));
+		return processed;
+	}
+
+	int getProcessedRows() {
+		return processedRows.get();
+	}
+
+	/**
+	 * @return the estimated remaining time in seconds, or -1 if it is unknown
+	 */
+	long getRemainingSeconds() {
+		int processed = processedRows.get();
+		int total = rowCount;
+		if (processed == 0 || total < processed)
+			return -1;
+		long elapsedNanos = System.nanoTime() - startNanos;
+		return TimeUnit.NANOSECONDS.toSeconds(
+				elapsedNanos / processed * (total - processed));
+	}
+
+	void finished(boolean succeeded) {
+		if (events != null)
+			events.publish(ProgressEvent.tableFinished(schema, table,
+					processedRows.get(), rowCount, rowCountExact,
+					elapsedMillis(), succeeded));
+	}
+
+	private long elapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+}
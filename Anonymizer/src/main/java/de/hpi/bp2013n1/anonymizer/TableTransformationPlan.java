@@ -0,0 +1,127 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+
+/**
+ * Immutable plan to transform the rows of one table, compiled once from the
+ * {@link TableRuleMap} and the columns of the result set. The rules of each
+ * column are resolved to arrays indexed by the column, so that transforming
+ * a row does not look up rules by column name.
+ */
+final class TableTransformationPlan {
+
+	/**
+	 * A rule together with its pre-resolved strategy.
+	 */
+	static final class Step {
+		final Rule rule;
+		final TransformationStrategy strategy;
+
+		Step(Rule rule) {
+			this.rule = rule;
+			this.strategy = rule.getTransformation();
+		}
+	}
+
+	private static final Step[] NO_STEPS = new Step[0];
+
+	final TableRuleMap tableRuleMap;
+	final int columnCount;
+	/** column names in the order of the result set, 0-based */
+	final String[] columnNames;
+	/** rules without column which are applied to the whole row first */
+	final Step[] rowSteps;
+	/** column index (0-based) --> rules in the order of application */
+	final Step[][] columnSteps;
+	/** true for columns whose values are copied unchanged */
+	final boolean[] passThrough;
+
+	private TableTransformationPlan(TableRuleMap tableRuleMap,
+			String[] columnNames, Step[] rowSteps, Step[][] columnSteps) {
+		this.tableRuleMap = tableRuleMap;
+		this.columnCount = columnNames.length;
+		this.columnNames = columnNames;
+		this.rowSteps = rowSteps;
+		this.columnSteps = columnSteps;
+		passThrough = new boolean[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			passThrough[i] = columnSteps[i].length == 0;
+	}
+
+	/**
+	 * @param columnNames names of the columns in the order of the result set
+	 */
+	static TableTransformationPlan compile(TableRuleMap tableRuleMap,
+			List<String> columnNames) {
+		Step[][] columnSteps = new Step[columnNames.size()][];
+		for (int i = 0; i < columnSteps.length; i++)
+			columnSteps[i] = steps(tableRuleMap.getRules(columnNames.get(i)));
+		return new TableTransformationPlan(tableRuleMap,
+				columnNames.toArray(new String[columnNames.size()]),
+				steps(tableRuleMap.getRules(null)), columnSteps);
+	}
+
+	private static Step[] steps(ImmutableList<Rule> rules) {
+		if (rules.isEmpty())
+			return NO_STEPS;
+		Step[] steps = new Step[rules.size()];
+		for (int i = 0; i < steps.length; i++)
+			steps[i] = new Step(rules.get(i));
+		return steps;
+	}
+
+	/**
+	 * @return true if no rule applies to any column or row of the table
+	 */
+	boolean isPassThrough() {
+		if (rowSteps.length > 0)
+			return false;
+		for (boolean columnPassesThrough : passThrough) {
+			if (!columnPassesThrough)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the first strategy of a column looks up pseudonyms in
+	 * 			a table, which is cheaper for the values of many rows at once
+	 */
+	boolean looksUpPseudonyms() {
+		for (int column = 0; column < columnCount; column++) {
+			if (passThrough[column])
+				continue;
+			TransformationStrategy strategy = columnSteps[column][0].strategy;
+			if (strategy instanceof PseudonymizeStrategy
+					&& !((PseudonymizeStrategy) strategy).isKeyed())
+				return true;
+		}
+		return false;
+	}
+}
@@ -154,6 +154,10 @@ public abstract class TransformationStrategy {
 				transformationDB);
 	}
 
+	/**
+	 * connections of the Anonymizer which created this strategy, workers use
+	 * their own, see {@link #originalDatabase()}
+	 */
 	protected Connection originalDatabase, transformationDatabase;
 	protected Anonymizer anonymizer;
 
@@ -207,6 +211,41 @@ public abstract class TransformationStrategy {
 			ResultSetRowReader row) throws TransformationFailedException,
 			SQLException, TransformationKeyNotFoundException;
 
+	/**
+	 * @return the budget which caches of this strategy should register with,
+	 * 			or null if they may grow unbounded
+	 */
+	protected MemoryBudget memoryBudget() {
+		return options().getMemoryBudget();
+	}
+
+	/**
+	 * @return the options of the Anonymizer, or the default options if this
+	 * 			strategy has been created without one
+	 */
+	protected AnonymizerOptions options() {
+		AnonymizerOptions options = anonymizer == null ? null
+				: anonymizer.getOptions();
+		return options != null ? options : new AnonymizerOptions();
+	}
+
+	/**
+	 * @return the connection to the original database which the current
+	 * 			thread uses, see {@link StrategyConnections}
+	 */
+	protected Connection originalDatabase() {
+		return StrategyConnections.originalDatabase(originalDatabase);
+	}
+
+	/**
+	 * @return the connection to the transformation database which the
+	 * 			current thread uses, see {@link StrategyConnections}
+	 */
+	protected Connection transformationDatabase() {
+		return StrategyConnections.transformationDatabase(
+				transformationDatabase);
+	}
+
 	public static char[] shuffledChars() {
 		String allChars =
 				lowerCaseCharacters() + upperCaseCharacters() + numberCharacters();
@@ -277,6 +316,48 @@ public abstract class TransformationStrategy {
 	 */
 	public abstract void prepareTableTransformation(TableRuleMap tableRules)
 			throws SQLException, FetchPseudonymsFailedException;
+
+	/**
+	 * Notifies this strategy that all rows of a table which has been prepared
+	 * with {@link #prepareTableTransformation(TableRuleMap)} have been
+	 * transformed. Several tables may be transformed concurrently, so
+	 * strategies must not discard data that other prepared tables still need.
+	 * Does nothing by default.
+	 *
+	 * @param tableRules the same rules which have been passed to
+	 * 			prepareTableTransformation
+	 */
+	public void finishTableTransformation(TableRuleMap tableRules) {
+		// no-op by default, subclasses may override this
+	}
+
+	/**
+	 * Returns whether the rows of a table may be transformed in any order,
+	 * e.g. by several lanes which copy disjoint primary key ranges
+	 * concurrently. Strategies whose results depend on the rows transformed
+	 * before must return false. Returns true by default.
+	 */
+	public boolean isRowOrderIndependent() {
+		return true;
+	}
+
+	/**
+	 * Returns whether the strategy might drop rows, so that the dependent
+	 * rows of other tables must be checked as well. Strategies which only
+	 * replace values must return false. Returns true by default.
+	 */
+	public boolean mightDeleteRows() {
+		return true;
+	}
+	
+	/**
+	 * Announces values of a column which are about to be transformed with
+	 * the rule, so that the strategy can prepare them all at once instead
+	 * of one by one.
+	 */
+	public void prefetch(Rule rule, Collection<?> values) throws SQLException {
+		// no-op by default, subclasses may override this
+	}
 	
 	/**
 	 * Prints a summary of this strategy's results. Does nothing by default.
@@ -26,10 +26,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -85,7 +85,8 @@ public class UniformDistributionStrategy extends TransformationStrategy {
 		public String columnExpressionWithPlaceholder;
 		public long targetCardinality = Long.MAX_VALUE;
 		public long lowerThreshold = 0;
-		public Map<Object, Long> existingCardinalities = new HashMap<>();
+		public Map<Object, Long> existingCardinalities =
+				SpillableMap.create(memoryBudget());
 		
 		void computeFrom(Rule rule, String column)
 				throws PreparationFailedException {
@@ -102,7 +103,7 @@ public class UniformDistributionStrategy extends TransformationStrategy {
 			if (info != null && info.lowerRowThreshold >= 1.f) {
 				lowerThreshold = (long) Math.ceil(info.lowerRowThreshold);
 			}
-			try (PreparedStatement groupByStatement = originalDatabase.prepareStatement(
+			try (PreparedStatement groupByStatement = originalDatabase().prepareStatement(
 					"SELECT COUNT(*), " + columnExpression + " FROM "
 							+ rule.getTableField().schemaTable()
 							+ " GROUP BY " + columnExpression);
@@ -150,7 +151,7 @@ public class UniformDistributionStrategy extends TransformationStrategy {
 		}
 	}
 	
-	Map<Rule, ColumnValueParameters> columnValueParameters = new HashMap<>();
+	Map<Rule, ColumnValueParameters> columnValueParameters = new ConcurrentHashMap<>();
 
 	public UniformDistributionStrategy(Anonymizer anonymizer,
 			Connection originalDatabase, Connection transformationDatabase)
@@ -179,7 +180,7 @@ public class UniformDistributionStrategy extends TransformationStrategy {
 		Object value = oldValue;
 		ColumnValueParameters valueParameters = columnValueParameters.get(rule);
 		if (valueParameters.needPretransform())
-			value = SQLHelper.selectConstant(originalDatabase,
+			value = SQLHelper.selectConstant(originalDatabase(),
 					valueParameters.columnExpressionWithValue(oldValue));
 		long currentCount = valueParameters.existingCardinalities.get(value);
 		if (shouldBeRemoved(row, valueParameters, currentCount)) {
@@ -204,6 +205,12 @@ public class UniformDistributionStrategy extends TransformationStrategy {
 
 	}
 
+	@Override
+	public boolean isRowOrderIndependent() {
+		// which rows are removed depends on the rows seen before
+		return false;
+	}
+
 	@Override
 	public boolean isRuleValid(Rule rule, int type, int length,
 			boolean nullAllowed) throws RuleValidationException {
@@ -0,0 +1,108 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Stores the high-water mark of the watermark column of each table in the
+ * transformation database. The next incremental run only copies the rows
+ * whose watermark is greater than the stored mark.
+ * <p>
+ * Like the keys in the {@link ProgressJournal}, marks are stored as strings
+ * and compared by the database after an implicit conversion.
+ */
+public class WatermarkStore {
+
+	static final String WATERMARK_TABLE = "ANONYMIZER_WATERMARKS";
+
+	private final Connection database;
+	private final String qualifiedStoreName;
+	private final String schema;
+
+	public WatermarkStore(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedStoreName = schema + "." + WATERMARK_TABLE;
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		SQLHelper.createTableIfNotExists(database, schema, WATERMARK_TABLE,
+				"TABLE_NAME VARCHAR(128) NOT NULL, "
+					+ "WATERMARK_COLUMN VARCHAR(128) NOT NULL, "
+					+ "HIGH_WATER_MARK VARCHAR("
+					+ ProgressJournal.MAX_KEY_LENGTH + ") NOT NULL, "
+					+ "PRIMARY KEY (TABLE_NAME)");
+	}
+
+	/**
+	 * @return the high-water mark of the table, or null if no mark has been
+	 * 			stored for the table and column
+	 */
+	public synchronized String get(String table, String watermarkColumn)
+			throws SQLException {
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT HIGH_WATER_MARK FROM " + qualifiedStoreName
+				+ " WHERE TABLE_NAME = ? AND WATERMARK_COLUMN = ?")) {
+			select.setString(1, table);
+			select.setString(2, watermarkColumn);
+			try (ResultSet mark = select.executeQuery()) {
+				return mark.next() ? mark.getString(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the high-water mark of the table. Marks which cannot be
+	 * stored completely are discarded, then the next run copies all rows.
+	 */
+	public synchronized void put(String table, String watermarkColumn,
+			Object highWaterMark) throws SQLException {
+		try (PreparedStatement delete = database.prepareStatement(
+				"DELETE FROM " + qualifiedStoreName + " WHERE TABLE_NAME = ?")) {
+			delete.setString(1, table);
+			delete.executeUpdate();
+		}
+		String mark = highWaterMark.toString();
+		if (mark.length() <= ProgressJournal.MAX_KEY_LENGTH) {
+			try (PreparedStatement insert = database.prepareStatement(
+					"INSERT INTO " + qualifiedStoreName + " (TABLE_NAME, "
+							+ "WATERMARK_COLUMN, HIGH_WATER_MARK) VALUES (?, ?, ?)")) {
+				insert.setString(1, table);
+				insert.setString(2, watermarkColumn);
+				insert.setString(3, mark);
+				insert.executeUpdate();
+			}
+		}
+		commit();
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
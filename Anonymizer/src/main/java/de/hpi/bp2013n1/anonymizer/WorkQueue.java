@@ -0,0 +1,319 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import de.hpi.bp2013n1.anonymizer.util.SQLHelper;
+
+/**
+ * Queue of work units in the transformation database through which a
+ * coordinator distributes a run among worker processes, possibly on
+ * different hosts. A work unit is a table or a primary key range of a table.
+ * <p>
+ * A worker claims a unit with a lease which it renews while it copies the
+ * unit. If the worker dies, the lease expires and another worker claims
+ * the unit again. Every claim increments the number of attempts, which also
+ * serves as a version: a worker whose lease has been taken over can no
+ * longer renew or finish the unit. A unit which failed too often is given
+ * up.
+ * <p>
+ * Leases are compared with the clocks of the workers, so the clocks of the
+ * hosts must be synchronized much more precisely than the lease duration.
+ * Range bounds are stored as strings like in the {@link ProgressJournal}.
+ */
+public class WorkQueue {
+
+	static final String QUEUE_TABLE = "ANONYMIZER_WORK_QUEUE";
+	static final int PENDING = 0;
+	static final int CLAIMED = 1;
+	static final int DONE = 2;
+	static final int FAILED = 3;
+	/** claims after which a failing unit is given up */
+	static final int MAX_ATTEMPTS = 3;
+
+	/**
+	 * A table or a primary key range of a table to be copied by one worker.
+	 */
+	static class WorkUnit {
+		final int id;
+		final String table;
+		final String keyColumn;
+		final String rangeStart;
+		final String rangeEnd;
+		/** number of claims including the current one */
+		final int attempts;
+
+		WorkUnit(int id, String table, String keyColumn, String rangeStart,
+				String rangeEnd, int attempts) {
+			this.id = id;
+			this.table = table;
+			this.keyColumn = keyColumn;
+			this.rangeStart = rangeStart;
+			this.rangeEnd = rangeEnd;
+			this.attempts = attempts;
+		}
+
+		PrimaryKeyRange range() {
+			if (keyColumn == null)
+				return PrimaryKeyRange.ALL;
+			return new PrimaryKeyRange(keyColumn, rangeStart, rangeEnd);
+		}
+
+		@Override
+		public String toString() {
+			return table + (keyColumn != null ? " " + range() : "")
+					+ " (unit " + id + ")";
+		}
+	}
+
+	private final Connection database;
+	private final String qualifiedQueueName;
+	private final String schema;
+
+	public WorkQueue(Connection transformationDatabase, String schema) {
+		this.database = transformationDatabase;
+		this.schema = schema;
+		qualifiedQueueName = schema + "." + QUEUE_TABLE;
+	}
+
+	public synchronized boolean exists() throws SQLException {
+		return SQLHelper.tableExists(database, schema, QUEUE_TABLE);
+	}
+
+	public synchronized void createIfNotExists() throws SQLException {
+		SQLHelper.createTableIfNotExists(database, schema, QUEUE_TABLE,
+				"UNIT_ID INT NOT NULL, TABLE_NAME VARCHAR(128) NOT NULL, "
+					+ "KEY_COLUMN VARCHAR(128), "
+					+ "RANGE_START VARCHAR(" + ProgressJournal.MAX_KEY_LENGTH + "), "
+					+ "RANGE_END VARCHAR(" + ProgressJournal.MAX_KEY_LENGTH + "), "
+					+ "STATE SMALLINT NOT NULL, WORKER VARCHAR(128), "
+					+ "LEASE_EXPIRES BIGINT, ATTEMPTS INT NOT NULL, "
+					+ "PRIMARY KEY (UNIT_ID)");
+	}
+
+	/**
+	 * Removes all units, e.g. those of a previous run.
+	 */
+	public synchronized void clear() throws SQLException {
+		try (Statement delete = database.createStatement()) {
+			delete.executeUpdate("DELETE FROM " + qualifiedQueueName);
+		}
+		commit();
+	}
+
+	/**
+	 * Replaces the units of previous runs with units for the ranges of the
+	 * tables, which become visible to the workers at once.
+	 *
+	 * @param ranges table --> ranges of the table, a single
+	 * 			{@link PrimaryKeyRange#ALL} for the whole table
+	 */
+	synchronized void fill(Map<String, List<PrimaryKeyRange>> ranges)
+			throws SQLException {
+		boolean autoCommit = database.getAutoCommit();
+		database.setAutoCommit(false);
+		try {
+			try (Statement delete = database.createStatement()) {
+				delete.executeUpdate("DELETE FROM " + qualifiedQueueName);
+			}
+			try (PreparedStatement insert = database.prepareStatement(
+					"INSERT INTO " + qualifiedQueueName + " (UNIT_ID, "
+							+ "TABLE_NAME, KEY_COLUMN, RANGE_START, RANGE_END, "
+							+ "STATE, ATTEMPTS) VALUES (?, ?, ?, ?, ?, "
+							+ PENDING + ", 0)")) {
+				int id = 0;
+				for (Map.Entry<String, List<PrimaryKeyRange>> tableRanges
+						: ranges.entrySet()) {
+					for (PrimaryKeyRange range : tableRanges.getValue()) {
+						insert.setInt(1, ++id);
+						insert.setString(2, tableRanges.getKey());
+						insert.setString(3, range == PrimaryKeyRange.ALL
+								? null : range.column);
+						insert.setString(4, keyToString(range.lowerBound));
+						insert.setString(5, keyToString(range.upperBound));
+						insert.addBatch();
+					}
+				}
+				if (id > 0)
+					insert.executeBatch();
+			}
+			database.commit();
+		} catch (SQLException e) {
+			database.rollback();
+			throw e;
+		} finally {
+			database.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Claims the first unit which is pending or whose lease has expired.
+	 *
+	 * @return the claimed unit or null if no unit can be claimed right now
+	 */
+	synchronized WorkUnit claim(String worker, long leaseMillis)
+			throws SQLException {
+		long now = System.currentTimeMillis();
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT UNIT_ID, TABLE_NAME, KEY_COLUMN, RANGE_START, "
+						+ "RANGE_END, ATTEMPTS FROM " + qualifiedQueueName
+						+ " WHERE STATE = " + PENDING + " OR (STATE = "
+						+ CLAIMED + " AND LEASE_EXPIRES < ?) ORDER BY UNIT_ID");
+				PreparedStatement update = database.prepareStatement(
+						"UPDATE " + qualifiedQueueName + " SET STATE = "
+								+ CLAIMED + ", WORKER = ?, LEASE_EXPIRES = ?, "
+								+ "ATTEMPTS = ATTEMPTS + 1 WHERE UNIT_ID = ? "
+								+ "AND ATTEMPTS = ? AND (STATE = " + PENDING
+								+ " OR (STATE = " + CLAIMED
+								+ " AND LEASE_EXPIRES < ?))")) {
+			select.setLong(1, now);
+			try (ResultSet candidates = select.executeQuery()) {
+				while (candidates.next()) {
+					int attempts = candidates.getInt(6);
+					update.setString(1, worker);
+					update.setLong(2, now + leaseMillis);
+					update.setInt(3, candidates.getInt(1));
+					update.setInt(4, attempts);
+					update.setLong(5, now);
+					// another worker may have claimed the unit meanwhile
+					if (update.executeUpdate() == 1) {
+						commit();
+						return new WorkUnit(candidates.getInt(1),
+								candidates.getString(2), candidates.getString(3),
+								candidates.getString(4), candidates.getString(5),
+								attempts + 1);
+					}
+				}
+			}
+		}
+		commit();
+		return null;
+	}
+
+	/**
+	 * Extends the lease of a unit claimed by the worker.
+	 *
+	 * @return false if the worker has lost the unit to another worker
+	 */
+	synchronized boolean renewLease(WorkUnit unit, String worker,
+			long leaseMillis) throws SQLException {
+		try (PreparedStatement update = database.prepareStatement(
+				"UPDATE " + qualifiedQueueName + " SET LEASE_EXPIRES = ? "
+						+ whereClaimedBy())) {
+			update.setLong(1, System.currentTimeMillis() + leaseMillis);
+			setClaimParameters(update, 2, unit, worker);
+			boolean renewed = update.executeUpdate() == 1;
+			commit();
+			return renewed;
+		}
+	}
+
+	/**
+	 * @return false if the worker had lost the unit to another worker
+	 */
+	synchronized boolean finished(WorkUnit unit, String worker)
+			throws SQLException {
+		try (PreparedStatement update = database.prepareStatement(
+				"UPDATE " + qualifiedQueueName + " SET STATE = " + DONE + " "
+						+ whereClaimedBy())) {
+			setClaimParameters(update, 1, unit, worker);
+			boolean updated = update.executeUpdate() == 1;
+			commit();
+			return updated;
+		}
+	}
+
+	/**
+	 * Returns a unit which could not be copied to the queue, or gives it up
+	 * if it has been attempted too often.
+	 */
+	synchronized void failed(WorkUnit unit, String worker) throws SQLException {
+		try (PreparedStatement update = database.prepareStatement(
+				"UPDATE " + qualifiedQueueName + " SET STATE = "
+						+ (unit.attempts >= MAX_ATTEMPTS ? FAILED : PENDING)
+						+ ", WORKER = NULL, LEASE_EXPIRES = NULL "
+						+ whereClaimedBy())) {
+			setClaimParameters(update, 1, unit, worker);
+			update.executeUpdate();
+		}
+		commit();
+	}
+
+	private static String whereClaimedBy() {
+		return "WHERE UNIT_ID = ? AND WORKER = ? AND ATTEMPTS = ? AND STATE = "
+				+ CLAIMED;
+	}
+
+	private static void setClaimParameters(PreparedStatement update,
+			int parameterIndex, WorkUnit unit, String worker)
+			throws SQLException {
+		update.setInt(parameterIndex, unit.id);
+		update.setString(parameterIndex + 1, worker);
+		update.setInt(parameterIndex + 2, unit.attempts);
+	}
+
+	/**
+	 * @return the number of units in the given state
+	 */
+	synchronized int count(int state) throws SQLException {
+		try (Statement select = database.createStatement();
+				ResultSet count = select.executeQuery("SELECT COUNT(*) FROM "
+						+ qualifiedQueueName + " WHERE STATE = " + state)) {
+			count.next();
+			return count.getInt(1);
+		}
+	}
+
+	/**
+	 * @return the number of units which are pending or being copied
+	 */
+	synchronized int countUnfinished() throws SQLException {
+		return count(PENDING) + count(CLAIMED);
+	}
+
+	/**
+	 * @return the number of units in all states
+	 */
+	synchronized int countUnits() throws SQLException {
+		try (Statement select = database.createStatement();
+				ResultSet count = select.executeQuery("SELECT COUNT(*) FROM "
+						+ qualifiedQueueName)) {
+			count.next();
+			return count.getInt(1);
+		}
+	}
+
+	private static String keyToString(Object key) {
+		return key != null ? key.toString() : null;
+	}
+
+	private void commit() throws SQLException {
+		if (!database.getAutoCommit())
+			database.commit();
+	}
+}
@@ -0,0 +1,119 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+import de.hpi.bp2013n1.anonymizer.shared.DatabaseConnector;
+
+/**
+ * The connections a copy worker uses to read rows from the original
+ * database, to write them to the destination database and to look up
+ * transformation data in the transformation database.
+ */
+public class WorkerConnections implements AutoCloseable {
+	public final Connection source;
+	public final Connection destination;
+	public final Connection transformation;
+	private final boolean owned;
+
+	/**
+	 * Wraps existing connections which will not be closed by {@link #close()}.
+	 */
+	public WorkerConnections(Connection source, Connection destination,
+			Connection transformation) {
+		this(source, destination, transformation, false);
+	}
+
+	private WorkerConnections(Connection source, Connection destination,
+			Connection transformation, boolean owned) {
+		this.source = source;
+		this.destination = destination;
+		this.transformation = transformation;
+		this.owned = owned;
+	}
+
+	/**
+	 * Binds the connections to the original and the transformation database
+	 * to the current thread, so that the strategies use them.
+	 *
+	 * @return the connections which were bound before, to be passed to
+	 * 			{@link StrategyConnections#restore(StrategyConnections)}
+	 */
+	StrategyConnections bindForStrategies() {
+		return new StrategyConnections(source, transformation).bind();
+	}
+
+	/**
+	 * Opens new connections to the original, the destination and the
+	 * transformation database. Autocommit is disabled on the destination
+	 * connection.
+	 */
+	public static WorkerConnections open(Config config) throws SQLException {
+		return open(config, null);
+	}
+
+	/**
+	 * @param loadGovernor governs the connection to the original database,
+	 * 			may be null
+	 */
+	public static WorkerConnections open(Config config,
+			SourceLoadGovernor loadGovernor) throws SQLException {
+		Connection source = DatabaseConnector.connect(config.originalDB);
+		if (loadGovernor != null)
+			source = loadGovernor.govern(source);
+		Connection destination = null;
+		Connection transformation;
+		try {
+			destination = DatabaseConnector.connect(config.destinationDB);
+			transformation = DatabaseConnector.connect(config.transformationDB);
+		} catch (SQLException e) {
+			source.close();
+			if (destination != null)
+				destination.close();
+			throw e;
+		}
+		try {
+			destination.setAutoCommit(false);
+		} catch (SQLException | AbstractMethodError e) {
+			// no performance gain but not severe
+		}
+		return new WorkerConnections(source, destination, transformation, true);
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (!owned)
+			return;
+		try {
+			source.close();
+		} finally {
+			try {
+				destination.close();
+			} finally {
+				transformation.close();
+			}
+		}
+	}
+}
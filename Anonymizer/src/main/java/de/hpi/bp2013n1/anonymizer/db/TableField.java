@@ -168,6 +168,13 @@ public class TableField implements Comparable {
 		}
 	}
 
+	/**
+	 * @return the same table and column in another schema
+	 */
+	public TableField inSchema(String schemaName) {
+		return new TableField(table, column, schemaName);
+	}
+
 	public TableField asTableSite() {
 		if (column == null)
 			return this;
@@ -102,6 +102,24 @@ public class Config {
 		strategyMapping.put(NO_OP_STRATEGY_KEY, NoOperationStrategy.class.getName());
 	}
 	
+	/**
+	 * Returns a configuration for another schema with the same databases,
+	 * batch size and strategies. The rules are copied and apply to the
+	 * tables of the other schema.
+	 */
+	public Config forSchema(String schema) {
+		Config schemaConfig = new Config();
+		schemaConfig.originalDB = originalDB;
+		schemaConfig.destinationDB = destinationDB;
+		schemaConfig.transformationDB = transformationDB;
+		schemaConfig.schemaName = schema;
+		schemaConfig.batchSize = batchSize;
+		schemaConfig.strategyMapping.putAll(strategyMapping);
+		for (Rule rule : rules)
+			schemaConfig.rules.add(rule.inSchema(schema));
+		return schemaConfig;
+	}
+
 	public List<Rule> getRules() {
 		return rules;
 	}
@@ -164,7 +182,7 @@ public class Config {
 		String line;
 		readHeader(reader);
 		Pattern keyValuePattern = Pattern.compile(
-				"\\s*-\\s*(\\w+)\\s*:\\s*([\\w.]+)");
+				"\\s*-\\s*(\\w+)\\s*:\\s*([\\w.$]+)");
 		while (true) {
 			line = reader.readLine();
 			if(line == null) break;
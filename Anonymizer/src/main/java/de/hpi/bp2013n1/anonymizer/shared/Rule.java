@@ -117,6 +117,21 @@ public class Rule {
 		return dependentRules.add(newDependent);
 	}
 
+	/**
+	 * Returns a copy of the rule which applies to the same tables and
+	 * columns in another schema. Parent and dependent rules and the
+	 * transformation are not copied.
+	 */
+	public Rule inSchema(String schemaName) {
+		Rule copy = new Rule(tableField.inSchema(schemaName), strategy,
+				additionalInfo);
+		for (TableField dependant : dependants)
+			copy.addDependant(dependant.inSchema(schemaName));
+		for (TableField potentialDependant : potentialDependants)
+			copy.addPotentialDependant(potentialDependant.inSchema(schemaName));
+		return copy;
+	}
+
 	@Override
 	public String toString() {
 		return tableField + " " + strategy + " " + additionalInfo;
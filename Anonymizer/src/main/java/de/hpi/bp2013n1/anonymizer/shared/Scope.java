@@ -31,10 +31,17 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Scope {
 	private static final Charset SCOPE_CHARSET = StandardCharsets.UTF_8;
 	public ArrayList<String> tables;
+	/**
+	 * table --> column whose values increase with every change of a row,
+	 * which allows to copy only the rows changed since the last run
+	 */
+	public Map<String, String> watermarkColumns = new HashMap<>();
 
 	public static Scope fromFile(String fileName) throws IOException {
 		Scope scope = new Scope();
@@ -60,15 +67,30 @@ public class Scope {
 	public void read(BufferedReader reader) throws IOException {
 		String line;
 		tables = new ArrayList<String>();
+		watermarkColumns = new HashMap<>();
 		
 		while (true) {
 			line = reader.readLine();
 			if (line == null)
 				break;
 			if(line.matches("\\s*#.*")) continue;
-			tables.add(line);
+			// TABLE [WATERMARK_COLUMN]
+			String[] fields = line.trim().split("\\s+");
+			if (fields.length == 2) {
+				tables.add(fields[0]);
+				watermarkColumns.put(fields[0], fields[1]);
+			} else {
+				tables.add(line);
+			}
 		}
 	}
+
+	/**
+	 * @return the watermark column declared for the table or null
+	 */
+	public String getWatermarkColumn(String table) {
+		return watermarkColumns.get(table);
+	}
 	
 	public ArrayList<TableRuleMap> createAllTableRuleMaps() {
 		ArrayList<TableRuleMap> allTableRuleMaps = new ArrayList<TableRuleMap>();
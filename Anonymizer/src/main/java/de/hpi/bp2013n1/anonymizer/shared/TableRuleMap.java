@@ -22,11 +22,13 @@ package de.hpi.bp2013n1.anonymizer.shared;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 
 import de.hpi.bp2013n1.anonymizer.TransformationStrategy;
@@ -67,8 +69,13 @@ public class TableRuleMap {
 		return filteredMap;
 	}
 	
-	public ImmutableSet<String> getColumnNames() {
-		return ImmutableSet.copyOf(columnRules.keySet());
+	/**
+	 * @return the columns with rules, including null if there are rules
+	 * 			which apply to whole rows
+	 */
+	public Set<String> getColumnNames() {
+		return Collections.unmodifiableSet(
+				new LinkedHashSet<>(columnRules.keySet()));
 	}
 	
 	public ImmutableList<Rule> getRules() {
@@ -62,4 +62,21 @@ public class DB2SqlHelper extends StandardSqlHelper {
 		}
 	}
 
+	@Override
+	public long estimateRowCount(Connection connection, String schema,
+			String table) throws SQLException {
+		// CARD is -1 until RUNSTATS has collected statistics for the table
+		return queryRowCountEstimate(connection, "SELECT CARD FROM SYSCAT.TABLES "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ?", schema, table);
+	}
+
+	@Override
+	public long estimateDistinctValues(Connection connection, String schema,
+			String table, String column) throws SQLException {
+		// COLCARD is -1 until RUNSTATS has collected statistics for the column
+		return queryEstimate(connection, "SELECT COLCARD FROM SYSCAT.COLUMNS "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ? AND COLNAME = ?",
+				schema, table, column);
+	}
+
 }
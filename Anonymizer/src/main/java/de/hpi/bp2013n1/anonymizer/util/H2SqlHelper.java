@@ -20,6 +20,9 @@ package de.hpi.bp2013n1.anonymizer.util;
  * #L%
  */
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 
 public class H2SqlHelper extends StandardSqlHelper {
 
@@ -53,4 +56,12 @@ public class H2SqlHelper extends StandardSqlHelper {
 				qualifiedTableName);
 	}
 
+	@Override
+	public long estimateRowCount(Connection connection, String schema,
+			String table) throws SQLException {
+		return queryRowCountEstimate(connection, "SELECT ROW_COUNT_ESTIMATE "
+				+ "FROM INFORMATION_SCHEMA.TABLES "
+				+ "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?", schema, table);
+	}
+
 }
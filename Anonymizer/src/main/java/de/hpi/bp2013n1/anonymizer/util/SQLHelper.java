@@ -22,7 +22,9 @@ package de.hpi.bp2013n1.anonymizer.util;
 
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 public abstract class SQLHelper {
 	public static SQLHelper getHelperFor(Connection connection)
@@ -107,7 +109,69 @@ public abstract class SQLHelper {
 			throws SQLException {
 		getHelperFor(connection).createSchema(connection, schema);
 	}
+
+	public static boolean tableExists(Connection connection, String schema,
+			String table) throws SQLException {
+		try (ResultSet tables = connection.getMetaData().getTables(null, schema,
+				table, new String[] { "TABLE" })) {
+			return tables.next();
+		}
+	}
+
+	/**
+	 * Creates a table unless it exists and commits the creation if the
+	 * connection does not commit automatically.
+	 *
+	 * @param columnDefinitions the columns and constraints between the
+	 * 			parentheses of the CREATE TABLE statement
+	 * @return true if the table has been created
+	 */
+	public static boolean createTableIfNotExists(Connection connection,
+			String schema, String table, String columnDefinitions)
+					throws SQLException {
+		if (tableExists(connection, schema, table))
+			return false;
+		try (Statement createTable = connection.createStatement()) {
+			createTable.executeUpdate("CREATE TABLE "
+					+ qualifiedTableName(schema, table)
+					+ " (" + columnDefinitions + ")");
+		}
+		if (!connection.getAutoCommit())
+			connection.commit();
+		return true;
+	}
 	
+	/**
+	 * Estimates the number of rows of a table from the statistics of the
+	 * database without scanning the table.
+	 *
+	 * @return the estimated number of rows or -1 if there are no statistics
+	 */
+	public abstract long estimateRowCount(Connection connection,
+			String schema, String table) throws SQLException;
+
+	public static long estimateRowCount(String schema, String table,
+			Connection connection) throws SQLException {
+		return getHelperFor(connection).estimateRowCount(connection, schema,
+				table);
+	}
+
+	/**
+	 * Estimates the number of distinct values of a column from the
+	 * statistics of the database without scanning the table.
+	 *
+	 * @return the estimated number of distinct values or -1 if there are no
+	 * 			statistics
+	 */
+	public abstract long estimateDistinctValues(Connection connection,
+			String schema, String table, String column) throws SQLException;
+
+	public static long estimateDistinctValues(String schema, String table,
+			String column, Connection connection) throws SQLException {
+		return getHelperFor(connection).estimateDistinctValues(connection,
+				schema, table, column);
+	}
+
 	public abstract String setSchemaStatement(String schema);
 	
 	public static String setSchemaStatement(String schema, Connection connection)
@@ -80,6 +80,51 @@ public class StandardSqlHelper extends SQLHelper {
 		}
 	}
 
+	@Override
+	public long estimateRowCount(Connection connection, String schema,
+			String table) throws SQLException {
+		// there are no standardized statistics
+		return -1;
+	}
+
+	@Override
+	public long estimateDistinctValues(Connection connection, String schema,
+			String table, String column) throws SQLException {
+		// there are no standardized statistics
+		return -1;
+	}
+
+	/**
+	 * Runs a query for an estimate whose parameters are the schema and the
+	 * table name.
+	 *
+	 * @return the estimate or -1 if the query returned no row or NULL
+	 */
+	protected long queryRowCountEstimate(Connection connection, String query,
+			String schema, String table) throws SQLException {
+		return queryEstimate(connection, query, schema, table);
+	}
+
+	/**
+	 * Runs a query for an estimate with the given string parameters.
+	 *
+	 * @return the estimate or -1 if the query returned no row or NULL
+	 */
+	protected long queryEstimate(Connection connection, String query,
+			String... parameters) throws SQLException {
+		try (PreparedStatement selectStatement = connection.prepareStatement(
+				query)) {
+			for (int i = 0; i < parameters.length; i++)
+				selectStatement.setString(i + 1, parameters[i]);
+			try (ResultSet resultSet = selectStatement.executeQuery()) {
+				if (!resultSet.next())
+					return -1;
+				long estimate = resultSet.getLong(1);
+				return resultSet.wasNull() ? -1 : estimate;
+			}
+		}
+	}
+
 	@Override
 	public String setSchemaStatement(String schema) {
 		return "SET SCHEMA \"" + schema + "\"";
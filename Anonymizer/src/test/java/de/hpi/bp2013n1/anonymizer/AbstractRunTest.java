@@ -0,0 +1,48 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Base class of tests which run the anonymizer on the standard test data.
+ * The databases are populated before each test and the log goes to a
+ * temporary file which is deleted afterwards.
+ */
+public abstract class AbstractRunTest {
+
+	protected TestDataFixture testData;
+	private File logFile;
+
+	/**
+	 * Template method which provides the fixture to populate before each
+	 * test.
+	 */
+	protected TestDataFixture createTestDataFixture() throws Exception {
+		return new StandardTestDataFixture();
+	}
+
+	@Before
+	public void createTestData() throws Exception {
+		testData = createTestDataFixture();
+		testData.populateDatabases();
+	}
+
+	@Before
+	public void prepareLogFile() throws IOException {
+		logFile = TestDataFixture.logToTemporaryFile(getClass().getSimpleName());
+	}
+
+	@After
+	public void closeDatabaseConnections() throws SQLException {
+		testData.closeConnections();
+	}
+
+	@After
+	public void deleteLogFile() {
+		logFile.delete();
+	}
+}
@@ -0,0 +1,72 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveBatchControllerTest {
+
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Executes full batches whose duration is given by a fixed overhead per
+	 * batch and a cost per row.
+	 */
+	private static void executeBatches(BatchController controller, int batches,
+			long overheadNanos, long nanosPerRow) {
+		for (int i = 0; i < batches; i++) {
+			int rows = controller.getBatchSize();
+			controller.batchExecuted(rows, overheadNanos + rows * nanosPerRow);
+		}
+	}
+
+	@Test
+	public void batchesGrowWhileThroughputImproves() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(
+				100, 100, 10, 1600, 10000, 1000);
+		// the overhead per batch dominates, so larger batches are faster
+		executeBatches(controller, 50, 10 * MILLISECOND, 1000);
+		assertThat(controller.getBatchSize(), equalTo(1600));
+	}
+
+	@Test
+	public void slowBatchesAreMadeSmaller() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(
+				1000, 1000, 10, 1600, 10000, 100);
+		// 1 ms per row exceeds the latency limit above 100 rows
+		executeBatches(controller, 20, 0, MILLISECOND);
+		assertThat(controller.getBatchSize(), lessThan(200));
+	}
+
+	@Test
+	public void lastPartialBatchDoesNotChangeBatchSize() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(
+				100, 100, 10, 1600, 10000, 100);
+		controller.batchExecuted(5, 500 * MILLISECOND);
+		assertThat(controller.getBatchSize(), equalTo(100));
+	}
+
+	@Test
+	public void commitIntervalFollowsCommitOverhead() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(
+				100, 100, 10, 100, 10000, 1000);
+		controller.batchExecuted(100, MILLISECOND);
+		controller.committed(MILLISECOND);
+		assertThat(controller.getCommitInterval(), equalTo(200));
+		controller.batchExecuted(100, 1000 * MILLISECOND);
+		controller.committed(MILLISECOND);
+		assertThat(controller.getCommitInterval(), equalTo(100));
+	}
+
+	@Test
+	public void initialValuesAreClampedToBounds() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(
+				100000, 5, 10, 1600, 10000, 1000);
+		assertThat(controller.getBatchSize(), equalTo(1600));
+		assertThat(controller.getCommitInterval(), equalTo(1600));
+	}
+}
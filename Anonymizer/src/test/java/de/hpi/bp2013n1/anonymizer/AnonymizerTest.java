@@ -34,8 +34,10 @@ import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -194,4 +196,19 @@ public class AnonymizerTest {
 		assertThat(mmap.get(4), contains(3, 2, 1));
 	}
 
+	@Test
+	public void zeroIsAcceptedForOptionsWhichItDisables() {
+		List<String> arguments = new ArrayList<>(Arrays.asList(
+				"--max-fan-out=0", "--workers=0"));
+		assertThat(Anonymizer.removeNonNegativeIntOption(arguments,
+				"--max-fan-out", 5), is(0));
+		try {
+			Anonymizer.removeIntOption(arguments, "--workers", 1);
+			fail("0 workers must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertThat(arguments.isEmpty(), is(true));
+	}
+
 }
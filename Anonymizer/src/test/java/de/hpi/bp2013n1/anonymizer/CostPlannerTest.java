@@ -0,0 +1,91 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CostPlannerTest {
+
+	private TestDataFixture testData;
+	private File logFile;
+
+	@Before
+	public void createTestData() throws Exception {
+		testData = new StandardTestDataFixture();
+		testData.populateDatabases();
+	}
+
+	@Before
+	public void prepareLogFile() throws IOException {
+		logFile = File.createTempFile("anonymizer-test-explain-output", null);
+		logFile.delete();
+		Anonymizer.setUpLogging(logFile.getPath());
+	}
+
+	@After
+	public void closeDatabaseConnections() throws SQLException {
+		testData.closeConnections();
+	}
+
+	@After
+	public void deleteLogFile() {
+		logFile.delete();
+	}
+
+	private RunCostEstimate.TableCostEstimate estimateOf(
+			RunCostEstimate estimate, String table) {
+		for (RunCostEstimate.TableCostEstimate tableEstimate : estimate.getTables())
+			if (tableEstimate.table.equals(table))
+				return tableEstimate;
+		throw new AssertionError("no estimate for " + table);
+	}
+
+	@Test
+	public void explainEstimatesTablesWithoutCopying() throws Exception {
+		RunCostEstimate estimate = testData.createAnonymizer().explain();
+
+		assertThat(estimate.getTables(), hasSize(testData.getScope().tables.size()));
+		RunCostEstimate.TableCostEstimate visitor = estimateOf(estimate, "VISITOR");
+		assertThat(visitor.rows, greaterThan(0L));
+		assertThat(visitor.rules.isEmpty(), equalTo(false));
+		assertThat(visitor.cachedPseudonyms, greaterThan(0L));
+		assertThat(visitor.transientHeapBytes, greaterThan(0L));
+		assertThat(estimateOf(estimate, "DISTRIBUTIONTEST1").distributionMapEntries,
+				greaterThan(0L));
+		assertThat(estimate.getProjectedPeakHeapBytes(), greaterThan(0L));
+		assertThat(estimate.exceedsHeap(), equalTo(false));
+		try (Statement statement = testData.getDestinationDbConnection().createStatement();
+				ResultSet count = statement.executeQuery(
+						"SELECT COUNT(*) FROM ORIGINAL.VISITOR")) {
+			count.next();
+			assertThat(count.getInt(1), equalTo(0));
+		}
+	}
+
+	@Test
+	public void distinctValuesAreExtrapolatedFromSingletons() {
+		Map<Object, Integer> frequencies = new HashMap<>();
+		for (int i = 0; i < 100; i++)
+			frequencies.put(i, 1);
+		frequencies.put("frequent", 900);
+		// 100 singletons scaled by sqrt(100) plus the frequent value
+		assertThat(CostPlanner.extrapolateDistinctValues(frequencies, 1000, 100000),
+				equalTo(1001L));
+		// a complete sample is exact
+		assertThat(CostPlanner.extrapolateDistinctValues(frequencies, 1000, 1000),
+				equalTo(101L));
+	}
+}
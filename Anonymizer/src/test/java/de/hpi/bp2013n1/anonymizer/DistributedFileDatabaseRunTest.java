@@ -0,0 +1,258 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.execute;
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.queryString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+import de.hpi.bp2013n1.anonymizer.shared.DatabaseConnector;
+import de.hpi.bp2013n1.anonymizer.shared.Scope;
+
+/**
+ * Runs a coordinator and two worker processes against one work queue in
+ * file databases. The coordinator runs in the JVM of the test, the first
+ * connection to each database serves it to the workers.
+ */
+public class DistributedFileDatabaseRunTest {
+
+	private static final String SCHEMA = "DIST";
+	private static final int ITEMS = 400;
+
+	/**
+	 * Counts how often strategies are set up in this JVM. In the worker
+	 * processes, setting them up creates the file named by the system
+	 * property {@value #SET_UP_MARKER_PROPERTY} instead.
+	 */
+	public static class SetUpCountingStrategy extends SetDefaultStrategy {
+		static final String SET_UP_MARKER_PROPERTY = "anonymizer.test.setUpMarker";
+		static final AtomicInteger setUps = new AtomicInteger();
+
+		public SetUpCountingStrategy(Anonymizer anonymizer, Connection oldDB,
+				Connection translateDB) throws SQLException {
+			super(anonymizer, oldDB, translateDB);
+		}
+
+		@Override
+		public void setUpTransformation(
+				Collection<de.hpi.bp2013n1.anonymizer.shared.Rule> rules) {
+			setUps.incrementAndGet();
+			String marker = System.getProperty(SET_UP_MARKER_PROPERTY);
+			if (marker == null)
+				return;
+			try {
+				new File(marker).createNewFile();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Config config;
+	private Scope scope;
+	private Connection original;
+	private Connection destination;
+	private Connection transformation;
+	private File logFile;
+
+	@Before
+	public void createDatabases() throws SQLException {
+		config = new Config();
+		for (Config.ConnectionParameters parameters
+				: new Config.ConnectionParameters[] { config.originalDB,
+						config.destinationDB, config.transformationDB }) {
+			parameters.user = "sa";
+			parameters.password = "sa";
+		}
+		config.originalDB.url = "jdbc:h2:" + folder.getRoot()
+				+ "/original;AUTO_SERVER=TRUE";
+		config.destinationDB.url = "jdbc:h2:" + folder.getRoot()
+				+ "/destination;AUTO_SERVER=TRUE";
+		config.transformationDB.url = "jdbc:h2:" + folder.getRoot()
+				+ "/transformation;AUTO_SERVER=TRUE";
+		config.schemaName = SCHEMA;
+		config.batchSize = 50;
+		config.strategyMapping.put("C", SetUpCountingStrategy.class.getName());
+		config.rules.add(new de.hpi.bp2013n1.anonymizer.shared.Rule(
+				new TableField("PERSON", "NAME", SCHEMA), "C", "X"));
+		scope = new Scope();
+		scope.tables = new ArrayList<>();
+		scope.tables.add("ITEM");
+		scope.tables.add("PERSON");
+		original = DatabaseConnector.connect(config.originalDB);
+		destination = DatabaseConnector.connect(config.destinationDB);
+		transformation = DatabaseConnector.connect(config.transformationDB);
+		for (Connection connection : new Connection[] { original, destination }) {
+			execute(connection, "CREATE SCHEMA " + SCHEMA);
+			execute(connection, "CREATE TABLE " + SCHEMA + ".ITEM "
+					+ "(ID INT PRIMARY KEY, NAME VARCHAR(20))");
+			execute(connection, "CREATE TABLE " + SCHEMA + ".PERSON "
+					+ "(ID INT PRIMARY KEY, NAME VARCHAR(20))");
+		}
+		try (PreparedStatement insert = original.prepareStatement(
+				"INSERT INTO " + SCHEMA + ".ITEM VALUES (?, ?)")) {
+			for (int id = 1; id <= ITEMS; id++) {
+				insert.setInt(1, id);
+				insert.setString(2, "item " + id);
+				insert.executeUpdate();
+			}
+		}
+		execute(original, "INSERT INTO " + SCHEMA + ".PERSON VALUES "
+				+ "(1, 'Alice'), (2, 'Bob')");
+		SetUpCountingStrategy.setUps.set(0);
+	}
+
+	@Before
+	public void prepareLogFile() throws IOException {
+		logFile = TestDataFixture.logToTemporaryFile("distributed-file");
+	}
+
+	@After
+	public void closeDatabases() throws SQLException {
+		for (Connection connection : new Connection[] { original, destination,
+				transformation })
+			connection.close();
+	}
+
+	@After
+	public void deleteLogFile() {
+		logFile.delete();
+	}
+
+	private Anonymizer createAnonymizer() {
+		Anonymizer anonymizer = new Anonymizer(config, scope);
+		anonymizer.getOptions().setTableLanes(4);
+		anonymizer.getOptions().setMinimumRowsPerLane(1);
+		anonymizer.getOptions().setWorkPollMillis(10);
+		return anonymizer;
+	}
+
+	/**
+	 * Starts a worker process with the configuration and scope files which
+	 * the command line of a real worker would name.
+	 */
+	private Callable<Void> workerProcess(final String name, File setUpMarker)
+			throws IOException {
+		File configFile = folder.newFile(name + "-config.txt");
+		try (Writer writer = Files.newBufferedWriter(configFile.toPath(),
+				StandardCharsets.UTF_8)) {
+			config.writeTo(writer);
+		}
+		File scopeFile = folder.newFile(name + "-scope.txt");
+		Files.write(scopeFile.toPath(), scope.tables, StandardCharsets.UTF_8);
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("-D" + SetUpCountingStrategy.SET_UP_MARKER_PROPERTY + "="
+				+ setUpMarker.getPath());
+		command.add(Anonymizer.class.getName());
+		command.add(configFile.getPath());
+		command.add(scopeFile.getPath());
+		final File log = new File(folder.getRoot(), name + ".log");
+		command.add(log.getPath());
+		command.add("--worker");
+		command.add("--no-console-progress");
+		final File output = new File(folder.getRoot(), name + ".out");
+		final ProcessBuilder builder = new ProcessBuilder(command)
+				.redirectErrorStream(true).redirectOutput(output);
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Process process = builder.start();
+				try {
+					int exitCode = process.waitFor();
+					if (exitCode != 0)
+						fail(name + " exited with " + exitCode + ":\n"
+								+ new String(Files.readAllBytes(output.toPath()),
+										StandardCharsets.UTF_8)
+								+ new String(Files.readAllBytes(log.toPath()),
+										StandardCharsets.UTF_8));
+				} finally {
+					process.destroy();
+				}
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void workerProcessesCopyTheUnitsOfOneQueueWithoutSettingUpStrategies()
+			throws Exception {
+		final Anonymizer coordinator = createAnonymizer();
+		coordinator.getOptions().setCoordinator(true);
+		List<Callable<Void>> runs = new ArrayList<>();
+		runs.add(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				coordinator.connectAndRun();
+				return null;
+			}
+		});
+		File setUpMarker = new File(folder.getRoot(), "worker-set-up");
+		for (int i = 0; i < 2; i++)
+			runs.add(workerProcess("worker" + i, setUpMarker));
+		ExecutorService executor = Executors.newFixedThreadPool(runs.size());
+		try {
+			List<Future<Void>> results = new ArrayList<>();
+			for (Callable<Void> run : runs)
+				results.add(executor.submit(run));
+			for (Future<Void> result : results)
+				result.get(120, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		WorkQueue queue = new WorkQueue(transformation, SCHEMA);
+		assertThat(queue.count(WorkQueue.FAILED), equalTo(0));
+		// the rule on PERSON does not delete rows, so PERSON is queued too
+		assertThat(queue.count(WorkQueue.DONE), equalTo(5));
+		assertThat(queryString(destination, "SELECT COUNT(DISTINCT ID) || '/' "
+				+ "|| COUNT(*) FROM " + SCHEMA + ".ITEM"),
+				equalTo(ITEMS + "/" + ITEMS));
+		List<String> names = new ArrayList<>();
+		try (Statement statement = destination.createStatement();
+				ResultSet result = statement.executeQuery("SELECT NAME FROM "
+						+ SCHEMA + ".PERSON ORDER BY ID")) {
+			while (result.next())
+				names.add(result.getString(1));
+		}
+		assertThat(names, contains("X", "X"));
+		// only the coordinator sets up the strategies
+		assertThat(SetUpCountingStrategy.setUps.get(), equalTo(1));
+		assertThat(setUpMarker.exists(), equalTo(false));
+	}
+}
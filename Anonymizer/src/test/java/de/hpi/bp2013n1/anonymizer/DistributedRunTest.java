@@ -0,0 +1,121 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.queryString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+
+public class DistributedRunTest extends AbstractRunTest {
+
+	private static final String TABLE = "CINEMACASHLOGSUPPLEMENTAL";
+	private static final long LEASE_MILLIS = 300;
+
+	/**
+	 * Takes the work unit away from the worker while it transforms the
+	 * first row, the way another worker claims a unit whose lease has
+	 * expired, and counts the transformed rows.
+	 */
+	public static class LeaseStealingStrategy extends SetDefaultStrategy {
+		static final AtomicInteger transformedRows = new AtomicInteger();
+		private final Connection transformationDatabase;
+
+		public LeaseStealingStrategy(Anonymizer anonymizer, Connection oldDB,
+				Connection translateDB) throws SQLException {
+			super(anonymizer, oldDB, translateDB);
+			transformationDatabase = translateDB;
+		}
+
+		@Override
+		public List<String> transform(Object oldValue,
+				de.hpi.bp2013n1.anonymizer.shared.Rule rule,
+				ResultSetRowReader row) {
+			if (transformedRows.getAndIncrement() == 0) {
+				try (PreparedStatement steal = transformationDatabase.prepareStatement(
+						"UPDATE ORIGINAL." + WorkQueue.QUEUE_TABLE
+						+ " SET WORKER = 'other worker', LEASE_EXPIRES = ?")) {
+					steal.setLong(1, System.currentTimeMillis() + LEASE_MILLIS);
+					steal.executeUpdate();
+					// let the renewal notice and the stolen lease expire
+					Thread.sleep(2 * LEASE_MILLIS);
+				} catch (SQLException | InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return super.transform(oldValue, rule, row);
+		}
+	}
+
+	private WorkQueue workQueue() {
+		return new WorkQueue(testData.getTransformationDbConnection(),
+				"ORIGINAL");
+	}
+
+	@Test
+	public void coordinatorWithoutWorkersCopiesAllTables() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setCoordinator(true);
+		anonymizer.run();
+		assertThat(workQueue().countUnfinished(), equalTo(0));
+		assertThat(workQueue().count(WorkQueue.FAILED), equalTo(0));
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void workerCopiesQueuedUnits() throws Exception {
+		WorkQueue queue = workQueue();
+		queue.createIfNotExists();
+		Map<String, List<PrimaryKeyRange>> units = Collections.singletonMap(
+				TABLE, (List<PrimaryKeyRange>) ImmutableList.of(
+						new PrimaryKeyRange("ID", null, 3),
+						new PrimaryKeyRange("ID", 3, null)));
+		queue.fill(units);
+		Anonymizer worker = testData.createAnonymizer();
+		worker.setWorkerName("test worker");
+		worker.work();
+		assertThat(queue.count(WorkQueue.DONE), equalTo(2));
+		assertThat(queryString(testData.getDestinationDbConnection(),
+				"SELECT COUNT(*) FROM ORIGINAL." + TABLE), equalTo("4"));
+	}
+
+	@Test
+	public void workerStopsCopyingAUnitWhoseLeaseIsLost() throws Exception {
+		WorkQueue queue = workQueue();
+		queue.createIfNotExists();
+		queue.fill(Collections.singletonMap(TABLE, (List<PrimaryKeyRange>)
+				ImmutableList.of(new PrimaryKeyRange("ID", null, null))));
+		Config config = testData.getConfig();
+		config.strategyMapping.put("L", LeaseStealingStrategy.class.getName());
+		config.rules.add(new de.hpi.bp2013n1.anonymizer.shared.Rule(
+				new TableField(TABLE, "CATEGORY", "ORIGINAL"), "L", "X"));
+		LeaseStealingStrategy.transformedRows.set(0);
+		Anonymizer worker = testData.createAnonymizer();
+		worker.setWorkerName("test worker");
+		worker.getOptions().setLeaseMillis(LEASE_MILLIS);
+		worker.getOptions().setWorkPollMillis(10);
+		worker.work();
+		// one row of the lost attempt and all rows of the second one
+		assertThat(LeaseStealingStrategy.transformedRows.get(), equalTo(5));
+		assertThat(queue.count(WorkQueue.DONE), equalTo(1));
+		assertThat(queryString(testData.getTransformationDbConnection(),
+				"SELECT ATTEMPTS FROM ORIGINAL." + WorkQueue.QUEUE_TABLE),
+				equalTo("2"));
+		assertThat(queryString(testData.getDestinationDbConnection(),
+				"SELECT COUNT(DISTINCT ID) || '/' || COUNT(*) FROM ORIGINAL."
+				+ TABLE), equalTo("4/4"));
+	}
+}
@@ -0,0 +1,53 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Samples of NIST SP 800-38G for FF1 with AES-128.
+ */
+public class FF1CipherTest {
+
+	private static final String DIGITS = "0123456789";
+	private static final String RADIX_36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+	private final FF1Cipher cipher = new FF1Cipher(hex(
+			"2B7E151628AED2A6ABF7158809CF4F3C"));
+
+	private static byte[] hex(String hex) {
+		return BaseEncoding.base16().decode(hex);
+	}
+
+	private String encrypt(String alphabet, String plaintext, byte[] tweak) {
+		int[] numerals = new int[plaintext.length()];
+		for (int i = 0; i < numerals.length; i++)
+			numerals[i] = alphabet.indexOf(plaintext.charAt(i));
+		int[] encrypted = cipher.encrypt(numerals, alphabet.length(), tweak);
+		StringBuilder ciphertext = new StringBuilder();
+		for (int numeral : encrypted)
+			ciphertext.append(alphabet.charAt(numeral));
+		return ciphertext.toString();
+	}
+
+	@Test
+	public void sampleWithoutTweak() {
+		assertThat(encrypt(DIGITS, "0123456789", new byte[0]),
+				equalTo("2433477484"));
+	}
+
+	@Test
+	public void sampleWithTweak() {
+		assertThat(encrypt(DIGITS, "0123456789",
+				hex("39383736353433323130")), equalTo("6124200773"));
+	}
+
+	@Test
+	public void sampleWithRadix36() {
+		assertThat(encrypt(RADIX_36, "0123456789abcdefghi",
+				hex("3737373770717273373737")),
+				equalTo("a9tv40mll9kdu509eum"));
+	}
+}
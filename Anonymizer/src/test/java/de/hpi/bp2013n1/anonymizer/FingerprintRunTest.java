@@ -0,0 +1,122 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.execute;
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.queryString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+
+public class FingerprintRunTest extends AbstractRunTest {
+
+	private static final String TABLE = "CINEMACASHLOGSUPPLEMENTAL";
+
+	private void runSkippingUnchangedTables() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setSkipUnchangedTables(true);
+		anonymizer.run();
+	}
+
+	/**
+	 * Changes a row in the destination which survives only if the table is
+	 * skipped.
+	 */
+	private void markDestinationRow() throws SQLException {
+		execute(testData.getDestinationDbConnection(), "UPDATE ORIGINAL."
+				+ TABLE + " SET CATEGORY = 'X' WHERE ID = 1");
+	}
+
+	private String categoryInDestination() throws SQLException {
+		return queryString(testData.getDestinationDbConnection(),
+				"SELECT CATEGORY FROM ORIGINAL." + TABLE + " WHERE ID = 1");
+	}
+
+	@Test
+	public void unchangedTableIsSkipped() throws Exception {
+		runSkippingUnchangedTables();
+		markDestinationRow();
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), equalTo("X"));
+	}
+
+	@Test
+	public void unchangedTableIsNotDistributed() throws Exception {
+		runSkippingUnchangedTables();
+		markDestinationRow();
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setSkipUnchangedTables(true);
+		anonymizer.getOptions().setCoordinator(true);
+		anonymizer.run();
+		assertThat(categoryInDestination(), equalTo("X"));
+	}
+
+	@Test
+	public void distributedTableIsSkippedInTheNextRun() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setSkipUnchangedTables(true);
+		anonymizer.getOptions().setCoordinator(true);
+		anonymizer.run();
+		markDestinationRow();
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), equalTo("X"));
+	}
+
+	@Test
+	public void changedTableIsCopied() throws Exception {
+		runSkippingUnchangedTables();
+		markDestinationRow();
+		execute(testData.getOriginalDbConnection(), "UPDATE ORIGINAL." + TABLE
+				+ " SET CATEGORY = 'M' WHERE ID = 2");
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), not(equalTo("X")));
+	}
+
+	@Test
+	public void tableWithChangedRulesIsCopied() throws Exception {
+		runSkippingUnchangedTables();
+		markDestinationRow();
+		execute(testData.getTransformationDbConnection(), "UPDATE ORIGINAL."
+				+ FingerprintStore.FINGERPRINT_TABLE + " SET RULES_HASH = '0'");
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), not(equalTo("X")));
+	}
+
+	@Test
+	public void insertIsDetectedThroughVersionColumn() throws Exception {
+		testData.getScope().watermarkColumns.put(TABLE, "ID");
+		runSkippingUnchangedTables();
+		markDestinationRow();
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), equalTo("X"));
+		execute(testData.getOriginalDbConnection(), "INSERT INTO ORIGINAL."
+				+ TABLE + " VALUES (5, 'S')");
+		runSkippingUnchangedTables();
+		assertThat(categoryInDestination(), not(equalTo("X")));
+	}
+
+	@Test
+	public void rulesHashDoesNotDependOnOrder() {
+		Rule first = new Rule(new TableField(TABLE, "CATEGORY", "ORIGINAL"),
+				"S", "A");
+		Rule second = new Rule(new TableField(TABLE, "ID", "ORIGINAL"),
+				"S", "1");
+		Map<String, String> strategies = Collections.singletonMap("S",
+				SetDefaultStrategy.class.getName());
+		assertThat(TableFingerprinter.rulesHash(ImmutableList.of(first, second),
+				strategies), equalTo(TableFingerprinter.rulesHash(
+						ImmutableList.of(second, first), strategies)));
+		assertThat(TableFingerprinter.rulesHash(ImmutableList.of(first),
+				strategies), not(equalTo(TableFingerprinter.rulesHash(
+						ImmutableList.of(second), strategies))));
+	}
+}
@@ -0,0 +1,96 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.execute;
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.queryString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+public class IncrementalRunTest extends AbstractRunTest {
+
+	private static final String TABLE = "CINEMACASHLOGSUPPLEMENTAL";
+
+	@Override
+	protected TestDataFixture createTestDataFixture() throws Exception {
+		TestDataFixture testData = super.createTestDataFixture();
+		testData.getScope().watermarkColumns.put(TABLE, "ID");
+		return testData;
+	}
+
+	private String categoryInDestination(int id) throws SQLException {
+		return queryString(testData.getDestinationDbConnection(),
+				"SELECT CATEGORY FROM ORIGINAL." + TABLE + " WHERE ID = " + id);
+	}
+
+	private WatermarkStore watermarks() {
+		return new WatermarkStore(testData.getTransformationDbConnection(),
+				"ORIGINAL");
+	}
+
+	private void runIncrementally() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setIncremental(true);
+		anonymizer.run();
+	}
+
+	@Test
+	public void firstRunCopiesAllRowsAndStoresHighWaterMark() throws Exception {
+		runIncrementally();
+		assertThat(watermarks().get(TABLE, "ID"), equalTo("4"));
+		assertThat(watermarks().get(TABLE, "CATEGORY"), nullValue());
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void onlyChangedRowsAreUpserted() throws Exception {
+		runIncrementally();
+		watermarks().put(TABLE, "ID", 3);
+		Connection original = testData.getOriginalDbConnection();
+		execute(original, "UPDATE ORIGINAL." + TABLE
+				+ " SET CATEGORY = 'M' WHERE ID = 4");
+		execute(original, "INSERT INTO ORIGINAL." + TABLE + " VALUES (5, 'S')");
+		// must survive because the destination table is not truncated
+		execute(testData.getDestinationDbConnection(), "UPDATE ORIGINAL."
+				+ TABLE + " SET CATEGORY = 'X' WHERE ID = 1");
+
+		runIncrementally();
+
+		assertThat(categoryInDestination(1), equalTo("X"));
+		assertThat(categoryInDestination(4), equalTo("M"));
+		assertThat(categoryInDestination(5), equalTo("S"));
+		assertThat(queryString(testData.getDestinationDbConnection(),
+				"SELECT COUNT(*) FROM ORIGINAL." + TABLE), equalTo("5"));
+		assertThat(watermarks().get(TABLE, "ID"), equalTo("5"));
+	}
+
+	@Test
+	public void rowsAtTheHighWaterMarkAreCopiedAgain() throws Exception {
+		runIncrementally();
+		// as if the row had been committed with the same watermark after
+		// the high-water mark was taken
+		execute(testData.getOriginalDbConnection(), "UPDATE ORIGINAL." + TABLE
+				+ " SET CATEGORY = 'M' WHERE ID = 4");
+
+		runIncrementally();
+
+		assertThat(categoryInDestination(4), equalTo("M"));
+		assertThat(queryString(testData.getDestinationDbConnection(),
+				"SELECT COUNT(*) FROM ORIGINAL." + TABLE), equalTo("4"));
+	}
+
+	@Test
+	public void tablesAreCopiedCompletelyWithoutIncrementalOption()
+			throws Exception {
+		runIncrementally();
+		execute(testData.getDestinationDbConnection(), "UPDATE ORIGINAL."
+				+ TABLE + " SET CATEGORY = 'X' WHERE ID = 1");
+		testData.createAnonymizer().run();
+		assertThat(categoryInDestination(1), equalTo("S"));
+	}
+}
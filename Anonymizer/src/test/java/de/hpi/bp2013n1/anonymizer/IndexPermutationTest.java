@@ -0,0 +1,41 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IndexPermutationTest {
+
+	@Test
+	public void permutesAllIndexes() {
+		for (long size : new long[] { 1, 2, 3, 100, 1000, 4097 }) {
+			IndexPermutation permutation = new IndexPermutation(size,
+					new Random(42));
+			Set<Long> indexes = new HashSet<>();
+			for (long i = 0; i < size; i++) {
+				long index = permutation.apply(i);
+				assertThat(index >= 0 && index < size, equalTo(true));
+				indexes.add(index);
+			}
+			assertThat(indexes.size(), equalTo((int) size));
+		}
+	}
+
+	@Test
+	public void supportsLongSizes() {
+		IndexPermutation permutation = new IndexPermutation(Long.MAX_VALUE,
+				new Random(42));
+		Set<Long> indexes = new HashSet<>();
+		for (long i = Long.MAX_VALUE - 1000; i < Long.MAX_VALUE; i++) {
+			long index = permutation.apply(i);
+			assertThat(index >= 0, equalTo(true));
+			indexes.add(index);
+		}
+		assertThat(indexes.size(), equalTo(1000));
+	}
+}
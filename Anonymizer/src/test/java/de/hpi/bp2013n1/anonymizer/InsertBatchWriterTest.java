@@ -0,0 +1,91 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InsertBatchWriterTest {
+
+	private Connection destination;
+	private Connection transformations;
+	private QuarantineStore quarantine;
+
+	@Before
+	public void createDatabases() throws SQLException {
+		destination = DriverManager.getConnection("jdbc:h2:mem:");
+		transformations = DriverManager.getConnection("jdbc:h2:mem:");
+		try (Statement statement = destination.createStatement()) {
+			statement.executeUpdate("CREATE SCHEMA S");
+			statement.executeUpdate("CREATE TABLE S.T "
+					+ "(ID INT PRIMARY KEY, NAME VARCHAR(5))");
+			statement.executeUpdate("INSERT INTO S.T VALUES (4, 'old')");
+		}
+		try (Statement statement = transformations.createStatement()) {
+			statement.executeUpdate("CREATE SCHEMA S");
+		}
+		destination.setAutoCommit(false);
+		quarantine = new QuarantineStore(transformations, "S");
+	}
+
+	@After
+	public void closeDatabases() throws SQLException {
+		destination.close();
+		transformations.close();
+	}
+
+	private String query(Connection connection, String sql)
+			throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(sql)) {
+			result.next();
+			return result.getString(1);
+		}
+	}
+
+	@Test
+	public void failingRowsAreQuarantinedAndOthersInserted()
+			throws SQLException {
+		try (InsertBatchWriter writer = new InsertBatchWriter(destination,
+				"S.T", Arrays.asList("ID", "NAME"), 100)) {
+			writer.setQuarantine(quarantine);
+			for (int id = 1; id <= 8; id++)
+				writer.addRow(new Object[] { id, id == 6 ? "too long" : "new" });
+			writer.flush();
+			assertThat(writer.getQuarantinedRows(), equalTo(2));
+		}
+		assertThat(query(destination, "SELECT COUNT(*) FROM S.T"), equalTo("7"));
+		assertThat(query(destination, "SELECT NAME FROM S.T WHERE ID = 4"),
+				equalTo("old"));
+		assertThat(quarantine.count("S.T"), equalTo(2));
+		assertThat(query(transformations, "SELECT ROW_VALUES FROM S."
+				+ QuarantineStore.QUARANTINE_TABLE + " ORDER BY ROW_VALUES"),
+				equalTo("ID=4, NAME=new"));
+		assertThat(query(transformations, "SELECT ERROR_MESSAGE FROM S."
+				+ QuarantineStore.QUARANTINE_TABLE
+				+ " WHERE ROW_VALUES LIKE 'ID=6%'"), containsString("NAME"));
+	}
+
+	@Test
+	public void batchWithoutErrorsCreatesNoQuarantine() throws SQLException {
+		try (InsertBatchWriter writer = new InsertBatchWriter(destination,
+				"S.T", Arrays.asList("ID", "NAME"), 3)) {
+			writer.setQuarantine(quarantine);
+			writer.addRow(new Object[] { 1, "a" });
+			writer.addRow(new Object[] { 2, "b" });
+			writer.flush();
+		}
+		assertThat(query(destination, "SELECT COUNT(*) FROM S.T"), equalTo("3"));
+		assertThat(quarantine.count("S.T"), equalTo(0));
+	}
+}
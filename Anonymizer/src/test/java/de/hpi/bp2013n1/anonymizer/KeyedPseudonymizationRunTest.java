@@ -0,0 +1,42 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.values;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class KeyedPseudonymizationRunTest extends AbstractRunTest {
+
+	private static final byte[] KEY = "secret".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void pseudonymsAreDerivedFromTheKey() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setPseudonymKey(KEY);
+		// the configuration uses prefixes, which keyed mode does not support
+		anonymizer.getOptions().setSkipRuleValidation(true);
+		anonymizer.run();
+
+		KeyedPseudonymizer pseudonymizer = new KeyedPseudonymizer(KEY);
+		byte[] tweak = KeyedPseudonymizer.tweak("VISITOR.SURNAME");
+		Set<String> expected = new HashSet<>();
+		for (String surname : values(testData.originalDbConnection,
+				"SELECT SURNAME FROM ORIGINAL.VISITOR"))
+			expected.add(pseudonymizer.pseudonymize(surname, tweak));
+		Set<String> surnames = values(testData.destinationDbConnection,
+				"SELECT SURNAME FROM ORIGINAL.VISITOR");
+		assertThat(surnames.size(), greaterThan(0));
+		assertThat(expected.containsAll(surnames), equalTo(true));
+		// the dependant column uses the same pseudonyms
+		Set<String> visitorSurnames = values(testData.destinationDbConnection,
+				"SELECT VISITORSURNAME FROM ORIGINAL.VISIT");
+		assertThat(visitorSurnames.size(), greaterThan(0));
+		assertThat(expected.containsAll(visitorSurnames), equalTo(true));
+	}
+}
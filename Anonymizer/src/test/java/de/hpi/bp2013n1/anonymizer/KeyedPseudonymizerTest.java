@@ -0,0 +1,97 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class KeyedPseudonymizerTest {
+
+	private final KeyedPseudonymizer pseudonymizer = new KeyedPseudonymizer(
+			"secret".getBytes(StandardCharsets.UTF_8));
+	private final byte[] tweak = KeyedPseudonymizer.tweak("VISITOR.SURNAME");
+
+	@Test
+	public void pseudonymsAreDeterministic() {
+		KeyedPseudonymizer sameKey = new KeyedPseudonymizer(
+				"secret".getBytes(StandardCharsets.UTF_8));
+		KeyedPseudonymizer otherKey = new KeyedPseudonymizer(
+				"other".getBytes(StandardCharsets.UTF_8));
+		String pseudonym = pseudonymizer.pseudonymize("Mueller", tweak);
+		assertThat(sameKey.pseudonymize("Mueller", tweak), equalTo(pseudonym));
+		assertThat(otherKey.pseudonymize("Mueller", tweak),
+				not(equalTo(pseudonym)));
+		assertThat(pseudonymizer.pseudonymize("Mueller",
+				KeyedPseudonymizer.tweak("VISITOR.NAME")),
+				not(equalTo(pseudonym)));
+	}
+
+	@Test
+	public void stringsKeepTheirFormat() {
+		String pseudonym = pseudonymizer.pseudonymize("Anna-Lena Ng", tweak);
+		assertThat(pseudonym.length(), equalTo(12));
+		assertThat(pseudonym.charAt(4), equalTo('-'));
+		assertThat(pseudonym.charAt(9), equalTo(' '));
+		String digits = pseudonymizer.pseudonymize("0176 1234567", tweak);
+		assertThat(digits.matches("\\d{4} \\d{7}"), equalTo(true));
+		assertThat(pseudonymizer.pseudonymize("--", tweak), equalTo("--"));
+	}
+
+	@Test
+	public void distinctStringsYieldDistinctPseudonyms() {
+		Set<String> pseudonyms = new HashSet<>();
+		String alphabet = KeyedPseudonymizer.ALPHABET;
+		for (int i = 0; i < alphabet.length(); i++) {
+			String pseudonym = pseudonymizer.pseudonymize(
+					alphabet.substring(i, i + 1), tweak);
+			assertThat(pseudonym.length(), equalTo(1));
+			// letters stay letters, digits stay digits
+			assertThat(Character.isDigit(pseudonym.charAt(0)),
+					equalTo(Character.isDigit(alphabet.charAt(i))));
+			pseudonyms.add(pseudonym);
+		}
+		for (int i = 0; i < 100; i++)
+			pseudonyms.add(pseudonymizer.pseudonymize(
+					String.format("%02d", i), tweak));
+		for (char first = 'a'; first <= 'z'; first++) {
+			for (int i = 0; i < 10; i++)
+				pseudonyms.add(pseudonymizer.pseudonymize(first + "" + i, tweak));
+		}
+		assertThat(pseudonyms.size(), equalTo(alphabet.length() + 100 + 260));
+	}
+
+	@Test
+	public void integersStayWithinTheirType() {
+		Set<Long> pseudonyms = new HashSet<>();
+		for (long value = 0; value <= Byte.MAX_VALUE; value++) {
+			long pseudonym = pseudonymizer.pseudonymize(value, Byte.MAX_VALUE,
+					tweak);
+			assertThat(pseudonym, lessThanOrEqualTo((long) Byte.MAX_VALUE));
+			assertThat(pseudonym >= 0, equalTo(true));
+			pseudonyms.add(pseudonym);
+		}
+		assertThat(pseudonyms.size(), equalTo(Byte.MAX_VALUE + 1));
+		assertThat(pseudonymizer.pseudonymize(-5, Byte.MAX_VALUE, tweak),
+				equalTo(-pseudonymizer.pseudonymize(5, Byte.MAX_VALUE, tweak)));
+		long big = pseudonymizer.pseudonymize(Long.MAX_VALUE - 1,
+				Long.MAX_VALUE, tweak);
+		assertThat(big >= 0, equalTo(true));
+	}
+
+	@Test
+	public void integersAndTheirNegationsYieldDistinctPseudonyms() {
+		Set<Long> pseudonyms = new HashSet<>();
+		for (long value = -Byte.MAX_VALUE; value <= Byte.MAX_VALUE; value++)
+			pseudonyms.add(pseudonymizer.pseudonymize(value, Byte.MAX_VALUE,
+					tweak));
+		assertThat(pseudonyms.size(), equalTo(2 * Byte.MAX_VALUE + 1));
+		assertThat(pseudonymizer.pseudonymize(0, Byte.MAX_VALUE, tweak),
+				equalTo(0L));
+	}
+}
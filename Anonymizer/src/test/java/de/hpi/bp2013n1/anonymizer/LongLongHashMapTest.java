@@ -0,0 +1,66 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongLongHashMapTest {
+
+	private static void assertBehavesLikeHashMap(LongLongHashMap sut) {
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long key = random.nextInt(5000) - 2500;
+			long value = random.nextLong();
+			sut.put(key, value);
+			expected.put(key, value);
+		}
+		assertThat(sut.size(), is((long) expected.size()));
+		for (long key = -3000; key < 3000; key++) {
+			assertThat(sut.containsKey(key), is(expected.containsKey(key)));
+			Long value = expected.get(key);
+			assertThat(sut.get(key, -1), is(value == null ? -1 : value));
+		}
+	}
+
+	@Test
+	public void onHeapMapGrows() {
+		LongLongHashMap sut = new LongLongHashMap(0, false);
+		assertBehavesLikeHashMap(sut);
+		assertThat(sut.isOffHeap(), is(false));
+	}
+
+	@Test
+	public void offHeapMapGrows() {
+		LongLongHashMap sut = new LongLongHashMap(10, true);
+		assertBehavesLikeHashMap(sut);
+		assertThat(sut.isOffHeap(), is(true));
+	}
+
+	@Test
+	public void keepsTheFreeKeyAside() {
+		LongLongHashMap sut = new LongLongHashMap(4, false);
+		assertThat(sut.containsKey(0), is(false));
+		assertThat(sut.get(0, 7), is(7L));
+		sut.put(0, 5);
+		sut.put(0, 6);
+		sut.put(Long.MIN_VALUE, 0);
+		assertThat(sut.size(), is(2L));
+		assertThat(sut.get(0, 7), is(6L));
+		assertThat(sut.get(Long.MIN_VALUE, 7), is(0L));
+	}
+
+	@Test
+	public void isPresizedForTheExpectedEntries() {
+		LongLongHashMap sut = new LongLongHashMap(1000, false);
+		long allocated = sut.allocatedBytes();
+		for (long key = 1; key <= 1000; key++)
+			sut.put(key, key);
+		assertThat(sut.allocatedBytes(), is(allocated));
+	}
+}
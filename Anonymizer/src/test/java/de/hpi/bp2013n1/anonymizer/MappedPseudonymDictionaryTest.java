@@ -0,0 +1,79 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedPseudonymDictionaryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void looksUpStrings() throws Exception {
+		File file = folder.newFile();
+		MappedPseudonymDictionary sut;
+		try (MappedPseudonymDictionary.Writer writer =
+				new MappedPseudonymDictionary.Writer(file, 1000, false)) {
+			for (int i = 0; i < 1000; i++)
+				writer.put("value" + i, "pseudonym" + i);
+			writer.put("Müller", "Maß");
+			sut = writer.finish();
+		}
+		assertThat(sut.size(), is(1001L));
+		assertThat(sut.hasIntegerKeys(), is(false));
+		for (int i = 0; i < 1000; i++)
+			assertThat(sut.get("value" + i), is("pseudonym" + i));
+		assertThat(sut.get("Müller"), is("Maß"));
+		assertThat(sut.get("value1000"), is(nullValue()));
+		assertThat(sut.get(""), is(nullValue()));
+	}
+
+	@Test
+	public void looksUpIntegers() throws Exception {
+		File file = folder.newFile();
+		MappedPseudonymDictionary sut;
+		try (MappedPseudonymDictionary.Writer writer =
+				new MappedPseudonymDictionary.Writer(file, 500, true)) {
+			for (long i = -250; i < 250; i++)
+				writer.put(i, i * 3);
+			sut = writer.finish();
+		}
+		assertThat(sut.hasIntegerKeys(), is(true));
+		for (long i = -250; i < 250; i++) {
+			assertThat(sut.get(i, Long.MIN_VALUE), is(i * 3));
+			assertThat(sut.containsKey(i), is(true));
+		}
+		assertThat(sut.get(250, -1), is(-1L));
+		assertThat(sut.containsKey(Long.MAX_VALUE), is(false));
+	}
+
+	@Test
+	public void reopensFinishedFiles() throws Exception {
+		File file = folder.newFile();
+		try (MappedPseudonymDictionary.Writer writer =
+				new MappedPseudonymDictionary.Writer(file, 1, false)) {
+			writer.put("a", "b");
+			writer.finish();
+		}
+		MappedPseudonymDictionary sut = MappedPseudonymDictionary.open(file);
+		assertThat(sut.size(), is(1L));
+		assertThat(sut.get("a"), is("b"));
+	}
+
+	@Test
+	public void deletesUnfinishedFiles() throws Exception {
+		File file = folder.newFile();
+		try (MappedPseudonymDictionary.Writer writer =
+				new MappedPseudonymDictionary.Writer(file, 1, false)) {
+			writer.put("a", "b");
+		}
+		assertThat(file.exists(), is(false));
+	}
+}
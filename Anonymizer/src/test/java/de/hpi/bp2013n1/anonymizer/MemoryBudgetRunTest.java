@@ -0,0 +1,21 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class MemoryBudgetRunTest extends AbstractRunTest {
+
+	@Test
+	public void spillingYieldsSameResult() throws Exception {
+		MemoryBudget budget = new MemoryBudget(1, null);
+		budget.setCheckIntervalBytes(1);
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setMemoryBudget(budget);
+		anonymizer.run();
+		assertThat(budget.getSpills(), greaterThan(0));
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+}
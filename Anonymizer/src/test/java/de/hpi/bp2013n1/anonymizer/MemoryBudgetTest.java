@@ -0,0 +1,83 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+	private static class FixedConsumer implements MemoryBudget.Consumer {
+		long bytes;
+		boolean spilled;
+
+		FixedConsumer(long bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public long estimatedBytes() {
+			return bytes;
+		}
+
+		@Override
+		public long spill() throws IOException {
+			spilled = true;
+			long freed = bytes;
+			bytes = 0;
+			return freed;
+		}
+	}
+
+	@Test
+	public void nothingIsSpilledWithinTheBudget() {
+		MemoryBudget budget = new MemoryBudget(100, null);
+		FixedConsumer consumer = new FixedConsumer(100);
+		budget.register(consumer);
+		budget.enforce();
+		assertThat(consumer.spilled, equalTo(false));
+		assertThat(budget.getSpills(), equalTo(0));
+	}
+
+	@Test
+	public void largestConsumersAreSpilledFirst() {
+		MemoryBudget budget = new MemoryBudget(100, null);
+		FixedConsumer small = new FixedConsumer(30);
+		FixedConsumer medium = new FixedConsumer(40);
+		FixedConsumer large = new FixedConsumer(50);
+		budget.register(small);
+		budget.register(large);
+		budget.register(medium);
+		budget.enforce();
+		// 120 bytes exceed the budget, spilling 50 reaches the target of 80
+		assertThat(large.spilled, equalTo(true));
+		assertThat(medium.spilled, equalTo(false));
+		assertThat(small.spilled, equalTo(false));
+		assertThat(budget.getSpilledBytes(), equalTo(50L));
+		assertThat(budget.estimatedBytes(), equalTo(70L));
+	}
+
+	@Test
+	public void growthTriggersEnforcement() {
+		MemoryBudget budget = new MemoryBudget(10, null);
+		budget.setCheckIntervalBytes(20);
+		FixedConsumer consumer = new FixedConsumer(15);
+		budget.register(consumer);
+		budget.grown(15);
+		assertThat(consumer.spilled, equalTo(false));
+		budget.grown(15);
+		assertThat(consumer.spilled, equalTo(true));
+	}
+
+	@Test
+	public void unregisteredConsumersAreNotSpilled() {
+		MemoryBudget budget = new MemoryBudget(10, null);
+		FixedConsumer consumer = new FixedConsumer(15);
+		budget.register(consumer);
+		budget.unregister(consumer);
+		budget.enforce();
+		assertThat(consumer.spilled, equalTo(false));
+	}
+}
@@ -0,0 +1,185 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+import de.hpi.bp2013n1.anonymizer.shared.DatabaseConnector;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.Scope;
+
+public class MultiSchemaRunTest {
+
+	/**
+	 * Records the transformation connection each schema is transformed with.
+	 */
+	public static class ConnectionRecordingStrategy extends SetDefaultStrategy {
+		static final ConcurrentHashMap<String, Set<Connection>> connectionsBySchema =
+				new ConcurrentHashMap<>();
+
+		public ConnectionRecordingStrategy(Anonymizer anonymizer,
+				Connection oldDB, Connection translateDB) throws SQLException {
+			super(anonymizer, oldDB, translateDB);
+		}
+
+		@Override
+		public List<String> transform(Object oldValue, Rule rule,
+				ResultSetRowReader row) {
+			Set<Connection> connections = Collections.newSetFromMap(
+					new ConcurrentHashMap<Connection, Boolean>());
+			Set<Connection> recorded = connectionsBySchema.putIfAbsent(
+					row.getCurrentSchema(), connections);
+			(recorded != null ? recorded : connections).add(
+					transformationDatabase());
+			return super.transform(oldValue, rule, row);
+		}
+	}
+
+	private static final String[] TENANTS = { "T1", "T2" };
+
+	private Config config;
+	private Connection original;
+	private Connection destination;
+	private Connection transformation;
+	private File logFile;
+
+	@Before
+	public void createTenantSchemas() throws SQLException {
+		config = new Config();
+		config.originalDB.url = "jdbc:h2:mem:multischema-original;DB_CLOSE_DELAY=-1";
+		config.destinationDB.url = "jdbc:h2:mem:multischema-destination;DB_CLOSE_DELAY=-1";
+		config.transformationDB.url = "jdbc:h2:mem:multischema-transformation;DB_CLOSE_DELAY=-1";
+		config.schemaName = TENANTS[0];
+		config.batchSize = 100;
+		config.strategyMapping.put("S", SetDefaultStrategy.class.getName());
+		config.rules.add(new Rule(new TableField("PERSON", "NAME", TENANTS[0]),
+				"S", "X"));
+		original = DatabaseConnector.connect(config.originalDB);
+		destination = DatabaseConnector.connect(config.destinationDB);
+		transformation = DatabaseConnector.connect(config.transformationDB);
+		for (String tenant : TENANTS) {
+			for (Connection connection : new Connection[] { original, destination }) {
+				execute(connection, "CREATE SCHEMA " + tenant);
+				execute(connection, "CREATE TABLE " + tenant + ".PERSON "
+						+ "(ID INT PRIMARY KEY, NAME VARCHAR(20))");
+			}
+			execute(original, "INSERT INTO " + tenant + ".PERSON VALUES "
+					+ "(1, 'Alice'), (2, 'Bob')");
+		}
+	}
+
+	@Before
+	public void prepareLogFile() throws IOException {
+		logFile = File.createTempFile("anonymizer-test-multischema-output", null);
+		logFile.delete();
+		Anonymizer.setUpLogging(logFile.getPath());
+	}
+
+	@After
+	public void dropDatabases() throws SQLException {
+		for (Connection connection : new Connection[] { original, destination,
+				transformation }) {
+			execute(connection, "SHUTDOWN");
+			connection.close();
+		}
+	}
+
+	@After
+	public void deleteLogFile() {
+		logFile.delete();
+	}
+
+	private static void execute(Connection connection, String sql)
+			throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private List<String> namesIn(String tenant) throws SQLException {
+		List<String> names = new ArrayList<>();
+		try (Statement statement = destination.createStatement();
+				ResultSet result = statement.executeQuery("SELECT NAME FROM "
+						+ tenant + ".PERSON ORDER BY ID")) {
+			while (result.next())
+				names.add(result.getString(1));
+		}
+		return names;
+	}
+
+	private static Scope scopeOf(String... tables) {
+		Scope scope = new Scope();
+		scope.tables = new ArrayList<>();
+		for (String table : tables)
+			scope.tables.add(table);
+		return scope;
+	}
+
+	@Test
+	public void schemasAreAnonymizedConcurrentlyAndFailuresAreIsolated()
+			throws Exception {
+		Map<String, Scope> scopes = new LinkedHashMap<>();
+		for (String tenant : TENANTS)
+			scopes.put(tenant, scopeOf("PERSON"));
+		scopes.put("MISSING", scopeOf("PERSON"));
+		MultiSchemaRun run = new MultiSchemaRun(config, scopes);
+		run.setParallelism(2);
+
+		Map<String, MultiSchemaRun.SchemaResult> results = run.run();
+
+		assertThat(results.get("T1").succeeded, equalTo(true));
+		assertThat(results.get("T2").succeeded, equalTo(true));
+		assertThat(results.get("MISSING").succeeded, equalTo(false));
+		assertThat(namesIn("T1"), contains("X", "X"));
+		assertThat(namesIn("T2"), contains("X", "X"));
+	}
+
+	@Test
+	public void eachSchemaUsesItsOwnTransformationConnection()
+			throws Exception {
+		config.strategyMapping.put("R", ConnectionRecordingStrategy.class.getName());
+		config.rules.clear();
+		config.rules.add(new Rule(new TableField("PERSON", "NAME", TENANTS[0]),
+				"R", "X"));
+		ConnectionRecordingStrategy.connectionsBySchema.clear();
+		Map<String, Scope> scopes = new LinkedHashMap<>();
+		for (String tenant : TENANTS)
+			scopes.put(tenant, scopeOf("PERSON"));
+		MultiSchemaRun run = new MultiSchemaRun(config, scopes);
+		run.setParallelism(2);
+
+		Map<String, MultiSchemaRun.SchemaResult> results = run.run();
+
+		assertThat(results.get("T1").succeeded, equalTo(true));
+		assertThat(results.get("T2").succeeded, equalTo(true));
+		Set<Connection> t1Connections =
+				ConnectionRecordingStrategy.connectionsBySchema.get("T1");
+		Set<Connection> t2Connections =
+				ConnectionRecordingStrategy.connectionsBySchema.get("T2");
+		assertThat(t1Connections, hasSize(1));
+		assertThat(t2Connections, hasSize(1));
+		assertThat(t1Connections, not(equalTo(t2Connections)));
+	}
+}
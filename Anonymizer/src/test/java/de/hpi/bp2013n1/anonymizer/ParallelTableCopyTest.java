@@ -0,0 +1,98 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import de.hpi.bp2013n1.anonymizer.shared.Config;
+
+public class ParallelTableCopyTest extends AbstractRunTest {
+
+	@Override
+	protected TestDataFixture createTestDataFixture() throws Exception {
+		// workers open their own connections, so the in-memory databases
+		// must be reachable by name
+		Config config = new Config();
+		config.readFromURL(StandardTestDataFixture.class.getResource(
+				"test-h2-config.txt"));
+		config.originalDB.url = "jdbc:h2:mem:parallel-original";
+		config.destinationDB.url = "jdbc:h2:mem:parallel-destination";
+		config.transformationDB.url = "jdbc:h2:mem:parallel-transformations";
+		return new StandardTestDataFixture(config, null);
+	}
+
+	@Test
+	public void concurrentCopyYieldsSameResult() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setTableWorkers(3);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void copyInKeyRangeLanesYieldsSameResult() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setTableWorkers(2);
+		anonymizer.getOptions().setTableLanes(3);
+		anonymizer.getOptions().setMinimumRowsPerLane(1);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void pipelinedCopyYieldsSameResult() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setPipelineQueueCapacity(2);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void adaptiveBatchingYieldsSameResultAndRecordsSettings()
+			throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setAdaptiveBatching(true);
+		anonymizer.getOptions().setBatchBounds(1, 4, 8, 1000);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+		assertThat(new BatchSettingsStore(testData.getTransformationDbConnection(),
+				"ORIGINAL").get("VISITOR"), notNullValue());
+	}
+
+	@Test
+	public void prefetchingTablesYieldsSameResult() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setPrefetch(true);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+
+	@Test
+	public void prefetchingTablesWhenResumingYieldsSameResult()
+			throws Exception {
+		testData.createAnonymizer().run();
+		Connection transformations = testData.getTransformationDbConnection();
+		try (Statement statement = transformations.createStatement()) {
+			statement.executeUpdate("UPDATE ORIGINAL."
+					+ ProgressJournal.JOURNAL_TABLE
+					+ " SET FINISHED = 0, LAST_KEY = NULL");
+		}
+		if (!transformations.getAutoCommit())
+			transformations.commit();
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setResume(true);
+		anonymizer.getOptions().setPrefetch(true);
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+}
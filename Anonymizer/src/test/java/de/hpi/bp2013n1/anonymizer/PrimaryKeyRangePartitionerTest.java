@@ -0,0 +1,109 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrimaryKeyRangePartitionerTest {
+
+	private Connection connection;
+	private PrimaryKeyRangePartitioner sut;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:");
+		try (Statement ddl = connection.createStatement()) {
+			ddl.executeUpdate("CREATE TABLE NUMBERS (ID INT PRIMARY KEY, V INT)");
+			ddl.executeUpdate("CREATE TABLE NAMES (NAME VARCHAR(10) PRIMARY KEY)");
+			ddl.executeUpdate("CREATE TABLE PAIRS (A INT, B INT, PRIMARY KEY(A, B))");
+		}
+		try (PreparedStatement insert = connection.prepareStatement(
+				"INSERT INTO NUMBERS VALUES (?, ?)")) {
+			for (int i = 1; i <= 100; i++) {
+				insert.setInt(1, i);
+				insert.setInt(2, i);
+				insert.executeUpdate();
+			}
+		}
+		try (PreparedStatement insert = connection.prepareStatement(
+				"INSERT INTO NAMES VALUES (?)")) {
+			for (char c = 'a'; c <= 'l'; c++) {
+				insert.setString(1, String.valueOf(c));
+				insert.executeUpdate();
+			}
+		}
+		sut = new PrimaryKeyRangePartitioner(connection);
+	}
+
+	@After
+	public void closeConnection() throws SQLException {
+		connection.close();
+	}
+
+	private PrimaryKey primaryKeyOf(String table) throws SQLException {
+		return new PrimaryKey("PUBLIC", table, connection);
+	}
+
+	private int countRowsIn(String table, List<PrimaryKeyRange> ranges)
+			throws SQLException {
+		int rows = 0;
+		for (PrimaryKeyRange range : ranges) {
+			try (PreparedStatement select = connection.prepareStatement(
+					"SELECT COUNT(*) FROM " + table + range.whereClause())) {
+				range.setParameters(select, 1);
+				try (ResultSet count = select.executeQuery()) {
+					count.next();
+					rows += count.getInt(1);
+				}
+			}
+		}
+		return rows;
+	}
+
+	@Test
+	public void integerKeysAreSplitIntoRangesOfEqualWidth() throws SQLException {
+		List<PrimaryKeyRange> ranges = sut.partition("PUBLIC.NUMBERS",
+				primaryKeyOf("NUMBERS"), 4, 100);
+		assertThat(ranges, hasSize(4));
+		assertThat(ranges.get(0).lowerBound, equalTo(null));
+		assertThat(ranges.get(0).upperBound, equalTo((Object) 26));
+		assertThat(ranges.get(3).lowerBound, equalTo((Object) 76));
+		assertThat(ranges.get(3).upperBound, equalTo(null));
+		assertThat(countRowsIn("NUMBERS", ranges), equalTo(100));
+	}
+
+	@Test
+	public void otherKeysAreSplitAtSampledQuantiles() throws SQLException {
+		List<PrimaryKeyRange> ranges = sut.partition("PUBLIC.NAMES",
+				primaryKeyOf("NAMES"), 3, 12);
+		assertThat(ranges, hasSize(3));
+		assertThat(ranges.get(1).lowerBound, equalTo((Object) "d"));
+		assertThat(ranges.get(1).upperBound, equalTo((Object) "h"));
+		assertThat(countRowsIn("NAMES", ranges), equalTo(12));
+	}
+
+	@Test
+	public void compositeKeysAreNotSplit() throws SQLException {
+		assertThat(sut.partition("PUBLIC.PAIRS", primaryKeyOf("PAIRS"), 4, 100),
+				contains(PrimaryKeyRange.ALL));
+	}
+
+	@Test
+	public void singlePartitionCoversTheWholeTable() throws SQLException {
+		assertThat(sut.partition("PUBLIC.NUMBERS", primaryKeyOf("NUMBERS"), 1, 100),
+				contains(PrimaryKeyRange.ALL));
+	}
+}
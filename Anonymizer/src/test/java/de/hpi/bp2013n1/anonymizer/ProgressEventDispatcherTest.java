@@ -0,0 +1,164 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ProgressEventDispatcherTest {
+
+	private static class RecordingListener implements ProgressListener {
+		final List<ProgressEvent.Type> types = Collections.synchronizedList(
+				new ArrayList<ProgressEvent.Type>());
+
+		@Override
+		public void progressed(ProgressEvent event) {
+			types.add(event.type);
+		}
+	}
+
+	private static class ThreadRecordingListener implements ProgressListener {
+		volatile Thread thread;
+
+		@Override
+		public void progressed(ProgressEvent event) {
+			thread = Thread.currentThread();
+		}
+	}
+
+	@Test
+	public void eventsAreDeliveredInOrder() throws InterruptedException {
+		ProgressEventDispatcher dispatcher = new ProgressEventDispatcher();
+		RecordingListener listener = new RecordingListener();
+		dispatcher.addListener(listener);
+		dispatcher.publish(ProgressEvent.runStarted("S"));
+		dispatcher.publish(ProgressEvent.tableStarted("S", "T", 10, true));
+		dispatcher.publish(ProgressEvent.batch("S", "T", 5, 10, true, 1, 1));
+		dispatcher.publish(ProgressEvent.tableFinished("S", "T", 10, 10, true,
+				2, true));
+		dispatcher.publish(ProgressEvent.runFinished("S", 10, 3, true));
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		assertThat(listener.types, contains(ProgressEvent.Type.RUN_STARTED,
+				ProgressEvent.Type.TABLE_STARTED, ProgressEvent.Type.BATCH,
+				ProgressEvent.Type.TABLE_FINISHED,
+				ProgressEvent.Type.RUN_FINISHED));
+	}
+
+	@Test
+	public void closingStopsTheThreadAndLaterEventsStartANewOne()
+			throws InterruptedException {
+		ProgressEventDispatcher dispatcher = new ProgressEventDispatcher();
+		ThreadRecordingListener listener = new ThreadRecordingListener();
+		dispatcher.addListener(listener);
+		dispatcher.publish(ProgressEvent.runStarted("S"));
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		Thread first = listener.thread;
+		dispatcher.close();
+		first.join(5000);
+		assertThat(first.isAlive(), equalTo(false));
+
+		dispatcher.publish(ProgressEvent.runFinished("S", 0, 1, true));
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		assertThat(listener.thread, not(sameInstance(first)));
+		dispatcher.close();
+	}
+
+	@Test
+	public void slowListenersDoNotBlockPublishing() throws InterruptedException {
+		ProgressEventDispatcher dispatcher = new ProgressEventDispatcher();
+		final CountDownLatch release = new CountDownLatch(1);
+		final RecordingListener recorder = new RecordingListener();
+		dispatcher.addListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				recorder.progressed(event);
+			}
+		});
+		int published = 2 * ProgressEventDispatcher.MAX_PENDING_FREQUENT_EVENTS;
+		for (int i = 0; i < published; i++)
+			dispatcher.publish(ProgressEvent.batch("S", "T", i, -1, false, 0,
+					-1));
+		dispatcher.publish(ProgressEvent.tableFinished("S", "T", published,
+				-1, false, 0, true));
+		release.countDown();
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		assertThat(dispatcher.getDroppedEvents(), greaterThan(0L));
+		// events which are published once are never dropped
+		assertThat(recorder.types.get(recorder.types.size() - 1),
+				equalTo(ProgressEvent.Type.TABLE_FINISHED));
+		assertThat(recorder.types.size() + dispatcher.getDroppedEvents(),
+				equalTo(published + 1L));
+	}
+
+	@Test
+	public void errorsAreNeverDropped() throws InterruptedException {
+		ProgressEventDispatcher dispatcher = new ProgressEventDispatcher();
+		final CountDownLatch release = new CountDownLatch(1);
+		final RecordingListener recorder = new RecordingListener();
+		dispatcher.addListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				recorder.progressed(event);
+			}
+		});
+		int errors = 2 * ProgressEventDispatcher.MAX_PENDING_FREQUENT_EVENTS;
+		for (int i = 0; i < errors; i++) {
+			dispatcher.publish(ProgressEvent.batch("S", "T", i, -1, false, 0,
+					-1));
+			dispatcher.publish(ProgressEvent.error("S", "T", "error " + i));
+		}
+		release.countDown();
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		assertThat(dispatcher.getDroppedEvents(), greaterThan(0L));
+		assertThat(Collections.frequency(recorder.types,
+				ProgressEvent.Type.ERROR), equalTo(errors));
+	}
+
+	@Test
+	public void failingListenersDoNotStopDelivery() throws InterruptedException {
+		ProgressEventDispatcher dispatcher = new ProgressEventDispatcher();
+		dispatcher.addListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				throw new IllegalStateException("listener failure");
+			}
+		});
+		RecordingListener listener = new RecordingListener();
+		dispatcher.addListener(listener);
+		dispatcher.publish(ProgressEvent.runStarted("S"));
+		dispatcher.publish(ProgressEvent.error("S", "T", "message"));
+		assertThat(dispatcher.flush(5000), equalTo(true));
+		assertThat(listener.types, contains(ProgressEvent.Type.RUN_STARTED,
+				ProgressEvent.Type.ERROR));
+	}
+
+	@Test
+	public void jsonLinesOmitFieldsWhichDoNotApply() {
+		String json = JsonLinesProgressListener.toJson(
+				ProgressEvent.error("S", "T", "say \"hi\"\n"));
+		assertThat(json.startsWith("{\"type\":\"ERROR\",\"timestamp\":"),
+				equalTo(true));
+		assertThat(json.endsWith(",\"schema\":\"S\",\"table\":\"T\","
+				+ "\"elapsedMillis\":0,\"succeeded\":false,"
+				+ "\"message\":\"say \\\"hi\\\"\\n\"}"), equalTo(true));
+	}
+}
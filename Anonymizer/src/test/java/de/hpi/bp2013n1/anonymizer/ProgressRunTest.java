@@ -0,0 +1,72 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ProgressRunTest extends AbstractRunTest {
+
+	@Test
+	public void runReportsTablesAndStrategies() throws Exception {
+		final List<ProgressEvent> events = Collections.synchronizedList(
+				new ArrayList<ProgressEvent>());
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.addProgressListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				events.add(event);
+			}
+		});
+		anonymizer.run();
+
+		assertThat(events.get(0).type, equalTo(ProgressEvent.Type.RUN_STARTED));
+		ProgressEvent last = events.get(events.size() - 1);
+		assertThat(last.type, equalTo(ProgressEvent.Type.RUN_FINISHED));
+		assertThat(last.succeeded, equalTo(true));
+		Set<String> startedTables = new HashSet<>();
+		Set<String> finishedTables = new HashSet<>();
+		Set<String> strategies = new HashSet<>();
+		long finishedRows = 0;
+		for (ProgressEvent event : events) {
+			if (event.type == ProgressEvent.Type.TABLE_STARTED)
+				startedTables.add(event.table);
+			if (event.type == ProgressEvent.Type.TABLE_FINISHED) {
+				finishedTables.add(event.table);
+				finishedRows += event.rows;
+			}
+			if (event.type == ProgressEvent.Type.STRATEGY_SET_UP)
+				strategies.add(event.strategy);
+		}
+		assertThat(finishedTables, equalTo(startedTables));
+		assertThat(finishedTables, hasItem("VISITOR"));
+		assertThat(last.rows, equalTo(finishedRows));
+		assertThat(strategies, hasItem("PseudonymizeStrategy"));
+	}
+
+	@Test
+	public void deliveryThreadStopsAfterTheRun() throws Exception {
+		final List<Thread> deliveryThreads = Collections.synchronizedList(
+				new ArrayList<Thread>());
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.addProgressListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				if (deliveryThreads.isEmpty())
+					deliveryThreads.add(Thread.currentThread());
+			}
+		});
+		anonymizer.run();
+
+		Thread deliveryThread = deliveryThreads.get(0);
+		deliveryThread.join(5000);
+		assertThat(deliveryThread.isAlive(), equalTo(false));
+	}
+}
@@ -0,0 +1,54 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.values;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+
+public class PseudonymCacheRunTest extends AbstractRunTest {
+
+	@Test
+	public void pseudonymsAreLookedUpInBatches() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setPipelineQueueCapacity(16);
+		// smaller than the number of visitors
+		anonymizer.getOptions().setPseudonymCacheSize(2);
+		anonymizer.run();
+
+		Set<String> pseudonyms = values(testData.transformationDbConnection,
+				"SELECT NEWVALUE FROM ORIGINAL.VISITOR_SURNAME");
+		Set<String> surnames = values(testData.destinationDbConnection,
+				"SELECT SURNAME FROM ORIGINAL.VISITOR");
+		assertThat(surnames.size(), greaterThan(0));
+		assertThat(pseudonyms.containsAll(surnames), equalTo(true));
+		Set<String> visitorSurnames = values(testData.destinationDbConnection,
+				"SELECT VISITORSURNAME FROM ORIGINAL.VISIT");
+		assertThat(visitorSurnames.size(), greaterThan(0));
+		assertThat(pseudonyms.containsAll(visitorSurnames), equalTo(true));
+	}
+
+	@Test
+	public void pseudonymsAreLookedUpInBatchesWithoutPipeline()
+			throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		// large enough to keep the pseudonyms of all prefetched rows
+		anonymizer.getOptions().setPseudonymCacheSize(1000);
+		anonymizer.run();
+
+		PseudonymizeStrategy pseudonymizer = null;
+		for (Rule rule : testData.getConfig().rules) {
+			if (rule.getTransformation() instanceof PseudonymizeStrategy)
+				pseudonymizer = (PseudonymizeStrategy) rule.getTransformation();
+		}
+		assertThat(pseudonymizer, notNullValue());
+		assertThat(pseudonymizer.getBatchedLookups(), greaterThan(0L));
+		assertThat(pseudonymizer.getSingleLookups(), equalTo(0L));
+	}
+}
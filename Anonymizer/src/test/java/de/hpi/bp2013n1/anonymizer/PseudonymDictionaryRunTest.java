@@ -0,0 +1,39 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.values;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PseudonymDictionaryRunTest extends AbstractRunTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void pseudonymsAreLookedUpInDictionaries() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setPseudonymDictionaryDirectory(folder.getRoot());
+		anonymizer.run();
+
+		assertThat(new File(folder.getRoot(),
+				"ORIGINAL.VISITOR_SURNAME.pseudonyms").isFile(), equalTo(true));
+		Set<String> pseudonyms = values(testData.transformationDbConnection,
+				"SELECT NEWVALUE FROM ORIGINAL.VISITOR_SURNAME");
+		Set<String> surnames = values(testData.destinationDbConnection,
+				"SELECT SURNAME FROM ORIGINAL.VISITOR");
+		assertThat(surnames.size(), greaterThan(0));
+		assertThat(pseudonyms.containsAll(surnames), equalTo(true));
+		Set<String> visitorSurnames = values(testData.destinationDbConnection,
+				"SELECT VISITORSURNAME FROM ORIGINAL.VISIT");
+		assertThat(visitorSurnames.size(), greaterThan(0));
+		assertThat(pseudonyms.containsAll(visitorSurnames), equalTo(true));
+	}
+}
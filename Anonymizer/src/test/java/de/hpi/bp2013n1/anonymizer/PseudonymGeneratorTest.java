@@ -24,14 +24,20 @@ package de.hpi.bp2013n1.anonymizer;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
+import java.sql.Types;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import de.hpi.bp2013n1.anonymizer.PseudonymizeStrategy.PseudonymGenerator;
+import de.hpi.bp2013n1.anonymizer.db.ColumnDatatypeDescription;
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
 
 public class PseudonymGeneratorTest {
 
@@ -75,4 +81,52 @@ public class PseudonymGeneratorTest {
 			assertThat(intStr.length(), is(2));
 	}
 
+	@Test
+	public void sequenceCoversAllPseudonymsExceptUsedOnes() throws Exception {
+		Rule rule = new Rule(new TableField("T.C", "S"), "P", "x");
+		Set<String> used = new HashSet<>();
+		used.add(sut.createPseudonym(3, 2, "x"));
+		Iterator<String> pseudonyms = sut.createPseudonymSequence(rule,
+				new ColumnDatatypeDescription(Types.VARCHAR, 10), 100, used);
+		Set<String> drawn = new HashSet<>();
+		while (pseudonyms.hasNext()) {
+			String pseudonym = pseudonyms.next();
+			assertThat(pseudonym.length(), is(3));
+			assertThat(pseudonym, startsWith("x"));
+			assertThat(drawn.add(pseudonym), is(true));
+		}
+		int count = PseudonymizeStrategy.NUMBER_OF_AVAILABLE_CHARS
+				* PseudonymizeStrategy.NUMBER_OF_AVAILABLE_CHARS;
+		assertThat(drawn, hasSize(count - 1));
+		assertThat(drawn, not(hasItem(sut.createPseudonym(3, 2, "x"))));
+	}
+
+	@Test
+	public void integerSequenceYieldsCanonicalIntegers() throws Exception {
+		Rule rule = new Rule(new TableField("T.C", "S"), "P", "");
+		Set<String> used = new HashSet<>();
+		used.add("7");
+		Iterator<String> pseudonyms = sut.createPseudonymSequence(rule,
+				new ColumnDatatypeDescription(Types.INTEGER, 10), 50, used);
+		Set<Long> drawn = new HashSet<>();
+		while (pseudonyms.hasNext()) {
+			String pseudonym = pseudonyms.next();
+			assertThat(pseudonym, equalTo(
+					PseudonymGenerator.canonicalInteger(pseudonym)));
+			drawn.add(Long.parseLong(pseudonym));
+		}
+		assertThat(drawn, hasSize(99));
+		assertThat(drawn, not(hasItem(7L)));
+	}
+
+	@Test
+	public void requiredLengthSupportsLongCounts() {
+		assertThat(PseudonymGenerator.requiredLength(1, 62), is(0));
+		assertThat(PseudonymGenerator.requiredLength(62, 62), is(1));
+		assertThat(PseudonymGenerator.requiredLength(63, 62), is(2));
+		assertThat(PseudonymGenerator.requiredLength(
+				Integer.MAX_VALUE * 4L, 10), is(10));
+		assertThat(PseudonymGenerator.requiredLength(Long.MAX_VALUE, 62),
+				is(10));
+	}
 }
@@ -3,6 +3,7 @@ package de.hpi.bp2013n1.anonymizer;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
 import java.sql.Connection;
@@ -129,8 +130,52 @@ public class PseudonymizeStrategyDBTest {
 		
 		ResultSetRowReader rowReaderMock = mock(ResultSetRowReader.class);
 		assertThat(sut.transform(new Integer(1), idRule, rowReaderMock),
-				contains("2"));
+				contains((Object) 2));
 		assertThat(sut.transform(new Integer(2), idRule, rowReaderMock),
-				contains("3"));
+				contains((Object) 3));
+	}
+
+	@Test
+	public void testCachedIntegerTransform() throws SQLException, TransformationKeyCreationException, TransformationKeyNotFoundException, TransformationTableCreationException {
+		Rule idRule = new Rule(idAttribute, "", "");
+		PseudonymsTableProxy pseudonymsTable = sut.getPseudonymsTableFor(idRule);
+		Map<Integer, Integer> mapping = Maps.newTreeMap();
+		mapping.put(1, 0);
+		mapping.put(2, 3);
+		pseudonymsTable.create();
+		pseudonymsTable.insertNewPseudonyms(mapping);
+		sut.fetchTranslations(Lists.newArrayList(idRule));
+		assertThat(sut.cachedIntegerTransformations.get(idRule).size(), is(2L));
+
+		assertThat(sut.transform(Integer.valueOf(1), idRule, null),
+				contains((Object) 0));
+		assertThat(sut.transform(Integer.valueOf(2), idRule, null),
+				contains((Object) 3));
+		assertThat(sut.transform(Long.valueOf(2), idRule, null),
+				contains((Object) 3L));
+	}
+
+	@Test
+	public void testBatchedLookups() throws SQLException, TransformationKeyNotFoundException, TransformationKeyCreationException, TransformationTableCreationException {
+		Rule nameRule = new Rule(nameAttribute, "", "");
+		PseudonymsTableProxy pseudonymsTable = sut.getPseudonymsTableFor(nameRule);
+		Map<String, String> mapping = Maps.newTreeMap();
+		mapping.put("pete", "a");
+		mapping.put("ralph", "b");
+		pseudonymsTable.create();
+		pseudonymsTable.insertNewPseudonyms(mapping);
+
+		sut.prefetch(nameRule, Lists.newArrayList("pete", "ralph  ", "john", null));
+		assertThat(sut.getBatchedLookups(), is(1L));
+		assertThat(sut.transform("pete", nameRule, null), is("a"));
+		assertThat(sut.transform("ralph", nameRule, null), is("b"));
+		try {
+			sut.transform("john", nameRule, null);
+			fail("john has no pseudonym");
+		} catch (TransformationKeyNotFoundException e) {
+			// expected
+		}
+		assertThat(sut.getSingleLookups(), is(0L));
+		assertThat(sut.getLookupCacheStats().hitCount(), is(3L));
 	}
 }
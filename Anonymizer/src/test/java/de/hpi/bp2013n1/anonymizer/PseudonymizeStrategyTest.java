@@ -1,6 +1,7 @@
 package de.hpi.bp2013n1.anonymizer;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
@@ -18,6 +19,7 @@ import org.mockito.Mockito;
 
 import de.hpi.bp2013n1.anonymizer.PseudonymizeStrategy.PseudonymsTableProxy;
 import de.hpi.bp2013n1.anonymizer.TransformationStrategy.RuleValidationException;
+import de.hpi.bp2013n1.anonymizer.db.TableField;
 import de.hpi.bp2013n1.anonymizer.shared.Rule;
 import de.hpi.bp2013n1.anonymizer.shared.TransformationKeyNotFoundException;
 
@@ -54,10 +56,22 @@ public class PseudonymizeStrategyTest {
 		ResultSetRowReader rowReaderMock = mock(ResultSetRowReader.class);
 		assertThat(sut.transform((Object) "foo",
 				mock(Rule.class), rowReaderMock),
-				contains("bar"));
+				contains((Object) "bar"));
 		when(tableStub.fetchOneString("1")).thenReturn("2");
 		assertThat(sut.transform(new Integer(1), mock(Rule.class), rowReaderMock),
-				contains("2"));
+				contains((Object) 2));
+	}
+
+	@Test
+	public void keyedPseudonymsOfIntegersHaveTheTypeOfTheValue()
+			throws SQLException, TransformationKeyNotFoundException {
+		doReturn(new KeyedPseudonymizer("secret".getBytes()))
+				.when(sut).keyedPseudonymizer();
+		Rule rule = new Rule(new TableField("T", "C", "S"), "", "");
+		assertThat(sut.transform(Short.valueOf((short) 5), rule, null).get(0),
+				instanceOf(Short.class));
+		assertThat(sut.transform(Long.valueOf(5), rule, null).get(0),
+				instanceOf(Long.class));
 	}
 
 }
@@ -0,0 +1,102 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+
+public class PushdownPlannerTest {
+
+	private static final List<String> COLUMNS = Arrays.asList("ID", "NAME", "CITY");
+	private static final List<Integer> TYPES = Arrays.asList(Types.INTEGER,
+			Types.VARCHAR, Types.VARCHAR);
+
+	private Connection connection;
+	private PushdownPlanner planner = new PushdownPlanner("SRC", "PSEUDO");
+
+	@Before
+	public void createTables() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:pushdown");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE SCHEMA SRC");
+			statement.execute("CREATE SCHEMA PSEUDO");
+			statement.execute("CREATE SCHEMA DEST");
+			statement.execute("CREATE TABLE SRC.PERSON "
+					+ "(ID INT, NAME VARCHAR(20), CITY VARCHAR(20))");
+			statement.execute("INSERT INTO SRC.PERSON VALUES "
+					+ "(1, 'Alice  ', 'Berlin'), (2, '', 'Potsdam'), "
+					+ "(3, NULL, 'Berlin')");
+			statement.execute("CREATE TABLE PSEUDO.PERSON_NAME "
+					+ "(OLDVALUE VARCHAR(20), NEWVALUE VARCHAR(20))");
+			statement.execute("INSERT INTO PSEUDO.PERSON_NAME VALUES ('Alice', 'Xyz')");
+			statement.execute("CREATE TABLE DEST.PERSON "
+					+ "(ID INT, NAME VARCHAR(20), CITY VARCHAR(20))");
+		}
+	}
+
+	@After
+	public void closeConnection() throws SQLException {
+		connection.close();
+	}
+
+	private static Rule rule(String column, TransformationStrategy strategy,
+			String additionalInfo) {
+		Rule rule = new Rule(new TableField("PERSON", column, "SRC"), "X",
+				additionalInfo);
+		rule.setTransformation(strategy);
+		return rule;
+	}
+
+	private List<String> destinationRows() throws SQLException {
+		List<String> rows = new ArrayList<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(
+						"SELECT * FROM DEST.PERSON ORDER BY ID")) {
+			while (result.next())
+				rows.add(result.getInt(1) + "|" + result.getString(2) + "|"
+						+ result.getString(3));
+		}
+		return rows;
+	}
+
+	@Test
+	public void defaultsAndPseudonymsAreAppliedBySql() throws SQLException {
+		TableRuleMap ruleMap = new TableRuleMap("PERSON");
+		ruleMap.put("NAME", rule("NAME", new PseudonymizeStrategy(null, null, null), ""));
+		ruleMap.put("CITY", rule("CITY", new SetDefaultStrategy(null, null, null), "O'Town"));
+
+		String insertSelect = planner.insertSelectStatement(ruleMap,
+				"DEST.PERSON", COLUMNS, TYPES);
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(insertSelect);
+		}
+
+		assertThat(destinationRows(), contains("1|Xyz|O'Town", "2||O'Town",
+				"3|null|O'Town"));
+	}
+
+	@Test
+	public void otherRulesAreNotPushedDown() throws SQLException {
+		TableRuleMap ruleMap = new TableRuleMap("PERSON");
+		ruleMap.put("NAME", rule("NAME", new NoOperationStrategy(null, null, null), ""));
+		assertThat(planner.insertSelectStatement(ruleMap, "DEST.PERSON",
+				COLUMNS, TYPES), nullValue());
+	}
+}
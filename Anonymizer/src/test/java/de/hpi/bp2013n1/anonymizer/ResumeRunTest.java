@@ -0,0 +1,98 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.execute;
+import static de.hpi.bp2013n1.anonymizer.TestDataFixture.queryString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ResumeRunTest extends AbstractRunTest {
+
+	private static final String JOURNAL = "ORIGINAL."
+			+ ProgressJournal.JOURNAL_TABLE;
+
+	private void resume() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setResume(true);
+		anonymizer.run();
+	}
+
+	@Test
+	public void journalRecordsFinishedTables() throws Exception {
+		testData.createAnonymizer().run();
+		Map<String, ProgressJournal.TableCheckpoint> checkpoints =
+				new ProgressJournal(testData.getTransformationDbConnection(),
+						"ORIGINAL").load();
+		for (String table : testData.getScope().tables)
+			assertThat(table, checkpoints.get(table).isFinished(), equalTo(true));
+		assertThat(checkpoints.get("CINEMACASHLOGSUPPLEMENTAL").lanes.get(0).lastKey,
+				equalTo("4"));
+	}
+
+	@Test
+	public void finishedTablesAreSkippedWhenResuming() throws Exception {
+		testData.createAnonymizer().run();
+		Connection destination = testData.getDestinationDbConnection();
+		execute(destination, "DELETE FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL");
+		resume();
+		assertThat(queryString(destination,
+				"SELECT COUNT(*) FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL"),
+				equalTo("0"));
+	}
+
+	@Test
+	public void finishedTablesAreNotDistributedWhenResuming()
+			throws Exception {
+		testData.createAnonymizer().run();
+		Connection destination = testData.getDestinationDbConnection();
+		execute(destination, "DELETE FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL");
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setResume(true);
+		anonymizer.getOptions().setCoordinator(true);
+		anonymizer.run();
+		assertThat(queryString(destination,
+				"SELECT COUNT(*) FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL"),
+				equalTo("0"));
+	}
+
+	@Test
+	public void unfinishedTableIsContinuedAfterLastCommittedKey()
+			throws Exception {
+		testData.createAnonymizer().run();
+		execute(testData.getTransformationDbConnection(), "UPDATE " + JOURNAL
+				+ " SET FINISHED = 0, LAST_KEY = '2' "
+				+ "WHERE TABLE_NAME = 'CINEMACASHLOGSUPPLEMENTAL'");
+		Connection destination = testData.getDestinationDbConnection();
+		// rows after the checkpoint may or may not have been committed
+		execute(destination, "DELETE FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL "
+				+ "WHERE ID = 4");
+		// marks a row before the checkpoint which must not be copied again
+		execute(destination, "UPDATE ORIGINAL.CINEMACASHLOGSUPPLEMENTAL "
+				+ "SET CATEGORY = 'X' WHERE ID = 1");
+		resume();
+		assertThat(queryString(destination,
+				"SELECT COUNT(*) FROM ORIGINAL.CINEMACASHLOGSUPPLEMENTAL"),
+				equalTo("4"));
+		assertThat(queryString(destination, "SELECT CATEGORY FROM "
+				+ "ORIGINAL.CINEMACASHLOGSUPPLEMENTAL WHERE ID = 1"),
+				equalTo("X"));
+		assertThat(queryString(testData.getTransformationDbConnection(),
+				"SELECT FINISHED FROM " + JOURNAL
+				+ " WHERE TABLE_NAME = 'CINEMACASHLOGSUPPLEMENTAL'"),
+				equalTo("1"));
+	}
+
+	@Test
+	public void resumingAnInterruptedRunYieldsSameResult() throws Exception {
+		testData.createAnonymizer().run();
+		execute(testData.getTransformationDbConnection(), "UPDATE " + JOURNAL
+				+ " SET FINISHED = 0, LAST_KEY = NULL");
+		resume();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+}
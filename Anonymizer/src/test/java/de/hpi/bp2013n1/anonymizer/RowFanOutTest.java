@@ -0,0 +1,86 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RowFanOutTest {
+
+	private static class CollectingSink implements RowSink {
+		List<List<Object>> rows = new ArrayList<>();
+
+		@Override
+		public void addRow(Object[] row) {
+			rows.add(Arrays.asList(row.clone()));
+		}
+
+		@Override
+		public void sourceRowCompleted(Object sourceKey) {
+		}
+	}
+
+	private static List<List<Object>> rows(Object[]... rows) {
+		List<List<Object>> list = new ArrayList<>();
+		for (Object[] row : rows)
+			list.add(Arrays.asList(row));
+		return list;
+	}
+
+	private RowFanOut.Statistics statistics = new RowFanOut.Statistics();
+	private CollectingSink sink = new CollectingSink();
+
+	@Test
+	public void singleValuesAreEmittedAsOneRow() throws SQLException {
+		RowFanOut fanOut = new RowFanOut(2, 0, statistics);
+		fanOut.beginRow();
+		fanOut.set(0, 1);
+		fanOut.setAll(1, Arrays.asList("a"));
+		assertThat(fanOut.emit(sink), equalTo(1));
+		assertThat(sink.rows, equalTo(rows(new Object[] { 1, "a" })));
+		assertThat(statistics.getExpandedSourceRows(), equalTo(0L));
+		assertThat(statistics.getEmittedRows(), equalTo(1L));
+	}
+
+	@Test
+	public void crossProductIsStreamed() throws SQLException {
+		RowFanOut fanOut = new RowFanOut(3, 0, statistics);
+		fanOut.beginRow();
+		fanOut.setAll(0, Arrays.asList(1, 2));
+		fanOut.set(1, "x");
+		fanOut.setAll(2, Arrays.asList("a", "b"));
+		assertThat(fanOut.emit(sink), equalTo(4));
+		assertThat(sink.rows, equalTo(rows(
+				new Object[] { 1, "x", "a" },
+				new Object[] { 1, "x", "b" },
+				new Object[] { 2, "x", "a" },
+				new Object[] { 2, "x", "b" })));
+		assertThat(statistics.getExpandedSourceRows(), equalTo(1L));
+		assertThat(statistics.getLargestExpansion(), equalTo(4L));
+
+		// the next source row is not expanded
+		fanOut.beginRow();
+		fanOut.set(0, 3);
+		fanOut.set(1, "y");
+		fanOut.set(2, "c");
+		assertThat(fanOut.emit(sink), equalTo(1));
+		assertThat(statistics.getSourceRows(), equalTo(2L));
+		assertThat(statistics.getEmittedRows(), equalTo(5L));
+	}
+
+	@Test
+	public void expansionIsCutOffAtLimit() throws SQLException {
+		RowFanOut fanOut = new RowFanOut(2, 3, statistics);
+		fanOut.beginRow();
+		fanOut.setAll(0, Arrays.asList(1, 2));
+		fanOut.setAll(1, Arrays.asList("a", "b"));
+		assertThat(fanOut.emit(sink), equalTo(3));
+		assertThat(sink.rows.size(), equalTo(3));
+		assertThat(statistics.getTruncatedSourceRows(), equalTo(1L));
+	}
+}
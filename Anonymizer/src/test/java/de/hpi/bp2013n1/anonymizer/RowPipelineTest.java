@@ -0,0 +1,210 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class RowPipelineTest {
+
+	private static final int ROWS = 500;
+
+	private Connection source;
+	private Connection destination;
+
+	@Before
+	public void setUp() throws SQLException {
+		source = DriverManager.getConnection("jdbc:h2:mem:");
+		destination = DriverManager.getConnection("jdbc:h2:mem:");
+		destination.setAutoCommit(false);
+		try (Statement ddl = source.createStatement()) {
+			ddl.executeUpdate("CREATE TABLE T (ID INT PRIMARY KEY, NAME VARCHAR(10))");
+		}
+		try (Statement ddl = destination.createStatement()) {
+			ddl.executeUpdate("CREATE TABLE T (ID INT PRIMARY KEY, NAME VARCHAR(10))");
+		}
+		try (PreparedStatement insert = source.prepareStatement(
+				"INSERT INTO T VALUES (?, ?)")) {
+			for (int i = 1; i <= ROWS; i++) {
+				insert.setInt(1, i);
+				insert.setString(2, "n" + i);
+				insert.executeUpdate();
+			}
+		}
+	}
+
+	@After
+	public void closeConnections() throws SQLException {
+		source.close();
+		destination.close();
+	}
+
+	private InsertBatchWriter createWriter() throws SQLException {
+		return new InsertBatchWriter(destination, "T",
+				Lists.newArrayList("ID", "NAME"), 64);
+	}
+
+	@Test
+	public void copiesAllRowsThroughAllStages() throws SQLException {
+		RowPipeline pipeline = new RowPipeline("T", 8);
+		try (Statement select = source.createStatement();
+				ResultSet rows = select.executeQuery("SELECT * FROM T");
+				InsertBatchWriter writer = createWriter()) {
+			pipeline.run(rows, "PUBLIC", "T", new RowPipeline.RowTransformer() {
+				@Override
+				public void transformRow(ResultSetRowReader row, RowSink sink)
+						throws SQLException {
+					sink.addRow(new Object[] { row.getInt("id"),
+							row.getString(2).toUpperCase() });
+				}
+			}, writer);
+		}
+		try (Statement select = destination.createStatement();
+				ResultSet result = select.executeQuery(
+						"SELECT COUNT(*), MAX(NAME) FROM T WHERE NAME LIKE 'N%'")) {
+			result.next();
+			assertThat(result.getInt(1), equalTo(ROWS));
+			assertThat(result.getString(2), equalTo("N99"));
+		}
+		assertThat(pipeline.getPeakFetchQueueDepth(), greaterThan(0));
+		assertThat(pipeline.getPeakFetchQueueDepth(), lessThanOrEqualTo(8));
+		assertThat(pipeline.getPeakWriteQueueDepth(), lessThanOrEqualTo(8));
+		assertThat(pipeline.getFetchQueueDepth(), equalTo(0));
+	}
+
+	@Test
+	public void transformFailureStopsPipeline() throws SQLException {
+		RowPipeline pipeline = new RowPipeline("T", 4);
+		try (Statement select = source.createStatement();
+				ResultSet rows = select.executeQuery("SELECT * FROM T");
+				InsertBatchWriter writer = createWriter()) {
+			pipeline.run(rows, "PUBLIC", "T", new RowPipeline.RowTransformer() {
+				@Override
+				public void transformRow(ResultSetRowReader row, RowSink sink)
+						throws SQLException {
+					if (row.getInt(1) == 100)
+						throw new SQLException("broken row");
+					sink.addRow(new Object[] { row.getObject(1), row.getObject(2) });
+				}
+			}, writer);
+			fail("the failure of the transform stage was swallowed");
+		} catch (SQLException e) {
+			assertThat(e.getMessage(), equalTo("broken row"));
+		}
+	}
+
+	@Test
+	public void cancelledPipelineStopsWithoutFlushing() throws SQLException {
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		RowPipeline pipeline = new RowPipeline("T", 8);
+		pipeline.cancelWhen(cancelled);
+		try (Statement select = source.createStatement();
+				ResultSet rows = select.executeQuery("SELECT * FROM T");
+				InsertBatchWriter writer = createWriter()) {
+			pipeline.run(rows, "PUBLIC", "T", new RowPipeline.RowTransformer() {
+				@Override
+				public void transformRow(ResultSetRowReader row, RowSink sink)
+						throws SQLException {
+					if (row.getInt(1) == 100)
+						cancelled.set(true);
+					sink.addRow(new Object[] { row.getObject(1), row.getObject(2) });
+				}
+			}, writer);
+		}
+		destination.rollback();
+		try (Statement select = destination.createStatement();
+				ResultSet result = select.executeQuery("SELECT COUNT(*) FROM T")) {
+			result.next();
+			assertThat(result.getInt(1), lessThan(ROWS));
+		}
+	}
+
+	@Test
+	public void rowSnapshotConvertsValues() throws SQLException {
+		assertThat(RowSnapshot.convert(42, long.class), equalTo((Object) 42L));
+		assertThat(RowSnapshot.convert(42L, String.class), equalTo((Object) "42"));
+		assertThat(RowSnapshot.convert(null, int.class), equalTo((Object) 0));
+		assertThat(RowSnapshot.convert(1, boolean.class), equalTo((Object) true));
+	}
+
+	@Test
+	public void preparesEachRowBeforeItIsTransformed() throws SQLException {
+		final Set<Integer> preparedIds = new HashSet<>();
+		final List<Integer> batchSizes = new ArrayList<>();
+		RowPipeline pipeline = new RowPipeline("T", 64);
+		pipeline.setRowPreparer(new RowPipeline.RowPreparer() {
+			@Override
+			public void prepareRows(List<ResultSetRowReader> rows)
+					throws SQLException {
+				batchSizes.add(rows.size());
+				for (ResultSetRowReader row : rows)
+					preparedIds.add(row.getInt("id"));
+			}
+		});
+		try (Statement select = source.createStatement();
+				ResultSet rows = select.executeQuery("SELECT * FROM T");
+				InsertBatchWriter writer = createWriter()) {
+			pipeline.run(rows, "PUBLIC", "T", new RowPipeline.RowTransformer() {
+				@Override
+				public void transformRow(ResultSetRowReader row, RowSink sink)
+						throws SQLException {
+					if (!preparedIds.contains(row.getInt("id")))
+						throw new SQLException("row has not been prepared");
+					sink.addRow(new Object[] { row.getObject(1), row.getObject(2) });
+				}
+			}, writer);
+		}
+		assertThat(preparedIds.size(), equalTo(ROWS));
+		for (int batchSize : batchSizes) {
+			assertThat(batchSize, greaterThan(0));
+			assertThat(batchSize, lessThanOrEqualTo(RowPipeline.MAX_PREPARED_ROWS));
+		}
+	}
+
+	@Test
+	public void transformsWithTheConnectionsOfTheCaller() throws SQLException {
+		final Set<Connection> usedConnections = new HashSet<>();
+		RowPipeline pipeline = new RowPipeline("T", 8);
+		StrategyConnections previous =
+				new StrategyConnections(source, destination).bind();
+		try (Statement select = source.createStatement();
+				ResultSet rows = select.executeQuery("SELECT * FROM T");
+				InsertBatchWriter writer = createWriter()) {
+			pipeline.run(rows, "PUBLIC", "T", new RowPipeline.RowTransformer() {
+				@Override
+				public void transformRow(ResultSetRowReader row, RowSink sink)
+						throws SQLException {
+					usedConnections.add(
+							StrategyConnections.transformationDatabase(null));
+					sink.addRow(new Object[] { row.getObject(1), row.getObject(2) });
+				}
+			}, writer);
+		} finally {
+			StrategyConnections.restore(previous);
+		}
+		assertThat(usedConnections, equalTo(Collections.singleton(destination)));
+		assertThat(StrategyConnections.current(), nullValue());
+	}
+}
@@ -0,0 +1,123 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SourceLoadGovernorTest {
+
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private TestDataFixture testData;
+	private File logFile;
+
+	@Before
+	public void createTestData() throws Exception {
+		testData = new StandardTestDataFixture();
+		testData.populateDatabases();
+	}
+
+	@Before
+	public void prepareLogFile() throws IOException {
+		logFile = File.createTempFile("anonymizer-test-governor-output", null);
+		logFile.delete();
+		Anonymizer.setUpLogging(logFile.getPath());
+	}
+
+	@After
+	public void closeDatabaseConnections() throws SQLException {
+		testData.closeConnections();
+	}
+
+	@After
+	public void deleteLogFile() {
+		logFile.delete();
+	}
+
+	@Test
+	public void statementWaitsWhileTooManyAreExecuting() throws Exception {
+		final SourceLoadGovernor governor = new SourceLoadGovernor(1, 0, 0);
+		governor.statementStarting();
+		final CountDownLatch started = new CountDownLatch(1);
+		Thread waiting = new Thread() {
+			@Override
+			public void run() {
+				try {
+					governor.statementStarting();
+					started.countDown();
+				} catch (SQLException e) {
+					// the latch is not counted down
+				}
+			}
+		};
+		waiting.start();
+		assertThat(started.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+		governor.statementFinished(MILLISECOND);
+		assertThat(started.await(5, TimeUnit.SECONDS), equalTo(true));
+	}
+
+	@Test
+	public void rowsAreFetchedAtLimitedRate() throws SQLException {
+		SourceLoadGovernor governor = new SourceLoadGovernor(0, 100, 0);
+		long start = System.nanoTime();
+		int rows = 0;
+		try (Connection connection = governor.govern(
+				DriverManager.getConnection("jdbc:h2:mem:"));
+				Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(
+						"SELECT X FROM SYSTEM_RANGE(1, 50)")) {
+			while (result.next())
+				rows++;
+		}
+		assertThat(rows, equalTo(50));
+		assertThat(System.nanoTime() - start, greaterThan(300 * MILLISECOND));
+	}
+
+	@Test
+	public void limitsAreLoweredWhileStatementsAreSlow() throws SQLException {
+		SourceLoadGovernor governor = new SourceLoadGovernor(4, 1000, 1);
+		governor.setAdjustmentIntervalMillis(0);
+		governor.statementStarting();
+		governor.statementFinished(10 * MILLISECOND);
+		assertThat(governor.getStatementLimit(), equalTo(2));
+		assertThat(governor.getRowsPerSecondLimit(), equalTo(500.0));
+		for (int i = 0; i < 50; i++) {
+			governor.statementStarting();
+			governor.statementFinished(0);
+		}
+		assertThat(governor.getStatementLimit(), equalTo(4));
+		assertThat(governor.getRowsPerSecondLimit(), equalTo(1000.0));
+	}
+
+	@Test
+	public void limitsCanBeChangedDuringTheRun() {
+		SourceLoadGovernor governor = new SourceLoadGovernor(4, 0, 0);
+		governor.setMaxConcurrentStatements(8);
+		governor.setMaxRowsPerSecond(200);
+		assertThat(governor.getStatementLimit(), equalTo(8));
+		assertThat(governor.getRowsPerSecondLimit(), equalTo(200.0));
+	}
+
+	@Test
+	public void governedRunYieldsSameResult() throws Exception {
+		Anonymizer anonymizer = testData.createAnonymizer();
+		anonymizer.getOptions().setLoadGovernor(new SourceLoadGovernor(1, 0, 1000));
+		anonymizer.run();
+		testData.setSchema();
+		testData.assertExpectedEqualsActualDataSet();
+	}
+}
@@ -0,0 +1,106 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillableMapTest {
+
+	private MemoryBudget budget;
+	private SpillableMap<String, Integer> map;
+
+	@Before
+	public void createMap() {
+		budget = new MemoryBudget(1024 * 1024, null);
+		map = new SpillableMap<>(budget);
+	}
+
+	@After
+	public void closeMap() {
+		map.close();
+	}
+
+	@Test
+	public void spilledEntriesCanStillBeLookedUp() throws IOException {
+		map.put("a", 1);
+		map.put("b", 2);
+		assertThat(map.spill() > 0, equalTo(true));
+		assertThat(map.hasSpilled(), equalTo(true));
+		assertThat(map.estimatedBytes(), equalTo(0L));
+		map.put("c", 3);
+		assertThat(map.get("a"), equalTo(1));
+		assertThat(map.get("c"), equalTo(3));
+		assertThat(map.get("d"), nullValue());
+		assertThat(map.containsKey("b"), equalTo(true));
+		assertThat(map.size(), equalTo(3));
+		Map<String, Integer> expected = new HashMap<>();
+		expected.put("a", 1);
+		expected.put("b", 2);
+		expected.put("c", 3);
+		assertThat(new HashMap<>(map), equalTo(expected));
+	}
+
+	@Test
+	public void replacingSpilledEntriesReturnsThePreviousValue()
+			throws IOException {
+		map.put("a", 1);
+		map.spill();
+		assertThat(map.put("a", 2), equalTo(1));
+		assertThat(map.get("a"), equalTo(2));
+		assertThat(map.size(), equalTo(1));
+		assertThat(map.remove("a"), equalTo(2));
+		assertThat(map.containsKey("a"), equalTo(false));
+	}
+
+	@Test
+	public void removingSpilledEntries() throws IOException {
+		map.put("a", 1);
+		map.spill();
+		assertThat(map.remove("a"), equalTo(1));
+		assertThat(map.get("a"), nullValue());
+		assertThat(map.isEmpty(), equalTo(true));
+	}
+
+	@Test
+	public void equalMapKeysAreFoundAfterSpilling() throws IOException {
+		SpillableMap<Map<String, Object>, Boolean> deletedRows =
+				new SpillableMap<>(budget);
+		try {
+			Map<String, Object> key = new TreeMap<>();
+			key.put("ID", 42);
+			key.put("NAME", "x");
+			deletedRows.put(key, true);
+			deletedRows.spill();
+			Map<String, Object> equalKey = new TreeMap<>();
+			equalKey.put("NAME", "x");
+			equalKey.put("ID", 42);
+			assertThat(deletedRows.containsKey(equalKey), equalTo(true));
+		} finally {
+			deletedRows.close();
+		}
+	}
+
+	@Test
+	public void exceedingTheBudgetSpills() {
+		MemoryBudget smallBudget = new MemoryBudget(1, null);
+		smallBudget.setCheckIntervalBytes(1);
+		SpillableMap<String, Integer> governed = new SpillableMap<>(smallBudget);
+		try {
+			governed.put("a", 1);
+			assertThat(governed.hasSpilled(), equalTo(true));
+			assertThat(governed.get("a"), equalTo(1));
+			assertThat(smallBudget.getSpills(), equalTo(1));
+		} finally {
+			governed.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TableDependencyGraphTest {
+
+	private ForeignKeyDeletionsHandler foreignKeys;
+	private List<String> tables;
+
+	@Before
+	public void setUp() {
+		foreignKeys = new ForeignKeyDeletionsHandler();
+		tables = Lists.newArrayList("CHILD", "PARENT", "UNRELATED");
+		addForeignKey("CHILD", "PARENT");
+	}
+
+	private void addForeignKey(String childTable, String parentTable) {
+		ForeignKey fk = new ForeignKey(parentTable, new PrimaryKey("ID"));
+		fk.addForeignKeyColumn("ID", parentTable + "_ID");
+		foreignKeys.dependencies.put(childTable, fk);
+	}
+
+	private List<String> takeAllTablesFinishingEachImmediately(
+			TableDependencyGraph graph) throws InterruptedException {
+		List<String> order = new ArrayList<>();
+		String table;
+		while ((table = graph.takeNextTable()) != null) {
+			order.add(table);
+			graph.tableFinished(table);
+		}
+		return order;
+	}
+
+	@Test
+	public void parentIsHandedOutBeforeChildWithDeletions() throws InterruptedException {
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, Lists.newArrayList("PARENT"));
+		assertThat(graph.getParentTables("CHILD"), contains("PARENT"));
+		assertThat(takeAllTablesFinishingEachImmediately(graph),
+				contains("PARENT", "CHILD", "UNRELATED"));
+	}
+
+	@Test
+	public void childWaitsWhileParentIsRunning() throws InterruptedException {
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, Lists.newArrayList("PARENT"));
+		assertThat(graph.takeNextTable(), is("PARENT"));
+		// CHILD is not ready yet, so the independent table comes first
+		assertThat(graph.takeNextTable(), is("UNRELATED"));
+		graph.tableFinished("UNRELATED");
+		graph.tableFinished("PARENT");
+		assertThat(graph.takeNextTable(), is("CHILD"));
+		graph.tableFinished("CHILD");
+		assertThat(graph.takeNextTable(), is(nullValue()));
+	}
+
+	@Test
+	public void parentsWithoutDeletionsImposeNoOrder() throws InterruptedException {
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, new ArrayList<String>());
+		assertThat(graph.getParentTables("CHILD"), is(empty()));
+		assertThat(takeAllTablesFinishingEachImmediately(graph),
+				contains("CHILD", "PARENT", "UNRELATED"));
+	}
+
+	@Test
+	public void deletionsPropagateTransitively() {
+		addForeignKey("PARENT", "UNRELATED");
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, Lists.newArrayList("UNRELATED"));
+		assertThat(graph.getParentTables("PARENT"), contains("UNRELATED"));
+		assertThat(graph.getParentTables("CHILD"), contains("PARENT"));
+	}
+
+	@Test
+	public void cyclesAreBrokenInScopeOrder() throws InterruptedException {
+		addForeignKey("PARENT", "CHILD");
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, Lists.newArrayList("PARENT", "CHILD"));
+		assertThat(takeAllTablesFinishingEachImmediately(graph),
+				contains("UNRELATED", "CHILD", "PARENT"));
+	}
+
+	@Test
+	public void abortStopsHandingOutTables() throws InterruptedException {
+		TableDependencyGraph graph = TableDependencyGraph.build(tables,
+				foreignKeys, Lists.newArrayList("PARENT"));
+		graph.abort();
+		assertThat(graph.takeNextTable(), is(nullValue()));
+		assertThat(graph.getPendingTables(), contains("CHILD", "PARENT", "UNRELATED"));
+	}
+}
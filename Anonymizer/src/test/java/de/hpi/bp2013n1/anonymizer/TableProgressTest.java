@@ -0,0 +1,53 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TableProgressTest {
+
+	@Test
+	public void estimateIsReplacedByCountedRows() {
+		TableProgress progress = new TableProgress(100, false, 1000);
+		assertThat(progress.isRowCountExact(), equalTo(false));
+		progress.rowCountDetermined(120);
+		assertThat(progress.isRowCountExact(), equalTo(true));
+		assertThat(progress.getRowCount(), equalTo(120));
+	}
+
+	@Test
+	public void remainingTimeIsUnknownWithoutRowCount() {
+		TableProgress progress = new TableProgress(-1, false, 1000);
+		progress.rowProcessed();
+		assertThat(progress.getRemainingSeconds(), equalTo(-1L));
+		progress.rowCountDetermined(2);
+		assertThat(progress.getRemainingSeconds() >= 0, equalTo(true));
+	}
+
+	@Test
+	public void batchesAreReportedEveryLogInterval() throws InterruptedException {
+		ProgressEventDispatcher events = new ProgressEventDispatcher();
+		final List<Long> batchRows = Collections.synchronizedList(
+				new ArrayList<Long>());
+		events.addListener(new ProgressListener() {
+			@Override
+			public void progressed(ProgressEvent event) {
+				if (event.type == ProgressEvent.Type.BATCH)
+					batchRows.add(event.rows);
+			}
+		});
+		TableProgress progress = new TableProgress(5, true, 2);
+		progress.reportTo(events, "S", "T");
+		for (int i = 0; i < 5; i++)
+			progress.rowProcessed();
+		progress.finished(true);
+		events.flush(5000);
+		assertThat(batchRows, contains(2L, 4L));
+	}
+}
@@ -0,0 +1,58 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+
+public class TableTransformationPlanTest {
+
+	private static Rule rule(String column, TransformationStrategy strategy) {
+		Rule rule = new Rule(new TableField("T", column, "S"), "X", "");
+		rule.setTransformation(strategy);
+		return rule;
+	}
+
+	@Test
+	public void rulesAreResolvedByColumnIndex() throws SQLException {
+		TransformationStrategy strategy = new NoOperationStrategy(null, null, null);
+		TableRuleMap ruleMap = new TableRuleMap("T");
+		Rule first = rule("B", strategy);
+		Rule second = rule("B", strategy);
+		Rule rowRule = rule(null, strategy);
+		ruleMap.put("B", first);
+		ruleMap.put("B", second);
+		ruleMap.put(null, rowRule);
+
+		TableTransformationPlan plan = TableTransformationPlan.compile(ruleMap,
+				Arrays.asList("A", "B", "C"));
+
+		assertThat(plan.columnCount, equalTo(3));
+		assertThat(plan.columnNames, arrayContaining("A", "B", "C"));
+		assertThat(plan.passThrough[0], equalTo(true));
+		assertThat(plan.passThrough[1], equalTo(false));
+		assertThat(plan.passThrough[2], equalTo(true));
+		assertThat(plan.columnSteps[1].length, equalTo(2));
+		assertThat(plan.columnSteps[1][0].rule, sameInstance(first));
+		assertThat(plan.columnSteps[1][1].rule, sameInstance(second));
+		assertThat(plan.columnSteps[1][0].strategy, sameInstance(strategy));
+		assertThat(plan.rowSteps[0].rule, sameInstance(rowRule));
+		assertThat(plan.isPassThrough(), equalTo(false));
+	}
+
+	@Test
+	public void tableWithoutRulesPassesThrough() {
+		TableTransformationPlan plan = TableTransformationPlan.compile(
+				new TableRuleMap("T"), Arrays.asList("A", "B"));
+		assertThat(plan.isPassThrough(), equalTo(true));
+	}
+}
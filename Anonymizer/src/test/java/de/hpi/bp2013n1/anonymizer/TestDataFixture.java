@@ -21,13 +21,17 @@ package de.hpi.bp2013n1.anonymizer;
  */
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.dbunit.DatabaseUnitException;
@@ -76,6 +80,54 @@ public abstract class TestDataFixture implements AutoCloseable {
 		return config;
 	}
 
+	/**
+	 * Directs the log of the anonymizer to a new temporary file.
+	 * 
+	 * @return the log file, which is to be deleted after the test
+	 */
+	public static File logToTemporaryFile(String name) throws IOException {
+		File logFile = File.createTempFile("anonymizer-test-" + name
+				+ "-output", null);
+		logFile.delete();
+		Anonymizer.setUpLogging(logFile.getPath());
+		return logFile;
+	}
+
+	public static void execute(Connection connection, String sql)
+			throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+		if (!connection.getAutoCommit())
+			connection.commit();
+	}
+
+	/**
+	 * @return the first column of the first row of the query result
+	 */
+	public static String queryString(Connection connection, String sql)
+			throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(sql)) {
+			result.next();
+			return result.getString(1);
+		}
+	}
+
+	/**
+	 * @return the trimmed values in the first column of the query result
+	 */
+	public static Set<String> values(Connection connection, String sql)
+			throws SQLException {
+		Set<String> values = new HashSet<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(sql)) {
+			while (result.next())
+				values.add(result.getString(1).trim());
+		}
+		return values;
+	}
+
 	protected Connection originalDbConnection;
 	protected Connection transformationDbConnection;
 	protected Connection destinationDbConnection;
@@ -0,0 +1,111 @@
+package de.hpi.bp2013n1.anonymizer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class WorkQueueTest {
+
+	private static final long LEASE = 60000;
+
+	private File directory;
+	/** the connections of two worker processes */
+	private Connection firstWorker, secondWorker;
+	private WorkQueue firstQueue, secondQueue;
+
+	@Before
+	public void createQueue() throws IOException, SQLException {
+		directory = Files.createTempDirectory("anonymizer-test-queue").toFile();
+		String url = "jdbc:h2:file:" + new File(directory, "transformation")
+				.getPath();
+		firstWorker = DriverManager.getConnection(url);
+		secondWorker = DriverManager.getConnection(url);
+		firstQueue = new WorkQueue(firstWorker, "PUBLIC");
+		secondQueue = new WorkQueue(secondWorker, "PUBLIC");
+		firstQueue.createIfNotExists();
+		Map<String, List<PrimaryKeyRange>> units = new LinkedHashMap<>();
+		units.put("A", ImmutableList.of(
+				new PrimaryKeyRange("ID", null, 10),
+				new PrimaryKeyRange("ID", 10, null)));
+		units.put("B", ImmutableList.of(PrimaryKeyRange.ALL));
+		firstQueue.fill(units);
+	}
+
+	@After
+	public void deleteQueue() throws SQLException {
+		firstWorker.close();
+		secondWorker.close();
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void workersClaimDifferentUnits() throws SQLException {
+		WorkQueue.WorkUnit first = firstQueue.claim("first", LEASE);
+		WorkQueue.WorkUnit second = secondQueue.claim("second", LEASE);
+		WorkQueue.WorkUnit third = secondQueue.claim("second", LEASE);
+		assertThat(first.id, not(equalTo(second.id)));
+		assertThat(third.table, equalTo("B"));
+		assertThat(third.range(), equalTo(PrimaryKeyRange.ALL));
+		assertThat(firstQueue.claim("first", LEASE), nullValue());
+		assertThat(second.rangeStart, equalTo("10"));
+	}
+
+	@Test
+	public void expiredLeaseIsClaimedByAnotherWorker() throws Exception {
+		WorkQueue.WorkUnit abandoned = null;
+		for (int i = 0; i < 3; i++)
+			abandoned = firstQueue.claim("first", i < 2 ? LEASE : 0);
+		Thread.sleep(5);
+		WorkQueue.WorkUnit taken = secondQueue.claim("second", LEASE);
+		assertThat(taken, notNullValue());
+		assertThat(taken.id, equalTo(abandoned.id));
+		assertThat(taken.attempts, equalTo(2));
+		assertThat(firstQueue.renewLease(abandoned, "first", LEASE),
+				equalTo(false));
+		assertThat(firstQueue.finished(abandoned, "first"), equalTo(false));
+		assertThat(secondQueue.finished(taken, "second"), equalTo(true));
+	}
+
+	@Test
+	public void queueIsFinishedWhenAllUnitsAreDone() throws SQLException {
+		WorkQueue.WorkUnit unit;
+		while ((unit = firstQueue.claim("first", LEASE)) != null) {
+			assertThat(secondQueue.countUnfinished(), not(equalTo(0)));
+			firstQueue.finished(unit, "first");
+		}
+		assertThat(secondQueue.countUnfinished(), equalTo(0));
+		assertThat(secondQueue.countUnits(), equalTo(3));
+	}
+
+	@Test
+	public void unitFailingTooOftenIsGivenUp() throws SQLException {
+		for (int attempt = 1; attempt <= WorkQueue.MAX_ATTEMPTS; attempt++) {
+			WorkQueue.WorkUnit unit = firstQueue.claim("first", LEASE);
+			assertThat(unit.id, equalTo(1));
+			assertThat(unit.attempts, equalTo(attempt));
+			firstQueue.failed(unit, "first");
+		}
+		assertThat(firstQueue.count(WorkQueue.FAILED), equalTo(1));
+		assertThat(firstQueue.claim("first", LEASE).id, equalTo(2));
+	}
+}
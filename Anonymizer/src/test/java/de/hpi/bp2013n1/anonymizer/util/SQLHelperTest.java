@@ -0,0 +1,45 @@
+package de.hpi.bp2013n1.anonymizer.util;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SQLHelperTest {
+
+	private Connection connection;
+
+	@Before
+	public void createTable() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:");
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("CREATE SCHEMA S");
+			statement.executeUpdate("CREATE TABLE S.T (ID INT PRIMARY KEY)");
+			statement.executeUpdate("INSERT INTO S.T VALUES (1), (2), (3)");
+		}
+	}
+
+	@After
+	public void closeConnection() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void h2EstimatesRowCountFromStatistics() throws SQLException {
+		assertThat(SQLHelper.estimateRowCount("S", "T", connection),
+				equalTo(3L));
+	}
+
+	@Test
+	public void unknownTableHasNoEstimate() throws SQLException {
+		assertThat(SQLHelper.estimateRowCount("S", "MISSING", connection),
+				equalTo(-1L));
+	}
+}
@@ -0,0 +1,109 @@
+package de.hpi.bp2013n1.anonymizer;
+
+/*
+ * #%L
+ * Anonymizer Benchmarks
+ * %%
+ * Copyright (C) 2013 - 2014 HPI-BP2013N1
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.hpi.bp2013n1.anonymizer.db.TableField;
+import de.hpi.bp2013n1.anonymizer.shared.Rule;
+import de.hpi.bp2013n1.anonymizer.shared.TableRuleMap;
+
+/**
+ * Compares resolving the rules of each column of a row by column name, as
+ * the row loop did before, with indexing a compiled
+ * {@link TableTransformationPlan}. The table has 50 columns of which every
+ * fifth has two rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleLookupBenchmark {
+
+	private static final int COLUMN_COUNT = 50;
+	private static final String TABLE = "WIDETABLE";
+
+	private TableRuleMap tableRuleMap;
+	private List<String> columnNames;
+	private TableTransformationPlan plan;
+
+	@Setup
+	public void createRules() throws SQLException {
+		TransformationStrategy strategy = new NoOperationStrategy(null, null,
+				null);
+		tableRuleMap = new TableRuleMap(TABLE);
+		columnNames = new ArrayList<>(COLUMN_COUNT);
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			String column = "COLUMN" + i;
+			columnNames.add(column);
+			if (i % 5 != 0)
+				continue;
+			for (int r = 0; r < 2; r++) {
+				Rule rule = new Rule(new TableField(TABLE, column, "BENCHMARK"),
+						"N", "");
+				rule.setTransformation(strategy);
+				tableRuleMap.put(column, rule);
+			}
+		}
+		plan = TableTransformationPlan.compile(tableRuleMap, columnNames);
+	}
+
+	@Benchmark
+	public void lookUpRulesPerRow(Blackhole blackhole) {
+		for (Rule rule : tableRuleMap.getRules(null))
+			blackhole.consume(rule.getTransformation());
+		for (int j = 0; j < columnNames.size(); j++) {
+			List<Rule> rules = tableRuleMap.getRules(columnNames.get(j));
+			if (rules.isEmpty()) {
+				blackhole.consume(j);
+				continue;
+			}
+			for (Rule rule : rules)
+				blackhole.consume(rule.getTransformation());
+		}
+	}
+
+	@Benchmark
+	public void indexCompiledPlan(Blackhole blackhole) {
+		for (TableTransformationPlan.Step step : plan.rowSteps)
+			blackhole.consume(step.strategy);
+		for (int j = 0; j < plan.columnCount; j++) {
+			if (plan.passThrough[j]) {
+				blackhole.consume(j);
+				continue;
+			}
+			for (TableTransformationPlan.Step step : plan.columnSteps[j])
+				blackhole.consume(step.strategy);
+		}
+	}
+}